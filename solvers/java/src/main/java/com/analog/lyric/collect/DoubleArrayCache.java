@@ -18,6 +18,7 @@ package com.analog.lyric.collect;
 
 import java.util.Arrays;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
@@ -76,6 +77,11 @@ public final class DoubleArrayCache
 		 * The maximum number of cached arrays that can be held by this object.
 		 */
 		private final int _maxSize;
+		
+		/**
+		 * Counts number of times lock could not be acquired without waiting. Shared by all slots.
+		 */
+		private final AtomicLong _contentionCounter;
 
 		/**
 		 * The cached array instances.
@@ -86,9 +92,10 @@ public final class DoubleArrayCache
 		@GuardedBy("_lock")
 		private int _size;
 		
-		private CacheSlot(int arrayLength, int maxSize)
+		private CacheSlot(int arrayLength, int maxSize, AtomicLong contentionCounter)
 		{
 			_lock = new Semaphore(1);
+			_contentionCounter = contentionCounter;
 			_arrayLength = arrayLength;
 			_maxSize = maxSize;
 			// Set initial size to max size but create array instances lazily using empty array as sentinel.
@@ -107,7 +114,7 @@ public final class DoubleArrayCache
 			double[] array = null;
 			
 			{
-				lock.acquireUninterruptibly();
+				acquire(lock);
 
 				int size = _size;
 				if (size > 0)
@@ -137,7 +144,7 @@ public final class DoubleArrayCache
 			if (array.length == _arrayLength)
 			{
 				final Semaphore lock = _lock;
-				lock.acquireUninterruptibly();
+				acquire(lock);
 				
 				int size = _size;
 				if (size < _maxSize)
@@ -149,6 +156,15 @@ public final class DoubleArrayCache
 				lock.release();
 			}
 		}
+		
+		private void acquire(Semaphore lock)
+		{
+			if (!lock.tryAcquire())
+			{
+				_contentionCounter.incrementAndGet();
+				lock.acquireUninterruptibly();
+			}
+		}
 	}
 	
 	/**
@@ -156,6 +172,8 @@ public final class DoubleArrayCache
 	 */
 	private final CacheSlot[] _arrays;
 	
+	private final AtomicLong _contentionCounter = new AtomicLong();
+	
 	/*--------------
 	 * Construction
 	 */
@@ -171,7 +189,7 @@ public final class DoubleArrayCache
 		_arrays = new CacheSlot[N_SLOTS];
 		for (int i = 0; i < N_SLOTS; ++i)
 		{
-			_arrays[i] = new CacheSlot(1<<i, maxInstances);
+			_arrays[i] = new CacheSlot(1<<i, maxInstances, _contentionCounter);
 		}
 	}
 	
@@ -215,6 +233,29 @@ public final class DoubleArrayCache
 		}
 	}
 
+	/**
+	 * The number of times a thread had to wait for another thread to finish allocating or releasing
+	 * an array of the same size since construction or the last call to {@link #resetContentionCount()}.
+	 * <p>
+	 * A steadily increasing count indicates that the cache is shared by threads that are running at
+	 * the same time, in which case {@link ThreadLocalDoubleArrayCache} should be used instead.
+	 * <p>
+	 * @since 0.08
+	 */
+	public long contentionCount()
+	{
+		return _contentionCounter.get();
+	}
+	
+	/**
+	 * Resets {@link #contentionCount()} to zero.
+	 * @since 0.08
+	 */
+	public void resetContentionCount()
+	{
+		_contentionCounter.set(0);
+	}
+	
 	/**
 	 * The maximum number of instances of arrays of the same size that can be held by the cache.
 	 * @since 0.08
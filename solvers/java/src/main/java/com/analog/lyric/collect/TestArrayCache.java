@@ -59,6 +59,63 @@ public class TestArrayCache
 		cache.release(array2.clone());
 		
 		assertEquals(DoubleArrayCache.DEFAULT_MAX_INSTANCES, new DoubleArrayCache().maxInstancesPerSize());
+		
+		// No other threads are using the cache
+		assertEquals(0, cache.contentionCount());
+		cache.resetContentionCount();
+		assertEquals(0, cache.contentionCount());
+	}
+	
+	@Test
+	public void testThreadLocalDoubleArrayCache() throws InterruptedException
+	{
+		final ThreadLocalDoubleArrayCache cache = new ThreadLocalDoubleArrayCache(2);
+		assertEquals(2, cache.maxInstancesPerSize());
+		
+		assertSame(ArrayUtil.EMPTY_DOUBLE_ARRAY, cache.allocateAtLeast(0));
+		assertSame(ArrayUtil.EMPTY_DOUBLE_ARRAY, cache.allocateAtLeast(-1));
+		
+		final double[] array1 = cache.allocateAtLeast(3);
+		assertEquals(4, array1.length);
+		
+		double[] array2 = cache.allocateAtLeast(3);
+		assertEquals(4, array2.length);
+		assertNotSame(array1, array2);
+		
+		double[] array3 = cache.allocateAtLeast(3);
+		assertEquals(array3.length, 3);
+		assertNotSame(array1, array3);
+		assertNotSame(array2, array3);
+		
+		cache.release(array1);
+		
+		double[] array4 = cache.allocateAtLeast(3);
+		assertSame(array1, array4);
+		cache.release(array4);
+		
+		// Other threads do not see this thread's arrays, but can release arrays into their own cache.
+		final Object[] fromThread = new Object[2];
+		Thread thread = new Thread() {
+			@Override
+			public void run()
+			{
+				fromThread[0] = cache.allocateAtLeast(4);
+				cache.release(array1);
+				fromThread[1] = cache.allocateAtLeast(4);
+			}
+		};
+		thread.start();
+		thread.join();
+		assertNotSame(array1, fromThread[0]);
+		assertSame(array1, fromThread[1]);
+		assertSame(array1, cache.allocateAtLeast(4));
+		
+		cache.release(array1);
+		cache.release(array2);
+		cache.release(array3);
+		cache.release(array2.clone());
+		
+		assertEquals(DoubleArrayCache.DEFAULT_MAX_INSTANCES, new ThreadLocalDoubleArrayCache().maxInstancesPerSize());
 	}
 
 	@Test
@@ -93,5 +150,33 @@ public class TestArrayCache
 		cache.release(array2.clone());
 		
 		assertEquals(IntArrayCache.DEFAULT_MAX_INSTANCES, new IntArrayCache().maxInstancesPerSize());
+		
+		assertEquals(0, cache.contentionCount());
+	}
+	
+	@Test
+	public void testThreadLocalIntArrayCache()
+	{
+		ThreadLocalIntArrayCache cache = new ThreadLocalIntArrayCache(2);
+		assertEquals(2, cache.maxInstancesPerSize());
+		
+		assertSame(ArrayUtil.EMPTY_INT_ARRAY, cache.allocateAtLeast(0));
+		
+		int[] array1 = cache.allocateAtLeast(5);
+		assertEquals(8, array1.length);
+		int[] array2 = cache.allocateAtLeast(5);
+		assertNotSame(array1, array2);
+		int[] array3 = cache.allocateAtLeast(5);
+		assertEquals(5, array3.length);
+		
+		cache.release(array1);
+		assertSame(array1, cache.allocateAtLeast(5));
+		
+		cache.release(array1);
+		cache.release(array2);
+		cache.release(array3);
+		cache.release(array2.clone());
+		
+		assertEquals(IntArrayCache.DEFAULT_MAX_INSTANCES, new ThreadLocalIntArrayCache().maxInstancesPerSize());
 	}
 }
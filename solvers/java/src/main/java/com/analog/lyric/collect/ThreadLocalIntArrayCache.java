@@ -0,0 +1,198 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.collect;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A cache of int[] for temporary use that keeps a separate set of arrays for each thread.
+ * <p>
+ * This has the same semantics as {@link IntArrayCache} but since each thread only
+ * sees its own arrays, no locking is required, and threads never wait on each other. This
+ * makes it suitable for use in inner loops of code that may be run on many threads at once.
+ * <p>
+ * An array may be released on a different thread than the one that allocated it, in which case
+ * it will simply be cached for use by the releasing thread.
+ * <p>
+ * @since 0.08
+ * @see ThreadLocalDoubleArrayCache
+ */
+@ThreadSafe
+public final class ThreadLocalIntArrayCache
+{
+	private static final int[] SENTINEL = new int[0];
+	
+	/**
+	 * The number of power-of-two slots supported by the cache.
+	 */
+	private static int N_SLOTS = 31;
+	
+	/**
+	 * Cached array instances for a single thread.
+	 */
+	@NotThreadSafe
+	private static class ThreadSlots
+	{
+		/**
+		 * Cached arrays indexed by power-of-two. Created lazily.
+		 */
+		private final int[][][] _arrays = new int[N_SLOTS][][];
+		
+		/**
+		 * Number of arrays in each entry of {@link #_arrays}.
+		 */
+		private final int[] _sizes = new int[N_SLOTS];
+		
+		private int[][] arraysForSlot(int slot, int maxInstances)
+		{
+			int[][] arrays = _arrays[slot];
+			if (arrays == null)
+			{
+				// Set initial size to max size but create array instances lazily using empty array as sentinel.
+				_arrays[slot] = arrays = new int[maxInstances][];
+				Arrays.fill(arrays, SENTINEL);
+				_sizes[slot] = maxInstances;
+			}
+			return arrays;
+		}
+	}
+	
+	private final int _maxInstances;
+	
+	private final ThreadLocal<ThreadSlots> _threadSlots = new ThreadLocal<ThreadSlots>() {
+		@Override
+		protected ThreadSlots initialValue()
+		{
+			return new ThreadSlots();
+		}
+	};
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Construct new cache with specified max number of instances per each size per thread.
+	 * @param maxInstances a positive number specifying the maximum number of arrays of a single
+	 * size that may be held in the cache at the same time by each thread.
+	 * @since 0.08
+	 */
+	public ThreadLocalIntArrayCache(int maxInstances)
+	{
+		_maxInstances = maxInstances;
+	}
+	
+	/**
+	 * Construct a new cache with default number of instances per size.
+	 * <p>
+	 * Same as {@link #ThreadLocalIntArrayCache(int)} with {@code maxInstances} set to
+	 * {@link IntArrayCache#DEFAULT_MAX_INSTANCES}.
+	 * @since 0.08
+	 */
+	public ThreadLocalIntArrayCache()
+	{
+		this(IntArrayCache.DEFAULT_MAX_INSTANCES);
+	}
+	
+	/*-------------------------------------
+	 * ThreadLocalIntArrayCache methods
+	 */
+	
+	/**
+	 * Returns new array of at least {@code minSize} from current thread's cache or returns a
+	 * newly allocated one.
+	 * <p>
+	 * The caller must not assume that the array has been zeroed out!
+	 * <p>
+	 * @since 0.08
+	 */
+	public int[] allocateAtLeast(int minSize)
+	{
+		if (minSize <= 0)
+		{
+			return ArrayUtil.EMPTY_INT_ARRAY;
+		}
+		
+		final int slot = slotForLength(minSize);
+		final ThreadSlots slots = _threadSlots.get();
+		final int[][] arrays = slots.arraysForSlot(slot, _maxInstances);
+		int size = slots._sizes[slot];
+		if (size > 0)
+		{
+			slots._sizes[slot] = --size;
+			int[] array = arrays[size];
+			arrays[size] = null;
+			if (array == SENTINEL)
+			{
+				array = new int[1 << slot];
+			}
+			return array;
+		}
+		
+		return new int[minSize];
+	}
+
+	/**
+	 * The maximum number of instances of arrays of the same size that can be held by the cache
+	 * for each thread.
+	 * @since 0.08
+	 */
+	public int maxInstancesPerSize()
+	{
+		return _maxInstances;
+	}
+	
+	/**
+	 * Returns an array to the current thread's cache for reuse.
+	 * @since 0.08
+	 */
+	public void release(int[] array)
+	{
+		final int length = array.length;
+		final int slot = slotForLength(length);
+		if (length != 1 << slot)
+		{
+			return;
+		}
+		
+		final ThreadSlots slots = _threadSlots.get();
+		final int[][] arrays = slots.arraysForSlot(slot, _maxInstances);
+		final int size = slots._sizes[slot];
+		if (size < _maxInstances)
+		{
+			arrays[size] = array;
+			slots._sizes[slot] = size + 1;
+		}
+		else if (arrays[0] == SENTINEL)
+		{
+			// Use in place of a lazily created instance.
+			arrays[0] = array;
+		}
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private static int slotForLength(int minLength)
+	{
+		return 32 - Integer.numberOfLeadingZeros(minLength - 1);
+	}
+}
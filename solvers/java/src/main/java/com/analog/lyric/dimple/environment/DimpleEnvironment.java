@@ -29,8 +29,8 @@ import net.jcip.annotations.ThreadSafe;
 import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.collect.ConstructorRegistry;
-import com.analog.lyric.collect.DoubleArrayCache;
-import com.analog.lyric.collect.IntArrayCache;
+import com.analog.lyric.collect.ThreadLocalDoubleArrayCache;
+import com.analog.lyric.collect.ThreadLocalIntArrayCache;
 import com.analog.lyric.collect.WeakLongHashMap;
 import com.analog.lyric.dimple.events.DimpleEventListener;
 import com.analog.lyric.dimple.events.IDimpleEventSource;
@@ -150,13 +150,19 @@ public class DimpleEnvironment extends DimpleOptionHolder
 	
 	/**
 	 * Cache of double[] for temporary use.
+	 * <p>
+	 * Each thread has its own set of cached arrays, so this may be used from solver code running on
+	 * multiple threads without contention.
 	 */
-	public static DoubleArrayCache doubleArrayCache = new DoubleArrayCache();
+	public static ThreadLocalDoubleArrayCache doubleArrayCache = new ThreadLocalDoubleArrayCache();
 	
 	/**
 	 * Cache of int[] for temporary use.
+	 * <p>
+	 * Each thread has its own set of cached arrays, so this may be used from solver code running on
+	 * multiple threads without contention.
 	 */
-	public static IntArrayCache intArrayCache = new IntArrayCache();
+	public static ThreadLocalIntArrayCache intArrayCache = new ThreadLocalIntArrayCache();
 	
 	// Hack to determine if class was loaded from within the MATLAB environment. We do this by
 	// checking to see if class loader comes from a package whose name starts with "com.mathworks".
@@ -55,6 +55,16 @@ public class Equality extends FactorFunction
 		}
 	}
 	
+	/**
+	 * True if smoothing was specified in the constructor, in which case this is not a strict
+	 * equality constraint.
+	 * @since 0.08
+	 */
+	public final boolean hasSmoothing()
+	{
+		return _smoothingSpecified;
+	}
+	
     @Override
     public final double evalEnergy(Value[] arguments)
     {
@@ -85,6 +95,11 @@ public class Equality extends FactorFunction
     @Override
     protected IFactorTable createTableForDomains(JointDomainIndexer domains)
     {
+    	if (_smoothingSpecified)
+    	{
+    		return super.createTableForDomains(domains);
+    	}
+    	
     	final DiscreteDomain domain = domains.get(0);
     	for (int i = 1; i < domains.size(); ++ i)
     	{
@@ -96,7 +111,7 @@ public class Equality extends FactorFunction
     	
     	// Special case for all domains the same
 
-		final int size = domains.size();
+		final int size = domain.size();
 		final double[] energies = new double[size];
 		final int[] jointIndices = new int[size];
 		final int[] indices = new int[domains.size()];
@@ -18,6 +18,8 @@ package com.analog.lyric.dimple.factorfunctions;
 
 import static java.util.Objects.*;
 
+import org.eclipse.jdt.annotation.Nullable;
+
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.model.domains.FiniteFieldNumber;
 import com.analog.lyric.dimple.model.values.Value;
@@ -28,9 +30,9 @@ import com.analog.lyric.dimple.model.values.Value;
  * 
  * The variables are ordered as follows in the argument list:
  * 
- * 1) Output (FiniteFieldVariable; Output = input1 + input2)
+ * 1) Output (FiniteFieldVariable; Output = input1 + input2 + ...)
  * 2) Input1 (FiniteFieldVariable)
- * 3) Input2 (FiniteFieldVariable)
+ * 3...) An arbitrary number of additional inputs (FiniteFieldVariable)
  * 
  * @since 0.05
  */
@@ -40,10 +42,10 @@ public class FiniteFieldAdd extends FactorFunction
     public final double evalEnergy(Value[] arguments)
     {
     	final int result = arguments[0].getInt();
-    	final int input1 = arguments[1].getInt();
-    	final int input2 = arguments[2].getInt();
     	
-    	final int computedResult = input1 ^ input2;
+    	int computedResult = 0;
+    	for (int i = 1, end = arguments.length; i < end; ++i)
+    		computedResult ^= arguments[i].getInt();
     	
     	return (computedResult == result) ? 0 : Double.POSITIVE_INFINITY;
     }
@@ -58,13 +60,17 @@ public class FiniteFieldAdd extends FactorFunction
     @Override
 	public final void evalDeterministic(Value[] arguments)
     {
-    	// Allow one constant input
-    	final Value arg1Value = arguments[1];
-    	final Value arg2Value = arguments[2];
-    	final Object arg1 = requireNonNull(arg1Value.getObject());
-    	final Object arg2 = requireNonNull(arg2Value.getObject());
-    	final FiniteFieldNumber input1 = (arg1 instanceof FiniteFieldNumber) ? (FiniteFieldNumber)arg1 : ((FiniteFieldNumber)arg2).cloneWithNewValue(arg1Value.getInt());
-    	final FiniteFieldNumber input2 = (arg2 instanceof FiniteFieldNumber) ? (FiniteFieldNumber)arg2 : ((FiniteFieldNumber)arg1).cloneWithNewValue(arg2Value.getInt());
-    	arguments[0].setFiniteField(input1.cloneWithNewValue(input1.intValue() ^ input2.intValue()));		// Replace the output value
+    	// Allow constant inputs, as long as at least one input is a finite field number
+    	@Nullable FiniteFieldNumber input = null;
+    	int sum = 0;
+    	for (int i = 1, end = arguments.length; i < end; ++i)
+    	{
+    		final Value argValue = arguments[i];
+    		final Object arg = requireNonNull(argValue.getObject());
+    		if (input == null && arg instanceof FiniteFieldNumber)
+    			input = (FiniteFieldNumber)arg;
+    		sum ^= argValue.getInt();
+    	}
+    	arguments[0].setFiniteField(requireNonNull(input).cloneWithNewValue(sum));		// Replace the output value
     }
 }
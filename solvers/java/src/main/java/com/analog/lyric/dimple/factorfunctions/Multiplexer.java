@@ -16,8 +16,13 @@
 
 package com.analog.lyric.dimple.factorfunctions;
 
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.values.IndexedValue;
 import com.analog.lyric.dimple.model.values.Value;
 
 
@@ -92,6 +97,34 @@ public class Multiplexer extends FactorFunction
     	arguments[0].setFrom(arguments[arguments[1].getInt() + 2]);
     }
     
+    @Override
+    public final int updateDeterministicLimit(int numEdges)
+    {
+    	return 1;
+    }
+    
+    @Override
+    public final boolean updateDeterministic(Value[] values, Collection<IndexedValue> oldValues,
+    	AtomicReference<int[]> changedOutputsHolder)
+    {
+    	if (oldValues.size() == 1)
+    	{
+    		final int changedIndex = oldValues.iterator().next().getIndex();
+    		if (changedIndex < 1 || values.length <= changedIndex)
+    		{
+    			throw new IndexOutOfBoundsException();
+    		}
+    		if (changedIndex != values[1].getInt() + 2 && changedIndex != 1)
+    		{
+    			// An input that is not selected does not affect the output
+    			changedOutputsHolder.set(ArrayUtil.EMPTY_INT_ARRAY);
+    			return true;
+    		}
+    	}
+    	
+    	return super.updateDeterministic(values, oldValues, changedOutputsHolder);
+    }
+    
     // Factor-specific methods
     public final boolean hasSmoothing()
     {
@@ -16,7 +16,11 @@
 
 package com.analog.lyric.dimple.factorfunctions;
 
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.values.IndexedValue;
 import com.analog.lyric.dimple.model.values.Value;
 
 
@@ -37,6 +41,11 @@ import com.analog.lyric.dimple.model.values.Value;
  */
 public class Product extends FactorFunction
 {
+	/**
+	 * Largest magnitude below which all integers can be represented exactly as a double.
+	 */
+	private static final double MAX_EXACT_INTEGER = 1L << 53;
+	
 	protected double _beta = 0;
 	protected boolean _smoothingSpecified = false;
 	public Product() {this(0);}
@@ -90,4 +99,53 @@ public class Product extends FactorFunction
     	
     	arguments[0].setDouble(product);		// Replace the output value
     }
+    
+    @Override
+    public final int updateDeterministicLimit(int numEdges)
+    {
+    	// Each incremental update costs one division and one multiplication versus <numEdges-1>
+    	// multiplications for a full update.
+    	return _smoothingSpecified ? 0 : (numEdges - 1) / 2;
+    }
+    
+    @Override
+    public final boolean updateDeterministic(Value[] values, Collection<IndexedValue> oldValues,
+    	AtomicReference<int[]> changedOutputsHolder)
+    {
+    	final int length = values.length;
+    	
+    	// Products of non-integers or of very large integers are recomputed from the current inputs,
+    	// since incremental updates of those would accumulate rounding error.
+    	doIncremental:
+    	if (oldValues.size() <= updateDeterministicLimit(length) && hasIntCompatibleValues(values))
+    	{
+    		final Value outputValue = values[0];
+    		double product = outputValue.getDouble();
+    		for (IndexedValue old : oldValues)
+    		{
+    			final int changedIndex = old.getIndex();
+    			if (changedIndex < 1 || length <= changedIndex)
+    			{
+    				throw new IndexOutOfBoundsException();
+    			}
+    			final double oldInput = old.getValue().getDouble();
+    			if (oldInput == 0)
+    			{
+    				// Cannot divide out a zero input, so recompute the product from scratch.
+    				break doIncremental;
+    			}
+    			product = product / oldInput * values[changedIndex].getDouble();
+    			if (Math.abs(product) > MAX_EXACT_INTEGER)
+    			{
+    				break doIncremental;
+    			}
+    		}
+    		
+    		outputValue.setDouble(product);
+    		changedOutputsHolder.set(null);
+    		return true;
+    	}
+    	
+    	return super.updateDeterministic(values, oldValues, changedOutputsHolder);
+    }
 }
@@ -51,6 +51,16 @@ public class Subtract extends FactorFunction
 		}
 	}
 	
+	/**
+	 * True if smoothing was specified in the constructor, in which case this is not a strict
+	 * constraint.
+	 * @since 0.08
+	 */
+	public final boolean hasSmoothing()
+	{
+		return _smoothingSpecified;
+	}
+	
     @Override
     public final double evalEnergy(Value[] arguments)
     {
@@ -16,7 +16,11 @@
 
 package com.analog.lyric.dimple.factorfunctions;
 
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.values.IndexedValue;
 import com.analog.lyric.dimple.model.values.Value;
 
 
@@ -50,6 +54,16 @@ public class Sum extends FactorFunction
 		}
 	}
 	
+	/**
+	 * True if smoothing was specified in the constructor, in which case this is not a strict
+	 * constraint.
+	 * @since 0.08
+	 */
+	public final boolean hasSmoothing()
+	{
+		return _smoothingSpecified;
+	}
+	
     @Override
     public final double evalEnergy(Value[] arguments)
     {
@@ -90,4 +104,41 @@ public class Sum extends FactorFunction
     	
     	arguments[0].setDouble(sum);		// Replace the output value
     }
+    
+    @Override
+    public final int updateDeterministicLimit(int numEdges)
+    {
+    	// Each incremental update costs one subtraction and one addition versus <numEdges-1> additions
+    	// for a full update.
+    	return _smoothingSpecified ? 0 : (numEdges - 1) / 2;
+    }
+    
+    @Override
+    public final boolean updateDeterministic(Value[] values, Collection<IndexedValue> oldValues,
+    	AtomicReference<int[]> changedOutputsHolder)
+    {
+    	final int length = values.length;
+    	if (oldValues.size() > updateDeterministicLimit(length) || !hasIntCompatibleValues(values))
+    	{
+    		// Recompute from the current inputs, since incremental updates of non-integer sums would
+    		// accumulate rounding error.
+    		return super.updateDeterministic(values, oldValues, changedOutputsHolder);
+    	}
+    	
+    	final Value outputValue = values[0];
+    	double sum = outputValue.getDouble();
+    	for (IndexedValue old : oldValues)
+    	{
+    		final int changedIndex = old.getIndex();
+    		if (changedIndex < 1 || length <= changedIndex)
+    		{
+    			throw new IndexOutOfBoundsException();
+    		}
+    		sum += values[changedIndex].getDouble() - old.getValue().getDouble();
+    	}
+    	
+    	outputValue.setDouble(sum);
+    	changedOutputsHolder.set(null);
+    	return true;
+    }
 }
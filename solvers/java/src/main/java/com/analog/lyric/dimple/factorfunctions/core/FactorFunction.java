@@ -395,6 +395,28 @@ public abstract class FactorFunction implements IFactorFunction
     	updateDeterministic(copy, oldValues, changedOutputsHolder);
     	return copy;
     }
+    
+    /**
+     * True if every value in {@code values} belongs to a domain that only contains integers.
+     * <p>
+     * Arithmetic functions can use this to decide whether {@link #updateDeterministic} may
+     * adjust the previous output incrementally, since sums and differences of integers (of
+     * moderate magnitude) are computed exactly, while those of other values accumulate
+     * rounding error from one update to the next.
+     * <p>
+     * @since 0.08
+     */
+    protected static boolean hasIntCompatibleValues(Value[] values)
+    {
+    	for (Value value : values)
+    	{
+    		if (!value.getDomain().hasIntCompatibleValues())
+    		{
+    			return false;
+    		}
+    	}
+    	return true;
+    }
 
     /**
      * Indicates whether to use {@link #updateEnergy}
@@ -202,6 +202,25 @@ public interface IFactorTable extends IFactorTableBase
 	 */
 	public int[][] getIndicesSparseUnsafe();
 	
+	/**
+	 * Returns the sparse element indices packed into a single array.
+	 * <p>
+	 * This contains the same information as {@link #getIndicesSparseUnsafe()} but in row-major form with a
+	 * fixed stride equal to the number of {@linkplain #getDimensions() dimensions}, so that the element index
+	 * for dimension {@code d} of sparse index {@code si} is at offset {@code si * getDimensions() + d}. This
+	 * layout avoids a separate array object per table entry and is intended for use in performance-critical
+	 * inner loops that visit every entry in the table.
+	 * <p>
+	 * <b>IMPORTANT</b>: the array is cached by the table and shared with other callers and must not be
+	 * modified. It is only valid until the next time the table's sparse indices are changed, so callers should
+	 * not hold on to it across modifications of the table.
+	 * <p>
+	 * Like {@link #getIndicesSparseUnsafe()}, this may implicitly modify the representation of the table.
+	 * <p>
+	 * @since 0.08
+	 */
+	public int[] getPackedIndicesSparseUnsafe();
+	
 	/**
 	 * {@inheritDoc}
 	 * <p>
@@ -81,6 +81,30 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	 */
 	int[][] _sparseIndices = ArrayUtil.EMPTY_INT_ARRAY_ARRAY;
 	
+	/**
+	 * Packed form of {@link #_sparseIndices} lazily computed by {@link #getPackedIndicesSparseUnsafe()}.
+	 * Only valid when its {@link PackedSparseIndices#source} is the same object as {@link #_sparseIndices}.
+	 * <p>
+	 * The packed indices and their source are kept in a single immutable holder so that a thread reading
+	 * this field never sees one without the other.
+	 */
+	private transient volatile @Nullable PackedSparseIndices _packedSparseIndices = null;
+	
+	private static final class PackedSparseIndices
+	{
+		/**
+		 * Value of {@link SparseFactorTableBase#_sparseIndices} from which {@link #packed} was computed.
+		 */
+		private final int[][] source;
+		private final int[] packed;
+		
+		private PackedSparseIndices(int[][] source, int[] packed)
+		{
+			this.source = source;
+			this.packed = packed;
+		}
+	}
+	
 	/**
 	 * Information computed about the table based on its values. This field is zeroed out whenever
 	 * table weights or energies are changed.
@@ -222,6 +246,27 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 		return getEnergySlice(null, sliceDimension, values);
 	}
 
+	@Override
+	public final int[] getPackedIndicesSparseUnsafe()
+	{
+		final int[][] indices = getIndicesSparseUnsafe();
+		
+		PackedSparseIndices packedIndices = _packedSparseIndices;
+		if (packedIndices == null || packedIndices.source != indices)
+		{
+			// The sparse indices are never modified in place, so a new array indicates a change.
+			final int stride = getDimensions();
+			final int[] packed = new int[indices.length * stride];
+			for (int si = 0, offset = 0, size = indices.length; si < size; ++si, offset += stride)
+			{
+				System.arraycopy(indices[si], 0, packed, offset, stride);
+			}
+			_packedSparseIndices = packedIndices = new PackedSparseIndices(indices, packed);
+		}
+		
+		return packedIndices.packed;
+	}
+	
 	@Override
 	public final FactorTableRepresentation getRepresentation()
 	{
@@ -0,0 +1,382 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.model.repeated;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleThreadFactory;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+
+/**
+ * Data sink that forwards data to another data sink in batches on a background thread.
+ * <p>
+ * {@link #push} adds the value to a bounded queue and only blocks if the queue is full. A consumer
+ * thread started on construction drains up to the batch size values at a time from the queue and
+ * pushes them to the wrapped sink in order. This lets any I/O or formatting done by the wrapped sink
+ * overlap with inference when used as the {@linkplain VariableStreamBase#setDataSink data sink} of a
+ * variable stream.
+ * <p>
+ * The wrapped sink is only accessed from the consumer thread, so its contents should not be read until
+ * after {@link #flush()} or {@link #close()} has been invoked.
+ * <p>
+ * Values are pushed by a single thread, normally the one running the solver. The queue depth and
+ * stall metrics can be used to tune the capacity: stalls indicate that the wrapped sink is not keeping up.
+ * <p>
+ * @since 0.08
+ */
+@NotThreadSafe
+public class BatchingDataSink implements IDataSink, Closeable
+{
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * Queue entry telling the consumer thread to exit.
+	 */
+	private static final Object END = new Object();
+
+	private final IDataSink _sink;
+	private final ArrayBlockingQueue<Object> _queue;
+	private final int _batchSize;
+	private final Thread _consumer;
+	
+	private volatile @Nullable Throwable _error = null;
+	private boolean _closed = false;
+	
+	/**
+	 * Number of values delivered to wrapped sink. Guarded by {@link #_delivered} lock.
+	 */
+	private long _deliveredCount = 0;
+	private final Object _delivered = new Object();
+	
+	private volatile long _batchCount = 0;
+	private long _count = 0;
+	private long _stallCount = 0;
+	private long _stallNanoseconds = 0;
+	private int _maxQueueDepth = 0;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Construct sink that queues up to {@code capacity} values and forwards them to {@code sink}
+	 * up to {@code batchSize} at a time.
+	 * <p>
+	 * Starts the consumer thread.
+	 * <p>
+	 * @param capacity is the maximum number of values that can be queued. Must be positive.
+	 * @param batchSize is the maximum number of values delivered to {@code sink} at a time. Must be positive.
+	 * @since 0.08
+	 */
+	public BatchingDataSink(IDataSink sink, int capacity, int batchSize)
+	{
+		if (batchSize <= 0)
+		{
+			throw new IllegalArgumentException(String.format("Non-positive batch size %d", batchSize));
+		}
+		
+		_sink = sink;
+		_queue = new ArrayBlockingQueue<>(capacity);
+		_batchSize = batchSize;
+		_consumer = new DimpleThreadFactory().newThread(new Consumer());
+		_consumer.setName("Dimple batching data sink");
+		_consumer.setDaemon(true);
+		_consumer.start();
+	}
+	
+	/*-------------------
+	 * IDataSink methods
+	 */
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Blocks only if the queue is full.
+	 * <p>
+	 * @throws DimpleException if the wrapped sink threw an exception on the consumer thread or if
+	 * this sink has been {@linkplain #close closed}.
+	 */
+	@Override
+	public void push(Object data)
+	{
+		assertOpen();
+		
+		_maxQueueDepth = Math.max(_maxQueueDepth, _queue.size());
+		if (!_queue.offer(data))
+		{
+			++_stallCount;
+			final long start = System.nanoTime();
+			put(data);
+			_stallNanoseconds += System.nanoTime() - start;
+		}
+		++_count;
+	}
+	
+	/*-------------------
+	 * Closeable methods
+	 */
+	
+	/**
+	 * Delivers any queued values to the wrapped sink and stops the consumer thread.
+	 * <p>
+	 * Does nothing if already closed. Does not close the wrapped sink.
+	 * <p>
+	 * @throws DimpleException if the wrapped sink threw an exception on the consumer thread.
+	 */
+	@Override
+	public void close()
+	{
+		if (!_closed)
+		{
+			_closed = true;
+			put(END);
+			try
+			{
+				_consumer.join();
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new DimpleException(ex, "Interrupted while closing data sink");
+			}
+			checkError();
+		}
+	}
+	
+	/*--------------------------
+	 * BatchingDataSink methods
+	 */
+	
+	/**
+	 * Blocks until all values pushed so far have been delivered to the wrapped sink.
+	 * <p>
+	 * @throws DimpleException if the wrapped sink threw an exception on the consumer thread or if
+	 * this sink has been {@linkplain #close closed}.
+	 * @since 0.08
+	 */
+	public void flush()
+	{
+		assertOpen();
+		
+		synchronized (_delivered)
+		{
+			while (_deliveredCount < _count && _error == null)
+			{
+				try
+				{
+					_delivered.wait();
+				}
+				catch (InterruptedException ex)
+				{
+					Thread.currentThread().interrupt();
+					throw new DimpleException(ex, "Interrupted while flushing data sink");
+				}
+			}
+		}
+		
+		checkError();
+	}
+	
+	/**
+	 * The number of values that have been {@linkplain #push pushed} to this sink.
+	 * @since 0.08
+	 */
+	public long getCount()
+	{
+		return _count;
+	}
+	
+	/**
+	 * The number of batches that have been delivered to the wrapped sink.
+	 * @since 0.08
+	 */
+	public long getBatchCount()
+	{
+		return _batchCount;
+	}
+
+	/**
+	 * The maximum number of values delivered to the wrapped sink at a time.
+	 * @since 0.08
+	 */
+	public int getBatchSize()
+	{
+		return _batchSize;
+	}
+	
+	/**
+	 * The maximum number of values that can be queued.
+	 * @since 0.08
+	 */
+	public int getCapacity()
+	{
+		return _queue.size() + _queue.remainingCapacity();
+	}
+
+	/**
+	 * The number of values currently queued and not yet taken by the consumer thread.
+	 * @since 0.08
+	 */
+	public int getQueueDepth()
+	{
+		return _queue.size();
+	}
+	
+	/**
+	 * The largest {@linkplain #getQueueDepth() queue depth} seen when pushing a value.
+	 * @since 0.08
+	 */
+	public int getMaxQueueDepth()
+	{
+		return _maxQueueDepth;
+	}
+	
+	/**
+	 * The number of times {@link #push} had to wait for the consumer because the queue was full.
+	 * @since 0.08
+	 */
+	public long getStallCount()
+	{
+		return _stallCount;
+	}
+	
+	/**
+	 * Total time in nanoseconds {@link #push} has spent waiting for the consumer.
+	 * @since 0.08
+	 */
+	public long getStallNanoseconds()
+	{
+		return _stallNanoseconds;
+	}
+	
+	/**
+	 * The wrapped data sink.
+	 * @since 0.08
+	 */
+	public IDataSink getSink()
+	{
+		return _sink;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private void assertOpen()
+	{
+		if (_closed)
+		{
+			throw new DimpleException("Data sink has been closed");
+		}
+		checkError();
+	}
+	
+	private void checkError()
+	{
+		final Throwable error = _error;
+		if (error != null)
+		{
+			throw new DimpleException(error, "Error writing to data sink: %s", error.toString());
+		}
+	}
+	
+	private void put(Object value)
+	{
+		try
+		{
+			// Don't wait on a full queue if the consumer thread has already died.
+			while (!_queue.offer(value, 10, TimeUnit.MILLISECONDS))
+			{
+				checkError();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new DimpleException(ex, "Interrupted while writing to data sink");
+		}
+	}
+	
+	private class Consumer implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			final ArrayList<Object> batch = new ArrayList<>(_batchSize);
+			
+			try
+			{
+				while (true)
+				{
+					batch.add(_queue.take());
+					_queue.drainTo(batch, _batchSize - 1);
+					
+					boolean end = false;
+					int n = 0;
+					for (Object value : batch)
+					{
+						if (value == END)
+						{
+							end = true;
+							break;
+						}
+						_sink.push(value);
+						++n;
+					}
+					batch.clear();
+					
+					if (n > 0)
+					{
+						++_batchCount;
+						synchronized (_delivered)
+						{
+							_deliveredCount += n;
+							_delivered.notifyAll();
+						}
+					}
+					
+					if (end)
+					{
+						break;
+					}
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				// Exit
+			}
+			catch (Throwable ex)
+			{
+				_error = ex;
+				synchronized (_delivered)
+				{
+					_delivered.notifyAll();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.model.repeated;
+
+import static com.analog.lyric.dimple.model.repeated.MappedDoubleArrayDataSource.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.NormalParameters;
+
+/**
+ * Data sink that writes fixed-size {@code double[]} values to a binary file that can be read using
+ * {@link MappedDoubleArrayDataSource}.
+ * <p>
+ * Unlike {@link DoubleArrayDataSink}, this does not hold the data in the Java heap, so it can be used
+ * for streams with far more output than will fit in memory. Values are collected in a direct buffer of
+ * {@value #WRITE_BUFFER_BYTES} bytes, which is appended to the file whenever it fills up.
+ * <p>
+ * Unlike the source, this does not use a memory mapping. Appending through a mapping would require
+ * mapping past the end of the data and truncating the file on close, which some platforms, notably
+ * Windows, do not allow while the mapping is still live.
+ * <p>
+ * The number of values in the header is only updated when the sink is {@linkplain #close closed}.
+ * <p>
+ * Accepts {@code double[]} values of length {@link #getDimension()}. For compatibility with
+ * {@link DoubleArrayDataSink}, {@link NormalParameters} beliefs are written as a mean and standard
+ * deviation when the dimension is two.
+ * <p>
+ * @since 0.08
+ */
+@NotThreadSafe
+public class DoubleArrayFileDataSink implements IDataSink, Closeable
+{
+	/*-----------
+	 * Constants
+	 */
+	
+	/**
+	 * Approximate size of the buffer used to collect values before they are written to the file. The
+	 * actual size is rounded down to a multiple of the size of a value, but holds at least one value.
+	 */
+	public static final int WRITE_BUFFER_BYTES = 1 << 16;
+	
+	/*-------
+	 * State
+	 */
+	
+	private final File _file;
+	private final RandomAccessFile _raf;
+	private final FileChannel _channel;
+	private final int _dimension;
+	private final ByteBuffer _buffer;
+	
+	private long _size = 0;
+	
+	/**
+	 * File offset at which the contents of {@link #_buffer} will be written.
+	 */
+	private long _writePosition = HEADER_BYTES;
+	
+	private boolean _closed = false;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Creates or overwrites {@code file} for writing values with given {@code dimension}.
+	 * <p>
+	 * @throws DimpleException if the file cannot be written.
+	 * @since 0.08
+	 */
+	public DoubleArrayFileDataSink(File file, int dimension)
+	{
+		if (dimension < 1)
+		{
+			throw new IllegalArgumentException(String.format("Dimension %d is not positive", dimension));
+		}
+		
+		_file = file;
+		_dimension = dimension;
+		final int valueBytes = dimension * 8;
+		_buffer = ByteBuffer.allocateDirect(Math.max(1, WRITE_BUFFER_BYTES / valueBytes) * valueBytes)
+			.order(ByteOrder.LITTLE_ENDIAN);
+		
+		try
+		{
+			_raf = new RandomAccessFile(file, "rw");
+			_raf.setLength(0);
+			_channel = _raf.getChannel();
+			writeHeader();
+		}
+		catch (IOException ex)
+		{
+			throw new DimpleException(ex, "Cannot write '%s': %s", file, ex.toString());
+		}
+	}
+	
+	/*-------------------
+	 * IDataSink methods
+	 */
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * @throws DimpleException if {@code data} is not a {@code double[]} of length {@link #getDimension()}
+	 * or a {@link NormalParameters} when the dimension is two, or if the sink has been closed.
+	 */
+	@Override
+	public void push(Object data)
+	{
+		if (_closed)
+		{
+			throw new DimpleException("Data sink for '%s' has been closed", _file);
+		}
+		
+		final ByteBuffer buffer = _buffer;
+		
+		if (data instanceof double[] && ((double[])data).length == _dimension)
+		{
+			makeRoom();
+			for (double value : (double[])data)
+			{
+				buffer.putDouble(value);
+			}
+		}
+		else if (data instanceof NormalParameters && _dimension == 2)
+		{
+			final NormalParameters normal = (NormalParameters)data;
+			makeRoom();
+			buffer.putDouble(normal.getMean());
+			buffer.putDouble(normal.getStandardDeviation());
+		}
+		else
+		{
+			throw new DimpleException("Cannot write %s to data sink with dimension %d", data, _dimension);
+		}
+		
+		++_size;
+	}
+	
+	/*-------------------
+	 * Closeable methods
+	 */
+	
+	/**
+	 * Writes any buffered values and the number of values in the header, forces the contents of the file
+	 * to the storage device and closes it.
+	 * <p>
+	 * Does nothing if already closed.
+	 */
+	@Override
+	public void close()
+	{
+		if (!_closed)
+		{
+			_closed = true;
+			try
+			{
+				try
+				{
+					flushBuffer();
+					writeHeader();
+					_channel.force(true);
+				}
+				finally
+				{
+					_raf.close();
+				}
+			}
+			catch (IOException ex)
+			{
+				throw new DimpleException(ex, "Error closing '%s': %s", _file, ex.toString());
+			}
+		}
+	}
+	
+	/*---------------------------------
+	 * DoubleArrayFileDataSink methods
+	 */
+	
+	/**
+	 * The number of elements in each value.
+	 * @since 0.08
+	 */
+	public int getDimension()
+	{
+		return _dimension;
+	}
+	
+	/**
+	 * The file to which data is written.
+	 * @since 0.08
+	 */
+	public File getFile()
+	{
+		return _file;
+	}
+	
+	/**
+	 * The number of values written so far.
+	 * @since 0.08
+	 */
+	public long size()
+	{
+		return _size;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * Writes buffer to the file if it does not have room for another value.
+	 */
+	private void makeRoom()
+	{
+		if (_buffer.remaining() < _dimension * 8)
+		{
+			try
+			{
+				flushBuffer();
+			}
+			catch (IOException ex)
+			{
+				throw new DimpleException(ex, "Cannot write '%s': %s", _file, ex.toString());
+			}
+		}
+	}
+	
+	private void flushBuffer() throws IOException
+	{
+		final ByteBuffer buffer = _buffer;
+		buffer.flip();
+		while (buffer.hasRemaining())
+		{
+			_writePosition += _channel.write(buffer, _writePosition);
+		}
+		buffer.clear();
+	}
+	
+	private void writeHeader() throws IOException
+	{
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(_dimension);
+		header.putLong(_size);
+		header.flip();
+		while (header.hasRemaining())
+		{
+			_channel.write(header, header.position());
+		}
+	}
+}
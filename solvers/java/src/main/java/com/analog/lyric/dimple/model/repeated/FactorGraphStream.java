@@ -22,14 +22,20 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import cern.colt.list.IntArrayList;
+
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.core.Port;
 import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 
 /*
  * This class represents one stream of Nested Factor Graphs.
@@ -45,6 +51,7 @@ public class FactorGraphStream
 	private FactorGraph _graph;
 	private FactorGraph _repeatedGraph;
 	private FactorGraph _parameterFactorGraph;
+	private @Nullable MessageShifter _messageShifter = null;
 
 	/*
 	 * The constructor adds Factors and Variables and BlastFromThePastFactors.
@@ -249,12 +256,21 @@ public class FactorGraphStream
 			}
 		}
 
-		//For each graph in list of nested graphs
-		for (int j = 0; j < _nestedGraphs.size()-1; j++)
+		final MessageShifter shifter = getMessageShifter();
+		if (shifter != null)
+		{
+			//Move all messages to the left using the precomputed pairs of solver objects
+			shifter.shift();
+		}
+		else
 		{
-			//Tell it to move all factor messages to left
-			final ISolverFactorGraph otherGraph = requireNonNull(_nestedGraphs.get(j+1).getSolver());
-			requireNonNull(_nestedGraphs.get(j).getSolver()).moveMessages(otherGraph);
+			//For each graph in list of nested graphs
+			for (int j = 0; j < _nestedGraphs.size()-1; j++)
+			{
+				//Tell it to move all factor messages to left
+				final ISolverFactorGraph otherGraph = requireNonNull(_nestedGraphs.get(j+1).getSolver());
+				requireNonNull(_nestedGraphs.get(j).getSolver()).moveMessages(otherGraph);
+			}
 		}
 
 		//Newest nested graph should initialize its messages
@@ -265,6 +281,202 @@ public class FactorGraphStream
 
 
 
+	/**
+	 * Returns shifter for moving messages between the nested graphs, or null if the nested
+	 * graph solvers do not support it.
+	 * <p>
+	 * The shifter is rebuilt whenever the graph structure or the nested graph solvers change.
+	 */
+	private @Nullable MessageShifter getMessageShifter()
+	{
+		MessageShifter shifter = _messageShifter;
+		
+		if (shifter == null || !shifter.isValidFor(_graph, _nestedGraphs))
+		{
+			_messageShifter = shifter = MessageShifter.create(_graph, _nestedGraphs);
+		}
+		
+		return shifter;
+	}
+
+	/**
+	 * Precomputed pairs of solver edges and variables whose state is moved from each nested graph
+	 * to its predecessor on {@link #advance}.
+	 * <p>
+	 * This performs the same state moves in the same order as {@link SFactorGraphBase#moveMessages}, but
+	 * does the local id lookups needed to match up corresponding edges, variables and subgraphs only once
+	 * instead of on every advance. The moves are grouped into blocks, one for each pair of corresponding
+	 * graphs or subgraphs, that move the edges and then the variables of the pair. Blocks are ordered as
+	 * {@code moveMessages} would visit them, with each graph followed by its subgraphs.
+	 * <p>
+	 * Only used when every solver graph {@linkplain SFactorGraphBase#supportsDirectMessageMoves supports
+	 * direct message moves}, since subclasses may override {@code moveMessages} to do something else entirely.
+	 */
+	private static final class MessageShifter
+	{
+		private final long _structureVersion;
+		private final ISolverFactorGraph[] _solverGraphs;
+		private final ISolverEdgeState[] _toEdges;
+		private final ISolverEdgeState[] _fromEdges;
+		private final ISolverVariable[] _toVariables;
+		private final ISolverVariable[] _fromVariables;
+		
+		/**
+		 * End offsets of each block in the edge and variable arrays.
+		 */
+		private final int[] _edgeEnds;
+		private final int[] _variableEnds;
+		
+		private MessageShifter(FactorGraph graph, ISolverFactorGraph[] solverGraphs,
+			List<ISolverEdgeState> toEdges, List<ISolverEdgeState> fromEdges,
+			List<ISolverVariable> toVariables, List<ISolverVariable> fromVariables,
+			IntArrayList edgeEnds, IntArrayList variableEnds)
+		{
+			_structureVersion = graph.graphTreeStructureVersion();
+			_solverGraphs = solverGraphs;
+			_toEdges = toEdges.toArray(new ISolverEdgeState[toEdges.size()]);
+			_fromEdges = fromEdges.toArray(new ISolverEdgeState[fromEdges.size()]);
+			_toVariables = toVariables.toArray(new ISolverVariable[toVariables.size()]);
+			_fromVariables = fromVariables.toArray(new ISolverVariable[fromVariables.size()]);
+			edgeEnds.trimToSize();
+			_edgeEnds = edgeEnds.elements();
+			variableEnds.trimToSize();
+			_variableEnds = variableEnds.elements();
+		}
+		
+		static @Nullable MessageShifter create(FactorGraph graph, List<FactorGraph> nestedGraphs)
+		{
+			final int nGraphs = nestedGraphs.size();
+			final ISolverFactorGraph[] solverGraphs = new ISolverFactorGraph[nGraphs];
+			for (int j = 0; j < nGraphs; ++j)
+			{
+				final ISolverFactorGraph sgraph = nestedGraphs.get(j).getSolver();
+				if (!supportsDirectMessageMoves(sgraph))
+				{
+					return null;
+				}
+				solverGraphs[j] = sgraph;
+			}
+
+			final List<ISolverEdgeState> toEdges = new ArrayList<>();
+			final List<ISolverEdgeState> fromEdges = new ArrayList<>();
+			final List<ISolverVariable> toVariables = new ArrayList<>();
+			final List<ISolverVariable> fromVariables = new ArrayList<>();
+			final IntArrayList edgeEnds = new IntArrayList();
+			final IntArrayList variableEnds = new IntArrayList();
+			
+			for (int j = 0; j < nGraphs - 1; ++j)
+			{
+				if (!addPairs((SFactorGraphBase<?,?,?,?>)solverGraphs[j], solverGraphs[j+1],
+					toEdges, fromEdges, toVariables, fromVariables, edgeEnds, variableEnds))
+				{
+					return null;
+				}
+			}
+			
+			return new MessageShifter(graph, solverGraphs, toEdges, fromEdges, toVariables, fromVariables,
+				edgeEnds, variableEnds);
+		}
+		
+		private static boolean supportsDirectMessageMoves(@Nullable ISolverFactorGraph sgraph)
+		{
+			return sgraph instanceof SFactorGraphBase &&
+				((SFactorGraphBase<?,?,?,?>)sgraph).supportsDirectMessageMoves();
+		}
+		
+		private static boolean addPairs(SFactorGraphBase<?,?,?,?> sgraph, ISolverFactorGraph other,
+			List<ISolverEdgeState> toEdges, List<ISolverEdgeState> fromEdges,
+			List<ISolverVariable> toVariables, List<ISolverVariable> fromVariables,
+			IntArrayList edgeEnds, IntArrayList variableEnds)
+		{
+			if (other.getClass() != sgraph.getClass())
+			{
+				return false;
+			}
+			
+			final SFactorGraphBase<?,?,?,?> sother = (SFactorGraphBase<?,?,?,?>)other;
+			final FactorGraph otherGraph = sother.getModelGraph();
+			
+			for (int i = 0, n = sgraph.getModelGraph().getGraphEdgeStateMaxIndex(); i <= n; ++i)
+			{
+				final ISolverEdgeState thisEdge = sgraph.getSolverEdge(i, false);
+				if (thisEdge != null)
+				{
+					toEdges.add(thisEdge);
+					fromEdges.add(requireNonNull(sother.getSolverEdge(i)));
+				}
+			}
+			
+			for (ISolverVariable svar : sgraph.getSolverVariables())
+			{
+				final int localId = svar.getModelObject().getLocalId();
+				final Variable thatVar = requireNonNull(otherGraph.getVariableByLocalId(localId));
+				toVariables.add(svar);
+				fromVariables.add(requireNonNull(sother.getSolverVariable(thatVar, true)));
+			}
+			
+			edgeEnds.add(toEdges.size());
+			variableEnds.add(toVariables.size());
+			
+			for (ISolverFactorGraph ssubgraph : sgraph.getSolverSubgraphs())
+			{
+				final int localId = ssubgraph.getModelObject().getLocalId();
+				final FactorGraph subgraph2 = requireNonNull(otherGraph.getGraphByLocalId(localId));
+				final ISolverFactorGraph ssubgraph2 = requireNonNull(sother.getSolverSubgraph(subgraph2, true));
+				if (!supportsDirectMessageMoves(ssubgraph) ||
+					!addPairs((SFactorGraphBase<?,?,?,?>)ssubgraph, ssubgraph2, toEdges, fromEdges, toVariables,
+						fromVariables, edgeEnds, variableEnds))
+				{
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		boolean isValidFor(FactorGraph graph, List<FactorGraph> nestedGraphs)
+		{
+			final int nGraphs = nestedGraphs.size();
+			
+			if (_structureVersion != graph.graphTreeStructureVersion() || _solverGraphs.length != nGraphs)
+			{
+				return false;
+			}
+			
+			for (int j = 0; j < nGraphs; ++j)
+			{
+				if (_solverGraphs[j] != nestedGraphs.get(j).getSolver())
+				{
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		void shift()
+		{
+			final ISolverEdgeState[] toEdges = _toEdges, fromEdges = _fromEdges;
+			final ISolverVariable[] toVariables = _toVariables, fromVariables = _fromVariables;
+			final int[] edgeEnds = _edgeEnds, variableEnds = _variableEnds;
+			
+			for (int block = 0, nBlocks = edgeEnds.length, e = 0, v = 0; block < nBlocks; ++block)
+			{
+				for (final int end = edgeEnds[block]; e < end; ++e)
+				{
+					final ISolverEdgeState fromEdge = fromEdges[e];
+					toEdges[e].setFrom(fromEdge);
+					fromEdge.reset();
+				}
+				
+				for (final int end = variableEnds[block]; v < end; ++v)
+				{
+					toVariables[v].moveNonEdgeSpecificState(fromVariables[v]);
+				}
+			}
+		}
+	}
+	
 	public boolean hasNext()
 	{
         for (VariableStreamBase<?> s : _variableStreams)
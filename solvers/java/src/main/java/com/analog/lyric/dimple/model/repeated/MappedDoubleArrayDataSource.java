@@ -0,0 +1,293 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.model.repeated;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+
+/**
+ * Data source that reads fixed-size {@code double[]} values from a memory-mapped binary file.
+ * <p>
+ * Unlike {@link DoubleArrayDataSource}, this does not hold the data in the Java heap, so it can be used
+ * for streams with far more data than will fit in memory. The file is mapped in segments of at most
+ * {@value #MAX_SEGMENT_BYTES} bytes, so only the segment currently being read needs to be resident.
+ * <p>
+ * The file has the format written by {@link DoubleArrayFileDataSink}: a {@value #HEADER_BYTES} byte
+ * header consisting of a four byte magic number, a four byte int with the dimension of each value
+ * and an eight byte long with the number of values, followed by the values themselves as consecutive
+ * little-endian doubles. All header fields are also little-endian.
+ * <p>
+ * Each call to {@link #getNext()} returns a newly allocated array, because the returned array
+ * becomes the input of a variable. The array is filled directly from the mapped file in a
+ * single bulk copy.
+ * <p>
+ * @since 0.08
+ */
+@NotThreadSafe
+public class MappedDoubleArrayDataSource implements IDataSource, Closeable
+{
+	/*-----------
+	 * Constants
+	 */
+	
+	/**
+	 * Magic number at the start of the file, which reads as "DMDA" when written in little-endian order.
+	 */
+	static final int MAGIC = 0x41444D44;
+	
+	/**
+	 * Number of bytes in file header.
+	 */
+	public static final int HEADER_BYTES = 16;
+	
+	/**
+	 * Maximum number of bytes mapped at a time.
+	 */
+	public static final long MAX_SEGMENT_BYTES = 1L << 26;
+	
+	/*-------
+	 * State
+	 */
+	
+	private final File _file;
+	private final FileChannel _channel;
+	private final int _dimension;
+	private final long _size;
+	private final int _valuesPerSegment;
+	
+	private long _position = 0;
+	
+	private @Nullable DoubleBuffer _segment = null;
+	private long _segmentStart = 0;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Opens {@code file} for reading.
+	 * <p>
+	 * @throws DimpleException if the file cannot be opened or does not have a valid header.
+	 * @since 0.08
+	 */
+	@SuppressWarnings("resource")
+	public MappedDoubleArrayDataSource(File file)
+	{
+		_file = file;
+		
+		try
+		{
+			_channel = new RandomAccessFile(file, "r").getChannel();
+			
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining())
+			{
+				if (_channel.read(header, header.position()) < 0)
+				{
+					break;
+				}
+			}
+			header.flip();
+			
+			if (header.limit() < HEADER_BYTES || header.getInt() != MAGIC)
+			{
+				throw new DimpleException("'%s' is not a Dimple double array file", file);
+			}
+			
+			_dimension = header.getInt();
+			_size = header.getLong();
+			
+			if (_dimension < 1 || _size < 0 ||
+				_channel.size() < HEADER_BYTES + _size * _dimension * 8)
+			{
+				throw new DimpleException("'%s' has invalid dimension %d or size %d", file, _dimension, _size);
+			}
+		}
+		catch (IOException ex)
+		{
+			throw new DimpleException(ex, "Cannot read '%s': %s", file, ex.toString());
+		}
+		
+		_valuesPerSegment = valuesPerSegment(_dimension);
+	}
+	
+	/*---------------------
+	 * IDataSource methods
+	 */
+	
+	@Override
+	public boolean hasNext()
+	{
+		return _position < _size;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Returns a newly allocated array of length {@link #getDimension()}.
+	 * <p>
+	 * @throws DimpleException if there is no more data.
+	 */
+	@Override
+	public double[] getNext()
+	{
+		if (_position >= _size)
+		{
+			throw new DimpleException("No more data in '%s'", _file);
+		}
+		
+		final DoubleBuffer segment = segmentFor(_position);
+		segment.position((int)(_position - _segmentStart) * _dimension);
+		final double[] values = new double[_dimension];
+		segment.get(values);
+		++_position;
+		
+		return values;
+	}
+	
+	/*-------------------
+	 * Closeable methods
+	 */
+	
+	/**
+	 * Closes the file.
+	 * <p>
+	 * The current mapped segment is released, but Java only unmaps it when it is garbage collected.
+	 * Until then, some platforms, notably Windows, will not allow the file to be deleted or truncated.
+	 */
+	@Override
+	public void close()
+	{
+		_segment = null;
+		try
+		{
+			_channel.close();
+		}
+		catch (IOException ex)
+		{
+			throw new DimpleException(ex, "Error closing '%s': %s", _file, ex.toString());
+		}
+	}
+	
+	/*-------------------------------------
+	 * MappedDoubleArrayDataSource methods
+	 */
+	
+	/**
+	 * The number of elements in each value.
+	 * @since 0.08
+	 */
+	public int getDimension()
+	{
+		return _dimension;
+	}
+	
+	/**
+	 * The file from which data is read.
+	 * @since 0.08
+	 */
+	public File getFile()
+	{
+		return _file;
+	}
+	
+	/**
+	 * The index of the value that will be returned by the next call to {@link #getNext()}.
+	 * @since 0.08
+	 */
+	public long getPosition()
+	{
+		return _position;
+	}
+	
+	/**
+	 * Sets the index of the value that will be returned by the next call to {@link #getNext()}.
+	 * @param position must be in the range [0, {@link #size()}].
+	 * @since 0.08
+	 */
+	public void setPosition(long position)
+	{
+		if (position < 0 || position > _size)
+		{
+			throw new IndexOutOfBoundsException(String.format("Position %d not in range [0,%d]", position, _size));
+		}
+		_position = position;
+	}
+	
+	/**
+	 * The total number of values in the file.
+	 * @since 0.08
+	 */
+	public long size()
+	{
+		return _size;
+	}
+	
+	/*-----------------
+	 * Package methods
+	 */
+	
+	/**
+	 * The number of whole values of given dimension that fit in a segment.
+	 */
+	static int valuesPerSegment(int dimension)
+	{
+		return (int)Math.max(1, MAX_SEGMENT_BYTES / (dimension * 8L));
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private DoubleBuffer segmentFor(long index)
+	{
+		DoubleBuffer segment = _segment;
+		
+		if (segment == null || index < _segmentStart || index >= _segmentStart + _valuesPerSegment)
+		{
+			final long start = index - index % _valuesPerSegment;
+			final long count = Math.min(_valuesPerSegment, _size - start);
+			final long bytesPerValue = _dimension * 8L;
+			try
+			{
+				segment = _channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + start * bytesPerValue,
+					count * bytesPerValue).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+			catch (IOException ex)
+			{
+				throw new DimpleException(ex, "Cannot map '%s': %s", _file, ex.toString());
+			}
+			_segment = segment;
+			_segmentStart = start;
+		}
+		
+		return segment;
+	}
+}
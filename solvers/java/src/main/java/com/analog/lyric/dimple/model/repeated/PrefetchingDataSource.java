@@ -0,0 +1,325 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.model.repeated;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleThreadFactory;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+
+/**
+ * Data source that reads ahead from another data source on a background thread.
+ * <p>
+ * A producer thread started on construction reads values from the wrapped source into a bounded queue
+ * of the given capacity until the wrapped source has no more data. {@link #hasNext()} and {@link #getNext()}
+ * only block if the queue is empty. This lets any I/O or parsing done by the wrapped source overlap
+ * with inference when used as the {@linkplain VariableStreamBase#setDataSource data source} of a variable
+ * stream.
+ * <p>
+ * Once it has been wrapped, the underlying source is only accessed from the producer thread, so it should
+ * not be modified by other threads. The producer stops once the wrapped source's {@link IDataSource#hasNext()}
+ * returns false, so the wrapped source must either already hold all of its data or block in
+ * {@code hasNext()} until more data is available.
+ * <p>
+ * Values are consumed by a single thread, normally the one running the solver. The queue depth and
+ * stall metrics can be used to tune the capacity: stalls indicate that the wrapped source is not keeping up.
+ * <p>
+ * @since 0.08
+ */
+@NotThreadSafe
+public class PrefetchingDataSource implements IDataSource, Closeable
+{
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * Queue entry marking the end of the data.
+	 */
+	private static final Object END = new Object();
+	
+	/**
+	 * Queue entry standing in for null values, which cannot be stored in the queue.
+	 */
+	private static final Object NULL = new Object();
+	
+	private final IDataSource _source;
+	private final ArrayBlockingQueue<Object> _queue;
+	private final Thread _producer;
+	
+	private volatile boolean _closed = false;
+	private volatile @Nullable Throwable _error = null;
+	
+	private @Nullable Object _next = null;
+	private boolean _done = false;
+	
+	private long _count = 0;
+	private long _stallCount = 0;
+	private long _stallNanoseconds = 0;
+	private int _maxQueueDepth = 0;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Construct source that reads ahead up to {@code capacity} values from {@code source}.
+	 * <p>
+	 * Starts the producer thread.
+	 * <p>
+	 * @param capacity is the maximum number of values that will be read ahead. Must be positive.
+	 * @since 0.08
+	 */
+	public PrefetchingDataSource(IDataSource source, int capacity)
+	{
+		_source = source;
+		_queue = new ArrayBlockingQueue<>(capacity);
+		_producer = new DimpleThreadFactory().newThread(new Producer());
+		_producer.setName("Dimple prefetching data source");
+		_producer.setDaemon(true);
+		_producer.start();
+	}
+	
+	/*---------------------
+	 * IDataSource methods
+	 */
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Blocks until the next value has been read from the wrapped source or the wrapped source has
+	 * no more data.
+	 * <p>
+	 * @throws DimpleException if the wrapped source threw an exception on the producer thread
+	 * or if this source has been {@linkplain #close closed}.
+	 */
+	@Override
+	public boolean hasNext()
+	{
+		if (_next != null)
+		{
+			return true;
+		}
+		
+		if (_done)
+		{
+			return false;
+		}
+		
+		if (_closed)
+		{
+			throw new DimpleException("Data source has been closed");
+		}
+		
+		Object next = take();
+		if (next == END)
+		{
+			_done = true;
+			final Throwable error = _error;
+			if (error != null)
+			{
+				throw new DimpleException(error, "Error reading from data source: %s", error.toString());
+			}
+			return false;
+		}
+		
+		_next = next;
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * @throws DimpleException if there is no more data or for the same reasons as {@link #hasNext()}.
+	 */
+	@SuppressWarnings("null")
+	@Override
+	public Object getNext()
+	{
+		if (!hasNext())
+		{
+			throw new DimpleException("No more data in data source");
+		}
+		
+		final Object next = _next;
+		_next = null;
+		++_count;
+		
+		return next == NULL ? null : next;
+	}
+
+	/*-------------------
+	 * Closeable methods
+	 */
+	
+	/**
+	 * Stops the producer thread and discards any values that have been read ahead.
+	 * <p>
+	 * Does not close the wrapped source.
+	 */
+	@Override
+	public void close()
+	{
+		if (!_closed)
+		{
+			_closed = true;
+			_producer.interrupt();
+			_queue.clear();
+			_next = null;
+		}
+	}
+	
+	/*-------------------------------
+	 * PrefetchingDataSource methods
+	 */
+	
+	/**
+	 * The number of values returned by {@link #getNext()}.
+	 * @since 0.08
+	 */
+	public long getCount()
+	{
+		return _count;
+	}
+	
+	/**
+	 * The maximum number of values that will be read ahead.
+	 * @since 0.08
+	 */
+	public int getCapacity()
+	{
+		return _queue.size() + _queue.remainingCapacity();
+	}
+	
+	/**
+	 * The number of values that have currently been read ahead and not yet consumed.
+	 * @since 0.08
+	 */
+	public int getQueueDepth()
+	{
+		return _queue.size() + (_next != null ? 1 : 0);
+	}
+	
+	/**
+	 * The largest {@linkplain #getQueueDepth() queue depth} seen when taking a value from the queue.
+	 * @since 0.08
+	 */
+	public int getMaxQueueDepth()
+	{
+		return _maxQueueDepth;
+	}
+
+	/**
+	 * The number of times the consumer had to wait for the producer because the queue was empty.
+	 * @since 0.08
+	 */
+	public long getStallCount()
+	{
+		return _stallCount;
+	}
+	
+	/**
+	 * Total time in nanoseconds the consumer has spent waiting for the producer.
+	 * @since 0.08
+	 */
+	public long getStallNanoseconds()
+	{
+		return _stallNanoseconds;
+	}
+	
+	/**
+	 * The wrapped data source.
+	 * @since 0.08
+	 */
+	public IDataSource getSource()
+	{
+		return _source;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private Object take()
+	{
+		_maxQueueDepth = Math.max(_maxQueueDepth, _queue.size());
+		
+		Object next = _queue.poll();
+		if (next == null)
+		{
+			++_stallCount;
+			final long start = System.nanoTime();
+			try
+			{
+				next = _queue.take();
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new DimpleException(ex, "Interrupted while waiting for data");
+			}
+			finally
+			{
+				_stallNanoseconds += System.nanoTime() - start;
+			}
+		}
+		
+		return next;
+	}
+	
+	private class Producer implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			try
+			{
+				try
+				{
+					while (!_closed && _source.hasNext())
+					{
+						final Object value = _source.getNext();
+						_queue.put(value != null ? value : NULL);
+					}
+				}
+				catch (InterruptedException ex)
+				{
+					return;
+				}
+				catch (Throwable ex)
+				{
+					_error = ex;
+				}
+
+				if (!_closed)
+				{
+					_queue.put(END);
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				// Closed while waiting to add end marker.
+			}
+		}
+	}
+}
@@ -550,6 +550,7 @@ public abstract class Variable extends Node implements Cloneable, IDataEventSour
     	if (svar != null)
     	{
 			svar.setInputOrFixedValue(_input,_fixedValue);
+			svar.getParentGraph().postSetInputOrFixedValue(this);
     	}
     
     	final int eventFlags = getChangeEventFlags();
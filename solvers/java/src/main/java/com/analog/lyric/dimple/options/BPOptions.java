@@ -20,6 +20,8 @@ import com.analog.lyric.dimple.schedulers.DefaultScheduler;
 import com.analog.lyric.dimple.schedulers.SchedulerOptionKey;
 import com.analog.lyric.dimple.schedulers.validator.AllEdgeScheduleValidator;
 import com.analog.lyric.dimple.schedulers.validator.ScheduleValidatorOptionKey;
+import com.analog.lyric.dimple.solvers.core.BPSolverGraph;
+import com.analog.lyric.dimple.solvers.core.ResidualNorm;
 import com.analog.lyric.dimple.solvers.core.SNode;
 import com.analog.lyric.dimple.solvers.optimizedupdate.UpdateApproach;
 import com.analog.lyric.options.DoubleListOptionKey;
@@ -56,6 +58,49 @@ public class BPOptions extends SolverOptions
 	public final static IntegerOptionKey iterations =
 		new IntegerOptionKey(BPOptions.class, "iterations", 1);
 
+	/**
+	 * Message residual below which iteration is considered to have converged.
+	 * <p>
+	 * When set to a positive value, {@linkplain BPSolverGraph#iterate(int) iterate} will stop
+	 * before completing the requested number of {@link #iterations} as soon as the largest change in
+	 * any discrete message over a single iteration, as measured by {@link #convergenceNorm}, is no
+	 * greater than this value. The residual is only computed every {@link #convergenceCheckInterval}
+	 * iterations.
+	 * <p>
+	 * The default value of zero disables convergence checking.
+	 * <p>
+	 * This option is looked up when the solver graph is initialized.
+	 * <p>
+	 * @since 0.08
+	 * @see BPSolverGraph#getLastResidual()
+	 */
+	public static final DoubleOptionKey convergenceTolerance =
+		new DoubleOptionKey(BPOptions.class, "convergenceTolerance", 0.0, 0.0, Double.POSITIVE_INFINITY);
+	
+	/**
+	 * Norm used to measure the change in individual messages for convergence checking.
+	 * <p>
+	 * Only used when {@link #convergenceTolerance} is positive.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final EnumOptionKey<ResidualNorm> convergenceNorm = new EnumOptionKey<ResidualNorm>(
+		BPOptions.class, "convergenceNorm", ResidualNorm.class, ResidualNorm.LINFINITY);
+	
+	/**
+	 * Number of iterations between convergence checks.
+	 * <p>
+	 * Computing the residual requires copying all of the messages in the graph before the
+	 * last iteration in the interval and comparing them afterward, so setting this to a value
+	 * larger than one reduces the overhead of convergence checking.
+	 * <p>
+	 * Only used when {@link #convergenceTolerance} is positive. Must be a positive number.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey convergenceCheckInterval =
+		new IntegerOptionKey(BPOptions.class, "convergenceCheckInterval", 1, 1, Integer.MAX_VALUE);
+
 	/**
 	 * Node specific damping values.
 	 * <p>
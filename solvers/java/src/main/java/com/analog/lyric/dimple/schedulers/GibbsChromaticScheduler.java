@@ -0,0 +1,313 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.schedulers;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import cern.colt.list.IntArrayList;
+
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsChromaticSchedule;
+import com.analog.lyric.dimple.schedulers.schedule.IGibbsSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ColorScheduleEntry;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsNeighbors;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+
+/**
+ * Gibbs scheduler that partitions the variables into color classes that can be sampled concurrently.
+ * <p>
+ * This colors the variable conflict graph, in which two variables conflict if updating one of them
+ * writes a value that is read or written when updating the other. Updating a variable writes its
+ * own value and, if it is an input to deterministic directed factors, the outputs of those factors,
+ * recursively (the same deterministic dependents that are included in its {@link GibbsNeighbors}). It
+ * reads the values of all of the variables connected to any factor adjacent to a variable it writes.
+ * <p>
+ * The resulting schedule has one {@link ColorScheduleEntry} per color class, in which the variables
+ * are visited in the same order as the {@link GibbsSequentialScanScheduler}. The {@link GibbsSolverGraph}
+ * samples the variables in each color class in parallel using the shared Dimple
+ * {@linkplain com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool thread pool}, waiting
+ * for all of them to finish before moving on to the next color. Block schedule entries are run
+ * sequentially after all of the colors. Note that for this schedule a single
+ * {@linkplain GibbsSolverGraph#iterate(int) iteration} updates an entire color class.
+ * <p>
+ * Colors are assigned greedily in variable order, so a lattice model will typically get two colors
+ * per lattice dimension or fewer.
+ * <p>
+ * @since 0.08
+ */
+public class GibbsChromaticScheduler extends GibbsSchedulerBase
+{
+	private static final long serialVersionUID = 1L;
+
+	/*--------------
+	 * Construction
+	 */
+	
+	public GibbsChromaticScheduler()
+	{
+		super();
+	}
+	
+	protected GibbsChromaticScheduler(GibbsChromaticScheduler other, Map<Object,Object> old2NewMap,
+		boolean copyToRoot)
+	{
+		super(other, old2NewMap, copyToRoot);
+	}
+	
+	/*--------------------
+	 * IScheduler methods
+	 */
+	
+	@Override
+	public IScheduler copy(Map<Object, Object> old2NewMap, boolean copyToRoot)
+	{
+		return new GibbsChromaticScheduler(this, old2NewMap, copyToRoot);
+	}
+	
+	@Override
+	public IGibbsSchedule createSchedule(FactorGraph g)
+	{
+		final GibbsChromaticSchedule schedule = new GibbsChromaticSchedule(this, g);
+
+		final ArrayList<Variable> variables = new ArrayList<>(g.getVariablesFlat());
+		final int[] colors = colorVariables(variables);
+
+		int nColors = 0;
+		for (int color : colors)
+		{
+			nColors = Math.max(nColors, color + 1);
+		}
+		
+		final int[] colorSizes = new int[nColors];
+		for (int color : colors)
+		{
+			++colorSizes[color];
+		}
+		
+		final Variable[][] colorClasses = new Variable[nColors][];
+		for (int color = 0; color < nColors; ++color)
+		{
+			colorClasses[color] = new Variable[colorSizes[color]];
+			colorSizes[color] = 0;
+		}
+		for (int i = 0, n = variables.size(); i < n; ++i)
+		{
+			final int color = colors[i];
+			colorClasses[color][colorSizes[color]++] = variables.get(i);
+		}
+		
+		for (int color = 0; color < nColors; ++color)
+		{
+			schedule.add(new ColorScheduleEntry(g, color, colorClasses[color]));
+		}
+		
+		return addBlockEntries(schedule);
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * Greedily colors the conflict graph of {@code variables}, returning the color of each variable.
+	 */
+	private static int[] colorVariables(ArrayList<Variable> variables)
+	{
+		final int nVars = variables.size();
+		final IdentityHashMap<Variable,Integer> indexOf = new IdentityHashMap<>(nVars);
+		for (int i = 0; i < nVars; ++i)
+		{
+			indexOf.put(variables.get(i), i);
+		}
+		
+		// For each variable, the variables it writes and the ones it reads or writes.
+		final int[][] writes = new int[nVars][];
+		final int[][] touches = new int[nVars][];
+		
+		final int[] mark = new int[nVars];
+		int markValue = 0;
+		final IntArrayList list = new IntArrayList();
+		final IntArrayList list2 = new IntArrayList();
+		
+		for (int i = 0; i < nVars; ++i)
+		{
+			// Variable writes itself and deterministic dependents
+			++markValue;
+			list.clear();
+			list.add(i);
+			mark[i] = markValue;
+			for (int j = 0; j < list.size(); ++j)
+			{
+				final Variable var = variables.get(list.get(j));
+				for (int edge = 0, nEdges = var.getSiblingCount(); edge < nEdges; ++edge)
+				{
+					final Factor factor = var.getSibling(edge);
+					final FactorFunction function = factor.getFactorFunction();
+					final int factorEdge = var.getReverseSiblingNumber(edge);
+					if (function.isDeterministicDirected() && !factor.isDirectedTo(factorEdge))
+					{
+						int[] outputEdges = function.getDirectedToIndicesForInput(factor, factorEdge);
+						if (outputEdges == null)
+						{
+							outputEdges = function.getDirectedToIndices(factor.getSiblingCount());
+						}
+						if (outputEdges != null)
+						{
+							for (int outputEdge : outputEdges)
+							{
+								final Integer output = indexOf.get(factor.getSibling(outputEdge));
+								if (output != null && mark[output] != markValue)
+								{
+									mark[output] = markValue;
+									list.add(output);
+								}
+							}
+						}
+					}
+				}
+			}
+			writes[i] = toArray(list);
+			
+			// Reads all variables adjacent to factors adjacent to written variables
+			list2.clear();
+			list2.addAllOf(list);
+			for (int j = 0, nWrites = list.size(); j < nWrites; ++j)
+			{
+				final Variable var = variables.get(list.get(j));
+				for (int edge = 0, nEdges = var.getSiblingCount(); edge < nEdges; ++edge)
+				{
+					final Factor factor = var.getSibling(edge);
+					for (int k = 0, nSiblings = factor.getSiblingCount(); k < nSiblings; ++k)
+					{
+						final Integer other = indexOf.get(factor.getSibling(k));
+						if (other != null && mark[other] != markValue)
+						{
+							mark[other] = markValue;
+							list2.add(other);
+						}
+					}
+				}
+			}
+			touches[i] = toArray(list2);
+		}
+		
+		// For each variable, the variables that write or touch it, in compressed row form.
+		final int[][] writers = invert(writes);
+		final int[][] touchers = invert(touches);
+		
+		// Greedy coloring: use smallest color not used by a conflicting variable that has already
+		// been colored.
+		final int[] colors = new int[nVars];
+		final IntArrayList forbidden = new IntArrayList();
+		for (int i = 0; i < nVars; ++i)
+		{
+			forbidden.clear();
+			for (int w : writes[i])
+			{
+				addColors(forbidden, touchers, w, colors, i);
+			}
+			for (int t : touches[i])
+			{
+				addColors(forbidden, writers, t, colors, i);
+			}
+			
+			int color = 0;
+			if (!forbidden.isEmpty())
+			{
+				forbidden.sort();
+				for (int j = 0, n = forbidden.size(); j < n && forbidden.getQuick(j) <= color; ++j)
+				{
+					if (forbidden.getQuick(j) == color)
+					{
+						++color;
+					}
+				}
+			}
+			colors[i] = color;
+		}
+		
+		return colors;
+	}
+	
+	/**
+	 * Adds colors of variables in row {@code row} of {@code relation} that precede {@code current}.
+	 * @param relation is in the compressed form produced by {@link #invert}.
+	 */
+	private static void addColors(IntArrayList colorsOut, int[][] relation, int row, int[] colors, int current)
+	{
+		final int[] offsets = relation[0], values = relation[1];
+		for (int j = offsets[row], end = offsets[row + 1]; j < end; ++j)
+		{
+			final int other = values[j];
+			if (other < current)
+			{
+				colorsOut.add(colors[other]);
+			}
+		}
+	}
+	
+	/**
+	 * Computes the inverse of a relation given as a list of targets for each source.
+	 * <p>
+	 * Returns two arrays: the first holds the offsets into the second of the sources for each target,
+	 * with an extra entry at the end holding the total size.
+	 */
+	private static int[][] invert(int[][] relation)
+	{
+		final int n = relation.length;
+		final int[] offsets = new int[n + 1];
+		for (int[] targets : relation)
+		{
+			for (int target : targets)
+			{
+				++offsets[target + 1];
+			}
+		}
+		for (int i = 0; i < n; ++i)
+		{
+			offsets[i + 1] += offsets[i];
+		}
+		
+		final int[] values = new int[offsets[n]];
+		final int[] next = offsets.clone();
+		for (int source = 0; source < n; ++source)
+		{
+			for (int target : relation[source])
+			{
+				values[next[target]++] = source;
+			}
+		}
+		
+		return new int[][] { offsets, values };
+	}
+	
+	private static int[] toArray(IntArrayList list)
+	{
+		final int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; ++i)
+		{
+			array[i] = list.getQuick(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualBPSchedule;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+
+/**
+ * Scheduler for residual belief propagation.
+ * <p>
+ * Produces a {@link ResidualBPSchedule}, which dynamically orders edge updates so that the edge
+ * whose input messages have changed the most since it was last updated is always updated first.
+ * Edges whose inputs have not changed by more than {@link com.analog.lyric.dimple.options.BPOptions#convergenceTolerance
+ * BPOptions.convergenceTolerance} are not updated at all, which can dramatically reduce the number of edge updates
+ * needed to reach a fixed point on large loopy graphs.
+ * <p>
+ * WARNING: This schedule DOES NOT respect any existing sub-graph scheduler associations. When multithreading
+ * is enabled, the solver will simply update every edge once per iteration instead of using the dynamic order.
+ * <p>
+ * @since 0.08
+ */
+public class ResidualBPScheduler extends StatelessBPScheduler
+{
+	private static final long serialVersionUID = 1L;
+
+	/*--------------------
+	 * IScheduler methods
+	 */
+
+	@Override
+	public ISchedule createSchedule(ISolverFactorGraph solverGraph)
+	{
+		return new ResidualBPSchedule(this, solverGraph);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The schedule depends on solver state, so this requires that {@code graph} have a solver.
+	 * @throws DimpleException if {@code graph} has no solver.
+	 */
+	@Override
+	public ISchedule createSchedule(FactorGraph graph)
+	{
+		final ISolverFactorGraph solverGraph = graph.getSolver();
+		if (solverGraph == null)
+		{
+			throw new DimpleException("%s requires graph with a solver", getClass().getSimpleName());
+		}
+		return createSchedule(solverGraph);
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.GibbsChromaticScheduler;
+import com.analog.lyric.dimple.schedulers.IScheduler;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.BlockScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ColorScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+
+/**
+ * Gibbs schedule consisting of {@link ColorScheduleEntry} entries for each color class followed by
+ * any block schedule entries.
+ * <p>
+ * @since 0.08
+ * @see GibbsChromaticScheduler
+ */
+public class GibbsChromaticSchedule extends FixedSchedule
+{
+	private static final long serialVersionUID = 1L;
+
+	/*--------------
+	 * Construction
+	 */
+	
+	public GibbsChromaticSchedule(@Nullable IScheduler scheduler, FactorGraph fg)
+	{
+		super(scheduler, fg);
+	}
+	
+	/*------------------------
+	 * IGibbsSchedule methods
+	 */
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The variables in the block are removed from their color classes and the block entry is appended to
+	 * the end of the schedule. Block entries are not run concurrently.
+	 */
+	@Override
+	public void addBlockScheduleEntry(BlockScheduleEntry blockScheduleEntry)
+	{
+		final Set<Variable> blockVariables = new HashSet<>();
+		for (Variable variable : blockScheduleEntry.getBlock())
+		{
+			blockVariables.add(variable);
+		}
+		
+		for (Iterator<IScheduleEntry> iterator = _schedule.iterator(); iterator.hasNext();)
+		{
+			final IScheduleEntry entry = iterator.next();
+			if (entry instanceof ColorScheduleEntry)
+			{
+				final ColorScheduleEntry colorEntry = (ColorScheduleEntry)entry;
+				if (colorEntry.removeVariables(blockVariables))
+				{
+					++_version;
+					if (colorEntry.size() == 0)
+					{
+						iterator.remove();
+					}
+				}
+			}
+		}
+		
+		add(blockScheduleEntry);
+	}
+
+	/*--------------------------------
+	 * GibbsChromaticSchedule methods
+	 */
+	
+	/**
+	 * The number of {@link ColorScheduleEntry} entries in the schedule.
+	 */
+	public int getColorCount()
+	{
+		int count = 0;
+		for (IScheduleEntry entry : _schedule)
+		{
+			if (entry instanceof ColorScheduleEntry)
+			{
+				++count;
+			}
+		}
+		return count;
+	}
+}
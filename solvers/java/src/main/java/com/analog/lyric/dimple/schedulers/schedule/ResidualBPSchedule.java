@@ -0,0 +1,481 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Objects;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.collect.BinaryHeap;
+import com.analog.lyric.dimple.model.core.EdgeState;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.Node;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.IScheduler;
+import com.analog.lyric.dimple.schedulers.ResidualBPScheduler;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.ResidualNorm;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
+
+/**
+ * Dynamic schedule for residual belief propagation.
+ * <p>
+ * Every directed edge in the graph (both factor-to-variable and variable-to-factor) is kept in a priority
+ * queue keyed by its pending residual, which is estimated as the largest change in any of the messages
+ * that have been sent to the edge's source node from other nodes since the edge was last updated. Each
+ * call to {@link #update()} repeatedly updates the edge with the largest pending residual. After each edge
+ * update, the change in its outgoing message is measured using {@link BPOptions#convergenceNorm} and
+ * propagated to the pending residuals of the outgoing edges of the receiving node.
+ * <p>
+ * A single iteration performs at most one update per directed edge in the graph and stops early when no edge
+ * has a pending residual greater than {@link BPOptions#convergenceTolerance}. Edges that have already been
+ * updated in the current iteration are taken out of the queue until the next iteration, and any residual
+ * propagated to them in the meantime is held until then. After the solver graph has
+ * been initialized, every edge is treated as having infinite residual so that all edges are updated at least
+ * once. When the input or fixed value of a variable changes, the edges leaving it are again treated as having
+ * infinite residual, and advancing a {@linkplain com.analog.lyric.dimple.model.repeated.FactorGraphStream stream}
+ * resets all of the residuals.
+ * <p>
+ * Because the order depends on message values computed while updating, this schedule is bound to a
+ * specific solver graph, which will invoke {@link #update()} in place of iterating over the schedule.
+ * The {@linkplain #iterator() iterator} simply lists an entry for every directed edge in the graph and is
+ * what will be used for multithreaded solves. Like {@link RandomWithoutReplacementSchedule}, this schedule
+ * does not respect schedulers set on subgraphs.
+ * <p>
+ * @since 0.08
+ * @see ResidualBPScheduler
+ */
+@NotThreadSafe
+public class ResidualBPSchedule extends ScheduleBase
+{
+	private static final long serialVersionUID = 1L;
+
+	/*-------
+	 * State
+	 */
+
+	private final ISolverFactorGraph _solverGraph;
+
+	private DirectedEdge[] _edges = new DirectedEdge[0];
+	
+	/**
+	 * Indexes into {@link #_edges} of the edges leaving each node, by port, or -1 for edges that are not
+	 * part of the schedule.
+	 */
+	private IdentityHashMap<Node, int[]> _nodeEdges = new IdentityHashMap<>();
+	
+	/**
+	 * Edges updated during the current call to {@link #update()}, which are not in the queue.
+	 */
+	private DirectedEdge[] _visitedEdges = new DirectedEdge[0];
+	private final BinaryHeap<DirectedEdge> _queue = new BinaryHeap<>();
+
+	private ResidualNorm _norm = ResidualNorm.LINFINITY;
+	private double _tolerance = 0.0;
+	private boolean _needsReset = true;
+
+	private double[] _savedValues = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	private @Nullable IParameterizedMessage _savedMessage = null;
+
+	private long _edgeUpdateCount = 0;
+
+	private static final class DirectedEdge
+	{
+		private final EdgeScheduleEntry _entry;
+		private final boolean _fromFactor;
+		private final ISolverEdgeState _sedge;
+
+		/**
+		 * Index into {@link ResidualBPSchedule#_edges} of edges leaving the target node, by port, or -1
+		 * for edges that are not part of the schedule. Shared by all edges entering the same node.
+		 */
+		private final int[] _targetEdges;
+
+		/**
+		 * Port on target node that refers back to the source node.
+		 */
+		private final int _targetPort;
+
+		private BinaryHeap.Entry<DirectedEdge> _heapEntry;
+		
+		/**
+		 * True if edge has already been updated in the current iteration and is not in the queue.
+		 */
+		private boolean _visited;
+		
+		/**
+		 * Pending residual of edge while {@link #_visited}.
+		 */
+		private double _deferredResidual;
+
+		@SuppressWarnings("null")
+		private DirectedEdge(Node source, int port, ISolverEdgeState sedge, int[] targetEdges, int targetPort)
+		{
+			_entry = new EdgeScheduleEntry(source, port);
+			_fromFactor = source instanceof Factor;
+			_sedge = sedge;
+			_targetEdges = targetEdges;
+			_targetPort = targetPort;
+		}
+
+		private @Nullable Object message()
+		{
+			return _fromFactor ? _sedge.getFactorToVarMsg() : _sedge.getVarToFactorMsg();
+		}
+
+		private double pendingResidual()
+		{
+			return _visited ? _deferredResidual : -_heapEntry.getPriority();
+		}
+	}
+
+	/*--------------
+	 * Construction
+	 */
+
+	public ResidualBPSchedule(@Nullable IScheduler scheduler, ISolverFactorGraph solverGraph)
+	{
+		super(scheduler, solverGraph.getModelObject());
+		_solverGraph = solverGraph;
+	}
+
+	/*-------------------
+	 * ISchedule methods
+	 */
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Also requires that {@code sgraph} is the solver graph for which the schedule was created.
+	 */
+	@Override
+	public boolean isUpToDateForSolver(ISolverFactorGraph sgraph)
+	{
+		return sgraph == _solverGraph && super.isUpToDateForSolver(sgraph);
+	}
+
+	/**
+	 * Returns iterator over an entry for each directed edge in the graph.
+	 * <p>
+	 * This does not reflect the dynamic order used by {@link #update()}.
+	 */
+	@Override
+	public Iterator<IScheduleEntry> iterator()
+	{
+		final FactorGraph fg = getFactorGraph();
+		final ArrayList<IScheduleEntry> entries = new ArrayList<>();
+		for (Factor factor : fg.getNonGraphFactors())
+		{
+			for (int i = 0, n = factor.getSiblingCount(); i < n; ++i)
+			{
+				final EdgeState edge = factor.getSiblingEdgeState(i);
+				entries.add(new EdgeScheduleEntry(factor, i));
+				entries.add(new EdgeScheduleEntry(edge.getVariable(fg), edge.getVariableToFactorEdgeNumber()));
+			}
+		}
+		return entries.iterator();
+	}
+	
+	@Override
+	public FactorGraph getFactorGraph()
+	{
+		return Objects.requireNonNull(_factorGraph);
+	}
+
+	/*-----------------------------
+	 * ResidualBPSchedule methods
+	 */
+
+	/**
+	 * The number of edge updates performed by {@link #update()} since the solver graph was last initialized.
+	 */
+	public long getEdgeUpdateCount()
+	{
+		return _edgeUpdateCount;
+	}
+
+	/**
+	 * The solver graph for which the schedule was created.
+	 */
+	public ISolverFactorGraph getSolverGraph()
+	{
+		return _solverGraph;
+	}
+
+	/**
+	 * Sets the pending residuals of the edges leaving {@code variable} to infinity, so that they will be
+	 * updated in the next iteration.
+	 * <p>
+	 * Invoked when the input or fixed value of the variable has changed.
+	 */
+	public void invalidate(Variable variable)
+	{
+		if (_needsReset)
+		{
+			return;
+		}
+		
+		final int[] variableEdges = _nodeEdges.get(variable);
+		if (variableEdges != null)
+		{
+			for (int index : variableEdges)
+			{
+				if (index >= 0)
+				{
+					raiseResidual(_edges[index], Double.POSITIVE_INFINITY);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Resets all pending residuals to infinity.
+	 * <p>
+	 * Invoked when the solver graph is initialized and after its streams have advanced. Also rereads {@link BPOptions#convergenceNorm} and
+	 * {@link BPOptions#convergenceTolerance} from the solver graph.
+	 */
+	public void reset()
+	{
+		_needsReset = true;
+	}
+
+	/**
+	 * Performs one iteration of residual belief propagation on the {@linkplain #getSolverGraph() solver graph}.
+	 * <p>
+	 * Repeatedly updates the edge with the largest pending residual that has not yet been updated in this
+	 * iteration, until either every directed edge in the graph has been updated once or there are no
+	 * remaining edges with pending residual greater than {@link BPOptions#convergenceTolerance}.
+	 */
+	public void update()
+	{
+		if (_needsReset)
+		{
+			rebuild();
+		}
+		
+		final ISolverFactorGraph sgraph = _solverGraph;
+		final BinaryHeap<DirectedEdge> queue = _queue;
+		final DirectedEdge[] visitedEdges = _visitedEdges;
+		int nVisited = 0;
+		
+		try
+		{
+			while (true)
+			{
+				final BinaryHeap.Entry<DirectedEdge> head = queue.peekEntry();
+				if (head == null || !(head.getElement().pendingResidual() > _tolerance))
+				{
+					break;
+				}
+
+				// Take edge out of the queue for the rest of this iteration.
+				queue.pollEntry();
+				final DirectedEdge edge = head.getElement();
+				edge._visited = true;
+				edge._deferredResidual = 0.0;
+				visitedEdges[nVisited++] = edge;
+				
+				saveMessage(edge);
+				sgraph.runScheduleEntry(edge._entry);
+				++_edgeUpdateCount;
+				propagateResidual(edge);
+			}
+		}
+		finally
+		{
+			// Return visited edges to the queue with the residual accumulated since they were updated.
+			for (int i = 0; i < nVisited; ++i)
+			{
+				final DirectedEdge edge = visitedEdges[i];
+				visitedEdges[i] = null;
+				edge._visited = false;
+				edge._heapEntry = queue.offer(edge, -edge._deferredResidual);
+			}
+		}
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private void rebuild()
+	{
+		_needsReset = false;
+		_savedMessage = null;
+		_edgeUpdateCount = 0;
+		_norm = _solverGraph.getOptionOrDefault(BPOptions.convergenceNorm);
+		_tolerance = _solverGraph.getOptionOrDefault(BPOptions.convergenceTolerance);
+
+		final FactorGraph fg = _solverGraph.getModelObject();
+		final SolverNodeMapping solvers = _solverGraph.getSolverMapping();
+
+		// First pass: allocate ids for all of the directed edges incident to factors in the graph.
+		final IdentityHashMap<Node, int[]> nodeEdges = new IdentityHashMap<>();
+		int nEdges = 0;
+		for (Factor factor : fg.getNonGraphFactors())
+		{
+			final int nPorts = factor.getSiblingCount();
+			final int[] factorEdges = new int[nPorts];
+			nodeEdges.put(factor, factorEdges);
+			for (int i = 0; i < nPorts; ++i)
+			{
+				final EdgeState edge = factor.getSiblingEdgeState(i);
+				final Variable variable = edge.getVariable(fg);
+				int[] variableEdges = nodeEdges.get(variable);
+				if (variableEdges == null)
+				{
+					variableEdges = new int[variable.getSiblingCount()];
+					Arrays.fill(variableEdges, -1);
+					nodeEdges.put(variable, variableEdges);
+				}
+				factorEdges[i] = nEdges++;
+				variableEdges[edge.getVariableToFactorEdgeNumber()] = nEdges++;
+			}
+		}
+
+		// Second pass: create the edges in the same order
+		final DirectedEdge[] edges = new DirectedEdge[nEdges];
+		for (Factor factor : fg.getNonGraphFactors())
+		{
+			final int[] factorEdges = nodeEdges.get(factor);
+			for (int i = 0, nPorts = factor.getSiblingCount(); i < nPorts; ++i)
+			{
+				final EdgeState edge = factor.getSiblingEdgeState(i);
+				final Variable variable = edge.getVariable(fg);
+				final int variablePort = edge.getVariableToFactorEdgeNumber();
+				final int[] variableEdges = nodeEdges.get(variable);
+				final ISolverEdgeState sedge = solvers.getSolverFactor(factor).getSiblingEdgeState(i);
+				edges[factorEdges[i]] = new DirectedEdge(factor, i, sedge, variableEdges, variablePort);
+				edges[variableEdges[variablePort]] = new DirectedEdge(variable, variablePort, sedge, factorEdges, i);
+			}
+		}
+
+		_edges = edges;
+		_nodeEdges = nodeEdges;
+		_visitedEdges = new DirectedEdge[nEdges];
+
+		final BinaryHeap<DirectedEdge> queue = _queue;
+		queue.clear();
+		queue.ensureCapacity(nEdges);
+		queue.deferOrderingForBulkAdd(nEdges);
+		for (DirectedEdge edge : edges)
+		{
+			edge._heapEntry = queue.offer(edge, Double.NEGATIVE_INFINITY);
+		}
+	}
+
+	private void saveMessage(DirectedEdge edge)
+	{
+		final Object msg = edge.message();
+		_savedMessage = null;
+
+		if (msg instanceof DiscreteMessage)
+		{
+			final double[] values = ((DiscreteMessage)msg).representation();
+			if (_savedValues.length < values.length)
+			{
+				_savedValues = new double[values.length];
+			}
+			System.arraycopy(values, 0, _savedValues, 0, values.length);
+		}
+		else if (msg instanceof IParameterizedMessage)
+		{
+			_savedMessage = ((IParameterizedMessage)msg).clone();
+		}
+	}
+
+	/**
+	 * Computes change in outgoing message of {@code edge} since {@link #saveMessage} was invoked on it.
+	 * Returns infinity if the message cannot be compared.
+	 */
+	private double computeResidual(DirectedEdge edge)
+	{
+		final Object msg = edge.message();
+
+		if (msg instanceof DiscreteMessage)
+		{
+			final double[] values = ((DiscreteMessage)msg).representation();
+			return _norm.distance(values, 0, _savedValues, 0, values.length);
+		}
+
+		final IParameterizedMessage savedMessage = _savedMessage;
+		if (msg instanceof IParameterizedMessage && savedMessage != null)
+		{
+			return ((IParameterizedMessage)msg).computeKLDivergence(savedMessage);
+		}
+
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Propagates the change in the message of {@code edge}, which has just been updated, to the edges
+	 * leaving its target node.
+	 */
+	private void propagateResidual(DirectedEdge edge)
+	{
+		double residual = computeResidual(edge);
+		if (Double.isNaN(residual))
+		{
+			residual = Double.POSITIVE_INFINITY;
+		}
+
+		if (residual > 0.0)
+		{
+			final int[] targetEdges = edge._targetEdges;
+			for (int port = 0, n = targetEdges.length; port < n; ++port)
+			{
+				final int index = targetEdges[port];
+				if (port != edge._targetPort && index >= 0)
+				{
+					raiseResidual(_edges[index], residual);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Raises the pending residual of {@code edge} to {@code residual} if it is currently lower.
+	 */
+	private void raiseResidual(DirectedEdge edge, double residual)
+	{
+		if (residual > edge.pendingResidual())
+		{
+			if (edge._visited)
+			{
+				edge._deferredResidual = residual;
+			}
+			else
+			{
+				_queue.changePriority(edge._heapEntry, -residual);
+			}
+		}
+	}
+}
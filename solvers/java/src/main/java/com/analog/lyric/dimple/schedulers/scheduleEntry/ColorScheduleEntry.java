@@ -0,0 +1,208 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.schedulers.scheduleEntry;
+
+import static java.util.Objects.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.GibbsChromaticScheduler;
+
+/**
+ * A schedule entry holding a set of variables that may be updated concurrently.
+ * <p>
+ * The variables in the entry are one color class of a coloring of the graph's variable conflict
+ * graph, so that updating any one of them neither modifies nor depends on the values of the
+ * others. This is produced by the {@link GibbsChromaticScheduler} and is only supported by the
+ * Gibbs solver, so its {@linkplain #type() type} is {@link IScheduleEntry.Type#CUSTOM CUSTOM}.
+ * <p>
+ * @since 0.08
+ */
+public class ColorScheduleEntry implements IScheduleEntry
+{
+	/*-------
+	 * State
+	 */
+	
+	private final FactorGraph _graph;
+	private final int _color;
+	private Variable[] _variables;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * @param graph is the graph whose schedule contains this entry; all of the variables must be in the
+	 * graph tree rooted at this graph.
+	 * @param color is a non-negative index identifying the color class.
+	 * @param variables are the variables in the color class.
+	 */
+	public ColorScheduleEntry(FactorGraph graph, int color, Variable[] variables)
+	{
+		_graph = graph;
+		_color = color;
+		_variables = variables.clone();
+	}
+	
+	/*----------------
+	 * Object methods
+	 */
+	
+	@Override
+	public String toString()
+	{
+		return String.format("[ColorScheduleEntry %d: %d variables]", _color, _variables.length);
+	}
+
+	/*------------------------
+	 * IScheduleEntry methods
+	 */
+	
+	@Override
+	public @Nullable IScheduleEntry copy(Map<Object,Object> old2newObjs, boolean copyToRoot)
+	{
+		final List<Variable> newVariables = new ArrayList<>(_variables.length);
+		for (Variable variable : _variables)
+		{
+			final FactorGraph fg = requireNonNull(variable.getParentGraph());
+			final boolean isBoundaryVariable = fg.isBoundaryVariable(variable);
+			final boolean skip = copyToRoot ? isBoundaryVariable && fg.hasParentGraph() : isBoundaryVariable;
+			
+			if (!skip)
+			{
+				newVariables.add((Variable)old2newObjs.get(variable));
+			}
+		}
+		
+		if (newVariables.isEmpty())
+		{
+			return null;
+		}
+		
+		FactorGraph newGraph = (FactorGraph)old2newObjs.get(_graph);
+		if (newGraph == null)
+		{
+			newGraph = requireNonNull(newVariables.get(0).getRootGraph());
+		}
+		
+		return new ColorScheduleEntry(newGraph, _color, newVariables.toArray(new Variable[newVariables.size()]));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * @return the graph specified in the constructor.
+	 */
+	@Override
+	public FactorGraph getParentGraph()
+	{
+		return _graph;
+	}
+
+	@Override
+	public List<Variable> getNodes()
+	{
+		return Arrays.asList(_variables);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * @return {@link IScheduleEntry.Type#CUSTOM CUSTOM}
+	 */
+	@Override
+	public Type type()
+	{
+		return Type.CUSTOM;
+	}
+	
+	/*----------------------------
+	 * ColorScheduleEntry methods
+	 */
+	
+	/**
+	 * Non-negative index identifying the color class.
+	 */
+	public int getColor()
+	{
+		return _color;
+	}
+	
+	/**
+	 * The number of variables in the entry.
+	 */
+	public int size()
+	{
+		return _variables.length;
+	}
+	
+	/**
+	 * Returns the variable with given index.
+	 * @param index must be non-negative and less than {@link #size()}.
+	 */
+	public Variable getVariable(int index)
+	{
+		return _variables[index];
+	}
+	
+	/**
+	 * Removes given variables from this entry.
+	 * <p>
+	 * This is used when variables are moved to a {@link BlockScheduleEntry}.
+	 * <p>
+	 * @return true if any variables were removed.
+	 */
+	public boolean removeVariables(Set<Variable> variables)
+	{
+		int size = 0;
+		for (Variable variable : _variables)
+		{
+			if (!variables.contains(variable))
+			{
+				++size;
+			}
+		}
+		
+		if (size == _variables.length)
+		{
+			return false;
+		}
+		
+		final Variable[] newVariables = new Variable[size];
+		size = 0;
+		for (Variable variable : _variables)
+		{
+			if (!variables.contains(variable))
+			{
+				newVariables[size++] = variable;
+			}
+		}
+		_variables = newVariables;
+		
+		return true;
+	}
+}
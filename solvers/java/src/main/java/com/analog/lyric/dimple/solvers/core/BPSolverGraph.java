@@ -16,11 +16,20 @@
 
 package com.analog.lyric.dimple.solvers.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.options.BPOptions;
 import com.analog.lyric.dimple.schedulers.SchedulerOptionKey;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualBPSchedule;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
@@ -39,6 +48,28 @@ public abstract class BPSolverGraph
 	<SFactor extends ISolverFactor, SVariable extends ISolverVariable, SEdge extends ISolverEdgeState>
 	extends SFactorGraphBase<SFactor, SVariable, SEdge, NoSolverVariableBlock>
 {
+	/*-------
+	 * State
+	 */
+	
+	private double _convergenceTolerance = 0.0;
+	private ResidualNorm _convergenceNorm = ResidualNorm.LINFINITY;
+	private int _convergenceCheckInterval = 1;
+	
+	private int _iterationsRun = 0;
+	private double _lastResidual = Double.NaN;
+	private boolean _converged = false;
+	
+	/**
+	 * Copy of discrete message values saved prior to last iteration in a convergence check interval.
+	 */
+	private double[] _savedMessageValues = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	
+	/**
+	 * Copy of non-discrete parameterized messages saved prior to last iteration in a convergence check interval.
+	 */
+	private final ArrayList<IParameterizedMessage> _savedParameterizedMessages = new ArrayList<>();
+	
 	/*--------------
 	 * Construction
 	 */
@@ -52,6 +83,194 @@ public abstract class BPSolverGraph
 	 * ISolverFactorGraph methods
 	 */
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Also looks up {@link BPOptions#convergenceTolerance}, {@link BPOptions#convergenceNorm} and
+	 * {@link BPOptions#convergenceCheckInterval}, and {@linkplain ResidualBPSchedule#reset() resets}
+	 * the schedule if it is a {@link ResidualBPSchedule}.
+	 */
+	@Override
+	public void initialize()
+	{
+		super.initialize();
+		
+		final ISchedule schedule = getSchedule();
+		if (schedule instanceof ResidualBPSchedule)
+		{
+			((ResidualBPSchedule)schedule).reset();
+		}
+		
+		_convergenceTolerance = getOptionOrDefault(BPOptions.convergenceTolerance);
+		_convergenceNorm = getOptionOrDefault(BPOptions.convergenceNorm);
+		_convergenceCheckInterval = getOptionOrDefault(BPOptions.convergenceCheckInterval);
+		
+		_iterationsRun = 0;
+		_lastResidual = Double.NaN;
+		_converged = false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * {@linkplain ResidualBPSchedule#reset() Resets} the schedule if it is a {@link ResidualBPSchedule}.
+	 */
+	@Override
+	public void postAdvance()
+	{
+		super.postAdvance();
+		
+		final ISchedule schedule = _schedule;
+		if (schedule instanceof ResidualBPSchedule)
+		{
+			// Advancing moves messages and inputs without recording their residuals.
+			((ResidualBPSchedule)schedule).reset();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If this graph or one containing it has a {@link ResidualBPSchedule}, the edges leaving the variable
+	 * will be updated in its next iteration.
+	 */
+	@Override
+	public void postSetInputOrFixedValue(Variable variable)
+	{
+		final ISchedule schedule = _schedule;
+		if (schedule instanceof ResidualBPSchedule)
+		{
+			((ResidualBPSchedule)schedule).invalidate(variable);
+		}
+		
+		final ISolverFactorGraph parent = getParentGraph();
+		if (parent != null)
+		{
+			parent.postSetInputOrFixedValue(variable);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the schedule is a {@link ResidualBPSchedule}, this delegates to its {@link ResidualBPSchedule#update()}
+	 * method, which dynamically chooses which edges to update.
+	 */
+	@Override
+	public void update()
+	{
+		final ISchedule schedule = getSchedule();
+		if (schedule instanceof ResidualBPSchedule)
+		{
+			((ResidualBPSchedule)schedule).update();
+		}
+		else
+		{
+			super.update();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If {@link BPOptions#convergenceTolerance} is positive, then every {@link BPOptions#convergenceCheckInterval}
+	 * iterations this will compute the residual of the last iteration and will stop early if it does
+	 * not exceed the tolerance. The results can be obtained from {@link #getIterationsRun()},
+	 * {@link #getLastResidual()} and {@link #hasConverged()}.
+	 */
+	@Override
+	public void iterate(int numIters)
+	{
+		_iterationsRun = 0;
+		_lastResidual = Double.NaN;
+		_converged = false;
+		
+		final double tolerance = _convergenceTolerance;
+		if (tolerance <= 0.0)
+		{
+			if (runIterations(numIters))
+			{
+				_iterationsRun = numIters;
+			}
+			return;
+		}
+		
+		final int interval = _convergenceCheckInterval;
+		while (_iterationsRun < numIters)
+		{
+			final int nBeforeCheck = Math.min(interval, numIters - _iterationsRun) - 1;
+			if (nBeforeCheck > 0)
+			{
+				if (!runIterations(nBeforeCheck))
+				{
+					return;
+				}
+				_iterationsRun += nBeforeCheck;
+			}
+			
+			saveMessages();
+			if (!runIterations(1))
+			{
+				return;
+			}
+			++_iterationsRun;
+			
+			_lastResidual = computeResidual();
+			if (_lastResidual <= tolerance)
+			{
+				_converged = true;
+				break;
+			}
+		}
+		
+		_savedParameterizedMessages.clear();
+	}
+	
+	/*-----------------------
+	 * BPSolverGraph methods
+	 */
+	
+	/**
+	 * The number of iterations run by the most recent call to {@link #iterate(int)}.
+	 * <p>
+	 * This will be less than the number of iterations requested if iteration stopped early because
+	 * the residual fell within {@link BPOptions#convergenceTolerance} or because the solver thread was
+	 * interrupted.
+	 * <p>
+	 * @since 0.08
+	 */
+	public int getIterationsRun()
+	{
+		return _iterationsRun;
+	}
+	
+	/**
+	 * The message residual computed at the last convergence check in the most recent call to {@link #iterate(int)}.
+	 * <p>
+	 * This is the largest change in any message during the last checked iteration as measured by
+	 * {@link BPOptions#convergenceNorm}. Discrete messages are compared directly by their representation.
+	 * Other parameterized messages contribute their KL divergence from their previous value.
+	 * <p>
+	 * Returns NaN if convergence checking is disabled or no check has yet been performed.
+	 * <p>
+	 * @since 0.08
+	 */
+	public double getLastResidual()
+	{
+		return _lastResidual;
+	}
+	
+	/**
+	 * True if the most recent call to {@link #iterate(int)} stopped because the residual fell within
+	 * {@link BPOptions#convergenceTolerance}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public boolean hasConverged()
+	{
+		return _converged;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @return {@link BPOptions#scheduler};
@@ -61,4 +280,99 @@ public abstract class BPSolverGraph
 	{
 		return BPOptions.scheduler;
 	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private void saveMessages()
+	{
+		_savedParameterizedMessages.clear();
+		
+		int offset = 0;
+		for (ISolverFactor sfactor : getSolverFactorsRecursive())
+		{
+			for (int i = 0, n = sfactor.getSiblingCount(); i < n; ++i)
+			{
+				final ISolverEdgeState sedge = sfactor.getSiblingEdgeState(i);
+				if (sedge != null)
+				{
+					offset = saveMessage(sedge.getFactorToVarMsg(), offset);
+					offset = saveMessage(sedge.getVarToFactorMsg(), offset);
+				}
+			}
+		}
+	}
+	
+	private int saveMessage(@Nullable Object msg, int offset)
+	{
+		if (msg instanceof DiscreteMessage)
+		{
+			final double[] values = ((DiscreteMessage)msg).representation();
+			final int end = offset + values.length;
+			double[] saved = _savedMessageValues;
+			if (end > saved.length)
+			{
+				_savedMessageValues = saved = Arrays.copyOf(saved, Math.max(end, saved.length * 2));
+			}
+			System.arraycopy(values, 0, saved, offset, values.length);
+			return end;
+		}
+		else if (msg instanceof IParameterizedMessage)
+		{
+			_savedParameterizedMessages.add(((IParameterizedMessage)msg).clone());
+		}
+		
+		return offset;
+	}
+	
+	/**
+	 * Computes maximum message residual with respect to messages saved by last call to {@link #saveMessages()}.
+	 * Must be invoked on the same graph structure.
+	 */
+	private double computeResidual()
+	{
+		final ResidualNorm norm = _convergenceNorm;
+		final double[] saved = _savedMessageValues;
+		
+		double residual = 0.0;
+		int offset = 0, parameterizedIndex = 0;
+		
+		for (ISolverFactor sfactor : getSolverFactorsRecursive())
+		{
+			for (int i = 0, n = sfactor.getSiblingCount(); i < n; ++i)
+			{
+				final ISolverEdgeState sedge = sfactor.getSiblingEdgeState(i);
+				if (sedge == null)
+				{
+					continue;
+				}
+				
+				for (int direction = 0; direction < 2; ++direction)
+				{
+					final Object msg = direction == 0 ? sedge.getFactorToVarMsg() : sedge.getVarToFactorMsg();
+					double distance = 0.0;
+					
+					if (msg instanceof DiscreteMessage)
+					{
+						final double[] values = ((DiscreteMessage)msg).representation();
+						distance = norm.distance(values, 0, saved, offset, values.length);
+						offset += values.length;
+					}
+					else if (msg instanceof IParameterizedMessage)
+					{
+						final IParameterizedMessage oldMsg = _savedParameterizedMessages.get(parameterizedIndex++);
+						distance = ((IParameterizedMessage)msg).computeKLDivergence(oldMsg);
+					}
+					
+					if (distance > residual || Double.isNaN(distance))
+					{
+						residual = distance;
+					}
+				}
+			}
+		}
+		
+		return residual;
+	}
 }
@@ -0,0 +1,94 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core;
+
+/**
+ * Norm used to measure the change in a discrete message between successive updates.
+ * <p>
+ * The distance is computed directly on the message representation, i.e. on normalized
+ * weights for sum-product and on normalized energies for min-sum.
+ * <p>
+ * @since 0.08
+ */
+public enum ResidualNorm
+{
+	/**
+	 * Sum of absolute differences of all message elements.
+	 */
+	L1
+	{
+		@Override
+		public double distance(double[] a, int aOffset, double[] b, int bOffset, int length)
+		{
+			double sum = 0.0;
+			for (int i = 0; i < length; ++i)
+			{
+				final double x = a[aOffset + i], y = b[bOffset + i];
+				if (x != y) // avoid NaN when both are the same infinity
+				{
+					sum += Math.abs(x - y);
+				}
+			}
+			return sum;
+		}
+	},
+	
+	/**
+	 * Maximum absolute difference over all message elements.
+	 */
+	LINFINITY
+	{
+		@Override
+		public double distance(double[] a, int aOffset, double[] b, int bOffset, int length)
+		{
+			double max = 0.0;
+			for (int i = 0; i < length; ++i)
+			{
+				final double x = a[aOffset + i], y = b[bOffset + i];
+				if (x != y) // avoid NaN when both are the same infinity
+				{
+					max = Math.max(max, Math.abs(x - y));
+				}
+			}
+			return max;
+		}
+	};
+	
+	/**
+	 * Computes distance between two message vectors of the same length.
+	 * <p>
+	 * Infinite elements that are equal in both vectors contribute zero to the distance.
+	 * <p>
+	 * @since 0.08
+	 */
+	public double distance(double[] a, double[] b)
+	{
+		return distance(a, 0, b, 0, a.length);
+	}
+	
+	/**
+	 * Computes distance between two message vectors stored in larger arrays.
+	 * <p>
+	 * @param a array containing first message
+	 * @param aOffset index of first element of message in {@code a}
+	 * @param b array containing second message
+	 * @param bOffset index of first element of message in {@code b}
+	 * @param length number of elements in message
+	 * @since 0.08
+	 */
+	public abstract double distance(double[] a, int aOffset, double[] b, int bOffset, int length);
+}
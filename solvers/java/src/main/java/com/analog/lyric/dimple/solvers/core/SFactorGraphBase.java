@@ -412,6 +412,12 @@ public abstract class SFactorGraphBase
 		return false;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Subclasses that override this method should also override {@link #supportsDirectMessageMoves()}
+	 * to return false.
+	 */
 	@Override
 	public void moveMessages(ISolverNode other)
 	{
@@ -448,6 +454,26 @@ public abstract class SFactorGraphBase
 			ssubgraph.moveMessages(ssubgraph2);
 		}
 	}
+	
+	/**
+	 * True if {@link #moveMessages} only moves the state of each solver edge and variable of the
+	 * other graph and its subgraphs to the corresponding object in this graph, as the default
+	 * implementation does.
+	 * <p>
+	 * When true, {@link com.analog.lyric.dimple.model.repeated.FactorGraphStream FactorGraphStream}
+	 * may match up those objects once and then move their state directly on each advance instead of
+	 * calling {@link #moveMessages}.
+	 * <p>
+	 * The default implementation returns true. Subclasses that override {@link #moveMessages} should
+	 * also override this to return false.
+	 * <p>
+	 * @since 0.08
+	 */
+	@Internal
+	public boolean supportsDirectMessageMoves()
+	{
+		return true;
+	}
 
 	@Override
 	public final void removeSolverEdge(int edgeIndex)
@@ -643,6 +669,19 @@ public abstract class SFactorGraphBase
 
 	@Override
 	public void iterate(int numIters)
+	{
+		runIterations(numIters);
+	}
+	
+	/**
+	 * Runs {@code numIters} iterations of the schedule.
+	 * <p>
+	 * Uses the {@linkplain #getMultithreadingManager() multithreading manager} if multithreading is enabled.
+	 * <p>
+	 * @return false if iteration was cut short because the thread was interrupted.
+	 * @since 0.08
+	 */
+	protected boolean runIterations(int numIters)
 	{
 		final MultiThreadingManager multithreader = _multithreader;
 		if (multithreader == null || ! _useMultithreading)
@@ -654,7 +693,7 @@ public abstract class SFactorGraphBase
 				
 				// Allow interruption (if the solver is run as a thread); currently interruption is allowed only between iterations, not within a single iteration
 				if (Thread.interrupted())
-					return;
+					return false;
 			}
 		}
 		else
@@ -662,6 +701,8 @@ public abstract class SFactorGraphBase
 			// *** Multiple threads
 			multithreader.iterate(numIters);
 		}
+		
+		return true;
 	}
 	
 	@Override
@@ -1043,6 +1084,12 @@ public abstract class SFactorGraphBase
 		
 	}
 	
+	@Override
+	public void postSetInputOrFixedValue(Variable variable)
+	{
+		
+	}
+	
 	@Override
 	public void postSetSolverFactory()
 	{
@@ -26,7 +26,9 @@ import org.eclipse.jdt.annotation.Nullable;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraph;
+import com.analog.lyric.dimple.solvers.core.multithreading.forkjoinalgorithm.ForkJoinMultithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm.PhaseMultithreadingAlgorithm;
+import com.analog.lyric.dimple.solvers.core.multithreading.pinnedphasealgorithm.PinnedPhaseMultithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.core.multithreading.singlequeuealgorithm.SingleQueueMutlithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 
@@ -53,6 +55,8 @@ public class MultiThreadingManager
 		setNumWorkersToDefault();
 		_mode2alg.put(MultithreadingMode.Phase,new PhaseMultithreadingAlgorithm(this));
 		_mode2alg.put(MultithreadingMode.SingleQueue,new SingleQueueMutlithreadingAlgorithm(this));
+		_mode2alg.put(MultithreadingMode.PinnedPhase,new PinnedPhaseMultithreadingAlgorithm(this));
+		_mode2alg.put(MultithreadingMode.ForkJoin,new ForkJoinMultithreadingAlgorithm(this));
 	}
 
 	
@@ -85,6 +89,24 @@ public class MultiThreadingManager
 		_whichAlg = mode;
 	}
 	
+	/**
+	 * The current multithreading mode.
+	 * @since 0.08
+	 */
+	public MultithreadingMode getMode()
+	{
+		return _whichAlg;
+	}
+	
+	/**
+	 * The algorithm used to implement given multithreading {@code mode}.
+	 * @since 0.08
+	 */
+	public MultithreadingAlgorithm getAlgorithm(MultithreadingMode mode)
+	{
+		return Objects.requireNonNull(_mode2alg.get(mode));
+	}
+	
 	public FactorGraph getFactorGraph()
 	{
 		return _sgraph.getModelObject();
@@ -17,12 +17,27 @@
 package com.analog.lyric.dimple.solvers.core.multithreading;
 
 /**
- * Provides two multithreading options.
+ * Provides multithreading options.
  * 
  * @author shershey
  *
  */
 public enum MultithreadingMode 
 {
-	Phase, SingleQueue;	
+	Phase, SingleQueue,
+	
+	/**
+	 * Like {@link #Phase} but runs precomputed partitions of each phase on persistent worker threads.
+	 * @see com.analog.lyric.dimple.solvers.core.multithreading.pinnedphasealgorithm.PinnedPhaseMultithreadingAlgorithm
+	 * @since 0.08
+	 */
+	PinnedPhase,
+	
+	/**
+	 * Runs the dependency graph on a work-stealing fork/join pool, starting each entry as soon as its
+	 * dependencies have been updated, without barriers between phases or iterations.
+	 * @see com.analog.lyric.dimple.solvers.core.multithreading.forkjoinalgorithm.ForkJoinMultithreadingAlgorithm
+	 * @since 0.08
+	 */
+	ForkJoin;
 }
@@ -0,0 +1,515 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.solvers.core.multithreading.forkjoinalgorithm;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.environment.IDimpleEnvironmentHolder;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraph;
+import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraphNode;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingAlgorithm;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+
+/**
+ * Dataflow multithreading that runs the dependency graph on a work-stealing {@link ForkJoinPool}.
+ * <p>
+ * Each schedule entry has an atomic count of the dependencies it is still waiting on. When an entry
+ * has been updated, the counts of its dependents are decremented and any dependent whose count reaches
+ * zero is immediately forked onto the pool. There are no barriers between phases.
+ * <p>
+ * Nor are there barriers between iterations: an entry in the next iteration depends only on the entries
+ * in the previous iteration that last touched the same edges, so parts of the graph may start the next
+ * iteration while other parts are still finishing the current one. These dependencies are obtained by
+ * building a {@link StaticDependencyGraph} for two iterations. Because every pair of entries touching
+ * the same edge is ordered, all of the dependencies of an entry in the next iteration are satisfied
+ * after the entry itself has been updated in the current one, so a single counter per entry suffices.
+ * <p>
+ * The pool has {@linkplain MultiThreadingManager#getNumWorkers() one thread per worker}, and its
+ * threads exit when idle.
+ * <p>
+ * @since 0.08
+ */
+public class ForkJoinMultithreadingAlgorithm extends MultithreadingAlgorithm
+{
+	/*-------
+	 * State
+	 */
+	
+	private final Object _lock = new Object();
+	
+	/*
+	 * The following fields are guarded by _lock.
+	 */
+	
+	private @Nullable Plan _plan = null;
+	private @Nullable ForkJoinPool _pool = null;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	public ForkJoinMultithreadingAlgorithm(MultiThreadingManager manager)
+	{
+		super(manager);
+	}
+	
+	/*---------------------------------
+	 * MultithreadingAlgorithm methods
+	 */
+	
+	@Override
+	public void iterate(int numIters)
+	{
+		if (numIters <= 0)
+		{
+			return;
+		}
+		
+		final Plan plan;
+		final ForkJoinPool pool;
+		
+		synchronized (_lock)
+		{
+			plan = getPlan();
+			pool = getPool();
+		}
+		
+		if (plan._entries.length == 0)
+		{
+			return;
+		}
+		
+		final Run run = new Run(plan, numIters);
+		run.start(pool);
+		run.await();
+		
+		final Throwable error = run._error.get();
+		if (error != null)
+		{
+			if (error instanceof RuntimeException)
+			{
+				throw (RuntimeException)error;
+			}
+			throw new DimpleException(error, "Error in multithreaded update: %s", error.toString());
+		}
+	}
+	
+	/*-----------------------------------------
+	 * ForkJoinMultithreadingAlgorithm methods
+	 */
+	
+	/**
+	 * The number of threads used to run the dependency graph, which is the
+	 * {@linkplain MultiThreadingManager#getNumWorkers() number of workers} at the time of the last call
+	 * to {@link #iterate}, or zero if it has not yet been called.
+	 * @since 0.08
+	 */
+	public int getParallelism()
+	{
+		synchronized (_lock)
+		{
+			final ForkJoinPool pool = _pool;
+			return pool != null ? pool.getParallelism() : 0;
+		}
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * Returns current plan, creating a new one if the dependency graph has changed.
+	 * Must be called while holding {@link #_lock}.
+	 */
+	private Plan getPlan()
+	{
+		final MultiThreadingManager manager = getManager();
+		final StaticDependencyGraph dependencyGraph = manager.getDependencyGraph();
+		
+		Plan plan = _plan;
+		if (plan == null || plan._dependencyGraph != dependencyGraph)
+		{
+			_plan = plan = new Plan(manager.getSolverGraph(), dependencyGraph);
+		}
+		
+		return plan;
+	}
+	
+	/**
+	 * Returns pool with one thread per worker, replacing the previous one if the number of workers has
+	 * changed. Must be called while holding {@link #_lock}.
+	 */
+	private ForkJoinPool getPool()
+	{
+		final int numWorkers = getManager().getNumWorkers();
+		
+		ForkJoinPool pool = _pool;
+		if (pool == null || pool.getParallelism() != numWorkers)
+		{
+			if (pool != null)
+			{
+				pool.shutdown();
+			}
+			_pool = pool = new ForkJoinPool(numWorkers, new WorkerFactory(DimpleEnvironment.active()), null, false);
+		}
+		
+		return pool;
+	}
+	
+	/*---------------
+	 * Inner classes
+	 */
+	
+	/**
+	 * Dependency counts and dependents of each schedule entry, indexed by dependency graph node id.
+	 */
+	private static final class Plan
+	{
+		private final ISolverFactorGraph _solverGraph;
+		private final StaticDependencyGraph _dependencyGraph;
+		
+		private final IScheduleEntry[] _entries;
+		
+		/**
+		 * Dependents of each entry in the same iteration.
+		 */
+		private final int[][] _dependents;
+		
+		/**
+		 * Dependents of each entry in the next iteration.
+		 */
+		private final int[][] _nextDependents;
+		
+		/**
+		 * Number of dependencies of each entry in the first iteration.
+		 */
+		private final int[] _initialCounts;
+		
+		/**
+		 * Number of dependencies of each entry in subsequent iterations.
+		 */
+		private final int[] _counts;
+		
+		/**
+		 * Entries with no dependencies in the first iteration.
+		 */
+		private final int[] _roots;
+		
+		private Plan(ISolverFactorGraph solverGraph, StaticDependencyGraph dependencyGraph)
+		{
+			_solverGraph = solverGraph;
+			_dependencyGraph = dependencyGraph;
+			
+			// Node ids are assigned in schedule order, so ids [0,n) are the first iteration and
+			// [n,2n) are the same entries in the second.
+			final StaticDependencyGraph unrolled = new StaticDependencyGraph(solverGraph, 2);
+			final int n = unrolled.getNumNodes() / 2;
+			final StaticDependencyGraphNode[] nodes = new StaticDependencyGraphNode[2 * n];
+			
+			final ArrayDeque<StaticDependencyGraphNode> queue = new ArrayDeque<>(unrolled.getInitialEntries());
+			for (StaticDependencyGraphNode node : queue)
+			{
+				nodes[node.getId()] = node;
+			}
+			while (!queue.isEmpty())
+			{
+				final StaticDependencyGraphNode node = queue.poll();
+				for (int i = 0, end = node.getNumDependents(); i < end; ++i)
+				{
+					final StaticDependencyGraphNode dependent = node.getDependent(i);
+					if (nodes[dependent.getId()] == null)
+					{
+						nodes[dependent.getId()] = dependent;
+						queue.add(dependent);
+					}
+				}
+			}
+			
+			_entries = new IScheduleEntry[n];
+			_dependents = new int[n][];
+			_nextDependents = new int[n][];
+			_initialCounts = new int[n];
+			_counts = new int[n];
+			
+			int nRoots = 0;
+			for (int id = 0; id < n; ++id)
+			{
+				final StaticDependencyGraphNode node = nodes[id];
+				_entries[id] = node.getScheduleEntry();
+				_initialCounts[id] = node.getNumDependencies();
+				_counts[id] = nodes[id + n].getNumDependencies();
+				if (_initialCounts[id] == 0)
+				{
+					++nRoots;
+				}
+				
+				final int nDependents = node.getNumDependents();
+				int nNext = 0;
+				for (int i = 0; i < nDependents; ++i)
+				{
+					if (node.getDependent(i).getId() >= n)
+					{
+						++nNext;
+					}
+				}
+				final int[] dependents = _dependents[id] = new int[nDependents - nNext];
+				final int[] nextDependents = _nextDependents[id] = new int[nNext];
+				for (int i = 0, j = 0, k = 0; i < nDependents; ++i)
+				{
+					final int dependent = node.getDependent(i).getId();
+					if (dependent >= n)
+					{
+						nextDependents[k++] = dependent - n;
+					}
+					else
+					{
+						dependents[j++] = dependent;
+					}
+				}
+			}
+			
+			_roots = new int[nRoots];
+			for (int id = 0, i = 0; id < n; ++id)
+			{
+				if (_initialCounts[id] == 0)
+				{
+					_roots[i++] = id;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * State for a single invocation of {@link ForkJoinMultithreadingAlgorithm#iterate}.
+	 */
+	private static final class Run
+	{
+		private final Plan _plan;
+		private final int _numIters;
+		
+		/**
+		 * Number of dependencies each entry is still waiting for in its next iteration.
+		 */
+		private final AtomicIntegerArray _remaining;
+		
+		/**
+		 * Iteration in which each entry will next be updated. Only accessed by the task for the entry,
+		 * and tasks for the same entry are ordered by its dependencies.
+		 */
+		private final int[] _iterations;
+		
+		/**
+		 * Number of tasks that have been forked but not yet finished.
+		 */
+		private final AtomicInteger _pending = new AtomicInteger();
+		private final CountDownLatch _done = new CountDownLatch(1);
+		
+		private final AtomicReference<Throwable> _error = new AtomicReference<>();
+		
+		private Run(Plan plan, int numIters)
+		{
+			_plan = plan;
+			_numIters = numIters;
+			_remaining = new AtomicIntegerArray(plan._initialCounts);
+			_iterations = new int[plan._entries.length];
+		}
+		
+		private void start(ForkJoinPool pool)
+		{
+			final int[] roots = _plan._roots;
+			_pending.set(roots.length);
+			for (int id : roots)
+			{
+				pool.execute(new EntryTask(this, id));
+			}
+		}
+		
+		/**
+		 * Waits until all tasks have finished. Interrupts are deferred until then, since the
+		 * tasks would otherwise continue to update the graph after returning.
+		 */
+		private void await()
+		{
+			boolean interrupted = false;
+			while (true)
+			{
+				try
+				{
+					_done.await();
+					break;
+				}
+				catch (InterruptedException ex)
+				{
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		private void update(int id)
+		{
+			final Plan plan = _plan;
+			final int iteration = _iterations[id]++;
+			final boolean hasNext = iteration + 1 < _numIters;
+			
+			if (_error.get() == null)
+			{
+				try
+				{
+					plan._solverGraph.runScheduleEntry(plan._entries[id]);
+				}
+				catch (Throwable ex)
+				{
+					_error.compareAndSet(null, ex);
+				}
+			}
+			
+			if (_error.get() == null)
+			{
+				// None of the dependencies for the next iteration of this entry can have been
+				// updated yet, so it is safe to reset its count before releasing the dependents.
+				final int count = plan._counts[id];
+				if (hasNext)
+				{
+					if (count == 0)
+					{
+						fork(id);
+					}
+					else
+					{
+						_remaining.set(id, count);
+					}
+				}
+				
+				for (int dependent : plan._dependents[id])
+				{
+					release(dependent);
+				}
+				if (hasNext)
+				{
+					for (int dependent : plan._nextDependents[id])
+					{
+						release(dependent);
+					}
+				}
+			}
+			
+			if (_pending.decrementAndGet() == 0)
+			{
+				_done.countDown();
+			}
+		}
+		
+		private void release(int id)
+		{
+			if (_remaining.decrementAndGet(id) == 0)
+			{
+				fork(id);
+			}
+		}
+		
+		private void fork(int id)
+		{
+			_pending.incrementAndGet();
+			new EntryTask(this, id).fork();
+		}
+	}
+	
+	@SuppressWarnings("serial")
+	private static final class EntryTask extends RecursiveAction
+	{
+		private final Run _run;
+		private final int _id;
+		
+		private EntryTask(Run run, int id)
+		{
+			_run = run;
+			_id = id;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			_run.update(_id);
+		}
+	}
+	
+	/**
+	 * Creates pool threads that use a given {@link DimpleEnvironment}.
+	 */
+	private static final class WorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory
+	{
+		private final DimpleEnvironment _env;
+		
+		private WorkerFactory(DimpleEnvironment env)
+		{
+			_env = env;
+		}
+		
+		@NonNullByDefault(false)
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+		{
+			final Worker worker = new Worker(pool, _env);
+			worker.setName("Dimple fork/join worker " + worker.getPoolIndex());
+			worker.setDaemon(true);
+			return worker;
+		}
+	}
+	
+	private static final class Worker extends ForkJoinWorkerThread implements IDimpleEnvironmentHolder
+	{
+		private final DimpleEnvironment _env;
+		
+		private Worker(ForkJoinPool pool, DimpleEnvironment env)
+		{
+			super(pool);
+			_env = env;
+		}
+		
+		@Override
+		protected void onStart()
+		{
+			super.onStart();
+			DimpleEnvironment.setActive(_env);
+		}
+		
+		@Override
+		public DimpleEnvironment getEnvironment()
+		{
+			return _env;
+		}
+	}
+}
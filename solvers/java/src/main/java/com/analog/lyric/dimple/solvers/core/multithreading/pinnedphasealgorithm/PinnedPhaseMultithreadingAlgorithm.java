@@ -0,0 +1,516 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.solvers.core.multithreading.pinnedphasealgorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleThreadFactory;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraph;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingAlgorithm;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+
+/**
+ * Phase-based multithreading using persistent worker threads with precomputed partitions.
+ * <p>
+ * Like the {@linkplain com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm.PhaseMultithreadingAlgorithm
+ * phase algorithm}, this updates the phases of the {@link StaticDependencyGraph} one at a time, running
+ * the independent schedule entries of each phase concurrently. But instead of submitting new tasks to
+ * the thread pool for every phase, it:
+ * <ul>
+ * <li>Divides the entries of every phase among the workers once, when the dependency graph changes. Entries are
+ * assigned to the least loaded worker in order of decreasing estimated cost, where the cost of a node
+ * entry is the number of its siblings.
+ * <li>Runs the partitions on long-lived threads that belong to this algorithm, with the calling thread acting
+ * as the first worker, and separates the phases with a reusable {@link Phaser} barrier.
+ * <li>Lets a worker that finishes its own partition take entries from the partitions of other workers
+ * that are still running, so that work is only stolen when the cost estimates are off.
+ * </ul>
+ * No objects are allocated per phase or per iteration. The worker threads exit when they have been idle
+ * for {@value #IDLE_TIMEOUT_MILLIS} milliseconds and are restarted as needed.
+ * <p>
+ * @since 0.08
+ */
+public class PinnedPhaseMultithreadingAlgorithm extends MultithreadingAlgorithm
+{
+	/*-----------
+	 * Constants
+	 */
+	
+	/**
+	 * Time in milliseconds after which idle worker threads exit.
+	 */
+	public static final long IDLE_TIMEOUT_MILLIS = 1000;
+
+	/**
+	 * Spacing between claim counters in {@link Plan#_counters}, chosen so that counters
+	 * for different workers are in different cache lines.
+	 */
+	private static final int COUNTER_STRIDE = 16;
+	
+	/*-------
+	 * State
+	 */
+	
+	private final Object _lock = new Object();
+	
+	/*
+	 * The following fields are guarded by _lock.
+	 */
+	
+	private @Nullable Plan _plan = null;
+	private final ArrayList<Worker> _workers = new ArrayList<>();
+	private long _generation = 0;
+	private int _numIters = 0;
+	private int _startParity = 0;
+	private int _nextStartParity = 0;
+	
+	private volatile @Nullable Throwable _error = null;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	public PinnedPhaseMultithreadingAlgorithm(MultiThreadingManager manager)
+	{
+		super(manager);
+	}
+	
+	/*---------------------------------
+	 * MultithreadingAlgorithm methods
+	 */
+	
+	@Override
+	public void iterate(int numIters)
+	{
+		if (numIters <= 0)
+		{
+			return;
+		}
+		
+		final Plan plan;
+		final int startParity;
+		
+		synchronized (_lock)
+		{
+			plan = getPlan();
+			_startParity = startParity = _nextStartParity;
+			_nextStartParity ^= numIters & plan._partitions.length & 1;
+			
+			if (plan._numWorkers > 1)
+			{
+				_error = null;
+				_numIters = numIters;
+				
+				// Start any worker threads that have exited or are not yet running.
+				for (int w = 1; w < plan._numWorkers; ++w)
+				{
+					if (_workers.get(w - 1) == null)
+					{
+						final Worker worker = new Worker(w, _generation);
+						_workers.set(w - 1, worker);
+						final Thread thread = new DimpleThreadFactory().newThread(worker);
+						thread.setName("Dimple pinned phase worker " + w);
+						thread.setDaemon(true);
+						thread.start();
+					}
+				}
+				
+				++_generation;
+				_lock.notifyAll();
+			}
+		}
+
+		plan.run(0, numIters, startParity);
+		
+		final Throwable error = _error;
+		if (error != null)
+		{
+			_error = null;
+			if (error instanceof RuntimeException)
+			{
+				throw (RuntimeException)error;
+			}
+			throw new DimpleException(error, "Error in multithreaded update: %s", error.toString());
+		}
+	}
+	
+	/*--------------------------------------------
+	 * PinnedPhaseMultithreadingAlgorithm methods
+	 */
+	
+	/**
+	 * The number of worker threads other than the calling thread that are currently running.
+	 * @since 0.08
+	 */
+	public int getNumRunningWorkerThreads()
+	{
+		synchronized (_lock)
+		{
+			int count = 0;
+			for (Worker worker : _workers)
+			{
+				if (worker != null)
+				{
+					++count;
+				}
+			}
+			return count;
+		}
+	}
+	
+	/**
+	 * Returns the schedule entries assigned to each worker for each phase.
+	 * <p>
+	 * The first index is the phase and the second index is the worker. The returned arrays should not
+	 * be modified.
+	 * @since 0.08
+	 */
+	public IScheduleEntry[][][] getPartitions()
+	{
+		synchronized (_lock)
+		{
+			return getPlan()._partitions;
+		}
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * Returns current plan, creating a new one if the dependency graph or number of workers has changed.
+	 * Must be called while holding {@link #_lock}.
+	 */
+	private Plan getPlan()
+	{
+		final MultiThreadingManager manager = getManager();
+		final StaticDependencyGraph dependencyGraph = manager.getDependencyGraph();
+		final int numWorkers = manager.getNumWorkers();
+		
+		Plan plan = _plan;
+		if (plan == null || plan._dependencyGraph != dependencyGraph || plan._numWorkers != numWorkers)
+		{
+			_plan = plan = new Plan(manager.getSolverGraph(), dependencyGraph, numWorkers);
+			_nextStartParity = 0;
+			while (_workers.size() < numWorkers - 1)
+			{
+				_workers.add(null);
+			}
+			
+			// Workers whose index is no longer valid will exit the next time they are woken up.
+			_lock.notifyAll();
+		}
+		
+		return plan;
+	}
+	
+	private static long estimateCost(IScheduleEntry entry)
+	{
+		switch (entry.type())
+		{
+		case NODE:
+			return ((NodeScheduleEntry)entry).getNode().getSiblingCount() + 1;
+			
+		case EDGE:
+			return 1;
+			
+		default:
+			long cost = 0;
+			for (INode node : entry.getNodes())
+			{
+				cost += node.getSiblingCount() + 1;
+			}
+			return Math.max(cost, 1);
+		}
+	}
+	
+	/*---------------
+	 * Inner classes
+	 */
+	
+	/**
+	 * Partitioned phases and synchronization state for a given dependency graph and number of workers.
+	 */
+	private final class Plan
+	{
+		private final ISolverFactorGraph _solverGraph;
+		private final StaticDependencyGraph _dependencyGraph;
+		private final int _numWorkers;
+		
+		/**
+		 * Entries for each phase and worker.
+		 */
+		private final IScheduleEntry[][][] _partitions;
+		
+		/**
+		 * Index of next unclaimed entry in the partition of each worker for the current phase. There are
+		 * two sets of counters that are used in alternate phases. This allows each worker to reset its own
+		 * counter after the end of a phase without racing against other workers that have already moved on
+		 * to the next phase.
+		 */
+		private final AtomicIntegerArray _counters;
+		
+		private final Phaser _barrier;
+		
+		private Plan(ISolverFactorGraph solverGraph, StaticDependencyGraph dependencyGraph, int numWorkers)
+		{
+			_solverGraph = solverGraph;
+			_dependencyGraph = dependencyGraph;
+			_numWorkers = numWorkers;
+			
+			final ArrayList<ArrayList<IScheduleEntry>> phases = dependencyGraph.getPhases();
+			final int nPhases = phases.size();
+			
+			_partitions = new IScheduleEntry[nPhases][][];
+			for (int p = 0; p < nPhases; ++p)
+			{
+				_partitions[p] = partition(phases.get(p), numWorkers);
+			}
+			
+			_counters = new AtomicIntegerArray(2 * numWorkers * COUNTER_STRIDE);
+			_barrier = new Phaser(numWorkers);
+		}
+		
+		/**
+		 * Greedily assigns entries in order of decreasing cost to the least loaded worker.
+		 */
+		private IScheduleEntry[][] partition(ArrayList<IScheduleEntry> entries, int numWorkers)
+		{
+			final int n = entries.size();
+			final long[] costs = new long[n];
+			final Integer[] order = new Integer[n];
+			for (int i = 0; i < n; ++i)
+			{
+				costs[i] = estimateCost(entries.get(i));
+				order[i] = i;
+			}
+			
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer i1, Integer i2)
+				{
+					return Long.compare(costs[i2], costs[i1]);
+				}
+			});
+			
+			final long[] loads = new long[numWorkers];
+			final int[] owners = new int[n];
+			final int[] sizes = new int[numWorkers];
+			for (int i : order)
+			{
+				int min = 0;
+				for (int w = 1; w < numWorkers; ++w)
+				{
+					if (loads[w] < loads[min])
+					{
+						min = w;
+					}
+				}
+				loads[min] += costs[i];
+				owners[i] = min;
+				++sizes[min];
+			}
+			
+			final IScheduleEntry[][] partitions = new IScheduleEntry[numWorkers][];
+			for (int w = 0; w < numWorkers; ++w)
+			{
+				partitions[w] = new IScheduleEntry[sizes[w]];
+				sizes[w] = 0;
+			}
+			for (int i = 0; i < n; ++i)
+			{
+				final int w = owners[i];
+				partitions[w][sizes[w]++] = entries.get(i);
+			}
+			
+			return partitions;
+		}
+		
+		/**
+		 * Runs given number of iterations as given {@code worker}. Every worker must invoke this with
+		 * the same arguments.
+		 */
+		private void run(int worker, int numIters, int startParity)
+		{
+			final IScheduleEntry[][][] partitions = _partitions;
+			final int nPhases = partitions.length;
+			final int numWorkers = _numWorkers;
+			
+			if (numWorkers == 1)
+			{
+				// No need for synchronization
+				for (int iter = 0; iter < numIters; ++iter)
+				{
+					for (IScheduleEntry[][] phase : partitions)
+					{
+						for (IScheduleEntry entry : phase[0])
+						{
+							_solverGraph.runScheduleEntry(entry);
+						}
+					}
+				}
+				return;
+			}
+			
+			final AtomicIntegerArray counters = _counters;
+			
+			int parity = startParity;
+			for (int iter = 0; iter < numIters; ++iter)
+			{
+				for (int p = 0; p < nPhases; ++p, parity ^= 1)
+				{
+					final IScheduleEntry[][] phase = partitions[p];
+					final int base = parity * numWorkers;
+					
+					// Run own partition, then help any workers that are not yet done.
+					for (int i = 0; i < numWorkers; ++i)
+					{
+						final int w = (worker + i) % numWorkers;
+						runPartition(phase[w], (base + w) * COUNTER_STRIDE);
+					}
+					
+					_barrier.arriveAndAwaitAdvance();
+					
+					counters.set((base + worker) * COUNTER_STRIDE, 0);
+				}
+			}
+		}
+		
+		private void runPartition(IScheduleEntry[] entries, int counterIndex)
+		{
+			final AtomicIntegerArray counters = _counters;
+			final int n = entries.length;
+			
+			if (counters.get(counterIndex) >= n)
+			{
+				return;
+			}
+			
+			for (int i; (i = counters.getAndIncrement(counterIndex)) < n; )
+			{
+				if (_error == null)
+				{
+					try
+					{
+						_solverGraph.runScheduleEntry(entries[i]);
+					}
+					catch (Throwable ex)
+					{
+						synchronized (_lock)
+						{
+							if (_error == null)
+							{
+								_error = ex;
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Body of a persistent worker thread, which waits for each new generation of work and runs
+	 * its part of the current plan.
+	 */
+	private final class Worker implements Runnable
+	{
+		private final int _index;
+		private long _seenGeneration;
+		
+		private Worker(int index, long generation)
+		{
+			_index = index;
+			_seenGeneration = generation;
+		}
+		
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				final Plan plan;
+				final int numIters, startParity;
+				
+				synchronized (_lock)
+				{
+					long deadline = System.currentTimeMillis() + IDLE_TIMEOUT_MILLIS;
+					while (_generation == _seenGeneration && isCurrent())
+					{
+						final long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0)
+						{
+							_workers.set(_index - 1, null);
+							return;
+						}
+						try
+						{
+							_lock.wait(remaining);
+						}
+						catch (InterruptedException ex)
+						{
+							_workers.set(_index - 1, null);
+							return;
+						}
+					}
+					
+					if (!isCurrent())
+					{
+						return;
+					}
+					
+					_seenGeneration = _generation;
+					plan = _plan;
+					numIters = _numIters;
+					startParity = _startParity;
+				}
+				
+				plan.run(_index, numIters, startParity);
+			}
+		}
+		
+		/**
+		 * True if this is the registered worker for its index in the current plan. Must be called
+		 * while holding {@link #_lock}.
+		 */
+		private boolean isCurrent()
+		{
+			final Plan plan = _plan;
+			if (plan == null || _index >= plan._numWorkers || _workers.get(_index - 1) != this)
+			{
+				if (_index <= _workers.size() && _workers.get(_index - 1) == this)
+				{
+					_workers.set(_index - 1, null);
+				}
+				return false;
+			}
+			return true;
+		}
+	}
+}
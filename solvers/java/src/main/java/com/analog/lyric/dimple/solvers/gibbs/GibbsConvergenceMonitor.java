@@ -0,0 +1,408 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import java.util.List;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.analog.lyric.dimple.model.values.DiscreteValue;
+import com.analog.lyric.dimple.model.values.RealJointValue;
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * Streaming convergence diagnostics for the Gibbs solver.
+ * <p>
+ * Maintains estimates of the effective sample size (ESS) and the split-R&#770; potential scale
+ * reduction factor for a set of scalar statistics of the samples. The statistics are the sample
+ * score and, for each monitored variable, the indicator of each discrete domain value, the real
+ * value, or each element of a real joint value.
+ * <p>
+ * The estimates use the method of batch means: each statistic is summarized by a fixed number of
+ * consecutive batches, and when all batches are full, adjacent pairs are combined and the batch size
+ * is doubled. This requires constant memory and time per sample regardless of the number of samples.
+ * <ul>
+ * <li>The ESS is the number of samples times the variance of the samples divided by the batch size
+ * times the variance of the batch means.
+ * <li>The split-R&#770; is computed by treating the first and second half of the batches as two chains.
+ * </ul>
+ * Statistics that have not varied, such as indicators of values that have never been sampled, are
+ * treated as converged.
+ * <p>
+ * Monitors are created by the Gibbs solver graph when {@link GibbsOptions#monitorConvergence} is set
+ * or a convergence target is specified.
+ * <p>
+ * @since 0.08
+ * @see GibbsSolverGraph#getConvergenceMonitor()
+ */
+@NotThreadSafe
+public final class GibbsConvergenceMonitor
+{
+	/*-----------
+	 * Constants
+	 */
+	
+	/**
+	 * Maximum number of batches kept per statistic. Must be even.
+	 */
+	static final int MAX_BATCHES = 64;
+	
+	/**
+	 * Minimum number of full batches required before diagnostics are computed.
+	 */
+	static final int MIN_BATCHES = 16;
+	
+	/*-------
+	 * State
+	 */
+	
+	private final ISolverVariableGibbs[] _variables;
+	
+	/**
+	 * Index of first statistic for corresponding variable in {@link #_variables}. Statistic zero
+	 * is the sample score.
+	 */
+	private final int[] _offsets;
+	
+	/**
+	 * Number of statistics for corresponding variable in {@link #_variables}.
+	 */
+	private final int[] _counts;
+	
+	private final BatchMeans[] _statistics;
+	
+	private long _sampleCount = 0;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	GibbsConvergenceMonitor(List<ISolverVariableGibbs> variables)
+	{
+		final int nVars = variables.size();
+		_variables = variables.toArray(new ISolverVariableGibbs[nVars]);
+		_offsets = new int[nVars];
+		_counts = new int[nVars];
+		
+		int nStatistics = 1;
+		for (int i = 0; i < nVars; ++i)
+		{
+			_offsets[i] = nStatistics;
+			nStatistics += _counts[i] = statisticCount(_variables[i].getCurrentSampleValue());
+		}
+		
+		_statistics = new BatchMeans[nStatistics];
+		for (int i = 0; i < nStatistics; ++i)
+		{
+			_statistics[i] = new BatchMeans();
+		}
+	}
+	
+	/*---------
+	 * Methods
+	 */
+	
+	/**
+	 * The number of samples added since construction or last {@link #reset()}.
+	 */
+	public long getSampleCount()
+	{
+		return _sampleCount;
+	}
+	
+	/**
+	 * The number of scalar statistics being monitored, including the sample score.
+	 */
+	public int getStatisticCount()
+	{
+		return _statistics.length;
+	}
+	
+	/**
+	 * The smallest estimated effective sample size of any monitored statistic.
+	 * <p>
+	 * Zero if there are not yet enough samples to compute the estimate.
+	 */
+	public double getMinEffectiveSampleSize()
+	{
+		double min = Double.POSITIVE_INFINITY;
+		for (BatchMeans statistic : _statistics)
+		{
+			min = Math.min(min, statistic.effectiveSampleSize());
+		}
+		return min;
+	}
+	
+	/**
+	 * The largest estimated split-R&#770; of any monitored statistic.
+	 * <p>
+	 * Values close to one indicate convergence. Infinite if there are not yet enough samples to
+	 * compute the estimate.
+	 */
+	public double getMaxSplitRHat()
+	{
+		double max = 1.0;
+		for (BatchMeans statistic : _statistics)
+		{
+			max = Math.max(max, statistic.splitRHat());
+		}
+		return max;
+	}
+	
+	/**
+	 * The estimated effective sample size of the sample score.
+	 */
+	public double getScoreEffectiveSampleSize()
+	{
+		return _statistics[0].effectiveSampleSize();
+	}
+	
+	/**
+	 * The estimated split-R&#770; of the sample score.
+	 */
+	public double getScoreSplitRHat()
+	{
+		return _statistics[0].splitRHat();
+	}
+	
+	/**
+	 * True if all monitored statistics meet the given targets.
+	 * 
+	 * @param targetEffectiveSampleSize is the minimum effective sample size, or zero if the
+	 * effective sample size should not be checked.
+	 * @param targetSplitRHat is the maximum split-R&#770;, or zero if it should not be checked.
+	 */
+	public boolean isConverged(double targetEffectiveSampleSize, double targetSplitRHat)
+	{
+		if (targetEffectiveSampleSize > 0 && getMinEffectiveSampleSize() < targetEffectiveSampleSize)
+		{
+			return false;
+		}
+		if (targetSplitRHat > 0 && getMaxSplitRHat() > targetSplitRHat)
+		{
+			return false;
+		}
+		return targetEffectiveSampleSize > 0 || targetSplitRHat > 0;
+	}
+	
+	/**
+	 * Discards all samples.
+	 */
+	public void reset()
+	{
+		_sampleCount = 0;
+		for (BatchMeans statistic : _statistics)
+		{
+			statistic.reset();
+		}
+	}
+	
+	/**
+	 * Adds statistics of current sample values of monitored variables and the given sample {@code score}.
+	 */
+	void addSample(double score)
+	{
+		final BatchMeans[] statistics = _statistics;
+		
+		statistics[0].add(score);
+		
+		for (int i = 0, n = _variables.length; i < n; ++i)
+		{
+			final int offset = _offsets[i];
+			final Value value = _variables[i].getCurrentSampleValue();
+			
+			if (value instanceof DiscreteValue)
+			{
+				final int index = value.getIndex();
+				for (int j = 0, size = _counts[i]; j < size; ++j)
+				{
+					statistics[offset + j].add(j == index ? 1.0 : 0.0);
+				}
+			}
+			else if (value instanceof RealJointValue)
+			{
+				final double[] elements = ((RealJointValue)value).getValue();
+				for (int j = 0; j < elements.length; ++j)
+				{
+					statistics[offset + j].add(elements[j]);
+				}
+			}
+			else
+			{
+				statistics[offset].add(value.getDouble());
+			}
+		}
+		
+		++_sampleCount;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private static int statisticCount(Value value)
+	{
+		if (value instanceof DiscreteValue)
+		{
+			return ((DiscreteValue)value).getDomain().size();
+		}
+		else if (value instanceof RealJointValue)
+		{
+			return ((RealJointValue)value).getValue().length;
+		}
+		return 1;
+	}
+	
+	/**
+	 * Batch means summary of a scalar statistic.
+	 */
+	private static final class BatchMeans
+	{
+		private final double[] _sums = new double[MAX_BATCHES];
+		private final double[] _sumSquares = new double[MAX_BATCHES];
+		private int _batchSize = 1;
+		private int _fullBatches = 0;
+		
+		/**
+		 * First value added, which is subtracted from all values to reduce loss of precision
+		 * when computing variance from sums of squares.
+		 */
+		private double _shift = Double.NaN;
+		
+		private int _partialCount = 0;
+		private double _partialSum = 0.0;
+		private double _partialSumSquare = 0.0;
+		
+		private void add(double x)
+		{
+			if (Double.isNaN(_shift))
+			{
+				_shift = x;
+			}
+			x -= _shift;
+			
+			_partialSum += x;
+			_partialSumSquare += x * x;
+			
+			if (++_partialCount == _batchSize)
+			{
+				int full = _fullBatches;
+				_sums[full] = _partialSum;
+				_sumSquares[full] = _partialSumSquare;
+				_partialCount = 0;
+				_partialSum = _partialSumSquare = 0.0;
+				
+				if (++full == MAX_BATCHES)
+				{
+					// Combine adjacent pairs of batches
+					full /= 2;
+					for (int i = 0; i < full; ++i)
+					{
+						_sums[i] = _sums[2*i] + _sums[2*i+1];
+						_sumSquares[i] = _sumSquares[2*i] + _sumSquares[2*i+1];
+					}
+					_batchSize *= 2;
+				}
+				_fullBatches = full;
+			}
+		}
+		
+		private void reset()
+		{
+			_batchSize = 1;
+			_fullBatches = 0;
+			_shift = Double.NaN;
+			_partialCount = 0;
+			_partialSum = _partialSumSquare = 0.0;
+		}
+		
+		private double effectiveSampleSize()
+		{
+			final int nBatches = _fullBatches;
+			if (nBatches < MIN_BATCHES)
+			{
+				return 0.0;
+			}
+			
+			final double n = (double)nBatches * _batchSize;
+			final double mean = sum(0, nBatches) / n;
+			final double variance = (sumSquare(0, nBatches) - n * mean * mean) / (n - 1);
+			
+			double batchVariance = 0.0;
+			for (int i = 0; i < nBatches; ++i)
+			{
+				final double diff = _sums[i] / _batchSize - mean;
+				batchVariance += diff * diff;
+			}
+			batchVariance /= nBatches - 1;
+			
+			if (batchVariance <= 0.0 || variance <= 0.0)
+			{
+				return n;
+			}
+			
+			return n * variance / (_batchSize * batchVariance);
+		}
+		
+		private double splitRHat()
+		{
+			final int half = _fullBatches / 2;
+			if (half < MIN_BATCHES / 2)
+			{
+				return Double.POSITIVE_INFINITY;
+			}
+			
+			final double n = (double)half * _batchSize;
+			final double mean1 = sum(0, half) / n, mean2 = sum(half, 2 * half) / n;
+			final double var1 = (sumSquare(0, half) - n * mean1 * mean1) / (n - 1);
+			final double var2 = (sumSquare(half, 2 * half) - n * mean2 * mean2) / (n - 1);
+			
+			final double within = (var1 + var2) / 2;
+			final double diff = mean1 - mean2;
+			// Between-chain variance B = n * sum((mean_j - mean)^2)/(m - 1) with m = 2
+			final double between = n * diff * diff / 2;
+			
+			if (within <= 0.0)
+			{
+				return between <= 0.0 ? 1.0 : Double.POSITIVE_INFINITY;
+			}
+			
+			return Math.sqrt(((n - 1) / n * within + between / n) / within);
+		}
+		
+		private double sum(int start, int end)
+		{
+			double sum = 0.0;
+			for (int i = start; i < end; ++i)
+			{
+				sum += _sums[i];
+			}
+			return sum;
+		}
+		
+		private double sumSquare(int start, int end)
+		{
+			double sum = 0.0;
+			for (int i = start; i < end; ++i)
+			{
+				sum += _sumSquares[i];
+			}
+			return sum;
+		}
+	}
+}
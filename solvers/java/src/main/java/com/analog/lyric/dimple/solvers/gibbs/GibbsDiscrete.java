@@ -31,8 +31,6 @@ import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.collect.ReleasableIterator;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.exceptions.DimpleException;
-import com.analog.lyric.dimple.model.core.EdgeState;
-import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
@@ -43,12 +41,12 @@ import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteEnergy
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.ISampler;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.AliasSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.CDFSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IDiscreteDirectSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IDiscreteSamplerClient;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IGenericSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IMCMCSampler;
-import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.analog.lyric.util.misc.Internal;
 import com.google.common.primitives.Doubles;
@@ -86,6 +84,13 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 
 		private final DiscreteValue _value;
 		
+		/**
+		 * While true, changes to the value are not propagated to deterministic dependents. This may only
+		 * be set while evaluating factors that do not depend on those dependents, which must restore the
+		 * original value when done.
+		 */
+		private boolean _suppressDependentUpdates = false;
+		
 		CurrentSample(DiscreteDomain domain)
 		{
 			_value = Value.create(domain);
@@ -124,7 +129,8 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 
 			final GibbsNeighbors neighbors = _neighbors;
-			boolean hasDeterministicDependents = neighbors != null && neighbors.hasDeterministicDependents();
+			boolean hasDeterministicDependents = !_suppressDependentUpdates &&
+				neighbors != null && neighbors.hasDeterministicDependents();
 
 			DiscreteValue oldValue = null;
 			if (hasDeterministicDependents)
@@ -133,6 +139,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 			
 			_value.setFrom(value);
+			invalidateSampleScore();
 					
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents)
@@ -159,7 +166,8 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 
 			final GibbsNeighbors neighbors = _neighbors;
-			boolean hasDeterministicDependents = neighbors != null && neighbors.hasDeterministicDependents();
+			boolean hasDeterministicDependents = !_suppressDependentUpdates &&
+				neighbors != null && neighbors.hasDeterministicDependents();
 
 			DiscreteValue oldValue = null;
 			if (hasDeterministicDependents)
@@ -168,6 +176,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 
 			_value.setObject(obj);
+			invalidateSampleScore();
 			
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents && !_value.valueEquals(requireNonNull(oldValue)))
@@ -179,7 +188,8 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		private void setIndexForce(int index)
 		{
 			final GibbsNeighbors neighbors = _neighbors;
-			boolean hasDeterministicDependents = neighbors != null && neighbors.hasDeterministicDependents();
+			boolean hasDeterministicDependents = !_suppressDependentUpdates &&
+				neighbors != null && neighbors.hasDeterministicDependents();
 
 			DiscreteValue oldValue = null;
 			if (hasDeterministicDependents)
@@ -188,6 +198,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 			
 			_value.setIndex(index);
+			invalidateSampleScore();
 					
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents)
@@ -196,6 +207,14 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 		}
 
+		/**
+		 * Lets the root solver graph know that its running sample score may be out of date.
+		 */
+		private void invalidateSampleScore()
+		{
+			((GibbsSolverGraph)requireNonNull(getRootSolverGraph())).invalidateSampleScore();
+		}
+		
 		private final boolean fixed()
 		{
 			return _holdSampleValue || _model.hasFixedValue();
@@ -209,8 +228,24 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	private DiscreteValue _prevSample;
 	private boolean _repeatedVariable;
 	private @Nullable long[] _beliefHistogram;
+	
+	/**
+	 * Sum of normalized conditional distributions over collected samples when computing
+	 * Rao-Blackwellized beliefs, otherwise null.
+	 * @see GibbsOptions#raoBlackwellizedBeliefs
+	 */
+	private @Nullable double[] _beliefSums;
+	
+	/**
+	 * Normalized conditional distribution computed by the last {@link #update()}, when computing
+	 * Rao-Blackwellized beliefs, otherwise null. Only meaningful if {@link #_conditionalBeliefValid}.
+	 */
+	private @Nullable double[] _conditionalBelief;
+	private boolean _conditionalBeliefValid = false;
+	
 	private DiscreteEnergyMessage _input;
 	private @Nullable IntArrayList _sampleIndexArray;
+	private @Nullable GibbsSampleStore.IntColumn _sampleColumn;
 	private int _bestSampleIndex;
 	private @Nullable DiscreteValue _initialSampleValue = null;
 	private double _beta = 1;
@@ -225,6 +260,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	 * List of neighbors for sample scoring. Instantiated during initialization.
 	 */
 	private @Nullable GibbsNeighbors _neighbors = null;
+	private final GibbsSiblingCache _siblings = new GibbsSiblingCache(this);
 
 	/*--------------
 	 * Construction
@@ -299,28 +335,27 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		final double[] inputEnergy = _input.representation();
 		System.arraycopy(inputEnergy, 0, conditional, 0, messageLength);
 		
+		// When the conditional energies are computed directly from the neighboring factors, their
+		// difference between the old and new sample values is exactly the change in the total
+		// graph energy, so it can be used to maintain the root graph's running sample score.
+		// This must be checked before computing the factor messages, since that may temporarily
+		// modify this variable's sample value.
+		final GibbsSolverGraph root = (GibbsSolverGraph)requireNonNull(getRootSolverGraph());
+		boolean trackScore = false;
+		
+		final GibbsSiblingCache siblings = _siblings.refresh();
+		
 		// Compute the conditional probability
 		if (!model.isDeterministicInput())
 		{
+			trackScore = !_repeatedVariable && _beta > 0 && root.isSampleScoreTracked();
+			
 			// Update all the neighboring factors
 			// If there are no deterministic dependents, then it should be faster to have
 			// each neighboring factor update its entire message to this variable than the alternative, below
-			final ISolverFactorGraph sfg = _parent;
-			final FactorGraph fg = sfg.getModelObject();
 			for (int port = numPorts; --port>=0;)
 			{
-				final int edgeIndex = model.getSiblingEdgeIndex(port);
-				final EdgeState edgeState = requireNonNull(fg.getGraphEdgeState(edgeIndex));
-				final GibbsDiscreteEdge sedge = requireNonNull((GibbsDiscreteEdge)sfg.getSolverEdge(edgeIndex));
-				final ISolverFactorGibbs sfactor = (ISolverFactorGibbs)sfg.getSolverFactorForEdge(edgeState);
-				
-				final double[] inputMsg = sedge.factorToVarMsg.representation();
-				sfactor.updateEdgeMessage(edgeState, sedge);
-				
-				for (int index = messageLength; --index>=0;)
-				{
-					conditional[index] += inputMsg[index];
-				}
+				addFactorEnergies(siblings, conditional, messageLength, port);
 			}
 			
 			final double beta = _beta;
@@ -343,17 +378,39 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		}
 		else	// There are deterministic dependents, so must account for these
 		{
-			// TODO: SPEED UP
+			final GibbsNeighbors neighbors = requireNonNull(_neighbors);
+			
+			// Factors that do not depend on the deterministic dependents can compute their energies for
+			// all values at once. This is done without propagating the temporary value changes made
+			// while computing their messages to the dependents.
+			final int[] independentSiblings = neighbors.independentSiblings();
+			if (independentSiblings.length > 0)
+			{
+				_currentSample._suppressDependentUpdates = true;
+				try
+				{
+					for (int port : independentSiblings)
+					{
+						addFactorEnergies(siblings, conditional, messageLength, port);
+					}
+				}
+				finally
+				{
+					_currentSample._suppressDependentUpdates = false;
+				}
+			}
+			
+			// The rest must be evaluated for each value after updating the dependents, which is done
+			// incrementally from the previous value.
+			final ISolverNodeGibbs[] dependentNeighbors = neighbors.dependentNeighbors();
 			for (int index = 0; index < messageLength; index++)
 			{
 				setCurrentSampleIndex(index);
-				double out = inputEnergy[index];						// Sum of the input prior...
-				ReleasableIterator<ISolverNodeGibbs> scoreNodes = getSampleScoreNodes();
-				while (scoreNodes.hasNext())
+				double out = conditional[index];						// Sum of the input prior and independent factors...
+				for (ISolverNodeGibbs node : dependentNeighbors)
 				{
-					out += scoreNodes.next().getPotential();
+					out += node.getPotential();
 				}
-				scoreNodes.release();
 				
 				out *= _beta;									// Apply tempering
 
@@ -363,6 +420,22 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 		}
 		
+		// Save normalized conditional distribution for Rao-Blackwellized belief
+		final double[] conditionalBelief = _conditionalBelief;
+		if (conditionalBelief != null && minEnergy < Double.POSITIVE_INFINITY)
+		{
+			double sum = 0.0;
+			for (int index = 0; index < messageLength; ++index)
+			{
+				sum += conditionalBelief[index] = Math.exp(minEnergy - conditional[index]);
+			}
+			for (int index = 0; index < messageLength; ++index)
+			{
+				conditionalBelief[index] /= sum;
+			}
+			_conditionalBeliefValid = true;
+		}
+		
 		// Sample from the conditional distribution
 		_updateCount++;
 		boolean rejected = false;
@@ -371,8 +444,17 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		{
 			if (_sampler instanceof IDiscreteDirectSampler)
 			{
+				final int oldIndex = _currentSample.getIndex();
+				
 				((IDiscreteDirectSampler)Objects.requireNonNull(_sampler)).nextSample(_currentSample,
 					conditional, minEnergy, this);
+				
+				if (trackScore)
+				{
+					final int newIndex = _currentSample.getIndex();
+					root.adjustSampleScore(newIndex != oldIndex ?
+						(conditional[newIndex] - conditional[oldIndex]) / _beta : 0.0);
+				}
 			}
 			else if (_sampler instanceof IMCMCSampler)
 			{
@@ -458,6 +540,9 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		// If the sample value is being held, don't modify the value
 		if (_holdSampleValue) return;
 		
+		// If the variable is the output of a directed deterministic factor, then don't modify the value--it should already be set correctly
+		if (_model.isDeterministicOutput()) return;
+		
 		// If the variable has a fixed value, then set the current sample to that value and return
 		if (_model.hasFixedValue())
 		{
@@ -475,9 +560,9 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		// Convert the prior back to probabilities to sample from the prior
 		double minEnergy = _input.minEnergy();
 		
-		if (_sampler instanceof CDFSampler)
-			((CDFSampler)Objects.requireNonNull(_sampler)).nextSample(_currentSample, _input.representation(), minEnergy, this);
-		else	// If the actual sampler isn't a CDF sampler, make a CDF sampler to use for random restart
+		if (_sampler instanceof CDFSampler || _sampler instanceof AliasSampler)
+			((IDiscreteDirectSampler)Objects.requireNonNull(_sampler)).nextSample(_currentSample, _input.representation(), minEnergy, this);
+		else	// If the actual sampler doesn't sample directly from the distribution, make a CDF sampler to use for random restart
 		{
 			IDiscreteDirectSampler sampler = new CDFSampler();
 			sampler.initializeFromVariable(this);
@@ -544,7 +629,26 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	@Override
 	public void updateBelief()
 	{
-		_beliefHistogram[_currentSample.getIndex()]++;
+		final int sampleIndex = _currentSample.getIndex();
+		_beliefHistogram[sampleIndex]++;
+		
+		final double[] beliefSums = _beliefSums;
+		if (beliefSums != null)
+		{
+			if (_conditionalBeliefValid)
+			{
+				final double[] conditionalBelief = _conditionalBelief;
+				for (int i = beliefSums.length; --i>=0;)
+				{
+					beliefSums[i] += conditionalBelief[i];
+				}
+				_conditionalBeliefValid = false;
+			}
+			else
+			{
+				beliefSums[sampleIndex] += 1;
+			}
+		}
 	}
 
 	@SuppressWarnings("null")
@@ -562,6 +666,22 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		}
 		
 		// Otherwise, compute the belief
+		final double[] beliefSums = _beliefSums;
+		if (beliefSums != null)
+		{
+			double sum = 0;
+			for (int i = 0; i < domainLength; i++)
+			{
+				sum += beliefSums[i];
+			}
+			if (sum != 0)
+			{
+				for (int i = 0; i < domainLength; i++)
+					outBelief[i] = beliefSums[i]/sum;
+				return outBelief;
+			}
+		}
+		
 		long sum = 0;
 		for (int i = 0; i < domainLength; i++)
 		{
@@ -633,12 +753,20 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	public void disableSavingAllSamples()
     {
     	_sampleIndexArray = null;
+    	_sampleColumn = null;
     	setOption(GibbsOptions.saveAllSamples, false);
     }
     
     @Override
 	public final void saveCurrentSample()
     {
+    	final GibbsSampleStore.IntColumn sampleColumn = _sampleColumn;
+    	if (sampleColumn != null)
+    	{
+    		sampleColumn.add(_currentSample.getIndex());
+    		return;
+    	}
+    	
     	final IntArrayList sampleIndexArray = _sampleIndexArray;
     	if (sampleIndexArray != null)
     	{
@@ -694,6 +822,22 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	 * Local methods
 	 */
 	
+	/**
+	 * Updates the message from the factor on sibling edge {@code port} given the current sample values of its
+	 * other siblings and adds its energies to the first {@code messageLength} entries of {@code conditional}.
+	 */
+	private static void addFactorEnergies(GibbsSiblingCache siblings, double[] conditional, int messageLength,
+		int port)
+	{
+		final GibbsDiscreteEdge sedge = (GibbsDiscreteEdge)siblings.updateEdgeMessage(port);
+		final double[] inputMsg = sedge.factorToVarMsg.representation();
+		
+		for (int index = messageLength; --index>=0;)
+		{
+			conditional[index] += inputMsg[index];
+		}
+	}
+	
 	public final void setCurrentSampleIndex(int index)
     {
 		_currentSample.setIndex(index);
@@ -726,21 +870,23 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     @Override
 	public final Object[] getAllSamples()
     {
-    	final IntArrayList sampleIndexArray = _sampleIndexArray;
-    	
-		if (sampleIndexArray == null)
-		{
-			return ArrayUtil.EMPTY_OBJECT_ARRAY;
-		}
-		int length = sampleIndexArray.size();
+    	final int[] sampleIndices = getAllSampleIndices();
+		int length = sampleIndices.length;
     	DiscreteDomain domain = _model.getDiscreteDomain();
     	Object[] retval = new Object[length];
     	for (int i = 0; i < length; i++)
-    		retval[i] = domain.getElement(sampleIndexArray.get(i));
+    		retval[i] = domain.getElement(sampleIndices[i]);
     	return retval;
     }
+    
     public final int[] getAllSampleIndices()
     {
+    	final GibbsSampleStore.IntColumn sampleColumn = _sampleColumn;
+    	if (sampleColumn != null)
+    	{
+    		return sampleColumn.toArray();
+    	}
+    	
     	final IntArrayList sampleIndexArray = _sampleIndexArray;
 
     	if (sampleIndexArray == null)
@@ -751,6 +897,18 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     	return Arrays.copyOf(sampleIndexArray.elements(), sampleIndexArray.size());
     }
     
+	/**
+	 * The off-heap column holding the indices of the saved samples, if samples are being saved to the
+	 * {@linkplain GibbsSolverGraph#getSampleStore() sample store}, otherwise null.
+	 * <p>
+	 * @since 0.08
+	 * @see GibbsOptions#sampleStorageDirectory
+	 */
+    public final @Nullable GibbsSampleStore.IntColumn getSampleColumn()
+    {
+    	return _sampleColumn;
+    }
+    
 	@Override
 	public final double getRejectionRate()
 	{
@@ -784,6 +942,57 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		return _rejectCount;
 	}
 
+	@Override
+	public void mergeChain(ISolverVariableGibbs other, boolean useBestSample)
+	{
+		final GibbsDiscrete that = (GibbsDiscrete)other;
+		
+		final long[] histogram = _beliefHistogram, otherHistogram = that._beliefHistogram;
+		if (histogram != null && otherHistogram != null)
+		{
+			for (int i = histogram.length; --i>=0;)
+			{
+				histogram[i] += otherHistogram[i];
+			}
+		}
+		
+		final double[] beliefSums = _beliefSums, otherBeliefSums = that._beliefSums;
+		if (beliefSums != null && otherBeliefSums != null)
+		{
+			for (int i = beliefSums.length; --i>=0;)
+			{
+				beliefSums[i] += otherBeliefSums[i];
+			}
+		}
+		
+		final GibbsSampleStore.IntColumn sampleColumn = _sampleColumn, otherSampleColumn = that._sampleColumn;
+		final IntArrayList sampleIndexArray = _sampleIndexArray;
+		if (sampleColumn != null && otherSampleColumn != null)
+		{
+			sampleColumn.addAll(otherSampleColumn);
+		}
+		else if (sampleColumn != null)
+		{
+			for (int sampleIndex : that.getAllSampleIndices())
+			{
+				sampleColumn.add(sampleIndex);
+			}
+		}
+		else if (sampleIndexArray != null)
+		{
+			sampleIndexArray.addAllOf(new IntArrayList(that.getAllSampleIndices()));
+		}
+		
+		if (useBestSample)
+		{
+			_bestSampleIndex = that._bestSampleIndex;
+		}
+		
+		_updateCount += that._updateCount;
+		_rejectCount += that._rejectCount;
+		_scoreCount += that._scoreCount;
+	}
+
 	public final void setAndHoldSampleValue(Object value)
 	{
 		releaseSampleValue();
@@ -983,7 +1192,11 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		}
 		_currentSample.setFrom(ovar._currentSample);
 		_sampleIndexArray = ovar._sampleIndexArray;
+		_sampleColumn = ovar._sampleColumn;
 		_beliefHistogram = ovar._beliefHistogram;
+		_beliefSums = ovar._beliefSums;
+		_conditionalBelief = ovar._conditionalBelief;
+		_conditionalBeliefValid = ovar._conditionalBeliefValid;
 		_bestSampleIndex = ovar._bestSampleIndex;
 		_initialSampleValue = ovar._initialSampleValue;
 		_beta = ovar._beta;
@@ -1002,11 +1215,19 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		// We actually only need to change this if the model has changed in the vicinity of this variable,
 		// but that may not be worth the trouble to figure out.
 		_neighbors = GibbsNeighbors.create(this);
+		_siblings.invalidate();
 		
 		// Clear out sample state
 		_bestSampleIndex = -1;
 		IntArrayList sampleIndexArray = null;
-		if (saveAllSamples)
+		GibbsSampleStore.IntColumn sampleColumn = null;
+		final GibbsSampleStore sampleStore = saveAllSamples ?
+			((GibbsSolverGraph)requireNonNull(getRootSolverGraph())).getSampleStore() : null;
+		if (sampleStore != null)
+		{
+			sampleColumn = sampleStore.createIntColumn();
+		}
+		else if (saveAllSamples)
 		{
 			sampleIndexArray = _sampleIndexArray;
 			if (sampleIndexArray == null)
@@ -1019,9 +1240,22 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 		}
 		_sampleIndexArray = sampleIndexArray;
+		_sampleColumn = sampleColumn;
 		
 		Arrays.fill(_beliefHistogram, 0);
 		
+		if (getOptionOrDefault(GibbsOptions.raoBlackwellizedBeliefs))
+		{
+			final int domainSize = _model.getDomain().size();
+			_beliefSums = new double[domainSize];
+			_conditionalBelief = new double[domainSize];
+		}
+		else
+		{
+			_beliefSums = _conditionalBelief = null;
+		}
+		_conditionalBeliefValid = false;
+		
 		if (_model.hasFixedValue())
 			setCurrentSampleIndexForce(requireNonNull(_model.getFixedValueObject()));
 		else
@@ -19,9 +19,13 @@ package com.analog.lyric.dimple.solvers.gibbs;
 import static java.util.Objects.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.jcip.annotations.Immutable;
@@ -30,6 +34,7 @@ import net.jcip.annotations.NotThreadSafe;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.collect.ReleasableArrayIterator;
 import com.analog.lyric.collect.ReleasableIterable;
 import com.analog.lyric.collect.ReleasableIterator;
@@ -67,14 +72,30 @@ public final class GibbsNeighbors implements ReleasableIterable<ISolverNodeGibbs
 	 */
 	private final @Nullable FactorWork[] _adjacentDependentFactors;
 	
+	/**
+	 * Sibling numbers of the starting variable's adjacent factors in {@link #_neighbors} that do not
+	 * depend on the outputs of {@link #_adjacentDependentFactors}, whose contribution to the conditional
+	 * energy can therefore be computed directly from their edge message.
+	 * Empty if there are no deterministic dependents.
+	 */
+	private final int[] _independentSiblings;
+	
+	/**
+	 * The remaining nodes in {@link #_neighbors} not represented in {@link #_independentSiblings}.
+	 */
+	private final ISolverNodeGibbs[] _dependentNeighbors;
+	
 	/*--------------
 	 * Construction
 	 */
 	
-	private GibbsNeighbors(ISolverNodeGibbs[] neighbors, @Nullable FactorWork[] immediateDependentFactors, GibbsSolverGraph rootSolverGraph)
+	private GibbsNeighbors(ISolverNodeGibbs[] neighbors, @Nullable FactorWork[] immediateDependentFactors,
+		int[] independentSiblings, ISolverNodeGibbs[] dependentNeighbors, GibbsSolverGraph rootSolverGraph)
 	{
 		_neighbors = neighbors;
 		_adjacentDependentFactors = immediateDependentFactors;
+		_independentSiblings = independentSiblings;
+		_dependentNeighbors = dependentNeighbors;
 		_rootSolverGraph = rootSolverGraph;
 	}
 	
@@ -137,6 +158,10 @@ public final class GibbsNeighbors implements ReleasableIterable<ISolverNodeGibbs
 			final int size = counter[0];
 			ISolverNodeGibbs[] neighbors = new ISolverNodeGibbs[size];
 
+			// Variables other than the starting one can only have been visited as deterministic dependents.
+			final Set<ISolverNodeGibbs> dependentVariables = Collections.newSetFromMap(
+				new IdentityHashMap<ISolverNodeGibbs, Boolean>());
+			
 			int i = 0;
 			for (ISolverNodeGibbs node : visited)
 			{
@@ -145,9 +170,37 @@ public final class GibbsNeighbors implements ReleasableIterable<ISolverNodeGibbs
 				{
 					neighbors[i++] = node;
 				}
+				if (node != svar && node instanceof ISolverVariableGibbs)
+				{
+					dependentVariables.add(node);
+				}
 			}
 			
-			return new GibbsNeighbors(neighbors, adjacentDependentFactors, (GibbsSolverGraph)requireNonNull(svar.getRootSolverGraph()));
+			int[] independentSiblings = ArrayUtil.EMPTY_INT_ARRAY;
+			ISolverNodeGibbs[] dependentNeighbors = neighbors;
+			if (adjacentDependentFactors != null)
+			{
+				final int[] independent = new int[size];
+				final ArrayList<ISolverNodeGibbs> dependent = new ArrayList<ISolverNodeGibbs>(size);
+				int nIndependent = 0;
+				for (ISolverNodeGibbs node : neighbors)
+				{
+					final int sibling = independentSibling(svar, node, dependentVariables);
+					if (sibling >= 0)
+					{
+						independent[nIndependent++] = sibling;
+					}
+					else
+					{
+						dependent.add(node);
+					}
+				}
+				independentSiblings = Arrays.copyOf(independent, nIndependent);
+				dependentNeighbors = dependent.toArray(new ISolverNodeGibbs[dependent.size()]);
+			}
+			
+			return new GibbsNeighbors(neighbors, adjacentDependentFactors, independentSiblings, dependentNeighbors,
+				(GibbsSolverGraph)requireNonNull(svar.getRootSolverGraph()));
 		}
 		else
 		{
@@ -160,6 +213,44 @@ public final class GibbsNeighbors implements ReleasableIterable<ISolverNodeGibbs
 		}
 	}
 	
+	/**
+	 * Returns the sibling number of {@code node} with respect to {@code svar} if it is a
+	 * non-deterministic factor that is connected to {@code svar} by a single edge and to none of the
+	 * {@code dependentVariables}, otherwise returns -1.
+	 */
+	private static int independentSibling(ISolverVariableGibbs svar, ISolverNodeGibbs node,
+		Set<ISolverNodeGibbs> dependentVariables)
+	{
+		if (!(node instanceof ISolverFactorGibbs) ||
+			((ISolverFactorGibbs)node).getModelObject().getFactorFunction().isDeterministicDirected())
+		{
+			return -1;
+		}
+		
+		int sibling = -1;
+		for (int edge = 0, n = svar.getSiblingCount(); edge < n; ++edge)
+		{
+			if (svar.getSibling(edge) == node)
+			{
+				if (sibling >= 0)
+				{
+					return -1;
+				}
+				sibling = edge;
+			}
+		}
+		
+		for (int edge = 0, n = node.getSiblingCount(); edge < n; ++edge)
+		{
+			if (dependentVariables.contains(node.getSibling(edge)))
+			{
+				return -1;
+			}
+		}
+		
+		return sibling;
+	}
+	
 	private abstract static class Work
 	{
 		final int _incomingEdge;
@@ -318,6 +409,34 @@ public final class GibbsNeighbors implements ReleasableIterable<ISolverNodeGibbs
 		return _adjacentDependentFactors != null;
 	}
 	
+	/**
+	 * Sibling numbers of the adjacent factors whose energy does not depend on the values of
+	 * deterministic dependents of the variable.
+	 * <p>
+	 * When the variable's value changes, the change in the energy of these factors can be determined from
+	 * the variable's value alone, so they can be evaluated for all candidate values at once. Together with
+	 * {@link #dependentNeighbors()} these make up the contents of this list.
+	 * <p>
+	 * Empty if there are no {@linkplain #hasDeterministicDependents() deterministic dependents}.
+	 * Do not modify the returned array.
+	 * @since 0.08
+	 */
+	int[] independentSiblings()
+	{
+		return _independentSiblings;
+	}
+	
+	/**
+	 * The nodes of this list whose energy must be reevaluated after propagating a change in the
+	 * variable's value to its deterministic dependents. Do not modify the returned array.
+	 * @since 0.08
+	 * @see #independentSiblings()
+	 */
+	ISolverNodeGibbs[] dependentNeighbors()
+	{
+		return _dependentNeighbors;
+	}
+	
 	/**
 	 * Update the deterministic outputs that depend on the original variable.
 	 * 
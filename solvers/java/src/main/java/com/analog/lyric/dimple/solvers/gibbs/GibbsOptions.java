@@ -22,12 +22,14 @@ import com.analog.lyric.dimple.schedulers.GibbsDefaultScheduler;
 import com.analog.lyric.dimple.schedulers.SchedulerOptionKey;
 import com.analog.lyric.dimple.schedulers.validator.VariablesOnlyScheduleValidator;
 import com.analog.lyric.dimple.schedulers.validator.ScheduleValidatorOptionKey;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.AliasSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.CDFSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.GenericSamplerOptionKey;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.SliceSampler;
 import com.analog.lyric.options.BooleanOptionKey;
 import com.analog.lyric.options.DoubleOptionKey;
 import com.analog.lyric.options.IntegerOptionKey;
+import com.analog.lyric.options.StringOptionKey;
 
 /**
  * Options for Gibbs solver.
@@ -93,6 +95,22 @@ public class GibbsOptions extends SolverOptions
 	public static final IntegerOptionKey numRandomRestarts =
 		new IntegerOptionKey(GibbsOptions.class, "numRandomRestarts", 0, 0, Integer.MAX_VALUE);
 	
+	/**
+	 * The number of independent chains to run concurrently in Gibbs solver.
+	 * <p>
+	 * If greater than one, then {@linkplain GibbsSolverGraph#solveOneStep solveOneStep} will run
+	 * this many independent chains, each on its own copy of the graph using its own random stream,
+	 * and will pool the results. All chains but the first run on the shared Dimple thread pool. Each
+	 * chain generates the number of samples determined by {@link #numSamples} and {@link #numRandomRestarts},
+	 * so the total number of samples is multiplied by this value.
+	 * <p>
+	 * Must be a positive integer. The default is one.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey numChains =
+		new IntegerOptionKey(GibbsOptions.class, "numChains", 1, 1, Integer.MAX_VALUE);
+	
 	/**
 	 * Specifies whether to save sample values for variables in Gibbs solver.
 	 * <p>
@@ -103,6 +121,37 @@ public class GibbsOptions extends SolverOptions
 	public static final BooleanOptionKey saveAllSamples =
 		new BooleanOptionKey(GibbsOptions.class, "saveAllSamples", false);
 	
+	/**
+	 * Directory in which to store samples saved by Gibbs solver.
+	 * <p>
+	 * If non-empty, then samples saved when {@link #saveAllSamples} is true will be written to
+	 * a temporary memory-mapped file in this directory instead of being kept in the Java heap. This
+	 * allows very large numbers of samples to be saved. The samples can be accessed without
+	 * copying them all using {@link GibbsDiscrete#getSampleColumn()}, {@link GibbsReal#getSampleColumn()}
+	 * and {@link GibbsRealJoint#getSampleColumn()}. The file is deleted when the graph is next
+	 * initialized or on exit.
+	 * <p>
+	 * This option is only consulted on the root graph. Defaults to the empty string.
+	 * <p>
+	 * @since 0.08
+	 * @see GibbsSampleStore
+	 */
+	public static final StringOptionKey sampleStorageDirectory =
+		new StringOptionKey(GibbsOptions.class, "sampleStorageDirectory", "");
+	
+	/**
+	 * Specifies the interval at which samples and scores are saved in Gibbs solver.
+	 * <p>
+	 * When {@link #saveAllSamples} or {@link #saveAllScores} is true, only every nth sample will be saved,
+	 * where n is the value of this option. Beliefs are still computed from every sample.
+	 * <p>
+	 * Must be a positive integer. The default is one.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey sampleThinning =
+		new IntegerOptionKey(GibbsOptions.class, "sampleThinning", 1, 1, Integer.MAX_VALUE);
+	
 	/**
 	 * Specifies whether to save sample scores in Gibbs solver.
 	 * <p>
@@ -119,6 +168,9 @@ public class GibbsOptions extends SolverOptions
 	/**
 	 * Specifies which sampler to use for discrete variables in Gibbs solver.
 	 * <p>
+	 * The default is {@link CDFSampler}. The {@link AliasSampler} may be faster for variables with large
+	 * domains whose conditional distributions change infrequently.
+	 * <p>
 	 * @since 0.07
 	 */
 	public static final GenericSamplerOptionKey discreteSampler =
@@ -160,6 +212,25 @@ public class GibbsOptions extends SolverOptions
 	public static final BooleanOptionKey computeRealJointBeliefMoments =
 		new BooleanOptionKey(GibbsOptions.class, "computeRealJointBeliefMoments", false);
 
+	/**
+	 * Specifies whether to compute Rao-Blackwellized beliefs for discrete variables in Gibbs solver.
+	 * <p>
+	 * If true, then instead of counting how many times each value was sampled, the belief of a
+	 * discrete variable is computed by averaging, over all samples, the normalized conditional
+	 * distribution from which the variable's value was last drawn. This estimate usually has much
+	 * lower variance than the sample histogram for the same number of samples. For samples in which
+	 * the variable was not updated through its full conditional distribution, for instance when
+	 * it is updated as part of a block, the sampled value is counted instead.
+	 * <p>
+	 * This requires an additional exponentiation per domain value in each update of the variable.
+	 * <p>
+	 * Defaults to false.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final BooleanOptionKey raoBlackwellizedBeliefs =
+		new BooleanOptionKey(GibbsOptions.class, "raoBlackwellizedBeliefs", false);
+
 	/**
 	 * Enables use of a tempering and annealing process in Gibbs solver.
 	 * <p>
@@ -193,6 +264,103 @@ public class GibbsOptions extends SolverOptions
 	 */
 	public static final DoubleOptionKey initialTemperature =
 		new DoubleOptionKey(GibbsOptions.class, "initialTemperature", 1.0, 0.0, Double.MAX_VALUE);
+	
+	/**
+	 * The number of replicas to use for parallel tempering (replica exchange) in Gibbs solver.
+	 * <p>
+	 * If greater than one, then {@linkplain GibbsSolverGraph#solveOneStep solveOneStep} will run this many
+	 * replicas of the graph concurrently at a geometric ladder of temperatures from one up to
+	 * {@link #maxReplicaTemperature}, periodically proposing to exchange the states of replicas at adjacent
+	 * temperatures. Samples are only collected from the replica with temperature one. This may not be
+	 * combined with {@link #enableAnnealing}.
+	 * <p>
+	 * Must be a positive integer. The default is one, which disables parallel tempering.
+	 * <p>
+	 * @since 0.08
+	 * @see GibbsSolverGraph#getReplicaSwapAcceptanceRates()
+	 */
+	public static final IntegerOptionKey numReplicas =
+		new IntegerOptionKey(GibbsOptions.class, "numReplicas", 1, 1, Integer.MAX_VALUE);
+	
+	/**
+	 * Specifies the temperature of the hottest replica when using {@link #numReplicas parallel tempering}
+	 * in Gibbs solver.
+	 * <p>
+	 * Defaults to 10.0.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final DoubleOptionKey maxReplicaTemperature =
+		new DoubleOptionKey(GibbsOptions.class, "maxReplicaTemperature", 10.0, 1.0, Double.MAX_VALUE);
+	
+	/**
+	 * Specifies the number of samples between proposed exchanges of replica states when using
+	 * {@link #numReplicas parallel tempering} in Gibbs solver.
+	 * <p>
+	 * Defaults to one.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey replicaSwapInterval =
+		new IntegerOptionKey(GibbsOptions.class, "replicaSwapInterval", 1, 1, Integer.MAX_VALUE);
+
+	/**
+	 * Specifies whether to compute convergence diagnostics for variables in Gibbs solver.
+	 * <p>
+	 * When true for a variable, its sample values will be included in the effective sample size
+	 * and split-R&#770; estimates computed by the {@link GibbsConvergenceMonitor}. Set this on
+	 * the graph to monitor all of its variables. The sample score is always monitored when
+	 * this is true for any variable or either {@link #targetEffectiveSampleSize} or
+	 * {@link #targetSplitRHat} is set.
+	 * <p>
+	 * Defaults to false.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final BooleanOptionKey monitorConvergence =
+		new BooleanOptionKey(GibbsOptions.class, "monitorConvergence", false);
+
+	/**
+	 * Effective sample size at which Gibbs solver stops generating samples.
+	 * <p>
+	 * If positive, then sampling for each restart stops as soon as the estimated effective sample size
+	 * of every statistic computed by the {@link GibbsConvergenceMonitor} is at least this value
+	 * (and the {@link #targetSplitRHat} is met, if set), or when {@link #numSamples} samples have been
+	 * generated, whichever comes first. Convergence is checked every {@link #convergenceDiagnosticInterval}
+	 * samples.
+	 * <p>
+	 * Defaults to zero, which disables the check.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final DoubleOptionKey targetEffectiveSampleSize =
+		new DoubleOptionKey(GibbsOptions.class, "targetEffectiveSampleSize", 0.0, 0.0, Double.MAX_VALUE);
+
+	/**
+	 * Split-R&#770; at which Gibbs solver stops generating samples.
+	 * <p>
+	 * If positive, then sampling for each restart stops as soon as the estimated split-R&#770; of every
+	 * statistic computed by the {@link GibbsConvergenceMonitor} is no greater than this value (and
+	 * the {@link #targetEffectiveSampleSize} is met, if set), or when {@link #numSamples} samples have
+	 * been generated, whichever comes first. Values such as 1.01 are typical.
+	 * <p>
+	 * Defaults to zero, which disables the check.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final DoubleOptionKey targetSplitRHat =
+		new DoubleOptionKey(GibbsOptions.class, "targetSplitRHat", 0.0, 0.0, Double.MAX_VALUE);
+
+	/**
+	 * The number of samples between checks of {@link #targetEffectiveSampleSize} and {@link #targetSplitRHat}
+	 * in Gibbs solver.
+	 * <p>
+	 * Must be a positive integer. The default is 100.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey convergenceDiagnosticInterval =
+		new IntegerOptionKey(GibbsOptions.class, "convergenceDiagnosticInterval", 100, 1, Integer.MAX_VALUE);
 
 	/**
 	 * Specifies schedule validation that should be applied for Gibbs solvers.
@@ -57,7 +57,6 @@ import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IMCMCSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IRealSamplerClient;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.MHSampler;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
-import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
 import com.analog.lyric.math.DimpleRandomGenerator;
@@ -138,6 +137,7 @@ public class GibbsReal extends SRealVariableBase
 			}
 			
 			_value = value;
+			invalidateSampleScore();
 			
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents)
@@ -146,6 +146,14 @@ public class GibbsReal extends SRealVariableBase
 			}
 		}
 		
+		/**
+		 * Lets the root solver graph know that its running sample score may be out of date.
+		 */
+		private void invalidateSampleScore()
+		{
+			((GibbsSolverGraph)requireNonNull(getRootSolverGraph())).invalidateSampleScore();
+		}
+		
 		void reset()
 		{
 			_value = _model.hasFixedValue() ? _model.getFixedValue() : _initialSampleValue;
@@ -165,6 +173,7 @@ public class GibbsReal extends SRealVariableBase
 	private @Nullable IRealConjugateSampler _conjugateSampler = null;
 	private boolean _samplerSpecificallySpecified = false;
 	private @Nullable DoubleArrayList _sampleArray;
+	private @Nullable GibbsSampleStore.DoubleColumn _sampleColumn;
 	private double _sampleSum;
 	private double _sampleSumSquare;
 	private long _sampleCount;
@@ -180,6 +189,7 @@ public class GibbsReal extends SRealVariableBase
 	 * List of neighbors for sample scoring. Instantiated during initialization.
 	 */
 	private @Nullable GibbsNeighbors _neighbors = null;
+	private final GibbsSiblingCache _siblings = new GibbsSiblingCache(this);
 
 	/*--------------
 	 * Construction
@@ -260,21 +270,12 @@ public class GibbsReal extends SRealVariableBase
 		{
 			// Use conjugate sampler, first update the messages from all factors
 			// Factor messages represent the current distribution parameters from each factor
-			final int numEdges = model.getSiblingCount();
-			ISolverEdgeState[] sedges = new ISolverEdgeState[numEdges];
-			final FactorGraph fg = model.requireParentGraph();
-			final SolverNodeMapping solvers = getSolverMapping();
-			final ISolverFactorGraph sfg = solvers.getSolverGraph(fg);
-			for (int portIndex = 0; portIndex < numEdges; portIndex++)
+			final GibbsSiblingCache siblings = _siblings.refresh();
+			for (int portIndex = 0, numEdges = model.getSiblingCount(); portIndex < numEdges; portIndex++)
 			{
-				final int edgeIndex = model.getSiblingEdgeIndex(portIndex);
-				final EdgeState edge = requireNonNull(fg.getGraphEdgeState(edgeIndex));
-				final GibbsSolverEdge<?> sedge = requireNonNull((GibbsSolverEdge<?>)sfg.getSolverEdge(edgeIndex));
-				final ISolverFactorGibbs factor = (ISolverFactorGibbs)sfg.getSolverFactorForEdge(edge);
-				
-				sedges[portIndex] =  sedge;
-				factor.updateEdgeMessage(edge, sedge);	// Run updateEdgeMessage for each neighboring factor
+				siblings.updateEdgeMessage(portIndex);	// Run updateEdgeMessage for each neighboring factor
 			}
+			final ISolverEdgeState[] sedges = siblings.solverEdges();
 			double nextSampleValue = conjugateSampler.nextSample(sedges, _input);
 			if (nextSampleValue != _currentSample.getDouble())	// Would be exactly equal if not changed since last value tested
 				setCurrentSample(nextSampleValue);
@@ -396,22 +397,14 @@ public class GibbsReal extends SRealVariableBase
 	public final void getAggregateMessages(IParameterizedMessage outputMessage, int outPortNum, ISampler conjugateSampler)
 	{
 		final Real model = _model;
-		final FactorGraph fg = model.requireParentGraph();
-		final SolverNodeMapping solvers = getSolverMapping();
-		final ISolverFactorGraph sfg = solvers.getSolverGraph(fg);
+		final GibbsSiblingCache siblings = _siblings.refresh();
 		final int numEdges = model.getSiblingCount();
 		final ISolverEdgeState[] sedges = new ISolverEdgeState[numEdges - 1];
 		for (int port = 0, i = 0; port < numEdges; port++)
 		{
 			if (port != outPortNum)
 			{
-				final int edgeIndex = model.getSiblingEdgeIndex(port);
-				final EdgeState edgeState = requireNonNull(fg.getGraphEdgeState(edgeIndex));
-				final GibbsSolverEdge<?> sedge = requireNonNull((GibbsSolverEdge<?>)sfg.getSolverEdge(edgeIndex));
-				final ISolverFactorGibbs factor = (ISolverFactorGibbs)sfg.getSolverFactorForEdge(edgeState);
-				
-				sedges[i++] = sfg.getSolverEdge(edgeIndex);
-				factor.updateEdgeMessage(edgeState, sedge);	// Run updateEdgeMessage for each neighboring factor
+				sedges[i++] = siblings.updateEdgeMessage(port);	// Run updateEdgeMessage for each neighboring factor
 			}
 		}
 		((IRealConjugateSampler)conjugateSampler).aggregateParameters(outputMessage, sedges, _input);
@@ -499,7 +492,7 @@ public class GibbsReal extends SRealVariableBase
 			// No input or no available sampler, so if bounded, sample uniformly from the bounds
 			if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
 			{
-				setCurrentSample(DimpleRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+				setCurrentSample(DimpleRandomGenerator.current().nextDouble() * (hi - lo) + lo);
 			}
 			else
 			{
@@ -605,12 +598,20 @@ public class GibbsReal extends SRealVariableBase
 	public void disableSavingAllSamples()
     {
     	_sampleArray = null;
+    	_sampleColumn = null;
 		setOption(GibbsOptions.saveAllSamples, false);
     }
     
 	@Override
 	public final void saveCurrentSample()
 	{
+		final GibbsSampleStore.DoubleColumn sampleColumn = _sampleColumn;
+		if (sampleColumn != null)
+		{
+			sampleColumn.add(_currentSample.getDouble());
+			return;
+		}
+		
 		final DoubleArrayList sampleArray = _sampleArray;
 		if (sampleArray != null)
 			sampleArray.add(_currentSample.getDouble());
@@ -685,6 +686,12 @@ public class GibbsReal extends SRealVariableBase
 	@Override
 	public final double[] getAllSamples()
 	{
+		final GibbsSampleStore.DoubleColumn sampleColumn = _sampleColumn;
+		if (sampleColumn != null)
+		{
+			return sampleColumn.toArray();
+		}
+		
 		final DoubleArrayList sampleArray = _sampleArray;
 		if (sampleArray == null)
 		{
@@ -694,6 +701,18 @@ public class GibbsReal extends SRealVariableBase
 		return Arrays.copyOf(sampleArray.elements(), sampleArray.size());
 	}
 	
+	/**
+	 * The off-heap column holding the saved samples, if samples are being saved to the
+	 * {@linkplain GibbsSolverGraph#getSampleStore() sample store}, otherwise null.
+	 * <p>
+	 * @since 0.08
+	 * @see GibbsOptions#sampleStorageDirectory
+	 */
+	public final @Nullable GibbsSampleStore.DoubleColumn getSampleColumn()
+	{
+		return _sampleColumn;
+	}
+	
 	@Override
 	public final double getRejectionRate()
 	{
@@ -726,6 +745,43 @@ public class GibbsReal extends SRealVariableBase
 		return _rejectCount;
 	}
 
+	@Override
+	public void mergeChain(ISolverVariableGibbs other, boolean useBestSample)
+	{
+		final GibbsReal that = (GibbsReal)other;
+		
+		_sampleSum += that._sampleSum;
+		_sampleSumSquare += that._sampleSumSquare;
+		_sampleCount += that._sampleCount;
+		
+		final GibbsSampleStore.DoubleColumn sampleColumn = _sampleColumn, otherSampleColumn = that._sampleColumn;
+		final DoubleArrayList sampleArray = _sampleArray;
+		if (sampleColumn != null && otherSampleColumn != null)
+		{
+			sampleColumn.addAll(otherSampleColumn);
+		}
+		else if (sampleColumn != null)
+		{
+			for (double sample : that.getAllSamples())
+			{
+				sampleColumn.add(sample);
+			}
+		}
+		else if (sampleArray != null)
+		{
+			sampleArray.addAllOf(new DoubleArrayList(that.getAllSamples()));
+		}
+		
+		if (useBestSample)
+		{
+			_bestSampleValue = that._bestSampleValue;
+		}
+		
+		_updateCount += that._updateCount;
+		_rejectCount += that._rejectCount;
+		_scoreCount += that._scoreCount;
+	}
+
 	// This is meant for internal use, not as a user accessible method
 	@Internal
 	public final @Nullable DoubleArrayList _getSampleArrayUnsafe()
@@ -947,6 +1003,7 @@ public class GibbsReal extends SRealVariableBase
 		// We actually only need to change this if the model has changed in the vicinity of this variable,
 		// but that may not be worth the trouble to figure out.
 		_neighbors = GibbsNeighbors.create(this);
+		_siblings.invalidate();
 		
 		// Unless this is a dependent of a deterministic factor, then set the starting sample value
 		if (!getModelObject().isDeterministicOutput())
@@ -959,7 +1016,14 @@ public class GibbsReal extends SRealVariableBase
 		// Clear out sample state
 		_bestSampleValue = _currentSample.getDouble();
 		DoubleArrayList sampleArray = null;
-		if (saveAllSamples)
+		GibbsSampleStore.DoubleColumn sampleColumn = null;
+		final GibbsSampleStore sampleStore = saveAllSamples ?
+			((GibbsSolverGraph)requireNonNull(getRootSolverGraph())).getSampleStore() : null;
+		if (sampleStore != null)
+		{
+			sampleColumn = sampleStore.createDoubleColumn(1);
+		}
+		else if (saveAllSamples)
 		{
 			sampleArray = _sampleArray;
 			if (sampleArray == null)
@@ -972,6 +1036,7 @@ public class GibbsReal extends SRealVariableBase
 			}
 		}
 		_sampleArray = sampleArray;
+		_sampleColumn = sampleColumn;
 		
 		// Clear out the Belief statistics
 		_sampleSum = 0;
@@ -1058,6 +1123,7 @@ public class GibbsReal extends SRealVariableBase
 		_initialSampleValue = ovar._initialSampleValue;
 		_initialSampleValueSet = ovar._initialSampleValueSet;
 		_sampleArray = ovar._sampleArray;
+		_sampleColumn = ovar._sampleColumn;
 		_bestSampleValue = ovar._bestSampleValue;
 		_beta = ovar._beta;
 		_holdSampleValue = ovar._holdSampleValue;
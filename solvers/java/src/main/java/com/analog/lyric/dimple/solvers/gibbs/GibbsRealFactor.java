@@ -46,9 +46,11 @@ public class GibbsRealFactor extends SRealFactor implements ISolverFactorGibbs
 	protected boolean _isDeterministicDirected;
 	private int _topologicalOrder = 0;
 	/**
-	 * True if output samples in {@link #_currentSamples} have been computed.
+	 * Argument values last passed to the factor function's deterministic update, consisting of the
+	 * samples in {@link #_currentSamples} for inputs and private copies of the computed outputs.
+	 * Null if outputs have not been computed since initialization.
 	 */
-	private boolean _outputsValid = false;
+	private @Nullable Value[] _deterministicValues = null;
 	
 	private boolean _visited = false;
 	
@@ -63,7 +65,7 @@ public class GibbsRealFactor extends SRealFactor implements ISolverFactorGibbs
 	{
 		super.initialize();
 		
-		_outputsValid = false;
+		_deterministicValues = null;
     	final int size = getSiblingCount();
     	
     	if (_currentSamples.length != size)
@@ -191,42 +193,33 @@ public class GibbsRealFactor extends SRealFactor implements ISolverFactorGibbs
 		
 		final SolverNodeMapping solvers = requireNonNull(getParentGraph()).getSolverMapping();
 		
-		if (oldValues != null && _outputsValid)
+		Value[] values = _deterministicValues;
+		if (oldValues != null && values != null)
 		{
+			// Incrementally update the outputs computed by the previous update. These are kept separately
+			// from the output variable samples, which may have been modified since then.
 			AtomicReference<int[]> changedOutputsHolder = new AtomicReference<int[]>();
-			Value[] values = function.updateDeterministicToCopy(inputMsgs, oldValues, changedOutputsHolder);
+			function.updateDeterministic(values, oldValues, changedOutputsHolder);
 			int[] changedOutputs = changedOutputsHolder.get();
 			if (changedOutputs != null)
 			{
 				directedTo = changedOutputs;
 			}
-
-			// Update the directed-to variables with the computed values
-			if (directedTo != null)
-			{
-				for (int outputIndex : directedTo)
-				{
-					Variable variable = requireNonNull(factor.getSibling(outputIndex));
-					Value newValue = values[outputIndex];
-					((ISolverVariableGibbs)solvers.getSolverVariable(variable)).setCurrentSample(newValue);
-				}
-			}
 		}
 		else
 		{
-			Value[] values = function.evalDeterministicToCopy(inputMsgs);
-			_outputsValid = true;
+			// Full update
+			values = _deterministicValues = function.evalDeterministicToCopy(inputMsgs);
+		}
 
-			// Update the directed-to variables with the computed values
-			if (directedTo != null)
+		// Update the directed-to variables with the computed values
+		if (directedTo != null)
+		{
+			for (int outputIndex : directedTo)
 			{
-				// Full update
-				for (int outputIndex : directedTo)
-				{
-					Variable variable = requireNonNull(factor.getSibling(outputIndex));
-					Value newValue = values[outputIndex];
-					((ISolverVariableGibbs)solvers.getSolverVariable(variable)).setCurrentSample(newValue);
-				}
+				Variable variable = requireNonNull(factor.getSibling(outputIndex));
+				Value newValue = values[outputIndex];
+				((ISolverVariableGibbs)solvers.getSolverVariable(variable)).setCurrentSample(newValue);
 			}
 		}
 	}
@@ -61,7 +61,6 @@ import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IMCMCSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IRealSamplerClient;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.MHSampler;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
-import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
 import com.analog.lyric.math.DimpleRandomGenerator;
@@ -132,6 +131,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 			}
 			
 			_value[index] = value;
+			invalidateSampleScore();
 			_currentSample.setValue(index, value);
 			
 			if (hasDeterministicDependents)
@@ -154,6 +154,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 			}
 			
 			_value = value.clone();
+			invalidateSampleScore();
 			
 			if (hasDeterministicDependents)
 			{
@@ -162,6 +163,14 @@ public class GibbsRealJoint extends SRealJointVariableBase
 			}
 		}
 		
+		/**
+		 * Lets the root solver graph know that its running sample score may be out of date.
+		 */
+		private void invalidateSampleScore()
+		{
+			((GibbsSolverGraph)requireNonNull(getRootSolverGraph())).invalidateSampleScore();
+		}
+		
 		private void reset()
 		{
 			_value = _model.hasFixedValue() ? _model.getFixedValue().clone() : _initialSampleValue.clone();
@@ -181,6 +190,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 	private @Nullable IRealJointConjugateSampler _conjugateSampler = null;
 	private boolean _samplerSpecificallySpecified = false;
 	private @Nullable ArrayList<double[]> _sampleArray;
+	private @Nullable GibbsSampleStore.DoubleColumn _sampleColumn;
 	private @Nullable double[] _sampleSum;
 	private @Nullable double[][] _sampleSumSquare;
 	private long _sampleCount;
@@ -198,6 +208,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 	 * List of neighbors for sample scoring. Instantiated during initialization.
 	 */
 	private @Nullable GibbsNeighbors _neighbors = null;
+	private final GibbsSiblingCache _siblings = new GibbsSiblingCache(this);
 
 	/*--------------
 	 * Construction
@@ -291,21 +302,12 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		{
 			// Use conjugate sampler, first update the messages from all factors
 			// Factor messages represent the current distribution parameters from each factor
-			final int numEdges = model.getSiblingCount();
-			final ISolverEdgeState[] sedges = new ISolverEdgeState[numEdges];
-			final FactorGraph fg = model.requireParentGraph();
-			final SolverNodeMapping solvers = getSolverMapping();
-			final ISolverFactorGraph sfg = solvers.getSolverGraph(fg);
-			for (int portIndex = 0; portIndex < numEdges; portIndex++)
+			final GibbsSiblingCache siblings = _siblings.refresh();
+			for (int portIndex = 0, numEdges = model.getSiblingCount(); portIndex < numEdges; portIndex++)
 			{
-				final int edgeIndex = model.getSiblingEdgeIndex(portIndex);
-				final EdgeState edge = requireNonNull(fg.getGraphEdgeState(edgeIndex));
-				final GibbsSolverEdge<?> sedge = requireNonNull((GibbsSolverEdge<?>)sfg.getSolverEdge(edgeIndex));
-				final ISolverFactorGibbs factor = (ISolverFactorGibbs)sfg.getSolverFactorForEdge(edge);
-				
-				sedges[portIndex] =  sedge;
-				factor.updateEdgeMessage(edge, sedge);	// Run updateEdgeMessage for each neighboring factor
+				siblings.updateEdgeMessage(portIndex);	// Run updateEdgeMessage for each neighboring factor
 			}
+			final ISolverEdgeState[] sedges = siblings.solverEdges();
 			setCurrentSample(conjugateSampler.nextSample(sedges, _inputJoint));
 			_updateCount++;
 		}
@@ -439,22 +441,14 @@ public class GibbsRealJoint extends SRealJointVariableBase
 	public final void getAggregateMessages(IParameterizedMessage outputMessage, int outPortNum, ISampler conjugateSampler)
 	{
 		final RealJoint model = _model;
-		final FactorGraph fg = model.requireParentGraph();
-		final SolverNodeMapping solvers = getSolverMapping();
-		final ISolverFactorGraph sfg = solvers.getSolverGraph(fg);
+		final GibbsSiblingCache siblings = _siblings.refresh();
 		final int numEdges = model.getSiblingCount();
 		final ISolverEdgeState[] sedges = new ISolverEdgeState[numEdges - 1];
 		for (int port = 0, i = 0; port < numEdges; port++)
 		{
 			if (port != outPortNum)
 			{
-				final int edgeIndex = model.getSiblingEdgeIndex(port);
-				final EdgeState edgeState = requireNonNull(fg.getGraphEdgeState(edgeIndex));
-				final GibbsSolverEdge<?> sedge = requireNonNull((GibbsSolverEdge<?>)sfg.getSolverEdge(edgeIndex));
-				final ISolverFactorGibbs factor = (ISolverFactorGibbs)sfg.getSolverFactorForEdge(edgeState);
-				
-				sedges[i++] = sfg.getSolverEdge(edgeIndex);
-				factor.updateEdgeMessage(edgeState, sedge);	// Run updateEdgeMessage for each neighboring factor
+				sedges[i++] = siblings.updateEdgeMessage(port);	// Run updateEdgeMessage for each neighboring factor
 			}
 		}
 		((IRealJointConjugateSampler)conjugateSampler).aggregateParameters(outputMessage, sedges, _inputJoint);
@@ -553,7 +547,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 
 					// No available sampler, so if bounded, sample uniformly from the bounds
 					if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-						setCurrentSample(i, DimpleRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+						setCurrentSample(i, DimpleRandomGenerator.current().nextDouble() * (hi - lo) + lo);
 					else if (hi < _currentSample.getValue(i))
 						setCurrentSample(i, hi);
 					else if (lo > _currentSample.getValue(i))
@@ -591,7 +585,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 				{
 					// No available sampler, so if bounded, sample uniformly from the bounds
 					if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-						setCurrentSample(i, DimpleRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+						setCurrentSample(i, DimpleRandomGenerator.current().nextDouble() * (hi - lo) + lo);
 				}
 			}
 		}
@@ -606,7 +600,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 
 				// If bounded, sample uniformly from the bounds, otherwise leave current sample value
 				if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-					setCurrentSample(i, DimpleRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+					setCurrentSample(i, DimpleRandomGenerator.current().nextDouble() * (hi - lo) + lo);
 			}
 		}
 	}
@@ -778,12 +772,20 @@ public class GibbsRealJoint extends SRealJointVariableBase
 	public void disableSavingAllSamples()
     {
     	_sampleArray = null;
+    	_sampleColumn = null;
 		setOption(GibbsOptions.saveAllSamples, false);
     }
     
 	@Override
 	public final void saveCurrentSample()
 	{
+		final GibbsSampleStore.DoubleColumn sampleColumn = _sampleColumn;
+		if (sampleColumn != null)
+		{
+			sampleColumn.add(_currentSample.getValue());
+			return;
+		}
+		
 		final ArrayList<double[]> sampleArray = _sampleArray;
 		if (sampleArray != null)
 			sampleArray.add(_currentSample.getValue().clone());
@@ -888,6 +890,16 @@ public class GibbsRealJoint extends SRealJointVariableBase
 	@Override
 	public final double[][] getAllSamples()
 	{
+		final GibbsSampleStore.DoubleColumn sampleColumn = _sampleColumn;
+		if (sampleColumn != null)
+		{
+			final int length = sampleColumn.size();
+			final double[][] retval = new double[length][sampleColumn.width()];
+			for (int i = 0; i < length; ++i)
+				sampleColumn.copyTo(i, 1, retval[i], 0);
+			return retval;
+		}
+		
 		final ArrayList<double[]> sampleArray = _sampleArray;
 		if (sampleArray == null)
 		{
@@ -900,6 +912,19 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		return retval;
 	}
 	
+	/**
+	 * The off-heap column holding the saved samples, if samples are being saved to the
+	 * {@linkplain GibbsSolverGraph#getSampleStore() sample store}, otherwise null. Each sample
+	 * in the column holds one value for each real variable in the joint variable.
+	 * <p>
+	 * @since 0.08
+	 * @see GibbsOptions#sampleStorageDirectory
+	 */
+	public final @Nullable GibbsSampleStore.DoubleColumn getSampleColumn()
+	{
+		return _sampleColumn;
+	}
+	
 	@Override
 	public final double getRejectionRate()
 	{
@@ -932,6 +957,54 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		return _rejectCount;
 	}
 
+	@Override
+	public void mergeChain(ISolverVariableGibbs other, boolean useBestSample)
+	{
+		final GibbsRealJoint that = (GibbsRealJoint)other;
+		
+		final double[] sampleSum = _sampleSum, otherSampleSum = that._sampleSum;
+		final double[][] sampleSumSquare = _sampleSumSquare, otherSampleSumSquare = that._sampleSumSquare;
+		if (sampleSum != null && otherSampleSum != null && sampleSumSquare != null && otherSampleSumSquare != null)
+		{
+			for (int i = 0; i < _numRealVars; ++i)
+			{
+				sampleSum[i] += otherSampleSum[i];
+				for (int j = 0; j < _numRealVars; ++j)
+				{
+					sampleSumSquare[i][j] += otherSampleSumSquare[i][j];
+				}
+			}
+		}
+		_sampleCount += that._sampleCount;
+		
+		final GibbsSampleStore.DoubleColumn sampleColumn = _sampleColumn, otherSampleColumn = that._sampleColumn;
+		final ArrayList<double[]> sampleArray = _sampleArray;
+		if (sampleColumn != null && otherSampleColumn != null)
+		{
+			sampleColumn.addAll(otherSampleColumn);
+		}
+		else if (sampleColumn != null)
+		{
+			for (double[] sample : that.getAllSamples())
+			{
+				sampleColumn.add(sample);
+			}
+		}
+		else if (sampleArray != null)
+		{
+			sampleArray.addAll(Arrays.asList(that.getAllSamples()));
+		}
+		
+		if (useBestSample)
+		{
+			_bestSampleValue = that._bestSampleValue.clone();
+		}
+		
+		_updateCount += that._updateCount;
+		_rejectCount += that._rejectCount;
+		_scoreCount += that._scoreCount;
+	}
+
 	// This is meant for internal use, not as a user accessible method
 	public final @Nullable List<double[]> _getSampleArrayUnsafe()
 	{
@@ -1162,6 +1235,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		// We actually only need to change this if the model has changed in the vicinity of this variable,
 		// but that may not be worth the trouble to figure out.
 		_neighbors = GibbsNeighbors.create(this);
+		_siblings.invalidate();
 		
 		if (!getModelObject().isDeterministicOutput())
 		{
@@ -1173,7 +1247,14 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		// Clear out sample state
 		_bestSampleValue = _currentSample.getValue();
 		ArrayList<double[]> sampleArray = null;
-		if (saveAllSamples)
+		GibbsSampleStore.DoubleColumn sampleColumn = null;
+		final GibbsSampleStore sampleStore = saveAllSamples ?
+			((GibbsSolverGraph)requireNonNull(getRootSolverGraph())).getSampleStore() : null;
+		if (sampleStore != null)
+		{
+			sampleColumn = sampleStore.createDoubleColumn(_numRealVars);
+		}
+		else if (saveAllSamples)
 		{
 			sampleArray = _sampleArray;
 			if (sampleArray == null)
@@ -1186,6 +1267,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 			}
 		}
 		_sampleArray = sampleArray;
+		_sampleColumn = sampleColumn;
 		
 		// Clear out the Belief statistics
 		if (getOptionOrDefault(GibbsOptions.computeRealJointBeliefMoments))
@@ -1286,6 +1368,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		_initialSampleValue = ovar._initialSampleValue;
 		_initialSampleValueSet = ovar._initialSampleValueSet;
 		_sampleArray = ovar._sampleArray;
+		_sampleColumn = ovar._sampleColumn;
 		_bestSampleValue = ovar._bestSampleValue;
 		_beta = ovar._beta;
 		_holdSampleValue = ovar._holdSampleValue;
@@ -0,0 +1,284 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import static java.util.Objects.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.math.DimpleRandom;
+import com.analog.lyric.math.DimpleRandomGenerator;
+
+/**
+ * Implements parallel tempering (replica exchange) for {@link GibbsSolverGraph}.
+ * <p>
+ * The replicas are copies of the graph run at a geometric ladder of temperatures, with the original
+ * graph as the replica with temperature one. Each burn-in and sample advances all of the replicas
+ * concurrently using the shared thread pool, each replica using its own random stream. Every
+ * {@link GibbsOptions#replicaSwapInterval} samples, exchanges of state are proposed between replicas at
+ * adjacent temperatures, alternating between even and odd pairs, and are accepted using the
+ * Metropolis criterion.
+ * <p>
+ * @since 0.08
+ * @see GibbsOptions#numReplicas
+ */
+final class GibbsReplicaExchange
+{
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * Replicas in order of increasing temperature. The first is the original graph.
+	 */
+	private final GibbsSolverGraph[] _replicas;
+	
+	/**
+	 * Solver variables of each replica, in the same order as the variables of the original graph.
+	 */
+	private final ISolverVariableGibbs[][] _variables;
+	
+	private final double[] _temperatures;
+	
+	/**
+	 * Random streams for each replica. The first replica uses the calling thread's stream, so the
+	 * first entry is not used.
+	 */
+	private final DimpleRandom[] _randoms;
+	
+	private final long[] _swapAttempts;
+	private final long[] _swapAccepts;
+	private int _swapRound = 0;
+
+	/*--------------
+	 * Construction
+	 */
+	
+	GibbsReplicaExchange(GibbsSolverGraph graph, int nReplicas, double maxTemperature, long baseSeed)
+	{
+		final List<Variable> variables = new ArrayList<>(graph.getModelObject().getVariables());
+		final int nVars = variables.size();
+		
+		_replicas = new GibbsSolverGraph[nReplicas];
+		_variables = new ISolverVariableGibbs[nReplicas][nVars];
+		_temperatures = new double[nReplicas];
+		_randoms = new DimpleRandom[nReplicas];
+		_swapAttempts = new long[nReplicas - 1];
+		_swapAccepts = new long[nReplicas - 1];
+		
+		for (int replica = 0; replica < nReplicas; ++replica)
+		{
+			_temperatures[replica] = Math.pow(maxTemperature, replica / (nReplicas - 1.0));
+
+			if (replica == 0)
+			{
+				_replicas[0] = graph;
+				for (int i = 0; i < nVars; ++i)
+				{
+					_variables[0][i] = graph.getSolverVariable(variables.get(i));
+				}
+			}
+			else
+			{
+				// Negative stream ids keep these distinct from the streams used for additional chains.
+				final long seed = DimpleRandom.splitSeed(baseSeed, -replica);
+				final Map<Object,Object> old2new = new HashMap<>();
+				final GibbsSolverGraph copy = _replicas[replica] = graph.createCopy(old2new, seed);
+				copy.setOption(GibbsOptions.numReplicas, 1);
+				for (int i = 0; i < nVars; ++i)
+				{
+					_variables[replica][i] = copy.getSolverVariable((Variable)requireNonNull(old2new.get(variables.get(i))));
+				}
+				_randoms[replica] = new DimpleRandom(seed);
+			}
+		}
+	}
+	
+	/*---------
+	 * Methods
+	 */
+	
+	/**
+	 * Runs burn-in and sampling for each restart, collecting samples from the original graph, and stopping
+	 * early if its convergence targets are met.
+	 */
+	void solve(int numRestarts, int numSamples, int swapInterval)
+	{
+		runStep(Step.INITIALIZE, 0);
+		
+		for (int restartCount = 0; restartCount <= numRestarts; restartCount++)
+		{
+			runStep(Step.BURN_IN, restartCount);
+			for (int sample = 0; sample < numSamples; ++sample)
+			{
+				runStep(Step.SAMPLE, restartCount);
+				if ((sample + 1) % swapInterval == 0)
+				{
+					proposeSwaps();
+				}
+				_replicas[0].collectSample();
+				if (_replicas[0].samplingConverged())
+				{
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Fraction of proposed exchanges accepted for each pair of adjacent replicas.
+	 */
+	double[] getSwapAcceptanceRates()
+	{
+		final double[] rates = new double[_swapAttempts.length];
+		for (int i = 0; i < rates.length; ++i)
+		{
+			rates[i] = _swapAttempts[i] > 0 ? (double)_swapAccepts[i] / _swapAttempts[i] : 0.0;
+		}
+		return rates;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private static enum Step
+	{
+		INITIALIZE,
+		BURN_IN,
+		SAMPLE;
+	}
+	
+	private void runStep(Step step, int restartCount)
+	{
+		final List<FutureTask<Object>> futures = new ArrayList<>(_replicas.length - 1);
+		for (int replica = 1; replica < _replicas.length; ++replica)
+		{
+			futures.add(new FutureTask<Object>(new ReplicaTask(replica, step, restartCount), null));
+		}
+		GibbsSolverGraph.runConcurrently(new ReplicaTask(0, step, restartCount), futures);
+	}
+	
+	private final class ReplicaTask implements Runnable
+	{
+		private final int _replica;
+		private final Step _step;
+		private final int _restartCount;
+		
+		private ReplicaTask(int replica, Step step, int restartCount)
+		{
+			_replica = replica;
+			_step = step;
+			_restartCount = restartCount;
+		}
+		
+		@Override
+		public void run()
+		{
+			final GibbsSolverGraph graph = _replicas[_replica];
+			
+			if (_replica == 0)
+			{
+				// The original graph is already initialized and uses the calling thread's stream.
+				switch (_step)
+				{
+				case INITIALIZE:
+					break;
+				case BURN_IN:
+					graph.burnIn(_restartCount);
+					break;
+				case SAMPLE:
+					graph.iterate(graph.updatesPerSample());
+					break;
+				}
+				return;
+			}
+			
+			final DimpleRandom prevRandom = DimpleRandomGenerator.setCurrent(_randoms[_replica]);
+			try
+			{
+				switch (_step)
+				{
+				case INITIALIZE:
+					graph.getModelObject().initialize();
+					graph.setTemperature(_temperatures[_replica]);
+					break;
+				case BURN_IN:
+					graph.randomRestart(_restartCount);
+					graph.iterate(graph.burnInUpdates());
+					break;
+				case SAMPLE:
+					graph.iterate(graph.updatesPerSample());
+					break;
+				}
+			}
+			finally
+			{
+				DimpleRandomGenerator.setCurrent(prevRandom);
+			}
+		}
+	}
+	
+	/**
+	 * Proposes exchanges between either the even or odd pairs of adjacent replicas, alternating
+	 * between the two on each call.
+	 */
+	private void proposeSwaps()
+	{
+		final DimpleRandom rand = DimpleRandomGenerator.current();
+		
+		for (int lower = _swapRound++ & 1; lower + 1 < _replicas.length; lower += 2)
+		{
+			final int upper = lower + 1;
+			final double lowerScore = _replicas[lower].getSampleScore();
+			final double upperScore = _replicas[upper].getSampleScore();
+			final double logAcceptance =
+				(1/_temperatures[lower] - 1/_temperatures[upper]) * (lowerScore - upperScore);
+			
+			++_swapAttempts[lower];
+			if (logAcceptance >= 0 || rand.nextDouble() < Math.exp(logAcceptance))
+			{
+				++_swapAccepts[lower];
+				swapStates(lower, upper);
+			}
+		}
+	}
+	
+	private void swapStates(int replica1, int replica2)
+	{
+		final GibbsSolverGraph graph1 = _replicas[replica1], graph2 = _replicas[replica2];
+		final ISolverVariableGibbs[] variables1 = _variables[replica1], variables2 = _variables[replica2];
+		
+		graph1.deferDeterministicUpdates();
+		graph2.deferDeterministicUpdates();
+		for (int i = 0; i < variables1.length; ++i)
+		{
+			final ISolverVariableGibbs var1 = variables1[i], var2 = variables2[i];
+			final Value value1 = var1.getCurrentSampleValue().clone();
+			var1.setCurrentSample(var2.getCurrentSampleValue());
+			var2.setCurrentSample(value1);
+		}
+		graph1.processDeferredDeterministicUpdates();
+		graph2.processDeferredDeterministicUpdates();
+	}
+}
@@ -0,0 +1,548 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+
+/**
+ * Off-heap storage for samples saved by the Gibbs solver.
+ * <p>
+ * Samples are stored column-wise: each variable has its own {@link IntColumn} or {@link DoubleColumn}
+ * that is made up of fixed-size blocks allocated from a temporary file that is mapped into memory in
+ * large segments. Because the samples live in the operating system's page cache rather than in the
+ * Java heap, the number of samples that can be saved is limited only by disk space, and saving them
+ * produces no garbage.
+ * <p>
+ * The backing file is created in the specified directory when the first block is allocated and is
+ * deleted when the store is {@linkplain #close closed}.
+ * <p>
+ * Used by the Gibbs solver when {@link GibbsOptions#sampleStorageDirectory} is set.
+ * <p>
+ * @since 0.08
+ */
+@ThreadSafe
+public final class GibbsSampleStore implements Closeable
+{
+	/*-----------
+	 * Constants
+	 */
+	
+	static final int BLOCK_BYTES = 1 << 16;
+	
+	static final int BLOCKS_PER_SEGMENT = 1 << 10;
+	
+	private static final long SEGMENT_BYTES = (long)BLOCK_BYTES * BLOCKS_PER_SEGMENT;
+
+	private static final int INTS_PER_BLOCK = BLOCK_BYTES / 4;
+	private static final int DOUBLES_PER_BLOCK = BLOCK_BYTES / 8;
+	
+	/*-------
+	 * State
+	 */
+	
+	private final File _directory;
+	
+	private @Nullable File _file = null;
+	private @Nullable FileChannel _channel = null;
+	
+	/**
+	 * Memory mapped segments of the file, each holding {@link #BLOCKS_PER_SEGMENT} blocks.
+	 */
+	private final ArrayList<ByteBuffer> _segments = new ArrayList<>();
+	
+	private long _blockCount = 0;
+	
+	private volatile boolean _closed = false;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Constructs store whose backing file will be created in given {@code directory}.
+	 */
+	public GibbsSampleStore(File directory)
+	{
+		_directory = directory;
+	}
+	
+	/*-------------------
+	 * Closeable methods
+	 */
+	
+	/**
+	 * Releases the mapped memory and deletes the backing file.
+	 * <p>
+	 * Columns allocated from this store may not be used after it has been closed: attempts to
+	 * read or add samples will throw a {@link DimpleException}.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if (!_closed)
+		{
+			_closed = true;
+			_segments.clear();
+			
+			final FileChannel channel = _channel;
+			if (channel != null)
+			{
+				try
+				{
+					channel.close();
+				}
+				catch (IOException ex)
+				{
+					// Ignore: file will be deleted anyway
+				}
+			}
+			
+			final File file = _file;
+			if (file != null)
+			{
+				file.delete();
+			}
+		}
+	}
+	
+	/*--------------------------
+	 * GibbsSampleStore methods
+	 */
+	
+	/**
+	 * Creates a new empty column for storing integer samples, e.g. discrete value indices.
+	 */
+	public IntColumn createIntColumn()
+	{
+		return new IntColumn(this);
+	}
+	
+	/**
+	 * Creates a new empty column for storing samples with given number of {@code double}
+	 * elements per sample.
+	 */
+	public DoubleColumn createDoubleColumn(int width)
+	{
+		if (width < 1)
+		{
+			throw new IllegalArgumentException(String.format("Column width %d is not positive", width));
+		}
+		return new DoubleColumn(this, width);
+	}
+	
+	/**
+	 * The directory in which the backing file is created.
+	 */
+	public File getDirectory()
+	{
+		return _directory;
+	}
+	
+	/**
+	 * The backing file, or null if no samples have been stored yet.
+	 */
+	public synchronized @Nullable File getFile()
+	{
+		return _file;
+	}
+
+	/**
+	 * The number of bytes allocated to columns from this store.
+	 */
+	public synchronized long getAllocatedBytes()
+	{
+		return _blockCount * BLOCK_BYTES;
+	}
+	
+	/**
+	 * True if the store has been {@linkplain #close closed}.
+	 */
+	public boolean isClosed()
+	{
+		return _closed;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * Allocates a new block of {@link #BLOCK_BYTES} bytes, creating the backing file and mapping
+	 * a new segment as needed.
+	 */
+	private synchronized ByteBuffer allocateBlock()
+	{
+		if (_closed)
+		{
+			throw new DimpleException("Cannot save samples to closed %s", getClass().getSimpleName());
+		}
+		
+		final long block = _blockCount;
+		final int segmentIndex = (int)(block / BLOCKS_PER_SEGMENT);
+		
+		try
+		{
+			FileChannel channel = _channel;
+			if (channel == null)
+			{
+				final File file = _file = File.createTempFile("dimple-samples", ".bin", _directory);
+				file.deleteOnExit();
+				channel = _channel = new RandomAccessFile(file, "rw").getChannel();
+			}
+
+			if (segmentIndex == _segments.size())
+			{
+				_segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segmentIndex * SEGMENT_BYTES, SEGMENT_BYTES));
+			}
+		}
+		catch (IOException ex)
+		{
+			throw new DimpleException(ex, "Cannot allocate Gibbs sample storage in '%s'", _directory);
+		}
+		
+		final ByteBuffer segment = _segments.get(segmentIndex).duplicate();
+		final int offset = (int)(block % BLOCKS_PER_SEGMENT) * BLOCK_BYTES;
+		segment.position(offset);
+		segment.limit(offset + BLOCK_BYTES);
+		
+		++_blockCount;
+		
+		return segment.slice().order(ByteOrder.nativeOrder());
+	}
+	
+	/*---------------
+	 * Column types
+	 */
+	
+	/**
+	 * Base class for a sequence of samples stored in a {@link GibbsSampleStore}.
+	 * <p>
+	 * Columns may be written by only one thread at a time.
+	 */
+	@NotThreadSafe
+	public static abstract class Column
+	{
+		protected final GibbsSampleStore _store;
+		
+		/**
+		 * Number of samples in the column.
+		 */
+		protected int _size = 0;
+		
+		/**
+		 * Number of blocks allocated to the column.
+		 */
+		protected int _blockCount = 0;
+		
+		private Column(GibbsSampleStore store)
+		{
+			_store = store;
+		}
+		
+		/**
+		 * Removes all samples from the column. The storage allocated to the column is retained
+		 * for reuse.
+		 */
+		public void clear()
+		{
+			_size = 0;
+		}
+		
+		/**
+		 * The store from which this column was allocated.
+		 */
+		public GibbsSampleStore getStore()
+		{
+			return _store;
+		}
+		
+		/**
+		 * The number of samples in the column.
+		 */
+		public int size()
+		{
+			return _size;
+		}
+		
+		/**
+		 * Throws {@link DimpleException} if the store has been closed, since the column's storage
+		 * is no longer backed by the file.
+		 */
+		protected void assertOpen()
+		{
+			if (_store.isClosed())
+			{
+				throw new DimpleException("Cannot access samples in closed %s", _store.getClass().getSimpleName());
+			}
+		}
+	}
+	
+	/**
+	 * Column of integer samples.
+	 */
+	public static final class IntColumn extends Column
+	{
+		private IntBuffer[] _blocks = new IntBuffer[4];
+		
+		private IntColumn(GibbsSampleStore store)
+		{
+			super(store);
+		}
+		
+		/**
+		 * Appends {@code value} to the end of the column.
+		 */
+		public void add(int value)
+		{
+			assertOpen();
+			final int size = _size;
+			block(size / INTS_PER_BLOCK).put(size % INTS_PER_BLOCK, value);
+			_size = size + 1;
+		}
+		
+		/**
+		 * Appends all of the samples in {@code other} to the end of this column.
+		 */
+		public void addAll(IntColumn other)
+		{
+			for (int i = 0, n = other._size; i < n; ++i)
+			{
+				add(other.get(i));
+			}
+		}
+		
+		/**
+		 * Copies {@code count} samples starting at sample {@code start} into {@code dest}
+		 * starting at {@code destOffset}.
+		 */
+		public void copyTo(int start, int count, int[] dest, int destOffset)
+		{
+			assertOpen();
+			checkRange(start, count);
+			int length = count;
+			while (length > 0)
+			{
+				final IntBuffer block = _blocks[start / INTS_PER_BLOCK].duplicate();
+				final int offset = start % INTS_PER_BLOCK;
+				final int n = Math.min(length, INTS_PER_BLOCK - offset);
+				block.position(offset);
+				block.get(dest, destOffset, n);
+				start += n;
+				destOffset += n;
+				length -= n;
+			}
+		}
+		
+		/**
+		 * Returns the sample at given {@code index}.
+		 */
+		public int get(int index)
+		{
+			assertOpen();
+			checkRange(index, 1);
+			return _blocks[index / INTS_PER_BLOCK].get(index % INTS_PER_BLOCK);
+		}
+		
+		/**
+		 * Returns a newly allocated array containing all of the samples in the column.
+		 */
+		public int[] toArray()
+		{
+			final int[] array = new int[_size];
+			copyTo(0, _size, array, 0);
+			return array;
+		}
+		
+		private IntBuffer block(int blockIndex)
+		{
+			if (blockIndex == _blockCount)
+			{
+				if (blockIndex == _blocks.length)
+				{
+					_blocks = Arrays.copyOf(_blocks, blockIndex * 2);
+				}
+				_blocks[blockIndex] = _store.allocateBlock().asIntBuffer();
+				++_blockCount;
+			}
+			return _blocks[blockIndex];
+		}
+		
+		private void checkRange(int start, int count)
+		{
+			if (start < 0 || count < 0 || start + count > _size)
+			{
+				throw new IndexOutOfBoundsException(String.format("[%d,%d) not in [0,%d)", start, start + count, _size));
+			}
+		}
+	}
+	
+	/**
+	 * Column of samples each consisting of a fixed number of {@code double} values.
+	 */
+	public static final class DoubleColumn extends Column
+	{
+		private final int _width;
+		private DoubleBuffer[] _blocks = new DoubleBuffer[4];
+		
+		private DoubleColumn(GibbsSampleStore store, int width)
+		{
+			super(store);
+			_width = width;
+		}
+		
+		/**
+		 * Appends a sample with a single element to the end of the column.
+		 * <p>
+		 * Only valid if {@link #width()} is one.
+		 */
+		public void add(double value)
+		{
+			assert(_width == 1);
+			assertOpen();
+			final long index = _size;
+			block(index / DOUBLES_PER_BLOCK).put((int)(index % DOUBLES_PER_BLOCK), value);
+			++_size;
+		}
+		
+		/**
+		 * Appends a sample to the end of the column.
+		 * 
+		 * @param values must contain at least {@link #width()} elements, only the first of which are stored.
+		 */
+		public void add(double[] values)
+		{
+			assertOpen();
+			long index = (long)_size * _width;
+			for (int i = 0; i < _width; ++i, ++index)
+			{
+				block(index / DOUBLES_PER_BLOCK).put((int)(index % DOUBLES_PER_BLOCK), values[i]);
+			}
+			++_size;
+		}
+		
+		/**
+		 * Appends all of the samples in {@code other}, which must have the same width, to the end of this column.
+		 */
+		public void addAll(DoubleColumn other)
+		{
+			if (other._width != _width)
+			{
+				throw new IllegalArgumentException(String.format("Column width %d does not match %d", other._width, _width));
+			}
+			
+			final double[] sample = new double[_width];
+			for (int i = 0, n = other._size; i < n; ++i)
+			{
+				other.copyTo(i, 1, sample, 0);
+				add(sample);
+			}
+		}
+		
+		/**
+		 * Copies the elements of {@code count} samples starting at sample {@code start} into {@code dest}
+		 * starting at {@code destOffset}. This will copy {@code count} times {@link #width()} values.
+		 */
+		public void copyTo(int start, int count, double[] dest, int destOffset)
+		{
+			assertOpen();
+			if (start < 0 || count < 0 || start + count > _size)
+			{
+				throw new IndexOutOfBoundsException(String.format("[%d,%d) not in [0,%d)", start, start + count, _size));
+			}
+			
+			long index = (long)start * _width;
+			long length = (long)count * _width;
+			while (length > 0)
+			{
+				final DoubleBuffer block = _blocks[(int)(index / DOUBLES_PER_BLOCK)].duplicate();
+				final int offset = (int)(index % DOUBLES_PER_BLOCK);
+				final int n = (int)Math.min(length, DOUBLES_PER_BLOCK - offset);
+				block.position(offset);
+				block.get(dest, destOffset, n);
+				index += n;
+				destOffset += n;
+				length -= n;
+			}
+		}
+		
+		/**
+		 * Returns the {@code element}th value of the sample at given {@code index}.
+		 */
+		public double get(int index, int element)
+		{
+			assertOpen();
+			if (index < 0 || index >= _size || element < 0 || element >= _width)
+			{
+				throw new IndexOutOfBoundsException(String.format("Sample [%d][%d] not in [%d][%d]", index, element, _size, _width));
+			}
+			final long i = (long)index * _width + element;
+			return _blocks[(int)(i / DOUBLES_PER_BLOCK)].get((int)(i % DOUBLES_PER_BLOCK));
+		}
+		
+		/**
+		 * Returns a newly allocated array containing all of the values in the column, with the values of each
+		 * sample stored contiguously.
+		 */
+		public double[] toArray()
+		{
+			final double[] array = new double[_size * _width];
+			copyTo(0, _size, array, 0);
+			return array;
+		}
+		
+		/**
+		 * The number of {@code double} values in each sample.
+		 */
+		public int width()
+		{
+			return _width;
+		}
+		
+		private DoubleBuffer block(long blockIndex)
+		{
+			final int i = (int)blockIndex;
+			if (i == _blockCount)
+			{
+				if (i == _blocks.length)
+				{
+					_blocks = Arrays.copyOf(_blocks, i * 2);
+				}
+				_blocks[i] = _store.allocateBlock().asDoubleBuffer();
+				++_blockCount;
+			}
+			return _blocks[i];
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import static java.util.Objects.*;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.model.core.EdgeState;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+
+/**
+ * Flat arrays of the model edges, solver edges and solver factors adjacent to a Gibbs solver variable,
+ * indexed by sibling number.
+ * <p>
+ * Avoids looking up the edges and factors through the graph each time the variable is updated. The
+ * arrays are rebuilt on first use after {@link #invalidate()} or after the structure of the graph
+ * tree has changed.
+ * <p>
+ * @since 0.08
+ */
+@NotThreadSafe
+final class GibbsSiblingCache
+{
+	/*-------
+	 * State
+	 */
+	
+	private final ISolverVariableGibbs _svar;
+	
+	private EdgeState[] _edges = new EdgeState[0];
+	private GibbsSolverEdge<?>[] _solverEdges = new GibbsSolverEdge<?>[0];
+	private ISolverFactorGibbs[] _factors = new ISolverFactorGibbs[0];
+	
+	/**
+	 * The graph whose {@link FactorGraph#graphTreeStructureVersion()} is used to validate the arrays. Null
+	 * if the arrays have not been computed since last invalidated.
+	 */
+	private @Nullable FactorGraph _graph = null;
+	private long _structureVersion = -1;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	GibbsSiblingCache(ISolverVariableGibbs svar)
+	{
+		_svar = svar;
+	}
+	
+	/*---------
+	 * Methods
+	 */
+	
+	/**
+	 * Forces the arrays to be recomputed on next use.
+	 */
+	void invalidate()
+	{
+		_graph = null;
+	}
+	
+	/**
+	 * Recomputes the arrays if they are out of date and returns this object.
+	 */
+	GibbsSiblingCache refresh()
+	{
+		final FactorGraph graph = _graph;
+		if (graph == null || graph.graphTreeStructureVersion() != _structureVersion)
+		{
+			rebuild();
+		}
+		return this;
+	}
+	
+	/**
+	 * The model edge for the given sibling. Only valid after {@link #refresh()}.
+	 */
+	EdgeState edge(int sibling)
+	{
+		return _edges[sibling];
+	}
+	
+	/**
+	 * The solver factor for the given sibling. Only valid after {@link #refresh()}.
+	 */
+	ISolverFactorGibbs factor(int sibling)
+	{
+		return _factors[sibling];
+	}
+	
+	/**
+	 * The solver edge for the given sibling. Only valid after {@link #refresh()}.
+	 */
+	GibbsSolverEdge<?> solverEdge(int sibling)
+	{
+		return _solverEdges[sibling];
+	}
+	
+	/**
+	 * The solver edges for all siblings. Only valid after {@link #refresh()}. Do not modify the returned array.
+	 */
+	GibbsSolverEdge<?>[] solverEdges()
+	{
+		return _solverEdges;
+	}
+	
+	/**
+	 * Updates the message from the given sibling factor to the variable given the current sample values of the
+	 * factor's other siblings and returns its solver edge. Only valid after {@link #refresh()}.
+	 */
+	GibbsSolverEdge<?> updateEdgeMessage(int sibling)
+	{
+		final GibbsSolverEdge<?> sedge = _solverEdges[sibling];
+		_factors[sibling].updateEdgeMessage(_edges[sibling], sedge);
+		return sedge;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private void rebuild()
+	{
+		final Variable var = _svar.getModelObject();
+		final ISolverFactorGraph sfg = _svar.getParentGraph();
+		final FactorGraph fg = sfg.getModelObject();
+		final int nSiblings = var.getSiblingCount();
+		
+		if (_edges.length != nSiblings)
+		{
+			_edges = new EdgeState[nSiblings];
+			_solverEdges = new GibbsSolverEdge<?>[nSiblings];
+			_factors = new ISolverFactorGibbs[nSiblings];
+		}
+		
+		for (int sibling = 0; sibling < nSiblings; ++sibling)
+		{
+			final int edgeIndex = var.getSiblingEdgeIndex(sibling);
+			final EdgeState edgeState = requireNonNull(fg.getGraphEdgeState(edgeIndex));
+			_edges[sibling] = edgeState;
+			_solverEdges[sibling] = requireNonNull((GibbsSolverEdge<?>)sfg.getSolverEdge(edgeIndex));
+			_factors[sibling] = (ISolverFactorGibbs)sfg.getSolverFactorForEdge(edgeState);
+		}
+		
+		_graph = fg;
+		_structureVersion = fg.graphTreeStructureVersion();
+	}
+}
@@ -18,12 +18,19 @@ package com.analog.lyric.dimple.solvers.gibbs;
 
 import static java.util.Objects.*;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -69,11 +76,14 @@ import com.analog.lyric.dimple.model.variables.RealJoint;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.model.variables.VariableBlock;
 import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.schedulers.GibbsChromaticScheduler;
 import com.analog.lyric.dimple.schedulers.SchedulerOptionKey;
 import com.analog.lyric.dimple.schedulers.schedule.IGibbsSchedule;
 import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ColorScheduleEntry;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
 import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomBernoulli;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomBeta;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomBinomial;
@@ -96,7 +106,11 @@ import com.analog.lyric.dimple.solvers.interfaces.ISolverBlastFromThePastFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.options.IOption;
+import com.analog.lyric.options.Option;
+import com.google.common.primitives.Doubles;
 
 /**
  * Solver-specific factor graph for Gibbs solver.
@@ -114,6 +128,18 @@ public class GibbsSolverGraph
 	
 	private static final double LOG2 = Math.log(2);
 	
+	/**
+	 * Minimum number of variables of a color class to assign to each task when updating
+	 * color classes concurrently.
+	 */
+	private static final int MIN_VARIABLES_PER_COLOR_TASK = 32;
+	
+	/**
+	 * Maximum number of samples for which the incrementally maintained sample score will be used
+	 * before it is recomputed from scratch to guard against accumulated round-off error.
+	 */
+	static final int SAMPLE_SCORE_RECOMPUTE_INTERVAL = 1000;
+	
 	/**
 	 * Bits in {@link #_flags} reserved by this class and its superclasses.
 	 * @see GibbsSolverGraphEvent
@@ -133,27 +159,113 @@ public class GibbsSolverGraph
 	private int _scansPerSample = 1;
 	private int _burnInScans = GibbsOptions.burnInScans.defaultIntValue();
 	private int _numRandomRestarts = GibbsOptions.numRandomRestarts.defaultIntValue();
+	private int _numChains = GibbsOptions.numChains.defaultIntValue();
+	private int _numReplicas = GibbsOptions.numReplicas.defaultIntValue();
+	private double _maxReplicaTemperature = GibbsOptions.maxReplicaTemperature.defaultDoubleValue();
+	private int _replicaSwapInterval = GibbsOptions.replicaSwapInterval.defaultIntValue();
+	private double[] _replicaSwapAcceptanceRates = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 	private boolean _temper = false;
 	private double _initialTemperature;
 	private double _temperingDecayConstant;
 	private double _temperature;
 	private double _minPotential = Double.MAX_VALUE;
 	private boolean _firstSample = true;
+	
+	/**
+	 * Running value of {@link #getSampleScore()} for the current sample values, maintained
+	 * incrementally by variable updates. Only meaningful when {@link #_sampleScoreValid} is true.
+	 */
+	private double _sampleScore = 0.0;
+	
+	/**
+	 * False if a sample value has changed in a way that was not reflected in {@link #_sampleScore}.
+	 */
+	private boolean _sampleScoreValid = false;
+	
+	/**
+	 * Number of samples collected since {@link #_sampleScore} was last computed from scratch.
+	 */
+	private int _samplesSinceScoreRecompute = 0;
 	private @Nullable DoubleArrayList _scoreArray;
 	
 	/**
-	 * Priority queue of deterministic factors whose outputs should be
-	 * reevaluated. Lazily created.
+	 * Only every nth collected sample is saved, where n is this value.
+	 */
+	private int _sampleThinning = GibbsOptions.sampleThinning.defaultIntValue();
+	
+	/**
+	 * Number of samples collected since last initialization.
+	 */
+	private long _samplesCollected = 0;
+	
+	/**
+	 * Off-heap storage for saved samples if {@link GibbsOptions#sampleStorageDirectory} is set. Only
+	 * used on the root graph.
+	 */
+	private @Nullable GibbsSampleStore _sampleStore = null;
+	
+	private double _targetEffectiveSampleSize = 0.0;
+	private double _targetSplitRHat = 0.0;
+	private int _convergenceDiagnosticInterval = GibbsOptions.convergenceDiagnosticInterval.defaultIntValue();
+	
+	/**
+	 * Convergence diagnostics for samples collected since last burn-in. Only used on the root graph.
+	 */
+	private @Nullable GibbsConvergenceMonitor _convergenceMonitor = null;
+	
+	/**
+	 * State for deferring update of deterministic directed factor outputs.
+	 */
+	private static final class DeterministicUpdates
+	{
+		/**
+		 * Priority queue of deterministic factors whose outputs should be
+		 * reevaluated. Lazily created.
+		 */
+		private @Nullable KeyedPriorityQueue<ISolverFactorGibbs, SFactorUpdate> _deferredFactorUpdates = null;
+		
+		/**
+		 * The number of requests to defer update of deterministic directed factor outputs.
+		 * If greater than zero, {@link #scheduleDeterministicDirectedUpdate(ISolverFactorGibbs, int, Value)} will
+		 * defer execution until later. This counter may be greater than one as a result of recursive
+		 * calls.
+		 */
+		private int _deferCounter = 0;
+	}
+	
+	private final DeterministicUpdates _deterministicUpdates = new DeterministicUpdates();
+	
+	/**
+	 * Deterministic update state for each thread used while {@link #_updatingConcurrently} is true. Since
+	 * the variables of a color class do not share any deterministic dependents, each thread can process
+	 * its own updates independently.
+	 */
+	private final ThreadLocal<DeterministicUpdates> _threadDeterministicUpdates =
+		new ThreadLocal<DeterministicUpdates>() {
+			@Override
+			protected DeterministicUpdates initialValue()
+			{
+				return new DeterministicUpdates();
+			}
+		};
+	
+	/**
+	 * True while the variables of a {@link ColorScheduleEntry} are being updated on multiple threads.
+	 */
+	private boolean _updatingConcurrently = false;
+	
+	/**
+	 * Solver variables for each {@link ColorScheduleEntry} in the schedule. Cleared on initialization.
 	 */
-	private @Nullable KeyedPriorityQueue<ISolverFactorGibbs, SFactorUpdate> _deferredDeterministicFactorUpdates = null;
+	private final IdentityHashMap<ColorScheduleEntry, ISolverVariableGibbs[]> _colorSolverVariables =
+		new IdentityHashMap<>();
 	
 	/**
-	 * The number of requests to defer update of deterministic directed factor outputs.
-	 * If greater than zero, {@link #scheduleDeterministicDirectedUpdate(ISolverFactorGibbs, int)} will
-	 * defer execution until later. This counter may be greater than one as a result of recursive
-	 * calls.
+	 * Random streams used by tasks updating color classes concurrently, indexed by task. Task zero
+	 * runs on the calling thread using its own stream, so the first entry is not used. Lazily
+	 * created from the calling thread's stream and reset by {@link #setSeed} and {@link #initialize}.
 	 */
-	private int _deferDeterministicFactorUpdatesCounter = 0;
+	private DimpleRandom[] _workerRandoms = new DimpleRandom[0];
 
 	/*--------------
 	 * Construction
@@ -357,24 +469,52 @@ public class GibbsSolverGraph
 	{
 		_numSamples = getOptionOrDefault(GibbsOptions.numSamples);
 		_numRandomRestarts = getOptionOrDefault(GibbsOptions.numRandomRestarts);
+		_numChains = getOptionOrDefault(GibbsOptions.numChains);
+		_numReplicas = getOptionOrDefault(GibbsOptions.numReplicas);
+		_maxReplicaTemperature = getOptionOrDefault(GibbsOptions.maxReplicaTemperature);
+		_replicaSwapInterval = getOptionOrDefault(GibbsOptions.replicaSwapInterval);
+		_replicaSwapAcceptanceRates = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		_scansPerSample = getOptionOrDefault(GibbsOptions.scansPerSample);
 		_burnInScans = getOptionOrDefault(GibbsOptions.burnInScans);
 		final boolean saveAllScores = getOptionOrDefault(GibbsOptions.saveAllScores);
+		_sampleThinning = getOptionOrDefault(GibbsOptions.sampleThinning);
+		_targetEffectiveSampleSize = getOptionOrDefault(GibbsOptions.targetEffectiveSampleSize);
+		_targetSplitRHat = getOptionOrDefault(GibbsOptions.targetSplitRHat);
+		_convergenceDiagnosticInterval = getOptionOrDefault(GibbsOptions.convergenceDiagnosticInterval);
+		_samplesCollected = 0;
 		_temper = getOptionOrDefault(GibbsOptions.enableAnnealing);
 		_initialTemperature = getOptionOrDefault(GibbsOptions.initialTemperature);
 		_temperingDecayConstant = 1 - LOG2/getOptionOrDefault(GibbsOptions.annealingHalfLife);
+		if (_temper && _numReplicas > 1)
+		{
+			throw new DimpleException("%s cannot be combined with %s", GibbsOptions.enableAnnealing,
+				GibbsOptions.numReplicas);
+		}
 		
 		Long seed = getOption(DimpleOptions.randomSeed);
 		if (seed != null)
 		{
 			setSeed(seed);
 		}
+		_workerRandoms = new DimpleRandom[0];
+		_colorSolverVariables.clear();
 
 		// Make sure the schedule is created before factor initialization to allow custom factors to modify the schedule if needed
 		final ISchedule schedule = getSchedule();
 		validateSchedule(schedule);
 
 		FactorGraph fg = _model;
+		if (!fg.hasParentGraph())
+		{
+			// Discard samples from previous run before variables allocate new storage.
+			closeSampleStore();
+			final String sampleDirectory = getOptionOrDefault(GibbsOptions.sampleStorageDirectory);
+			if (!sampleDirectory.isEmpty())
+			{
+				_sampleStore = new GibbsSampleStore(new File(sampleDirectory));
+			}
+		}
+		
 		Map<Node,Integer> nodeOrder = DirectedNodeSorter.orderDirectedNodes(fg);
 		for (Factor factor : fg.getFactors())
 		{
@@ -420,6 +560,7 @@ public class GibbsSolverGraph
 		_scheduleIterator = schedule.iterator();
 		_minPotential = Double.POSITIVE_INFINITY;
 		_firstSample = true;
+		_sampleScoreValid = false;
 		
 		setUpdatesPerSampleFromScans();
 		setBurnInUpdatesFromScans();
@@ -441,6 +582,24 @@ public class GibbsSolverGraph
 		}
 		_scoreArray = scoreArray;
 		
+		GibbsConvergenceMonitor convergenceMonitor = null;
+		if (!fg.hasParentGraph())
+		{
+			final List<ISolverVariableGibbs> monitoredVariables = new ArrayList<>();
+			for (Variable variable : fg.getVariables())
+			{
+				final ISolverVariableGibbs svar = getSolverVariable(variable);
+				if (svar.getOptionOrDefault(GibbsOptions.monitorConvergence))
+				{
+					monitoredVariables.add(svar);
+				}
+			}
+			if (!monitoredVariables.isEmpty() || _targetEffectiveSampleSize > 0 || _targetSplitRHat > 0)
+			{
+				convergenceMonitor = new GibbsConvergenceMonitor(monitoredVariables);
+			}
+		}
+		_convergenceMonitor = convergenceMonitor;
 	}
 		
 	/**
@@ -459,19 +618,65 @@ public class GibbsSolverGraph
 	 * }
 	 * </pre>
 	 * </blockquote>
-	 * </ol>
+	 * <p>
+	 * If {@link GibbsOptions#targetEffectiveSampleSize} or {@link GibbsOptions#targetSplitRHat} is set, then
+	 * sampling for each restart stops early once the {@linkplain #getConvergenceMonitor() convergence
+	 * diagnostics} meet the targets.
+	 * <p>
+	 * If {@link #getNumChains()} is greater than one, then the additional chains are run concurrently
+	 * on independent copies of the graph, and when they are done, their beliefs, saved samples and
+	 * scores are added to those of this graph, and the best sample is taken from whichever chain
+	 * produced the lowest score. Saved samples and scores are ordered by chain. Events are only
+	 * raised for the chain run on this graph.
+	 * <p>
+	 * If {@link GibbsOptions#numReplicas} is greater than one, then each burn-in and sample
+	 * instead advances all of the replicas concurrently, with samples taken from this graph,
+	 * which is the replica with temperature one.
 	 */
 	@Override
 	public void solveOneStep()
 	{
-		_minPotential = Double.POSITIVE_INFINITY;
-		_firstSample = true;
+		final List<GibbsChain> chains = createChains();
+		final Runnable sampler = new Runnable() {
+			@Override
+			public void run()
+			{
+				_minPotential = Double.POSITIVE_INFINITY;
+				_firstSample = true;
+				
+				if (_numReplicas > 1)
+				{
+					final GibbsReplicaExchange replicas = new GibbsReplicaExchange(GibbsSolverGraph.this,
+						_numReplicas, _maxReplicaTemperature, baseSeed());
+					replicas.solve(_numRandomRestarts, _numSamples, _replicaSwapInterval);
+					_replicaSwapAcceptanceRates = replicas.getSwapAcceptanceRates();
+					return;
+				}
+				
+				for (int restartCount = 0; restartCount <= _numRandomRestarts; restartCount++)
+				{
+					burnIn(restartCount);
+					for (int iter = 0; iter < _numSamples; iter++)
+					{
+						oneSample();
+						if (samplingConverged())
+							break;
+					}
+				}
+			}
+		};
 		
-		for (int restartCount = 0; restartCount <= _numRandomRestarts; restartCount++)
+		if (chains.isEmpty())
 		{
-			burnIn(restartCount);
-			for (int iter = 0; iter < _numSamples; iter++)
-				oneSample();
+			sampler.run();
+		}
+		else
+		{
+			runConcurrently(sampler, chains);
+			for (GibbsChain chain : chains)
+			{
+				mergeChain(chain);
+			}
 		}
 	}
 	
@@ -503,6 +708,12 @@ public class GibbsSolverGraph
 		randomRestart(restartCount);
 		iterate(_burnInUpdates);
 		
+		final GibbsConvergenceMonitor convergenceMonitor = _convergenceMonitor;
+		if (convergenceMonitor != null)
+		{
+			convergenceMonitor.reset();
+		}
+		
 		if (GibbsSolverGraphEvent.raiseBurnInEvent(this))
 		{
 			raiseEvent(new GibbsBurnInEvent(this, restartCount, _temper ? _temperature : Double.NaN));
@@ -541,7 +752,12 @@ public class GibbsSolverGraph
 	 * specified number of single-variable updates, regardless of other parameter settings.
 	 * The iterate() method behaves differently than for other solvers due to the fact that the
 	 * {@link #update()} method for Gibbs-specific schedules will update only a single variable.
-	 * Also, multithreaded operation for Gibbs is not supported
+	 * <p>
+	 * The general multithreading modes are not supported for Gibbs. Instead, when using the
+	 * {@link GibbsChromaticScheduler}, the variables in each color class of the schedule are
+	 * updated concurrently using the shared {@link ThreadPool}, with all of the variables of one
+	 * color being updated before the next color is started. A schedule entry containing a color
+	 * class counts as a single update.
 	 */
 	@Override
 	public void iterate(int numUpdates)
@@ -568,20 +784,360 @@ public class GibbsSolverGraph
 		catch (InterruptedException e) {return;}
 	}
 
+	/**
+	 * Runs {@link ColorScheduleEntry} entries produced by the {@link GibbsChromaticScheduler}.
+	 * <p>
+	 * The variables in the color class are split into contiguous chunks, one for each task. All but
+	 * the first task are submitted to the shared {@link ThreadPool} and the first is run on the calling
+	 * thread, which then runs any tasks that have not yet been started by the pool before waiting for
+	 * the rest to complete. Each task other than the first uses its own random stream derived from the
+	 * calling thread's stream, so that results are repeatable for a given seed and number of threads.
+	 * <p>
+	 * Since variables of the same color share no factors and no deterministic dependents, their updates
+	 * do not interfere with each other. Note, however, that any event listeners may be invoked from
+	 * pool threads while this is running.
+	 */
+	@Override
+	protected void runCustomScheduleEntry(IScheduleEntry entry)
+	{
+		if (entry instanceof ColorScheduleEntry)
+		{
+			runColorScheduleEntry((ColorScheduleEntry)entry);
+		}
+		else
+		{
+			super.runCustomScheduleEntry(entry);
+		}
+	}
+	
+	private void runColorScheduleEntry(ColorScheduleEntry entry)
+	{
+		final ISolverVariableGibbs[] svars = colorSolverVariables(entry);
+		final int nVars = svars.length;
+		
+		int nTasks = (nVars + MIN_VARIABLES_PER_COLOR_TASK - 1) / MIN_VARIABLES_PER_COLOR_TASK;
+		if (nTasks > 1)
+		{
+			ThreadPool.getThreadPool();
+			nTasks = Math.min(nTasks, ThreadPool.getNumThreads());
+		}
+		
+		if (nTasks <= 1 || _updatingConcurrently)
+		{
+			for (ISolverVariableGibbs svar : svars)
+			{
+				svar.update();
+			}
+			return;
+		}
+		
+		final DimpleRandom[] randoms = workerRandoms(nTasks);
+		final List<FutureTask<Object>> futures = new ArrayList<>(nTasks - 1);
+		for (int task = 1; task < nTasks; ++task)
+		{
+			futures.add(new FutureTask<Object>(
+				new ColorUpdateTask(svars, chunkStart(task, nTasks, nVars), chunkStart(task + 1, nTasks, nVars),
+					randoms[task]), null));
+		}
+		
+		_updatingConcurrently = true;
+		try
+		{
+			runConcurrently(new ColorUpdateTask(svars, 0, chunkStart(1, nTasks, nVars), null), futures);
+		}
+		finally
+		{
+			_updatingConcurrently = false;
+		}
+	}
+	
+	/**
+	 * Submits {@code futures} to the shared {@link ThreadPool}, runs {@code callerTask} on the calling thread,
+	 * then runs any of the {@code futures} that the pool has not yet started and waits for the rest to
+	 * complete. Running unstarted tasks on the calling thread avoids deadlock when this is invoked from a
+	 * pool thread.
+	 */
+	static void runConcurrently(Runnable callerTask, List<? extends FutureTask<?>> futures)
+	{
+		final ExecutorService service = ThreadPool.getThreadPool();
+		for (FutureTask<?> future : futures)
+		{
+			service.execute(future);
+		}
+		
+		try
+		{
+			callerTask.run();
+			
+			// This is a no-op for tasks that have already been started.
+			for (FutureTask<?> future : futures)
+			{
+				future.run();
+			}
+			
+			for (FutureTask<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new DimpleException(ex);
+		}
+		catch (ExecutionException ex)
+		{
+			final Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error)
+			{
+				throw (Error)cause;
+			}
+			throw new DimpleException(ex);
+		}
+		finally
+		{
+			// Does nothing unless an exception prevented the tasks from completing.
+			for (FutureTask<?> future : futures)
+			{
+				future.cancel(true);
+			}
+		}
+	}
+	
+	/**
+	 * Creates copies of the graph for running the additional chains specified by {@link #getNumChains()}.
+	 */
+	private List<GibbsChain> createChains()
+	{
+		final int nChains = _numChains;
+		if (nChains <= 1)
+		{
+			return Collections.emptyList();
+		}
+		
+		if (!_model.getFactorGraphStreams().isEmpty())
+		{
+			throw new DimpleException("%s is not supported for graphs with factor graph streams",
+				GibbsOptions.numChains);
+		}
+		
+		final long baseSeed = baseSeed();
+		final List<GibbsChain> chains = new ArrayList<>(nChains - 1);
+		for (int chain = 1; chain < nChains; ++chain)
+		{
+			final Map<Object,Object> old2new = new HashMap<>();
+			final long seed = DimpleRandom.splitSeed(baseSeed, chain);
+			chains.add(new GibbsChain(createCopy(old2new, seed), old2new, seed));
+		}
+		return chains;
+	}
+	
+	/**
+	 * Seed from which random streams for copies of the graph are derived. This is the
+	 * {@link DimpleOptions#randomSeed} option if set, and otherwise is drawn from the current
+	 * thread's random stream.
+	 */
+	private long baseSeed()
+	{
+		final Long seed = getOption(DimpleOptions.randomSeed);
+		return seed != null ? seed : DimpleRandomGenerator.current().nextLong();
+	}
+	
+	/**
+	 * Creates a copy of the graph with the same solver and options that uses the given random seed and
+	 * runs a single chain. The {@code old2new} map will be filled in with the mapping from objects in this
+	 * graph to the copy.
+	 */
+	GibbsSolverGraph createCopy(Map<Object,Object> old2new, long seed)
+	{
+		final FactorGraph model = _model.copyRoot(old2new);
+		final GibbsSolverGraph copy = (GibbsSolverGraph)requireNonNull(
+			model.setSolverFactory(requireNonNull(_model.getFactorGraphFactory())));
+		
+		// Copy options that were set directly on solver objects.
+		Option.setOptions(copy, getLocalOptions().toArray(new IOption<?>[0]));
+		for (Variable var : _model.getVariables())
+		{
+			final Variable varCopy = (Variable)requireNonNull(old2new.get(var));
+			Option.setOptions(copy.getSolverVariable(varCopy),
+				getSolverVariable(var).getLocalOptions().toArray(new IOption<?>[0]));
+		}
+		
+		copy.setOption(GibbsOptions.numChains, 1);
+		copy.setOption(DimpleOptions.randomSeed, seed);
+		return copy;
+	}
+	
+	/**
+	 * Adds results from a completed chain to this graph.
+	 */
+	private void mergeChain(GibbsChain chain)
+	{
+		final GibbsSolverGraph chainGraph = chain._solverGraph;
+		
+		final boolean useChainBest = chainGraph._minPotential < _minPotential;
+		if (useChainBest)
+		{
+			_minPotential = chainGraph._minPotential;
+		}
+		
+		final DoubleArrayList scoreArray = _scoreArray, chainScoreArray = chainGraph._scoreArray;
+		if (scoreArray != null && chainScoreArray != null)
+		{
+			scoreArray.addAllOf(chainScoreArray);
+		}
+		
+		for (Variable var : _model.getVariables())
+		{
+			final Variable chainVar = (Variable)requireNonNull(chain._old2new.get(var));
+			getSolverVariable(var).mergeChain(chainGraph.getSolverVariable(chainVar), useChainBest);
+		}
+		
+		chainGraph.closeSampleStore();
+	}
+	
+	/**
+	 * An additional chain run on an independent copy of the graph with its own random stream.
+	 */
+	private static final class GibbsChain extends FutureTask<Object>
+	{
+		private final Map<Object,Object> _old2new;
+		private final GibbsSolverGraph _solverGraph;
+		
+		private GibbsChain(final GibbsSolverGraph solverGraph, Map<Object,Object> old2new, final long seed)
+		{
+			super(new Runnable() {
+				@Override
+				public void run()
+				{
+					final DimpleRandom prevRandom = DimpleRandomGenerator.setCurrent(new DimpleRandom(seed));
+					try
+					{
+						final FactorGraph model = solverGraph.getModelObject();
+						model.initialize();
+						model.solveOneStep();
+					}
+					finally
+					{
+						DimpleRandomGenerator.setCurrent(prevRandom);
+					}
+				}
+			}, null);
+			
+			_old2new = old2new;
+			_solverGraph = solverGraph;
+		}
+	}
+	
+	private static int chunkStart(int task, int nTasks, int nVars)
+	{
+		return (int)((long)task * nVars / nTasks);
+	}
+	
+	private ISolverVariableGibbs[] colorSolverVariables(ColorScheduleEntry entry)
+	{
+		ISolverVariableGibbs[] svars = _colorSolverVariables.get(entry);
+		if (svars == null || svars.length != entry.size())
+		{
+			svars = new ISolverVariableGibbs[entry.size()];
+			for (int i = 0; i < svars.length; ++i)
+			{
+				svars[i] = getSolverVariable(entry.getVariable(i));
+			}
+			_colorSolverVariables.put(entry, svars);
+		}
+		return svars;
+	}
+	
+	private DimpleRandom[] workerRandoms(int nTasks)
+	{
+		DimpleRandom[] randoms = _workerRandoms;
+		if (randoms.length < nTasks)
+		{
+			final DimpleRandom base = DimpleRandomGenerator.current();
+			final int start = randoms.length;
+			randoms = _workerRandoms = Arrays.copyOf(randoms, nTasks);
+			for (int i = start; i < nTasks; ++i)
+			{
+				randoms[i] = base.split(i);
+			}
+		}
+		return randoms;
+	}
+	
+	/**
+	 * Updates a contiguous range of the variables of a color class using a given random stream, or
+	 * the current thread's stream if null.
+	 */
+	private static final class ColorUpdateTask implements Runnable
+	{
+		private final ISolverVariableGibbs[] _svars;
+		private final int _start;
+		private final int _end;
+		private final @Nullable DimpleRandom _random;
+		
+		private ColorUpdateTask(ISolverVariableGibbs[] svars, int start, int end, @Nullable DimpleRandom random)
+		{
+			_svars = svars;
+			_start = start;
+			_end = end;
+			_random = random;
+		}
+		
+		@Override
+		public void run()
+		{
+			final DimpleRandom random = _random;
+			final DimpleRandom prevRandom = random != null ? DimpleRandomGenerator.setCurrent(random) : null;
+			try
+			{
+				for (int i = _start; i < _end; ++i)
+				{
+					_svars[i].update();
+				}
+			}
+			finally
+			{
+				if (prevRandom != null)
+				{
+					DimpleRandomGenerator.setCurrent(prevRandom);
+				}
+			}
+		}
+	}
+
 	
 	@SuppressWarnings("null")
 	protected void oneSample()
 	{
 		iterate(_updatesPerSample);
+		collectSample();
+	}
+	
+	/**
+	 * Updates beliefs, saved samples, best sample and scores from the current sample values, and
+	 * lowers the temperature if annealing.
+	 */
+	@SuppressWarnings("null")
+	void collectSample()
+	{
+		final boolean saveSample = ++_samplesCollected % _sampleThinning == 0;
 		for (Variable v : _model.getVariables())
 		{
 			ISolverVariableGibbs vs = getSolverVariable(v);
 			vs.updateBelief();
-			vs.saveCurrentSample();		// Note that the first sample saved is one full sample after burn in, not immediately after burn in (in case the burn in is zero)
+			if (saveSample)
+			{
+				vs.saveCurrentSample();		// Note that the first sample saved is one full sample after burn in, not immediately after burn in (in case the burn in is zero)
+			}
 		}
 		
 		// Save the best sample value seen so far
-		final double totalPotential = getSampleScore();
+		final double totalPotential = currentSampleScore();
 		final boolean wasMininum = totalPotential < _minPotential || _firstSample;
 		if (wasMininum)
 		{
@@ -593,11 +1149,17 @@ public class GibbsSolverGraph
 		
 		// If requested save score value for each sample
 		final DoubleArrayList scoreArray = _scoreArray;
-		if (scoreArray != null)
+		if (scoreArray != null && saveSample)
 		{
 			scoreArray.add(totalPotential);
 		}
 		
+		final GibbsConvergenceMonitor convergenceMonitor = _convergenceMonitor;
+		if (convergenceMonitor != null)
+		{
+			convergenceMonitor.addSample(totalPotential);
+		}
+		
 		// If tempering, reduce the temperature
 		double oldTemperature = Double.NaN, newTemperature = Double.NaN;
 		if (_temper)
@@ -614,10 +1176,69 @@ public class GibbsSolverGraph
 	}
 	
 	
+	/**
+	 * Returns {@link #getSampleScore()} using the incrementally maintained value when it is
+	 * valid, recomputing it from scratch otherwise and at least every
+	 * {@link #SAMPLE_SCORE_RECOMPUTE_INTERVAL} samples.
+	 */
+	private double currentSampleScore()
+	{
+		if (!_sampleScoreValid || ++_samplesSinceScoreRecompute >= SAMPLE_SCORE_RECOMPUTE_INTERVAL)
+		{
+			_sampleScore = getSampleScore();
+			_sampleScoreValid = true;
+			_samplesSinceScoreRecompute = 0;
+		}
+		return _sampleScore;
+	}
+	
+	/**
+	 * True if a variable update may adjust the running sample score using
+	 * {@link #adjustSampleScore(double)}.
+	 * <p>
+	 * This is false if the running score is already out of date or if variables are currently being
+	 * updated concurrently.
+	 */
+	boolean isSampleScoreTracked()
+	{
+		return _sampleScoreValid && !_updatingConcurrently;
+	}
+	
+	/**
+	 * Adds {@code delta} to the running sample score and marks it as valid. Should only be invoked
+	 * by a variable update that saw {@link #isSampleScoreTracked()} return true before modifying its
+	 * sample value, with the change in total energy resulting from that modification.
+	 * <p>
+	 * A non-finite {@code delta} invalidates the running score instead.
+	 */
+	void adjustSampleScore(double delta)
+	{
+		if (Doubles.isFinite(delta))
+		{
+			_sampleScore += delta;
+			_sampleScoreValid = true;
+		}
+		else
+		{
+			_sampleScoreValid = false;
+		}
+	}
+	
+	/**
+	 * Indicates that a sample value has changed, so that the running sample score must be recomputed
+	 * unless the change is accounted for by {@link #adjustSampleScore(double)}.
+	 */
+	void invalidateSampleScore()
+	{
+		_sampleScoreValid = false;
+	}
+	
 	@SuppressWarnings("null")
 	@Override
 	public void postAdvance()
 	{
+		invalidateSampleScore();
+		
 		//In the case of rolled up graphs, we make sure we randomly restart
 		//the variables that are added to the end of the chain.
 		for (FactorGraphStream fgs : getModel().getFactorGraphStreams())
@@ -742,6 +1363,36 @@ public class GibbsSolverGraph
 			return null;
 	}
 	
+	/**
+	 * The off-heap storage used for samples saved by variables in this graph tree, if any.
+	 * <p>
+	 * This is non-null when {@link GibbsOptions#sampleStorageDirectory} was set on the root graph
+	 * when it was last initialized.
+	 * <p>
+	 * @since 0.08
+	 */
+	public @Nullable GibbsSampleStore getSampleStore()
+	{
+		return ((GibbsSolverGraph)getRootSolverGraph())._sampleStore;
+	}
+	
+	/**
+	 * Releases the storage used for samples saved by variables in this graph tree, if any, and deletes
+	 * the backing file. The saved samples may not be accessed after this.
+	 * <p>
+	 * @since 0.08
+	 */
+	public void closeSampleStore()
+	{
+		final GibbsSolverGraph root = (GibbsSolverGraph)getRootSolverGraph();
+		final GibbsSampleStore store = root._sampleStore;
+		if (store != null)
+		{
+			root._sampleStore = null;
+			store.close();
+		}
+	}
+	
 	/**
 	 * Get the rejection rate of the sampler for variables and block entries for which it applies
 	 * @return rejection rate
@@ -803,6 +1454,7 @@ public class GibbsSolverGraph
 	public void setSeed(long seed)
 	{
 		DimpleRandomGenerator.setSeed(seed);
+		_workerRandoms = new DimpleRandom[0];
 	}
 	
 	/**
@@ -832,6 +1484,24 @@ public class GibbsSolverGraph
 		return _numSamples;
 	}
 	
+	/**
+	 * The number of variable updates performed for each sample, as determined by
+	 * {@link GibbsOptions#scansPerSample} and the size of the schedule.
+	 */
+	int updatesPerSample()
+	{
+		return _updatesPerSample;
+	}
+	
+	/**
+	 * The number of variable updates performed during burn-in, as determined by
+	 * {@link GibbsOptions#burnInScans} and the size of the schedule.
+	 */
+	int burnInUpdates()
+	{
+		return _burnInUpdates;
+	}
+	
 	/**
 	 * @deprecated This method will be removed in a future release.
 	 */
@@ -967,6 +1637,73 @@ public class GibbsSolverGraph
 		return _numRandomRestarts;
 	}
 	
+	/**
+	 * Number of independent chains to run during solve.
+	 * <p>
+	 * This is automatically set from {@link GibbsOptions#numChains} option during
+	 * {@link #initialize}.
+	 * @since 0.08
+	 */
+	public int getNumChains()
+	{
+		return _numChains;
+	}
+	
+	/**
+	 * Number of replicas to use for parallel tempering during solve.
+	 * <p>
+	 * This is automatically set from {@link GibbsOptions#numReplicas} option during
+	 * {@link #initialize}.
+	 * @since 0.08
+	 */
+	public int getNumReplicas()
+	{
+		return _numReplicas;
+	}
+	
+	/**
+	 * Convergence diagnostics for the samples generated since the last burn-in, or null if not enabled.
+	 * <p>
+	 * This is created when the graph is initialized if {@link GibbsOptions#monitorConvergence} is set
+	 * for any variable, or if {@link GibbsOptions#targetEffectiveSampleSize} or
+	 * {@link GibbsOptions#targetSplitRHat} is positive. Always null for subgraphs.
+	 * <p>
+	 * @since 0.08
+	 */
+	public @Nullable GibbsConvergenceMonitor getConvergenceMonitor()
+	{
+		return _convergenceMonitor;
+	}
+	
+	/**
+	 * True if sampling for the current restart may stop because the samples have met the
+	 * targets specified by {@link GibbsOptions#targetEffectiveSampleSize} and
+	 * {@link GibbsOptions#targetSplitRHat}. Only checked every
+	 * {@link GibbsOptions#convergenceDiagnosticInterval} samples.
+	 */
+	boolean samplingConverged()
+	{
+		final GibbsConvergenceMonitor monitor = _convergenceMonitor;
+		return monitor != null &&
+			monitor.getSampleCount() % _convergenceDiagnosticInterval == 0 &&
+			monitor.isConverged(_targetEffectiveSampleSize, _targetSplitRHat);
+	}
+	
+	/**
+	 * The fraction of proposed exchanges between each pair of adjacent replicas that were accepted during
+	 * the last solve using parallel tempering.
+	 * <p>
+	 * The ith entry is for exchanges between the ith and (i+1)th replicas, where the replicas are ordered
+	 * by increasing temperature. Returns an empty array if parallel tempering was not used.
+	 * <p>
+	 * @since 0.08
+	 * @see GibbsOptions#numReplicas
+	 */
+	public double[] getReplicaSwapAcceptanceRates()
+	{
+		return _replicaSwapAcceptanceRates.clone();
+	}
+	
 	// Set the default sampler for Real (and RealJoint) variables
 	public void setDefaultRealSampler(String samplerName)
 	{
@@ -1192,19 +1929,21 @@ public class GibbsSolverGraph
 
 	void scheduleDeterministicDirectedUpdate(ISolverFactorGibbs sfactor, int changedVariableIndex, Value oldValue)
 	{
-		if (_deferDeterministicFactorUpdatesCounter > 0)
+		final DeterministicUpdates state = deterministicUpdates();
+		if (state._deferCounter > 0)
 		{
-			if (_deferredDeterministicFactorUpdates == null)
+			KeyedPriorityQueue<ISolverFactorGibbs, SFactorUpdate> deferredUpdates = state._deferredFactorUpdates;
+			if (deferredUpdates == null)
 			{
-				_deferredDeterministicFactorUpdates =
+				deferredUpdates = state._deferredFactorUpdates =
 					new KeyedPriorityQueue<ISolverFactorGibbs, SFactorUpdate>(11,
 						SFactorUpdate.DeterministicOrder.INSTANCE);
 			}
-			SFactorUpdate update = requireNonNull(_deferredDeterministicFactorUpdates).get(sfactor);
+			SFactorUpdate update = deferredUpdates.get(sfactor);
 			if (update == null)
 			{
 				update = new SFactorUpdate(sfactor);
-				requireNonNull(_deferredDeterministicFactorUpdates).offer(update);
+				deferredUpdates.offer(update);
 			}
 			update.addVariableUpdate(changedVariableIndex, oldValue);
 		}
@@ -1229,11 +1968,12 @@ public class GibbsSolverGraph
 	
 	public void processDeferredDeterministicUpdates()
 	{
-		if (--_deferDeterministicFactorUpdatesCounter <= 0)
+		final DeterministicUpdates state = deterministicUpdates();
+		if (--state._deferCounter <= 0)
 		{
-			_deferDeterministicFactorUpdatesCounter = 1;
+			state._deferCounter = 1;
 			final KeyedPriorityQueue<ISolverFactorGibbs, SFactorUpdate> deferredUpdates =
-				_deferredDeterministicFactorUpdates;
+				state._deferredFactorUpdates;
 			if (deferredUpdates != null)
 			{
 				SFactorUpdate update = null;
@@ -1242,13 +1982,18 @@ public class GibbsSolverGraph
 					update.performUpdate();
 				}
 			}
-			_deferDeterministicFactorUpdatesCounter = 0;
+			state._deferCounter = 0;
 		}
 	}
 	
 	public void deferDeterministicUpdates()
 	{
-		++_deferDeterministicFactorUpdatesCounter;
+		++deterministicUpdates()._deferCounter;
+	}
+	
+	private DeterministicUpdates deterministicUpdates()
+	{
+		return _updatingConcurrently ? _threadDeterministicUpdates.get() : _deterministicUpdates;
 	}
 	
 	@Override
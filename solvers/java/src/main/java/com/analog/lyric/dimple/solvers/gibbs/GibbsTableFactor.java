@@ -19,6 +19,7 @@ package com.analog.lyric.dimple.solvers.gibbs;
 import static java.util.Objects.*;
 
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -52,6 +53,13 @@ public class GibbsTableFactor extends STableFactorBase implements ISolverFactorG
     protected boolean _isDeterministicDirected;
     private boolean _visited = false;
 	private int _topologicalOrder = 0;
+	
+	/**
+	 * Argument values last passed to the factor function's deterministic update, consisting of the
+	 * samples in {@link #_currentSamples} for inputs and private copies of the computed outputs.
+	 * Null if outputs have not been computed since initialization.
+	 */
+	private @Nullable Value[] _deterministicValues = null;
     
     /*--------------
      * Construction
@@ -213,11 +221,29 @@ public class GibbsTableFactor extends STableFactorBase implements ISolverFactorG
 	{
 		// Compute the output values of the deterministic factor function from the input values
 		final Factor factor = _model;
-		Value[] values = factor.getFactorFunction().evalDeterministicToCopy(_currentSamples);
+		final FactorFunction function = factor.getFactorFunction();
+		int[] directedTo = factor.getDirectedTo();
+		
+		Value[] values = _deterministicValues;
+		if (oldValues != null && values != null)
+		{
+			// Incrementally update the outputs computed by the previous update. These are kept separately
+			// from the output variable samples, which may have been modified since then.
+			AtomicReference<int[]> changedOutputsHolder = new AtomicReference<int[]>();
+			function.updateDeterministic(values, oldValues, changedOutputsHolder);
+			int[] changedOutputs = changedOutputsHolder.get();
+			if (changedOutputs != null)
+			{
+				directedTo = changedOutputs;
+			}
+		}
+		else
+		{
+			values = _deterministicValues = function.evalDeterministicToCopy(_currentSamples);
+		}
 		
 		// Update the directed-to variables with the computed values
 		SolverNodeMapping solvers = getSolverMapping();
-		int[] directedTo = factor.getDirectedTo();
 		if (directedTo != null)
 		{
 			for (int outputIndex : directedTo)
@@ -235,6 +261,7 @@ public class GibbsTableFactor extends STableFactorBase implements ISolverFactorG
 	{
 		super.initialize();
 		_isDeterministicDirected = _model.getFactorFunction().isDeterministicDirected();
+		_deterministicValues = null;
 		
     	final int size = getSiblingCount();
     	
@@ -112,4 +112,15 @@ public interface ISolverVariableGibbs extends ISolverNodeGibbs, ISolverVariable,
 	public long getUpdateCount();
 	@Internal
 	public long getRejectionCount();
+	
+	/**
+	 * Adds belief statistics, saved samples and update statistics from another chain.
+	 * <p>
+	 * @param other is the solver variable for the corresponding variable in an independent copy of
+	 * the graph, which must be of the same type as this one.
+	 * @param useBestSample if true, the best sample is replaced by that of {@code other}.
+	 * @since 0.08
+	 */
+	@Internal
+	public void mergeChain(ISolverVariableGibbs other, boolean useBestSample);
 }
@@ -101,7 +101,7 @@ public class MultinomialBlockProposal implements IBlockProposalKernel
 			// If N is variable, sample N uniformly
 			int previousN = currentValue[argumentIndex].getIndex();
 			int NDomainSize = requireNonNull(variableDomain[0].asDiscrete()).size();
-			nextN = DimpleRandomGenerator.rand.nextInt(NDomainSize);
+			nextN = DimpleRandomGenerator.current().nextInt(NDomainSize);
 			newValue[argumentIndex].setIndex(nextN);
 			argumentIndex++;
 			
@@ -125,7 +125,7 @@ public class MultinomialBlockProposal implements IBlockProposalKernel
 			int previousX = currentValue[argumentIndex].getIndex();
 			int nextX;
 			if (argumentIndex < argumentLength - 1)
-				nextX = DimpleRandomGenerator.randomBinomial(remainingN, alphai/alphaSum);
+				nextX = DimpleRandomGenerator.current().nextBinomial(remainingN, alphai/alphaSum);
 			else	// Last value
 				nextX = remainingN;
 			newValue[argumentIndex].setIndex(nextX);
@@ -29,6 +29,7 @@ import com.analog.lyric.dimple.model.domains.RealJointDomain;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DirichletParameters;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.math.DimpleRandomGenerator;
 
 
@@ -89,6 +90,8 @@ public class DirichletSampler implements IRealJointConjugateSampler
 	
 	public final double[] nextSample(DirichletParameters parameters)
 	{
+		final DimpleRandom rand = DimpleRandomGenerator.current();
+		
 		// Sample from a series of Gamma distributions, then normalize to sum to 1
 		int dimension = parameters.getSize();
 		double[] sample = new double[dimension];
@@ -96,7 +99,7 @@ public class DirichletSampler implements IRealJointConjugateSampler
 		int numZeros = 0;
 		for (int i = 0; i < dimension; i++)
 		{
-			double nextSample = DimpleRandomGenerator.randGamma.nextDouble(parameters.getAlphaMinusOne(i) + 1, 1);
+			double nextSample = rand.nextGamma(parameters.getAlphaMinusOne(i) + 1, 1);
 			sample[i] = nextSample;
 			sum += nextSample;
 			if (nextSample == 0)
@@ -124,7 +127,7 @@ public class DirichletSampler implements IRealJointConjugateSampler
 		{
 			// Corner case where all samples were zero
 			// Choose one sample value at random, make that (nearly) one, and the others (nearly) zero
-			int randomChoice = (int)(DimpleRandomGenerator.rand.nextDouble() * dimension);
+			int randomChoice = (int)(rand.nextDouble() * dimension);
 			if (randomChoice > dimension - 1) randomChoice = dimension - 1;
 			for (int i = 0; i < dimension; i++)
 				if (i != randomChoice)
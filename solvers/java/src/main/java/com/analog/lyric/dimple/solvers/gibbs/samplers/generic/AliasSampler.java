@@ -0,0 +1,216 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.solvers.gibbs.samplers.generic;
+
+import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.Domain;
+import com.analog.lyric.dimple.model.values.DiscreteValue;
+import com.analog.lyric.math.DimpleRandom;
+import com.analog.lyric.math.DimpleRandomGenerator;
+
+/**
+ * Discrete sampler using Vose's alias method.
+ * <p>
+ * Builds an alias table from the energies in time linear in the size of the domain, after which
+ * each sample is drawn in constant time using a single random number. The table is cached along
+ * with the energies it was built from, and is only rebuilt when the energies passed to
+ * {@link #nextSample} differ, so repeated draws from the same distribution, such as for a
+ * variable whose only neighbors are fixed or that has only an input, cost only a comparison of the
+ * energies instead of computing exponentials for each value.
+ * <p>
+ * This is most useful for variables with large domains whose conditional distribution changes
+ * infrequently. Select it by setting {@code GibbsOptions.discreteSampler} to this class.
+ * <p>
+ * @since 0.08
+ */
+public class AliasSampler extends AbstractGenericSampler implements IDiscreteDirectSampler
+{
+	/*-------
+	 * State
+	 */
+	
+	protected int _length = 0;
+	
+	/**
+	 * Probability of choosing the value for each bucket rather than its alias.
+	 */
+	protected double[] _probability = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	protected int[] _alias = ArrayUtil.EMPTY_INT_ARRAY;
+	
+	/**
+	 * Energies from which the current table was built.
+	 */
+	protected double[] _tableEnergy = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	protected boolean _tableValid = false;
+	
+	private int[] _small = ArrayUtil.EMPTY_INT_ARRAY;
+	private int[] _large = ArrayUtil.EMPTY_INT_ARRAY;
+	
+	private long _tableBuildCount = 0;
+	
+	/*------------------------
+	 * IGenericSampler methods
+	 */
+	
+	@Override
+	public void initialize(Domain variableDomain)
+	{
+		final int length = ((DiscreteDomain)variableDomain).size();
+		_length = length;
+		_probability = new double[length];
+		_alias = new int[length];
+		_tableEnergy = new double[length];
+		_small = new int[length];
+		_large = new int[length];
+		_tableValid = false;
+		_tableBuildCount = 0;
+	}
+	
+	/*-------------------------------
+	 * IDiscreteDirectSampler methods
+	 */
+	
+	@Override
+	public void nextSample(DiscreteValue sampleValue, double[] energy, double minEnergy, IDiscreteSamplerClient samplerClient)
+	{
+		final int length = sampleValue.getDomain().size(); //energy may be longer than domain size
+		
+		if (!_tableValid || !sameEnergy(energy, length))
+		{
+			buildTable(energy, minEnergy, length);
+		}
+		
+		final DimpleRandom rand = DimpleRandomGenerator.current();
+		final double u = rand.nextDouble() * length;
+		final int bucket = Math.min((int)u, length - 1);
+		final int sampleIndex = u - bucket < _probability[bucket] ? bucket : _alias[bucket];
+		
+		samplerClient.setNextSampleIndex(sampleIndex);
+	}
+	
+	/*----------------------
+	 * AliasSampler methods
+	 */
+	
+	/**
+	 * The number of times the alias table has been built since the sampler was initialized.
+	 */
+	public long getTableBuildCount()
+	{
+		return _tableBuildCount;
+	}
+	
+	/**
+	 * Forces the table to be rebuilt on the next call to {@link #nextSample}.
+	 */
+	public void invalidateTable()
+	{
+		_tableValid = false;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private boolean sameEnergy(double[] energy, int length)
+	{
+		final double[] tableEnergy = _tableEnergy;
+		for (int i = 0; i < length; ++i)
+		{
+			if (energy[i] != tableEnergy[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Builds alias table using Vose's algorithm.
+	 */
+	private void buildTable(double[] energy, double minEnergy, int length)
+	{
+		if (length > _length)
+		{
+			initialize(DiscreteDomain.range(0, length - 1));
+		}
+		
+		final double[] probability = _probability;
+		final int[] alias = _alias;
+		final int[] small = _small, large = _large;
+		
+		System.arraycopy(energy, 0, _tableEnergy, 0, length);
+		
+		double sum = 0;
+		for (int i = 0; i < length; ++i)
+		{
+			sum += probability[i] = Math.exp(minEnergy - energy[i]);
+		}
+		
+		if (!(sum > 0) || Double.isInfinite(sum))
+		{
+			_tableValid = false;
+			throw new DimpleException("The energy for all values of this variable is infinite. This may indicate a state inconsistent with the model.");
+		}
+		
+		// Scale so that average bucket probability is one, and partition into buckets
+		// that are under- and over-full.
+		final double scale = length / sum;
+		int nSmall = 0, nLarge = 0;
+		for (int i = 0; i < length; ++i)
+		{
+			final double p = probability[i] *= scale;
+			if (p < 1.0)
+				small[nSmall++] = i;
+			else
+				large[nLarge++] = i;
+		}
+		
+		// Fill each under-full bucket with the excess from an over-full one.
+		while (nSmall > 0 && nLarge > 0)
+		{
+			final int s = small[--nSmall];
+			final int l = large[--nLarge];
+			alias[s] = l;
+			final double p = probability[l] = (probability[l] + probability[s]) - 1.0;
+			if (p < 1.0)
+				small[nSmall++] = l;
+			else
+				large[nLarge++] = l;
+		}
+		
+		// Remaining buckets are full, up to rounding error.
+		while (nLarge > 0)
+		{
+			final int l = large[--nLarge];
+			probability[l] = 1.0;
+			alias[l] = l;
+		}
+		while (nSmall > 0)
+		{
+			final int s = small[--nSmall];
+			probability[s] = 1.0;
+			alias[s] = s;
+		}
+		
+		_tableValid = true;
+		++_tableBuildCount;
+	}
+}
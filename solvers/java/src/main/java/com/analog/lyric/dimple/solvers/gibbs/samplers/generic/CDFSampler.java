@@ -23,6 +23,7 @@ import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.math.DimpleRandomGenerator;
 import com.analog.lyric.math.Utilities;
 
@@ -44,7 +45,7 @@ public class CDFSampler extends AbstractGenericSampler implements IDiscreteDirec
 	@Override
 	public void nextSample(DiscreteValue sampleValue, double[] energy, double minEnergy, IDiscreteSamplerClient samplerClient)
 	{
-		final RandomGenerator rand = DimpleRandomGenerator.rand;
+		final DimpleRandom rand = DimpleRandomGenerator.current();
 		final int length = sampleValue.getDomain().size(); //energy may be longer than domain size
 		int sampleIndex;
 
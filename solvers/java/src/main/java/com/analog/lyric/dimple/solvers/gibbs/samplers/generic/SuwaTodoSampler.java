@@ -22,6 +22,7 @@ import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.math.DimpleRandomGenerator;
 import com.analog.lyric.math.Utilities;
 
@@ -43,7 +44,7 @@ public class SuwaTodoSampler extends AbstractGenericSampler implements IDiscrete
 	@Override
 	public void nextSample(DiscreteValue sampleValue, double[] energy, double minEnergy, IDiscreteSamplerClient samplerClient)
 	{
-		RandomGenerator rand = DimpleRandomGenerator.rand;
+		final DimpleRandom rand = DimpleRandomGenerator.current();
 		final int length = sampleValue.getDomain().size(); // energy may be longer than domain size
 		int sampleIndex;
 
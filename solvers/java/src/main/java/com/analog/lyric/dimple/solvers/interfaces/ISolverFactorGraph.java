@@ -322,6 +322,14 @@ public interface ISolverFactorGraph	extends ISolverNode
 	public void moveMessages(ISolverNode other);
 	public void postAdvance();
 	public void postAddFactor(Factor f);
+	
+	/**
+	 * Invoked after the input or fixed value of {@code variable}, whose solver variable belongs
+	 * to this graph, has been changed.
+	 * @since 0.08
+	 */
+	public void postSetInputOrFixedValue(Variable variable);
+	
 	public void postSetSolverFactory();
 
 	/**
@@ -372,6 +372,12 @@ public class LPSolverGraph extends SFactorGraphBase<LPTableFactor, LPDiscrete, N
 		throw unsupported("moveMessages");
 	}
 
+	@Override
+	public boolean supportsDirectMessageMoves()
+	{
+		return false;
+	}
+
 	@Override
 	protected String getSolverName()
 	{
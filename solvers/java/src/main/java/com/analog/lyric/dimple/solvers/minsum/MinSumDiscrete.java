@@ -19,7 +19,7 @@ package com.analog.lyric.dimple.solvers.minsum;
 import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.collect.ArrayUtil;
-import com.analog.lyric.collect.DoubleArrayCache;
+import com.analog.lyric.collect.ThreadLocalDoubleArrayCache;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.options.BPOptions;
@@ -174,7 +174,7 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 		int numValue = priors.length;
 
 		// Compute the sum of all messages
-		final DoubleArrayCache cache = DimpleEnvironment.doubleArrayCache;
+		final ThreadLocalDoubleArrayCache cache = DimpleEnvironment.doubleArrayCache;
 		final double[] beliefs = cache.allocateAtLeast(numValue);
 		System.arraycopy(priors, 0, beliefs, 0, numValue);
 
@@ -21,6 +21,8 @@ import java.util.Map;
 import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.collect.Tuple2;
+import com.analog.lyric.dimple.factorfunctions.Equality;
+import com.analog.lyric.dimple.factorfunctions.Equals;
 import com.analog.lyric.dimple.factorfunctions.Xor;
 import com.analog.lyric.dimple.factorfunctions.core.CustomFactorFunctionWrapper;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
@@ -38,6 +40,8 @@ import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+import com.analog.lyric.dimple.solvers.minsum.customFactors.CustomEquality;
+import com.analog.lyric.dimple.solvers.minsum.customFactors.CustomEquals;
 import com.analog.lyric.dimple.solvers.minsum.customFactors.CustomXor;
 import com.analog.lyric.dimple.solvers.optimizedupdate.CostEstimationTableWrapper;
 import com.analog.lyric.dimple.solvers.optimizedupdate.CostType;
@@ -126,6 +130,14 @@ public class MinSumSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVariab
 			// For backward compatibility
 			return new CustomXor(factor, this);
 		}
+		else if ((factorFunction instanceof Equality) && CustomEquality.isFactorCompatible(factor))
+		{
+			return new CustomEquality(factor, this);
+		}
+		else if ((factorFunction instanceof Equals) && CustomEquals.isFactorCompatible(factor))
+		{
+			return new CustomEquals(factor, this);
+		}
 		else // No custom factor exists, so create a generic one
 		{
 			return new STableFactor(factor, this);
@@ -40,9 +40,9 @@ public class TableFactorEngine
 	
 	public void updateEdge(int outPortNum)
 	{
-	    final int[][] table = _tableFactor.getFactorTable().getIndicesSparseUnsafe();
+	    final int[] table = _tableFactor.getFactorTable().getPackedIndicesSparseUnsafe();
 	    final double[] values = _tableFactor.getFactorTable().getEnergiesSparseUnsafe();
-	    final int tableLength = table.length;
+	    final int tableLength = values.length;
 	    final int numPorts = _factor.getSiblingCount();
 
 
@@ -65,17 +65,17 @@ public class TableFactorEngine
         final double [][] inPortMsgs = _tableFactor.getInPortMsgs();
         
 	    // Run through each row of the function table
-        for (int tableIndex = tableLength; --tableIndex>=0;)
+        for (int tableIndex = tableLength, rowOffset = tableLength * numPorts; --tableIndex>=0;)
         {
+        	rowOffset -= numPorts;
         	double L = values[tableIndex];
-        	final int[] tableRow = table[tableIndex];
-        	final int outputIndex = tableRow[outPortNum];
+        	final int outputIndex = table[rowOffset + outPortNum];
 
         	int inPortNum = numPorts;
         	while (--inPortNum > outPortNum)
-        		L += inPortMsgs[inPortNum][tableRow[inPortNum]];
+        		L += inPortMsgs[inPortNum][table[rowOffset + inPortNum]];
         	while (--inPortNum >= 0)
-        		L += inPortMsgs[inPortNum][tableRow[inPortNum]];
+        		L += inPortMsgs[inPortNum][table[rowOffset + inPortNum]];
         	
         	if (L < outputMsgs[outputIndex])
         		outputMsgs[outputIndex] = L;				// Use the minimum value
@@ -122,9 +122,9 @@ public class TableFactorEngine
 	{
 		final IFactorTable table = _tableFactor.getFactorTable();
 		final JointDomainIndexer indexer = table.getDomainIndexer();
-	    final int[][] tableIndices = table.getIndicesSparseUnsafe();
+	    final int[] tableIndices = table.getPackedIndicesSparseUnsafe();
 	    final double[] values = table.getEnergiesSparseUnsafe();
-	    final int tableLength = tableIndices.length;
+	    final int tableLength = values.length;
 	    final int numPorts = _factor.getSiblingCount();
 	    double [][] outPortMsgs = _tableFactor.getOutPortMsgs();
 
@@ -165,20 +165,20 @@ public class TableFactorEngine
 
 	    
 	    // Run through each row of the function table
-	    for (int tableIndex = tableLength; --tableIndex>=0;)
+	    for (int tableIndex = tableLength, rowOffset = tableLength * numPorts; --tableIndex>=0;)
 	    {
-	    	final int[] tableRow = tableIndices[tableIndex];
+	    	rowOffset -= numPorts;
 	    	
 	    	// Sum up the function value plus the messages on all ports
 	    	double L = values[tableIndex];
 	    	for (int port = numPorts; --port>=0;)
-	    		L += inPortMsgs[port][tableRow[port]];
+	    		L += inPortMsgs[port][tableIndices[rowOffset + port]];
 
 			// Run through each output port
 	    	for (int outPortNum = numPorts; --outPortNum>=0;)
 	    	{
 	    		final double[] outputMsgs = outPortMsgs[outPortNum];
-	    		final int outputIndex = tableRow[outPortNum];											// Index for the output value
+	    		final int outputIndex = tableIndices[rowOffset + outPortNum];											// Index for the output value
 	    		final double LThisPort = L - inPortMsgs[outPortNum][outputIndex];			// Subtract out the message from this output port
 	    		outputMsgs[outputIndex] = Math.min(outputMsgs[outputIndex], LThisPort);
 	    	}
@@ -0,0 +1,443 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.minsum.customFactors;
+
+import java.util.Arrays;
+
+import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.factorfunctions.Equals;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.Domain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.minsum.MinSumTableFactor;
+
+/**
+ * Min-sum solver factor for the {@link Equals} factor function.
+ * <p>
+ * The minimum energy of configurations in which all of the values are equal is the minimum over the
+ * domain of the sum of the value messages. The minimum energy of configurations in which they are not
+ * equal is the sum of the minimums of each value message unless every value message has the same
+ * unique minimum, in which case the cheapest way to break the tie is to move one of the values to its
+ * second best value. Messages to each value edge are computed in the same way from the other value
+ * edges, using forward and backward partial sums, so that updating all of the edges of a factor with d
+ * value edges over a domain of size D takes O(d D) time and does not require the factor table, which
+ * would have D<sup>d</sup> entries.
+ * <p>
+ * @since 0.08
+ */
+public class CustomEquals extends MinSumTableFactor
+{
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomEquals(Factor factor, ISolverFactorGraph parent)
+	{
+		super(factor, parent);
+	}
+
+	/**
+	 * True if factor has an {@link Equals} factor function without constants, the output variable has a
+	 * two-element domain whose first element represents false and whose second element represents true, and
+	 * the remaining variables all have the same discrete domain.
+	 */
+	public static boolean isFactorCompatible(Factor factor)
+	{
+		final FactorFunction function = factor.getFactorFunction();
+		if (!(function.getContainedFactorFunction() instanceof Equals) || function.hasConstants())
+		{
+			return false;
+		}
+
+		final Domain outputDomain = factor.getSibling(0).getDomain();
+		if (!(outputDomain instanceof DiscreteDomain))
+		{
+			return false;
+		}
+		final DiscreteDomain discreteOutputDomain = (DiscreteDomain)outputDomain;
+		if (discreteOutputDomain.size() != 2 ||
+			Value.create(discreteOutputDomain.getElement(0)).getBoolean() ||
+			!Value.create(discreteOutputDomain.getElement(1)).getBoolean())
+		{
+			return false;
+		}
+
+		final int end = factor.getSiblingCount();
+		if (end > 1)
+		{
+			final Domain domain = factor.getSibling(1).getDomain();
+			if (!domain.isDiscrete())
+			{
+				return false;
+			}
+			for (int i = 2; i < end; i++)
+			{
+				if (!domain.equals(factor.getSibling(i).getDomain()))
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	protected void doUpdate()
+	{
+		final double[][] inputMsgs = _inputMessages;
+		final double[][] outputMsgs = _outputMessages;
+		final int numPorts = inputMsgs.length;
+
+		if (numPorts == 1)
+		{
+			doUpdateEdge(0);
+			return;
+		}
+
+		final int domainSize = inputMsgs[1].length;
+		final double[] outputIn = inputMsgs[0];
+
+		// Save previous outputs for damping, since they are overwritten before being normalized.
+		double[] saved = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		if (_dampingInUse)
+		{
+			saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(2 + (numPorts - 1) * domainSize);
+			System.arraycopy(outputMsgs[0], 0, saved, 0, 2);
+			for (int port = 1; port < numPorts; ++port)
+			{
+				System.arraycopy(outputMsgs[port], 0, saved, 2 + (port - 1) * domainSize, domainSize);
+			}
+		}
+
+		final double[] mins = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+		final double[] penalties = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+		final double[] suffixSums = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+		final double[] otherMinSums = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+		final int[] uniqueMinIndices = DimpleEnvironment.intArrayCache.allocateAtLeast(numPorts);
+		final int[] uniqueMinCounts = DimpleEnvironment.intArrayCache.allocateAtLeast(domainSize);
+		Arrays.fill(uniqueMinCounts, 0, domainSize, 0);
+
+		// Find the smallest two penalties for moving a value edge off of its unique minimum
+		double minPenalty = Double.POSITIVE_INFINITY, secondMinPenalty = Double.POSITIVE_INFINITY;
+		int minPenaltyPort = -1;
+		for (int port = 1; port < numPorts; ++port)
+		{
+			final int uniqueMinIndex = computeMinStats(inputMsgs[port], port, mins, penalties, uniqueMinIndices);
+			if (uniqueMinIndex >= 0)
+			{
+				++uniqueMinCounts[uniqueMinIndex];
+				final double penalty = penalties[port];
+				if (penalty < minPenalty)
+				{
+					secondMinPenalty = minPenalty;
+					minPenalty = penalty;
+					minPenaltyPort = port;
+				}
+				else if (penalty < secondMinPenalty)
+				{
+					secondMinPenalty = penalty;
+				}
+			}
+		}
+
+		// Leave-one-out sums of the minimums
+		double sum = 0.0;
+		for (int port = numPorts; --port>=1;)
+		{
+			suffixSums[port] = sum;
+			sum += mins[port];
+		}
+		final double minSum = sum;
+		double prefixSum = 0.0;
+		for (int port = 1; port < numPorts; ++port)
+		{
+			otherMinSums[port] = prefixSum + suffixSums[port];
+			prefixSum += mins[port];
+		}
+
+		final int nOtherValueEdges = numPorts - 2;
+		double equalEnergy = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < domainSize; ++i)
+		{
+			sum = 0.0;
+			for (int port = numPorts; --port>=1;)
+			{
+				suffixSums[port] = sum;
+				sum += inputMsgs[port][i];
+			}
+			equalEnergy = Math.min(equalEnergy, sum);
+
+			prefixSum = 0.0;
+			for (int port = 1; port < numPorts; ++port)
+			{
+				final int otherUniqueMinCount = uniqueMinCounts[i] - (uniqueMinIndices[port] == i ? 1 : 0);
+				final double otherMinPenalty = port == minPenaltyPort ? secondMinPenalty : minPenalty;
+				final double notEqualEnergy =
+					notEqualToValueEnergy(nOtherValueEdges, otherMinSums[port], otherMinPenalty, otherUniqueMinCount);
+				outputMsgs[port][i] = Math.min(outputIn[1] + prefixSum + suffixSums[port], outputIn[0] + notEqualEnergy);
+				prefixSum += inputMsgs[port][i];
+			}
+		}
+
+		final double[] outputMsg = outputMsgs[0];
+		outputMsg[0] = notEqualEnergy(numPorts - 1, minSum, minPenalty, uniqueMinCounts, domainSize);
+		outputMsg[1] = equalEnergy;
+
+		DimpleEnvironment.doubleArrayCache.release(mins);
+		DimpleEnvironment.doubleArrayCache.release(penalties);
+		DimpleEnvironment.doubleArrayCache.release(suffixSums);
+		DimpleEnvironment.doubleArrayCache.release(otherMinSums);
+		DimpleEnvironment.intArrayCache.release(uniqueMinIndices);
+		DimpleEnvironment.intArrayCache.release(uniqueMinCounts);
+
+		dampAndNormalizeOutput(0, saved, 0);
+		for (int port = 1; port < numPorts; ++port)
+		{
+			dampAndNormalizeOutput(port, saved, 2 + (port - 1) * domainSize);
+		}
+
+		if (saved.length > 0)
+		{
+			DimpleEnvironment.doubleArrayCache.release(saved);
+		}
+	}
+
+	@Override
+	public void doUpdateEdge(int outPortNum)
+	{
+		final double[][] inputMsgs = _inputMessages;
+		final double[] outputMsg = _outputMessages[outPortNum];
+		final int numPorts = inputMsgs.length;
+		final int outputSize = outputMsg.length;
+		final int domainSize = numPorts > 1 ? inputMsgs[1].length : 0;
+
+		double[] saved = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		if (_dampingInUse)
+		{
+			saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(outputSize);
+			System.arraycopy(outputMsg, 0, saved, 0, outputSize);
+		}
+
+		// For each value edge other than the output port, sum its minimum energy into minSum and
+		// count the number of edges whose unique minimum is at each value. Also find the smallest
+		// penalty for moving one of those edges off of its unique minimum.
+		final double[] mins = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+		final double[] penalties = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+		final int[] uniqueMinIndices = DimpleEnvironment.intArrayCache.allocateAtLeast(numPorts);
+		final int[] uniqueMinCounts = DimpleEnvironment.intArrayCache.allocateAtLeast(domainSize);
+		Arrays.fill(uniqueMinCounts, 0, domainSize, 0);
+		double minSum = 0.0;
+		double minPenalty = Double.POSITIVE_INFINITY;
+		int nOtherValueEdges = 0;
+
+		for (int port = 1; port < numPorts; ++port)
+		{
+			if (port != outPortNum)
+			{
+				++nOtherValueEdges;
+				final int uniqueMinIndex = computeMinStats(inputMsgs[port], port, mins, penalties, uniqueMinIndices);
+				minSum += mins[port];
+				if (uniqueMinIndex >= 0)
+				{
+					++uniqueMinCounts[uniqueMinIndex];
+					minPenalty = Math.min(minPenalty, penalties[port]);
+				}
+			}
+		}
+
+		if (outPortNum == 0)
+		{
+			double equalEnergy = nOtherValueEdges > 0 ? Double.POSITIVE_INFINITY : 0.0;
+			for (int i = 0; i < domainSize; ++i)
+			{
+				double sum = 0.0;
+				for (int port = 1; port < numPorts; ++port)
+				{
+					sum += inputMsgs[port][i];
+				}
+				equalEnergy = Math.min(equalEnergy, sum);
+			}
+
+			outputMsg[0] = notEqualEnergy(nOtherValueEdges, minSum, minPenalty, uniqueMinCounts, domainSize);
+			outputMsg[1] = equalEnergy;
+		}
+		else
+		{
+			final double[] outputIn = inputMsgs[0];
+			for (int i = 0; i < outputSize; ++i)
+			{
+				double sum = 0.0;
+				for (int port = 1; port < numPorts; ++port)
+				{
+					if (port != outPortNum)
+					{
+						sum += inputMsgs[port][i];
+					}
+				}
+
+				final double notEqualEnergy =
+					notEqualToValueEnergy(nOtherValueEdges, minSum, minPenalty, uniqueMinCounts[i]);
+				outputMsg[i] = Math.min(outputIn[1] + sum, outputIn[0] + notEqualEnergy);
+			}
+		}
+
+		DimpleEnvironment.doubleArrayCache.release(mins);
+		DimpleEnvironment.doubleArrayCache.release(penalties);
+		DimpleEnvironment.intArrayCache.release(uniqueMinIndices);
+		DimpleEnvironment.intArrayCache.release(uniqueMinCounts);
+
+		dampAndNormalizeOutput(outPortNum, saved, 0);
+
+		if (saved.length > 0)
+		{
+			DimpleEnvironment.doubleArrayCache.release(saved);
+		}
+	}
+
+	/*--------------------------
+	 * STableFactorBase methods
+	 */
+
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return false;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Computes the minimum energy of {@code msg} into {@code mins[port]}. If the minimum is unique, also stores
+	 * the difference between the second smallest energy and the minimum into {@code penalties[port]} and
+	 * the index of the minimum into {@code uniqueMinIndices[port]}, which is otherwise set to -1.
+	 * 
+	 * @return the value stored in {@code uniqueMinIndices[port]}.
+	 */
+	private static int computeMinStats(double[] msg, int port, double[] mins, double[] penalties, int[] uniqueMinIndices)
+	{
+		double min = Double.POSITIVE_INFINITY, secondMin = Double.POSITIVE_INFINITY;
+		int minIndex = -1;
+		for (int i = 0, n = msg.length; i < n; ++i)
+		{
+			final double energy = msg[i];
+			if (energy < min)
+			{
+				secondMin = min;
+				min = energy;
+				minIndex = i;
+			}
+			else if (energy < secondMin)
+			{
+				secondMin = energy;
+			}
+		}
+
+		mins[port] = min;
+		if (minIndex >= 0 && secondMin > min)
+		{
+			penalties[port] = secondMin - min;
+		}
+		else
+		{
+			minIndex = -1;
+		}
+		return uniqueMinIndices[port] = minIndex;
+	}
+
+	/**
+	 * Minimum energy of configurations of {@code nOtherEdges} value edges in which not all of them are equal
+	 * to a given value, given that {@code uniqueMinCount} of them have their unique minimum energy at that value.
+	 */
+	private static double notEqualToValueEnergy(int nOtherEdges, double minSum, double minPenalty, int uniqueMinCount)
+	{
+		if (nOtherEdges == 0)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+
+		// If all of the edges have their unique minimum at the value, then one of them has
+		// to be moved off of it, otherwise they can be left at their minimums.
+		return uniqueMinCount == nOtherEdges ? minSum + minPenalty : minSum;
+	}
+
+	/**
+	 * Minimum energy of configurations of {@code nValueEdges} value edges in which not all are equal.
+	 */
+	private static double notEqualEnergy(int nValueEdges, double minSum, double minPenalty,
+		int[] uniqueMinCounts, int domainSize)
+	{
+		if (nValueEdges < 2)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+
+		// If all of the edges have their unique minimum at the same value, then making them
+		// unequal requires moving one of them, otherwise they can be left at their minimums.
+		for (int i = 0; i < domainSize; ++i)
+		{
+			if (uniqueMinCounts[i] == nValueEdges)
+			{
+				return minSum + minPenalty;
+			}
+		}
+		return minSum;
+	}
+
+	/**
+	 * Applies damping to output message for given port using previous value of message starting at
+	 * {@code savedOffset} in {@code saved} and then normalizes the message so that its minimum is zero.
+	 */
+	private void dampAndNormalizeOutput(int port, double[] saved, int savedOffset)
+	{
+		final double[] outputMsg = _outputMessages[port];
+		final int size = outputMsg.length;
+
+		final double damping = _dampingInUse ? _dampingParams[port] : 0.0;
+		if (damping != 0.0)
+		{
+			final double inverseDamping = 1 - damping;
+			for (int i = size; --i>=0;)
+			{
+				outputMsg[i] = inverseDamping * outputMsg[i] + damping * saved[savedOffset + i];
+			}
+		}
+
+		double minPotential = Double.POSITIVE_INFINITY;
+		for (int i = size; --i>=0;)
+		{
+			minPotential = Math.min(minPotential, outputMsg[i]);
+		}
+
+		if (minPotential != 0.0)
+		{
+			for (int i = size; --i>=0;)
+			{
+				outputMsg[i] -= minPotential;
+			}
+		}
+	}
+}
@@ -25,6 +25,7 @@ import com.analog.lyric.dimple.schedulers.ScheduleVisitor;
 import com.analog.lyric.dimple.schedulers.ScheduleVisitorFactorFilter;
 import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
 import com.analog.lyric.dimple.solvers.core.STableFactorBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.options.IOptionKey;
 import com.analog.lyric.util.misc.Internal;
@@ -83,11 +84,12 @@ public final class UpdateCostOptimizer
 			if (factor != null && factor.hasFactorTable())
 			{
 				final IFactorTable factorTable = factor.getFactorTable();
-				final STableFactorBase sTableFactor =
-					(STableFactorBase) _sFactorGraphAdapter.getSolverGraph().getSolverFactor(factor);
+				final ISolverFactor sFactor = _sFactorGraphAdapter.getSolverGraph().getSolverFactor(factor);
 				
-				if (sTableFactor != null)
+				// Custom factors that do not use the factor table are skipped.
+				if (sFactor instanceof STableFactorBase)
 				{
+					final STableFactorBase sTableFactor = (STableFactorBase)sFactor;
 					// This class fetches options from sTableFactor, and keeps track of the
 					// most-specific level from which an option value was obtained over multiple
 					// getOption invocations.
@@ -340,7 +340,7 @@ public class ParticleBPReal extends SRealVariableBase implements IParticleBPVari
 					else
 						rejectionThreshold = 0;
 				}
-				if (DimpleRandomGenerator.rand.nextDouble() < rejectionThreshold)
+				if (DimpleRandomGenerator.current().nextDouble() < rejectionThreshold)
 				{
 					sampleValue.setDouble(proposalValue);
 					potential = potentialProposed;
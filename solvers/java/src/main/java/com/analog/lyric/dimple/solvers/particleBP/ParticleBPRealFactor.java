@@ -21,7 +21,7 @@ import com.analog.lyric.collect.CombinatoricIterator;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.values.RealValue;
-import com.analog.lyric.dimple.solvers.core.SDiscreteWeightEdge;
+import com.analog.lyric.dimple.solvers.core.SDiscreteEdge;
 import com.analog.lyric.dimple.solvers.core.SFactorBase;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
@@ -181,9 +181,9 @@ public class ParticleBPRealFactor extends SFactorBase
 
 	@SuppressWarnings("null")
 	@Override
-	public SDiscreteWeightEdge getSiblingEdgeState(int siblingIndex)
+	public SDiscreteEdge<?> getSiblingEdgeState(int siblingIndex)
 	{
-		return (SDiscreteWeightEdge)getSiblingEdgeState_(siblingIndex);
+		return (SDiscreteEdge<?>)getSiblingEdgeState_(siblingIndex);
 	}
 
 	@SuppressWarnings("null")
@@ -16,6 +16,7 @@
 
 package com.analog.lyric.dimple.solvers.sumproduct;
 
+import static com.analog.lyric.math.Utilities.*;
 import static java.util.Objects.*;
 
 import java.util.Arrays;
@@ -25,12 +26,14 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.EdgeState;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.options.BPOptions;
 import com.analog.lyric.dimple.solvers.core.SDiscreteVariableDoubleArray;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.util.misc.Internal;
 
@@ -41,6 +44,11 @@ import com.analog.lyric.util.misc.Internal;
  */
 public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 {
+	/**
+	 * Value used in place of the log of zero weights in messages and inputs in weight form.
+	 */
+	private static final double MIN_LOG = -100;
+	
 	/*-------
 	 * State
 	 */
@@ -50,6 +58,19 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 	protected @Nullable double[] _dampingParams = null;
 	protected double[][] _inMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
 	protected double[][] _outMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
+	
+	/**
+	 * Indicates which edges have messages stored as energies instead of weights (see
+	 * {@link SumProductOptions#logDomainMessages}). Null if none do.
+	 */
+	protected @Nullable boolean[] _edgeStoresEnergies = null;
+	
+	/**
+	 * Log of {@link #_input}, computed on demand when messages are stored as energies.
+	 * Only valid if {@link #_logInputSource} is the current input.
+	 */
+	private double[] _logInput = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	private @Nullable double[] _logInputSource = null;
 
     /*--------------
      * Construction
@@ -71,16 +92,33 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 			_inMsgs = new double[nEdges][];
 			_outMsgs = new double[nEdges][];
 		}
+		boolean[] edgeStoresEnergies = null;
 		for (int i = 0; i < nEdges; ++i)
 		{
 			SumProductDiscreteEdge edge = getSiblingEdgeState(i);
 			_inMsgs[i] = edge.factorToVarMsg.representation();
 			_outMsgs[i] = edge.varToFactorMsg.representation();
+			if (edge.storesEnergies())
+			{
+				if (edgeStoresEnergies == null)
+				{
+					edgeStoresEnergies = new boolean[nEdges];
+				}
+				edgeStoresEnergies[i] = true;
+			}
 		}
+		_edgeStoresEnergies = edgeStoresEnergies;
 		
 		configureDampingFromOptions();
 	}
 
+	@Override
+	public void setInputOrFixedValue(@Nullable Object input, @Nullable Object fixedValue)
+	{
+		super.setInputOrFixedValue(input, fixedValue);
+		_logInputSource = null;
+	}
+	
 	public Variable getVariable()
 	{
 		return _model;
@@ -129,6 +167,12 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
     @Override
 	protected void doUpdateEdge(int outPortNum)
     {
+    	final boolean[] edgeStoresEnergies = _edgeStoresEnergies;
+    	if (edgeStoresEnergies != null)
+    	{
+    		doUpdateEdgeWithEnergies(outPortNum, edgeStoresEnergies);
+    		return;
+    	}
     	
         final double minLog = -100;
         double[] priors = _input;
@@ -233,6 +277,13 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
     @Override
 	protected void doUpdate()
     {
+    	final boolean[] edgeStoresEnergies = _edgeStoresEnergies;
+    	if (edgeStoresEnergies != null)
+    	{
+    		doUpdateWithEnergies(edgeStoresEnergies);
+    		return;
+    	}
+    	
         final double minLog = -100;
         final double[] priors = _input;
         final int M = priors.length;
@@ -359,6 +410,228 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
     }
     
         
+    /**
+     * Implementation of {@link #doUpdateEdge(int)} when some edges store messages as energies.
+     * <p>
+     * Computes the output in the log domain. Inputs in energy form are simply negated, while inputs in
+     * weight form are converted using log. Outputs in energy form are normalized so that the minimum energy
+     * is zero and do not require any conversion unless damping is in use.
+     */
+    private void doUpdateEdgeWithEnergies(int outPortNum, boolean[] edgeStoresEnergies)
+    {
+    	final double[] priors = _input;
+    	final int M = priors.length;
+    	final int D = _model.getSiblingCount();
+    	final double[][] inMsgs = _inMsgs;
+    	
+    	final double[] logOut = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
+    	System.arraycopy(getLogInput(), 0, logOut, 0, M);
+    	
+    	for (int d = 0; d < D; ++d)
+    	{
+    		if (d != outPortNum)
+    		{
+    			final double[] inMsg = inMsgs[d];
+    			if (edgeStoresEnergies[d])
+    			{
+    				for (int m = M; --m>=0;)
+    					logOut[m] -= inMsg[m];
+    			}
+    			else
+    			{
+    				for (int m = M; --m>=0;)
+    				{
+    					final double tmp = inMsg[m];
+    					logOut[m] += (tmp == 0) ? MIN_LOG : Math.log(tmp);
+    				}
+    			}
+    		}
+    	}
+    	
+    	setOutputFromLogDomain(outPortNum, logOut, edgeStoresEnergies[outPortNum]);
+    	
+    	DimpleEnvironment.doubleArrayCache.release(logOut);
+    	
+        if (_calculateDerivative)
+        {
+        	updateDerivative(outPortNum);
+        }
+    }
+    
+    /**
+     * Implementation of {@link #doUpdate()} when some edges store messages as energies.
+     * <p>
+     * Like {@link #doUpdate()}, this computes the sum of all the inputs in the log domain and then subtracts
+     * out each input for the corresponding output. Because energy-form inputs may be infinite, the sum only
+     * includes finite values and infinite inputs are tracked separately.
+     */
+    private void doUpdateWithEnergies(boolean[] edgeStoresEnergies)
+    {
+    	final double[] priors = _input;
+    	final int M = priors.length;
+    	final int D = _model.getSiblingCount();
+    	final double[][] inMsgs = _inMsgs;
+    	
+    	// Sum of finite log-domain inputs
+    	final double[] alphas = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
+    	// Port of the only infinite input, or -1 if none, or -2 if more than one or prior is zero.
+    	final int[] infinitePorts = DimpleEnvironment.intArrayCache.allocateAtLeast(M);
+    	
+    	final double[] logPriors = getLogInput();
+    	for (int m = M; --m>=0;)
+    	{
+    		final double logPrior = logPriors[m];
+    		final boolean isZero = logPrior == Double.NEGATIVE_INFINITY;
+    		alphas[m] = isZero ? 0.0 : logPrior;
+    		infinitePorts[m] = isZero ? -2 : -1;
+    	}
+    	
+    	final double[] logInMsgs = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M*D);
+    	for (int d = 0, dm = 0; d < D; ++d, dm += M)
+    	{
+    		final double[] inMsg = inMsgs[d];
+    		final boolean isEnergy = edgeStoresEnergies[d];
+    		for (int m = M; --m>=0;)
+    		{
+    			final double tmp = inMsg[m];
+    			final double logIn = isEnergy ? -tmp : (tmp == 0) ? MIN_LOG : Math.log(tmp);
+    			if (logIn == Double.NEGATIVE_INFINITY)
+    			{
+    				infinitePorts[m] = infinitePorts[m] == -1 ? d : -2;
+    				logInMsgs[dm + m] = 0.0;
+    			}
+    			else
+    			{
+    				alphas[m] += logIn;
+    				logInMsgs[dm + m] = logIn;
+    			}
+    		}
+    	}
+    	
+    	final double[] logOut = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
+    	for (int d = 0, dm = 0; d < D; ++d, dm += M)
+    	{
+    		for (int m = M; --m>=0;)
+    		{
+    			final int infinitePort = infinitePorts[m];
+    			logOut[m] = infinitePort == -1 ? alphas[m] - logInMsgs[dm + m] :
+    				infinitePort == d ? alphas[m] : Double.NEGATIVE_INFINITY;
+    		}
+    		setOutputFromLogDomain(d, logOut, edgeStoresEnergies[d]);
+    	}
+    	
+    	DimpleEnvironment.doubleArrayCache.release(logOut);
+    	DimpleEnvironment.doubleArrayCache.release(logInMsgs);
+    	DimpleEnvironment.doubleArrayCache.release(alphas);
+    	DimpleEnvironment.intArrayCache.release(infinitePorts);
+    	
+	    if (_calculateDerivative)
+	    {
+		    for (int i = 0; i < D; i++)
+		    	updateDerivative(i);
+	    }
+    }
+    
+    /**
+     * Returns log of the current input, computing it only if the input has changed since the last call.
+     */
+    private double[] getLogInput()
+    {
+    	final double[] input = _input;
+    	if (_logInputSource != input)
+    	{
+    		final int M = input.length;
+    		double[] logInput = _logInput;
+    		if (logInput.length != M)
+    		{
+    			_logInput = logInput = new double[M];
+    		}
+    		for (int m = M; --m>=0;)
+    		{
+    			logInput[m] = Math.log(input[m]);
+    		}
+    		_logInputSource = input;
+    	}
+    	return _logInput;
+    }
+    
+    /**
+     * Sets output message for given port from unnormalized log-domain values in {@code logOut},
+     * applying damping if configured.
+     */
+    private void setOutputFromLogDomain(int outPortNum, double[] logOut, boolean isEnergy)
+    {
+    	final double[] outMsgs = _outMsgs[outPortNum];
+    	final int M = outMsgs.length;
+    	
+    	double maxLog = Double.NEGATIVE_INFINITY;
+    	for (int m = M; --m>=0;)
+    	{
+    		maxLog = Math.max(maxLog, logOut[m]);
+    	}
+    	
+    	if (maxLog == Double.NEGATIVE_INFINITY)
+    	{
+    		throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+    			+ outPortNum + " on variable " + _model.getLabel());
+    	}
+    	
+    	final double[] dampingParams = _dampingParams;
+    	final double damping = dampingParams != null ? dampingParams[outPortNum] : 0.0;
+    	
+    	if (isEnergy && damping == 0.0)
+    	{
+    		for (int m = M; --m>=0;)
+    		{
+    			outMsgs[m] = maxLog - logOut[m];
+    		}
+    		return;
+    	}
+    	
+    	final double[] weights = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
+    	double sum = 0;
+    	for (int m = M; --m>=0;)
+    	{
+    		final double weight = Math.exp(logOut[m] - maxLog);
+    		weights[m] = weight;
+    		sum += weight;
+    	}
+    	for (int m = M; --m>=0;)
+    	{
+    		weights[m] /= sum;
+    	}
+    	
+    	if (damping != 0.0)
+    	{
+    		// Damping is always applied to the normalized weights
+    		double prevSum = 0;
+    		for (int m = M; --m>=0;)
+    		{
+    			prevSum += isEnergy ? energyToWeight(outMsgs[m]) : outMsgs[m];
+    		}
+    		final double inverseDamping = 1.0 - damping;
+    		for (int m = M; --m>=0;)
+    		{
+    			final double prev = isEnergy ? energyToWeight(outMsgs[m]) : outMsgs[m];
+    			weights[m] = weights[m]*inverseDamping + prev/prevSum*damping;
+    		}
+    	}
+    	
+    	if (isEnergy)
+    	{
+    		for (int m = M; --m>=0;)
+    		{
+    			outMsgs[m] = weightToEnergy(weights[m]);
+    		}
+    	}
+    	else
+    	{
+    		System.arraycopy(weights, 0, outMsgs, 0, M);
+    	}
+    	
+    	DimpleEnvironment.doubleArrayCache.release(weights);
+    }
+    
     @Override
 	public double[] getBelief()
     {
@@ -379,8 +652,16 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
         	
 	        for (int d = 0; d < D; d++)
 	        {
-	        	double tmp = getSiblingEdgeState(d).factorToVarMsg.getWeight(m);
-	        	out += (tmp == 0) ? minLog : Math.log(tmp);
+	        	final DiscreteMessage msg = getSiblingEdgeState(d).factorToVarMsg;
+	        	if (msg.storesWeights())
+	        	{
+	        		double tmp = msg.getWeight(m);
+	        		out += (tmp == 0) ? minLog : Math.log(tmp);
+	        	}
+	        	else
+	        	{
+	        		out -= msg.getEnergy(m);
+	        	}
 	        }
         	if (out > maxLog) maxLog = out;
         	outBelief[m] = out;
@@ -428,10 +709,10 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 		
 		for (int i = 0, n = getSiblingCount(); i < n; i++)
 		{
-			final double[] inMsg = getSiblingEdgeState(i).factorToVarMsg.representation();
+			final DiscreteMessage inMsg = getSiblingEdgeState(i).factorToVarMsg;
 			for (int j=  0; j < retval.length; j++)
 			{
-				retval[j] *= inMsg[j];
+				retval[j] *= inMsg.getWeight(j);
 			}
 		}
 		
@@ -17,24 +17,57 @@
 package com.analog.lyric.dimple.solvers.sumproduct;
 
 import com.analog.lyric.dimple.model.variables.Discrete;
-import com.analog.lyric.dimple.solvers.core.SDiscreteWeightEdge;
+import com.analog.lyric.dimple.solvers.core.SDiscreteEdge;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteEnergyMessage;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteWeightMessage;
 
 
 /**
- * 
+ * Edge between discrete variable and factor in sum-product solver.
+ * <p>
+ * The messages are normally stored in weight form, but will be stored as energies
+ * when {@link SumProductOptions#logDomainMessages} is in effect for the factor.
+ * <p>
  * @since 0.08
  * @author Christopher Barber
  */
-public class SumProductDiscreteEdge extends SDiscreteWeightEdge
+public class SumProductDiscreteEdge extends SDiscreteEdge<DiscreteMessage>
 {
 	public SumProductDiscreteEdge(Discrete discrete)
 	{
-		super(discrete);
+		this(discrete, false);
 	}
 	
-	public SumProductDiscreteEdge(DiscreteWeightMessage varToFactorMsg, DiscreteWeightMessage factorToVarMsg)
+	/**
+	 * Construct edge for given variable with messages in weight or energy form.
+	 * <p>
+	 * @param discrete is the variable at one end of the edge.
+	 * @param useEnergies specifies whether messages should be stored as energies instead of weights.
+	 * @since 0.08
+	 */
+	public SumProductDiscreteEdge(Discrete discrete, boolean useEnergies)
+	{
+		this(discrete.getDomain().size(), useEnergies);
+	}
+	
+	private SumProductDiscreteEdge(int size, boolean useEnergies)
+	{
+		this(useEnergies ? new DiscreteEnergyMessage(size) : new DiscreteWeightMessage(size),
+			useEnergies ? new DiscreteEnergyMessage(size) : new DiscreteWeightMessage(size));
+	}
+	
+	public SumProductDiscreteEdge(DiscreteMessage varToFactorMsg, DiscreteMessage factorToVarMsg)
 	{
 		super(varToFactorMsg, factorToVarMsg);
 	}
+	
+	/**
+	 * True if messages are stored as energies rather than weights.
+	 * @since 0.08
+	 */
+	public boolean storesEnergies()
+	{
+		return !factorToVarMsg.storesWeights();
+	}
 }
@@ -17,15 +17,44 @@
 package com.analog.lyric.dimple.solvers.sumproduct;
 
 import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.options.BooleanOptionKey;
 
 /**
  * Options for sum-product solver.
  * <p>
- * There are currently no options specific to the SumProduct solver. See {@link BPOptions} instead.
+ * Most options for the SumProduct solver are inherited from {@link BPOptions}.
  * <p>
  * @since 0.07
  * @author Christopher Barber
  */
 public class SumProductOptions extends BPOptions
 {
+	/**
+	 * Specifies whether to keep discrete messages in log-domain (energy) form.
+	 * <p>
+	 * When enabled on a table factor (or on a graph containing it), the messages on its edges to discrete
+	 * variables will be stored as energies (negative log weights) instead of weights. Variable updates are
+	 * then computed by adding energies, and factor updates marginalize directly over the energies of the
+	 * factor table using log-sum-exp, so messages never pass through the linear domain and products of many
+	 * small probabilities do not underflow. Such factors always use the normal update approach; when
+	 * {@link BPOptions#maxMessageSize} is smaller than a domain, the k-best update still converts the messages
+	 * to weights.
+	 * <p>
+	 * The main benefit is avoiding underflow. Since the factor update computes an exponent for every table
+	 * entry, this is usually slower than the default, except when variable updates dominate, such as for
+	 * variables with many neighbors that are updated one edge at a time by the
+	 * {@link com.analog.lyric.dimple.schedulers.SequentialScheduler SequentialScheduler}.
+	 * <p>
+	 * Messages on edges of factors that are not table factors, such as custom factors, are unaffected.
+	 * <p>
+	 * Note that message residuals used by {@link #convergenceTolerance} and
+	 * {@link com.analog.lyric.dimple.schedulers.ResidualBPScheduler ResidualBPScheduler} are computed on the
+	 * energies for edges in this mode.
+	 * <p>
+	 * This option is false by default.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final BooleanOptionKey logDomainMessages =
+		new BooleanOptionKey(SumProductOptions.class, "logDomainMessages", false);
 }
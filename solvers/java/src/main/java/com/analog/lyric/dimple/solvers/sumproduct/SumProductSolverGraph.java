@@ -16,6 +16,8 @@
 
 package com.analog.lyric.dimple.solvers.sumproduct;
 
+import static java.util.Objects.*;
+
 import java.util.Map;
 import java.util.Random;
 
@@ -25,6 +27,8 @@ import com.analog.lyric.collect.Tuple2;
 import com.analog.lyric.dimple.factorfunctions.ComplexNegate;
 import com.analog.lyric.dimple.factorfunctions.ComplexSubtract;
 import com.analog.lyric.dimple.factorfunctions.ComplexSum;
+import com.analog.lyric.dimple.factorfunctions.Equality;
+import com.analog.lyric.dimple.factorfunctions.Equals;
 import com.analog.lyric.dimple.factorfunctions.FiniteFieldAdd;
 import com.analog.lyric.dimple.factorfunctions.FiniteFieldMult;
 import com.analog.lyric.dimple.factorfunctions.FiniteFieldProjection;
@@ -40,6 +44,7 @@ import com.analog.lyric.dimple.factorfunctions.RealJointSubtract;
 import com.analog.lyric.dimple.factorfunctions.RealJointSum;
 import com.analog.lyric.dimple.factorfunctions.Subtract;
 import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.Xor;
 import com.analog.lyric.dimple.factorfunctions.core.CustomFactorFunctionWrapper;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
@@ -77,6 +82,8 @@ import com.analog.lyric.dimple.solvers.optimizedupdate.TableWrapper;
 import com.analog.lyric.dimple.solvers.optimizedupdate.UpdateApproach;
 import com.analog.lyric.dimple.solvers.optimizedupdate.UpdateCostOptimizer;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomComplexGaussianPolynomial;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomEquality;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomEquals;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomFiniteFieldAdd;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomFiniteFieldConstantMult;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomFiniteFieldMult;
@@ -87,6 +94,8 @@ import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomGaussianNe
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomGaussianProduct;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomGaussianSubtract;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomGaussianSum;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomIntegerSubtract;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomIntegerSum;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultiplexer;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivariateGaussianNegate;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivariateGaussianProduct;
@@ -94,6 +103,7 @@ import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivaria
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivariateGaussianSum;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivariateNormalConstantParameters;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomNormalConstantParameters;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomXor;
 import com.analog.lyric.dimple.solvers.sumproduct.sampledfactor.SampledFactor;
 import com.analog.lyric.math.DimpleRandomGenerator;
 import com.analog.lyric.options.IOptionKey;
@@ -203,6 +213,16 @@ public class SumProductSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVa
 				return new CustomFiniteFieldProjection(factor, this);
 			else if ((factorFunction instanceof Multiplexer) || (noFF && factorName.equals("multiplexerCPD")))	// "multiplexerCPD" for backward compatibility
 				return new CustomMultiplexer(factor, this);															// Currently only supports discrete variables
+			else if ((factorFunction instanceof Xor) && CustomXor.isFactorCompatible(factor))
+				return new CustomXor(factor, this);
+			else if ((factorFunction instanceof Equality) && CustomEquality.isFactorCompatible(factor))
+				return new CustomEquality(factor, this);
+			else if ((factorFunction instanceof Equals) && CustomEquals.isFactorCompatible(factor))
+				return new CustomEquals(factor, this);
+			else if ((factorFunction instanceof Sum) && CustomIntegerSum.isFactorCompatible(factor))
+				return new CustomIntegerSum(factor, this);
+			else if ((factorFunction instanceof Subtract) && CustomIntegerSubtract.isFactorCompatible(factor))
+				return new CustomIntegerSubtract(factor, this);
 			else	// No custom factor exists, so create a generic one
 			{
 				// For discrete case, create a table factor
@@ -736,6 +756,35 @@ public class SumProductSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVa
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * First discards any edges of {@link SumProductTableFactor}s whose message form does not match the
+	 * current value of {@link SumProductOptions#logDomainMessages} so that they will be recreated.
+	 */
+	@Override
+	public void initializeSolverEdges()
+	{
+		final FactorGraph fg = _model;
+		final SolverNodeMapping solvers = getSolverMapping();
+		for (int i = 0, n = fg.getGraphEdgeStateMaxIndex() + 1; i < n; ++i)
+		{
+			final ISolverEdgeState sedge = getSolverEdge(i, false);
+			if (sedge instanceof SumProductDiscreteEdge)
+			{
+				final EdgeState edge = requireNonNull(fg.getGraphEdgeState(i));
+				final ISolverFactor sfactor = solvers.getSolverFactor(edge.getFactor(fg));
+				if (sfactor instanceof SumProductTableFactor &&
+					((SumProductTableFactor)sfactor).useLogDomainMessages() != ((SumProductDiscreteEdge)sedge).storesEnergies())
+				{
+					removeSolverEdge(edge);
+				}
+			}
+		}
+		
+		super.initializeSolverEdges();
+	}
+	
 	@Override
 	public void initialize()
 	{
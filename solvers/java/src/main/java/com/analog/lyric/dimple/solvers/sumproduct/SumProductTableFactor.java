@@ -33,6 +33,7 @@ import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.core.EdgeState;
 import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.options.BPOptions;
 import com.analog.lyric.dimple.solvers.core.STableFactorDoubleArray;
@@ -40,6 +41,7 @@ import com.analog.lyric.dimple.solvers.core.kbest.IKBestFactor;
 import com.analog.lyric.dimple.solvers.core.kbest.KBestFactorEngine;
 import com.analog.lyric.dimple.solvers.core.kbest.KBestFactorTableEngine;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.optimizedupdate.FactorTableUpdateSettings;
 import com.analog.lyric.dimple.solvers.optimizedupdate.FactorUpdatePlan;
@@ -62,6 +64,24 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	protected double[][] _inputMessages = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
 	protected double[][] _outputMessages = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
 	
+	/*
+	 * When edge messages are stored as energies (see SumProductOptions.logDomainMessages), these hold the
+	 * energy arrays of the messages and the corresponding entries of _inputMessages/_outputMessages hold
+	 * scratch arrays containing the messages in weight form, which is what the update engines use.
+	 * Entries for edges with weight messages are empty.
+	 */
+	protected double[][] _inputEnergies = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
+	protected double[][] _outputEnergies = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
+	protected boolean _hasEnergyMessages = false;
+	
+	/*
+	 * Copies of the input energies from which the weights in _inputMessages were last computed, so that
+	 * each input is only converted when its message changes rather than on every update. The message may
+	 * be written by the variable update and also directly through setInputMsgValues, edge reset or when
+	 * moving messages, so changes are detected by comparing against this copy.
+	 */
+	private double[][] _convertedInputEnergies = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
+	
 	protected @Nullable double [][][] _outPortDerivativeMsgs;
 	protected double [] _dampingParams = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 	protected @Nullable TableFactorEngine _tableFactorEngine;
@@ -104,13 +124,36 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 		{
 			_inputMessages = new double[nSiblings][];
 			_outputMessages = new double[nSiblings][];
+			_inputEnergies = new double[nSiblings][];
+			_outputEnergies = new double[nSiblings][];
+			_convertedInputEnergies = new double[nSiblings][];
 		}
 		
+		_hasEnergyMessages = false;
 		for (int i = 0; i < nSiblings; ++i)
 		{
 			final SumProductDiscreteEdge edge = getSiblingEdgeState(i);
-			_inputMessages[i] = edge.varToFactorMsg.representation();
-			_outputMessages[i] = edge.factorToVarMsg.representation();
+			if (edge.storesEnergies())
+			{
+				_hasEnergyMessages = true;
+				final int size = edge.varToFactorMsg.size();
+				_inputEnergies[i] = edge.varToFactorMsg.representation();
+				_outputEnergies[i] = edge.factorToVarMsg.representation();
+				_inputMessages[i] = new double[size];
+				_outputMessages[i] = new double[size];
+				_convertedInputEnergies[i] = new double[size];
+				energiesToWeights(_inputEnergies[i], _inputMessages[i]);
+				System.arraycopy(_inputEnergies[i], 0, _convertedInputEnergies[i], 0, size);
+				outputEnergiesToWeights(i);
+			}
+			else
+			{
+				_inputEnergies[i] = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+				_outputEnergies[i] = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+				_convertedInputEnergies[i] = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+				_inputMessages[i] = edge.varToFactorMsg.representation();
+				_outputMessages[i] = edge.factorToVarMsg.representation();
+			}
 		}
 	}
 	
@@ -123,7 +166,7 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 		{
 			updatePlan = factorTableUpdateSettings.getOptimizedUpdatePlan();
 		}
-		if (updatePlan != null)
+		if (updatePlan != null && !useLogDomainMessages())
 		{
 			_tableFactorEngine = new TableFactorEngineOptimized(this, updatePlan);
 		}
@@ -165,12 +208,26 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	@Override
 	protected void doUpdate()
 	{
-		
-		if (_kIsSmallerThanDomain)
-			//TODO: damping
+		if (!_kIsSmallerThanDomain)
+		{
+			if (_hasEnergyMessages)
+				getTableFactorEngine().updateEnergies();
+			else
+				getTableFactorEngine().update();
+		}
+		else if (_hasEnergyMessages)
+		{
+			// The k-best engine only works on weights
+			inputEnergiesToWeights(-1);
 			_kbestFactorEngine.update();
+			for (int i = 0, n = getSiblingCount(); i < n; i++)
+				outputWeightsToEnergies(i);
+		}
 		else
-			getTableFactorEngine().update();
+		{
+			//TODO: damping
+			_kbestFactorEngine.update();
+		}
 		
 		if (_updateDerivative)
 		{
@@ -183,11 +240,24 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	@Override
 	public void doUpdateEdge(int outPortNum)
 	{
-		
-		if (_kIsSmallerThanDomain)
+		if (!_kIsSmallerThanDomain)
+		{
+			if (_hasEnergyMessages)
+				getTableFactorEngine().updateEdgeEnergies(outPortNum);
+			else
+				getTableFactorEngine().updateEdge(outPortNum);
+		}
+		else if (_hasEnergyMessages)
+		{
+			// The k-best engine only works on weights
+			inputEnergiesToWeights(outPortNum);
 			_kbestFactorEngine.updateEdge(outPortNum);
+			outputWeightsToEnergies(outPortNum);
+		}
 		else
-			getTableFactorEngine().updateEdge(outPortNum);
+		{
+			_kbestFactorEngine.updateEdge(outPortNum);
+		}
 
 		if (_updateDerivative)
 			updateDerivative(outPortNum);
@@ -216,6 +286,28 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 		return retval;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Creates edges with messages in energy form for discrete variables when
+	 * {@link SumProductOptions#logDomainMessages} is enabled for this factor, otherwise
+	 * returns null to use the default edge.
+	 */
+	@Override
+	public @Nullable ISolverEdgeState createEdge(EdgeState edge)
+	{
+		if (useLogDomainMessages())
+		{
+			final Variable var = _model.getSibling(edge.getFactorToVariableEdgeNumber());
+			if (var instanceof Discrete)
+			{
+				return new SumProductDiscreteEdge((Discrete)var, true);
+			}
+		}
+		
+		return null;
+	}
+	
 	/*---------------
 	 * SNode methods
 	 */
@@ -234,7 +326,9 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	@Override
 	protected void setTableRepresentation(IFactorTable table)
 	{
-		table.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT_WITH_INDICES);
+		// Log-domain messages are marginalized directly over the table energies
+		table.setRepresentation(useLogDomainMessages() ? FactorTableRepresentation.ALL_SPARSE_WITH_INDICES :
+			FactorTableRepresentation.SPARSE_WEIGHT_WITH_INDICES);
 	}
 	
 	@Override
@@ -318,14 +412,16 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	/**
 	 * Returns the effective update approach for the factor. If the update approach is set to
 	 * automatic, this value is not valid until the graph is initialized. Note that a factor
-	 * with only one edge always employs the normal update approach.
+	 * with only one edge, or that {@linkplain #useLogDomainMessages uses log-domain messages},
+	 * always employs the normal update approach.
 	 * 
 	 * @since 0.07
 	 */
 	public UpdateApproach getEffectiveUpdateApproach()
 	{
 		FactorTableUpdateSettings factorTableUpdateSettings = getFactorTableUpdateSettings();
-		if (factorTableUpdateSettings != null && factorTableUpdateSettings.getOptimizedUpdatePlan() != null)
+		if (factorTableUpdateSettings != null && factorTableUpdateSettings.getOptimizedUpdatePlan() != null &&
+			!useLogDomainMessages())
 		{
 			return UpdateApproach.OPTIMIZED;
 		}
@@ -381,6 +477,20 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 		_updateDerivative = updateDer;
 	}
 	
+	/**
+	 * True if {@link SumProductOptions#logDomainMessages} is enabled for this factor, in which case
+	 * edges to discrete variables will store messages as energies and the factor's output messages
+	 * will be computed from the energies of its table using log-sum-exp.
+	 * <p>
+	 * Custom factors that compute their messages directly from weights override this to return
+	 * false, so that their edges keep storing weights regardless of the option setting.
+	 * @since 0.08
+	 */
+	public boolean useLogDomainMessages()
+	{
+		return getOptionOrDefault(SumProductOptions.logDomainMessages);
+	}
+	
 	
 	
 	public double [] getUnormalizedBelief()
@@ -819,6 +929,99 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	 * Internal methods
 	 */
 	
+	/**
+	 * Converts energy-form input messages into the corresponding scratch weight arrays in {@link #_inputMessages},
+	 * skipping {@code excludedPort} and any messages that have not changed since they were last converted.
+	 * The weights are scaled so that the largest weight in each message is one.
+	 * <p>
+	 * When damping is in use, also refreshes the weight form of the damped output messages, since the
+	 * engines use their previous values.
+	 */
+	private void inputEnergiesToWeights(int excludedPort)
+	{
+		final double[][] inputEnergies = _inputEnergies;
+		final double[][] inputMessages = _inputMessages;
+		final double[][] convertedInputEnergies = _convertedInputEnergies;
+		
+		for (int port = 0, n = inputEnergies.length; port < n; ++port)
+		{
+			final double[] energies = inputEnergies[port];
+			if (port != excludedPort && energies.length > 0)
+			{
+				final double[] converted = convertedInputEnergies[port];
+				if (!Arrays.equals(energies, converted))
+				{
+					energiesToWeights(energies, inputMessages[port]);
+					System.arraycopy(energies, 0, converted, 0, energies.length);
+				}
+			}
+		}
+		
+		if (_dampingInUse)
+		{
+			for (int port = 0, n = inputEnergies.length; port < n; ++port)
+			{
+				if (_dampingParams[port] != 0.0 && (excludedPort < 0 || port == excludedPort))
+				{
+					outputEnergiesToWeights(port);
+				}
+			}
+		}
+	}
+	
+	private void outputEnergiesToWeights(int port)
+	{
+		final double[] energies = _outputEnergies[port];
+		if (energies.length > 0)
+		{
+			final double[] weights = _outputMessages[port];
+			energiesToWeights(energies, weights);
+			double sum = 0.0;
+			for (double weight : weights)
+			{
+				sum += weight;
+			}
+			for (int i = weights.length; --i>=0;)
+			{
+				weights[i] /= sum;
+			}
+		}
+	}
+	
+	private static void energiesToWeights(double[] energies, double[] weights)
+	{
+		double minEnergy = Double.POSITIVE_INFINITY;
+		for (double energy : energies)
+		{
+			minEnergy = Math.min(minEnergy, energy);
+		}
+		if (minEnergy == Double.POSITIVE_INFINITY)
+		{
+			// All weights are zero
+			minEnergy = 0.0;
+		}
+		for (int i = energies.length; --i>=0;)
+		{
+			weights[i] = Math.exp(minEnergy - energies[i]);
+		}
+	}
+	
+	/**
+	 * Converts scratch weight array for output message to energies if the output message is in energy form.
+	 */
+	private void outputWeightsToEnergies(int port)
+	{
+		final double[] energies = _outputEnergies[port];
+		if (energies.length > 0)
+		{
+			final double[] weights = _outputMessages[port];
+			for (int i = energies.length; --i>=0;)
+			{
+				energies[i] = weightToEnergy(weights[i]);
+			}
+		}
+	}
+	
 	protected void configureDampingFromOptions()
 	{
 		final int size = getSiblingCount();
@@ -40,9 +40,9 @@ public class TableFactorEngine
 	public void updateEdge(int outPortNum)
 	{
 		final SumProductTableFactor tableFactor = _tableFactor;
-	    final int[][] table = tableFactor.getFactorTable().getIndicesSparseUnsafe();
+	    final int[] table = tableFactor.getFactorTable().getPackedIndicesSparseUnsafe();
 	    final double[] values = tableFactor.getFactorTable().getWeightsSparseUnsafe();
-	    final int tableLength = table.length;
+	    final int tableLength = values.length;
 	    final int numPorts = _factor.getSiblingCount();
 	    
         final double[] outputMsgs = tableFactor.getOutPortMsg(outPortNum);
@@ -60,17 +60,17 @@ public class TableFactorEngine
     		double sum = 0.0;
     		Arrays.fill(outputMsgs, 0);
 
-    		for (int tableIndex = tableLength; --tableIndex>=0;)
+    		for (int tableIndex = tableLength, rowOffset = tableLength * numPorts; --tableIndex>=0;)
     		{
+    			rowOffset -= numPorts;
     			double prob = values[tableIndex];
-    			final int[] tableRow = table[tableIndex];
-    			final int outputIndex = tableRow[outPortNum];
+    			final int outputIndex = table[rowOffset + outPortNum];
 
     			int inPortNum = numPorts;
     			while (--inPortNum > outPortNum)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
+    				prob *= inputMsgs[inPortNum][table[rowOffset + inPortNum]];
     			while (--inPortNum >= 0)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
+    				prob *= inputMsgs[inPortNum][table[rowOffset + inPortNum]];
 
     			outputMsgs[outputIndex] += prob;
     			sum += prob;
@@ -100,17 +100,17 @@ public class TableFactorEngine
     		double sum = 0.0;
     		Arrays.fill(outputMsgs, 0);
 
-    		for (int tableIndex = tableLength; --tableIndex>=0;)
+    		for (int tableIndex = tableLength, rowOffset = tableLength * numPorts; --tableIndex>=0;)
     		{
+    			rowOffset -= numPorts;
     			double prob = values[tableIndex];
-    			final int[] tableRow = table[tableIndex];
-    			final int outputIndex = tableRow[outPortNum];
+    			final int outputIndex = table[rowOffset + outPortNum];
 
     			int inPortNum = numPorts;
     			while (--inPortNum > outPortNum)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
+    				prob *= inputMsgs[inPortNum][table[rowOffset + inPortNum]];
     			while (--inPortNum >= 0)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
+    				prob *= inputMsgs[inPortNum][table[rowOffset + inPortNum]];
 
     			outputMsgs[outputIndex] += prob;
     			sum += prob;
@@ -134,9 +134,9 @@ public class TableFactorEngine
 	{
 		final SumProductTableFactor tableFactor = _tableFactor;
 		final IFactorTable table = tableFactor.getFactorTable();
-	    final int[][] tableIndices = table.getIndicesSparseUnsafe();
+	    final int[] tableIndices = table.getPackedIndicesSparseUnsafe();
 	    final double[] values = table.getWeightsSparseUnsafe();
-	    final int tableLength = tableIndices.length;
+	    final int tableLength = values.length;
 	    final int numPorts = _factor.getSiblingCount();
 	    
 	    final double [][] inMsgs = tableFactor.getInPortMsgs();
@@ -159,17 +159,17 @@ public class TableFactorEngine
 
 	    		Arrays.fill(outputMsgs, 0);
 
-	    		for (int tableIndex = tableLength; --tableIndex>=0;)
+	    		for (int tableIndex = tableLength, rowOffset = tableLength * numPorts; --tableIndex>=0;)
 	    		{
+	    			rowOffset -= numPorts;
 	    			double prob = values[tableIndex];
-	    			final int[] tableRow = tableIndices[tableIndex];
-	    			int outputIndex = tableRow[outPortNum];
+	    			int outputIndex = tableIndices[rowOffset + outPortNum];
 
 	    			int inPortNum = numPorts;
 	    			while (--inPortNum > outPortNum)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
+	    				prob *= inMsgs[inPortNum][tableIndices[rowOffset + inPortNum]];
 	    			while (--inPortNum >= 0)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
+	    				prob *= inMsgs[inPortNum][tableIndices[rowOffset + inPortNum]];
 	    			outputMsgs[outputIndex] += prob;
 	    		}
 
@@ -212,17 +212,17 @@ public class TableFactorEngine
 
 	    		Arrays.fill(outputMsgs, 0);
 
-	    		for (int tableIndex = tableLength; --tableIndex>=0;)
+	    		for (int tableIndex = tableLength, rowOffset = tableLength * numPorts; --tableIndex>=0;)
 	    		{
+	    			rowOffset -= numPorts;
 	    			double prob = values[tableIndex];
-	    			final int[] tableRow = tableIndices[tableIndex];
-	    			int outputIndex = tableRow[outPortNum];
+	    			int outputIndex = tableIndices[rowOffset + outPortNum];
 
 	    			int inPortNum = numPorts;
 	    			while (--inPortNum > outPortNum)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
+	    				prob *= inMsgs[inPortNum][tableIndices[rowOffset + inPortNum]];
 	    			while (--inPortNum >= 0)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
+	    				prob *= inMsgs[inPortNum][tableIndices[rowOffset + inPortNum]];
 	    			outputMsgs[outputIndex] += prob;
 	    		}
 
@@ -244,4 +244,175 @@ public class TableFactorEngine
 	    	}
 	    }
 	}
+	
+	/**
+	 * Computes the output message for {@code outPortNum} of a factor whose edges store messages as energies
+	 * (see {@link SumProductOptions#logDomainMessages}).
+	 * <p>
+	 * The marginalization is done entirely in the log domain, using log-sum-exp over the energies of the
+	 * factor table entries combined with the input energies, so output values whose weights would underflow
+	 * are still represented accurately. The output energies are normalized so that the smallest is zero.
+	 * @since 0.08
+	 */
+	public void updateEdgeEnergies(int outPortNum)
+	{
+		final IFactorTable table = _tableFactor.getFactorTable();
+		final int[] tableIndices = table.getPackedIndicesSparseUnsafe();
+		final double[] tableEnergies = table.getEnergiesSparseUnsafe();
+		final double[] rowEnergies = DimpleEnvironment.doubleArrayCache.allocateAtLeast(tableEnergies.length);
+		
+		updateEdgeEnergies(outPortNum, tableIndices, tableEnergies, rowEnergies);
+		
+		DimpleEnvironment.doubleArrayCache.release(rowEnergies);
+	}
+	
+	/**
+	 * Computes all of the output messages of a factor whose edges store messages as energies.
+	 * @see #updateEdgeEnergies(int)
+	 * @since 0.08
+	 */
+	public void updateEnergies()
+	{
+		final IFactorTable table = _tableFactor.getFactorTable();
+		final int[] tableIndices = table.getPackedIndicesSparseUnsafe();
+		final double[] tableEnergies = table.getEnergiesSparseUnsafe();
+		final double[] rowEnergies = DimpleEnvironment.doubleArrayCache.allocateAtLeast(tableEnergies.length);
+		
+		for (int outPortNum = _factor.getSiblingCount(); --outPortNum>=0;)
+		{
+			updateEdgeEnergies(outPortNum, tableIndices, tableEnergies, rowEnergies);
+		}
+		
+		DimpleEnvironment.doubleArrayCache.release(rowEnergies);
+	}
+	
+	private void updateEdgeEnergies(int outPortNum, int[] tableIndices, double[] tableEnergies, double[] rowEnergies)
+	{
+		final SumProductTableFactor tableFactor = _tableFactor;
+		final double[][] inEnergies = tableFactor._inputEnergies;
+		final double[] outEnergies = tableFactor._outputEnergies[outPortNum];
+		final int outLength = outEnergies.length;
+		final int tableLength = tableEnergies.length;
+		final int numPorts = _factor.getSiblingCount();
+		
+		final double[] minEnergies = DimpleEnvironment.doubleArrayCache.allocateAtLeast(outLength);
+		final double[] sums = DimpleEnvironment.doubleArrayCache.allocateAtLeast(outLength);
+		Arrays.fill(minEnergies, 0, outLength, Double.POSITIVE_INFINITY);
+		Arrays.fill(sums, 0, outLength, 0.0);
+		
+		// First pass: combined energy of each table entry and the smallest one for each output value
+		for (int tableIndex = 0, rowOffset = 0; tableIndex < tableLength; ++tableIndex, rowOffset += numPorts)
+		{
+			double energy = tableEnergies[tableIndex];
+			for (int inPortNum = 0; inPortNum < numPorts; ++inPortNum)
+			{
+				if (inPortNum != outPortNum)
+				{
+					energy += inEnergies[inPortNum][tableIndices[rowOffset + inPortNum]];
+				}
+			}
+			rowEnergies[tableIndex] = energy;
+			
+			final int outputIndex = tableIndices[rowOffset + outPortNum];
+			if (energy < minEnergies[outputIndex])
+			{
+				minEnergies[outputIndex] = energy;
+			}
+		}
+		
+		// Second pass: sum the weights relative to the smallest energy for each output value
+		for (int tableIndex = 0, rowOffset = outPortNum; tableIndex < tableLength; ++tableIndex, rowOffset += numPorts)
+		{
+			final int outputIndex = tableIndices[rowOffset];
+			final double minEnergy = minEnergies[outputIndex];
+			if (minEnergy != Double.POSITIVE_INFINITY)
+			{
+				sums[outputIndex] += Math.exp(minEnergy - rowEnergies[tableIndex]);
+			}
+		}
+		
+		double minOut = Double.POSITIVE_INFINITY;
+		for (int i = outLength; --i>=0;)
+		{
+			final double minEnergy = minEnergies[i];
+			if (minEnergy != Double.POSITIVE_INFINITY)
+			{
+				minOut = Math.min(minOut, minEnergies[i] = minEnergy - Math.log(sums[i]));
+			}
+		}
+		
+		if (minOut == Double.POSITIVE_INFINITY)
+		{
+			throw new DimpleException("UpdateEdge failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+				+ outPortNum + " on factor " + _factor.getLabel());
+		}
+		
+		final double damping = tableFactor._dampingInUse ? tableFactor._dampingParams[outPortNum] : 0.0;
+		if (damping != 0.0)
+		{
+			dampEnergies(outEnergies, minEnergies, outLength, damping);
+		}
+		else
+		{
+			for (int i = outLength; --i>=0;)
+			{
+				outEnergies[i] = minEnergies[i] - minOut;
+			}
+		}
+		
+		DimpleEnvironment.doubleArrayCache.release(sums);
+		DimpleEnvironment.doubleArrayCache.release(minEnergies);
+	}
+	
+	/**
+	 * Replaces {@code outEnergies} with the energies of the weighted mixture of the normalized distributions
+	 * given by {@code newEnergies} and the previous value of {@code outEnergies}, as for damping of weights,
+	 * but computed in the log domain. The result is normalized so that the smallest energy is zero.
+	 */
+	private static void dampEnergies(double[] outEnergies, double[] newEnergies, int length, double damping)
+	{
+		final double newNormalizer = logNormalizer(newEnergies, length) - Math.log(1 - damping);
+		final double oldNormalizer = logNormalizer(outEnergies, length) - Math.log(damping);
+		
+		double minOut = Double.POSITIVE_INFINITY;
+		for (int i = length; --i>=0;)
+		{
+			final double newEnergy = newEnergies[i] + newNormalizer;
+			final double oldEnergy = outEnergies[i] + oldNormalizer;
+			final double minEnergy = Math.min(newEnergy, oldEnergy);
+			final double energy = minEnergy == Double.POSITIVE_INFINITY ? minEnergy :
+				minEnergy - Math.log(Math.exp(minEnergy - newEnergy) + Math.exp(minEnergy - oldEnergy));
+			outEnergies[i] = energy;
+			minOut = Math.min(minOut, energy);
+		}
+		
+		for (int i = length; --i>=0;)
+		{
+			outEnergies[i] -= minOut;
+		}
+	}
+	
+	/**
+	 * Returns the log of the sum of the weights corresponding to the first {@code length} {@code energies}.
+	 */
+	private static double logNormalizer(double[] energies, int length)
+	{
+		double minEnergy = Double.POSITIVE_INFINITY;
+		for (int i = length; --i>=0;)
+		{
+			minEnergy = Math.min(minEnergy, energies[i]);
+		}
+		if (minEnergy == Double.POSITIVE_INFINITY)
+		{
+			// All weights are zero, so just ignore the damping
+			return Double.POSITIVE_INFINITY;
+		}
+		
+		double sum = 0.0;
+		for (int i = length; --i>=0;)
+		{
+			sum += Math.exp(minEnergy - energies[i]);
+		}
+		return Math.log(sum) - minEnergy;
+	}
 }
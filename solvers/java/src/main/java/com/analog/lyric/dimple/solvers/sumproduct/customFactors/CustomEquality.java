@@ -0,0 +1,233 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Equality;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.domains.Domain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+
+/**
+ * Sum-product solver factor for the {@link Equality} factor function.
+ * <p>
+ * The outgoing message for each edge is simply the product of the incoming messages on all of the
+ * other edges. These leave-one-out products are computed using forward and backward partial products,
+ * so that updating all of the edges of a factor of degree d over a domain of size D takes O(d D) time
+ * and does not require a factor table.
+ * <p>
+ * This does not support {@link com.analog.lyric.dimple.solvers.sumproduct.SumProductOptions#logDomainMessages
+ * SumProductOptions.logDomainMessages}, so its edges always hold messages in weight form.
+ * <p>
+ * @since 0.08
+ */
+public class CustomEquality extends SumProductTableFactor
+{
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomEquality(Factor factor, ISolverFactorGraph parent)
+	{
+		super(factor, parent);
+	}
+
+	/**
+	 * True if factor has an {@link Equality} factor function without smoothing or constants and all of its
+	 * variables have the same discrete domain.
+	 */
+	public static boolean isFactorCompatible(Factor factor)
+	{
+		final FactorFunction function = factor.getFactorFunction();
+		final FactorFunction containedFunction = function.getContainedFactorFunction();
+		if (!(containedFunction instanceof Equality) || ((Equality)containedFunction).hasSmoothing() ||
+			function.hasConstants())
+		{
+			return false;
+		}
+
+		final Domain domain = factor.getSibling(0).getDomain();
+		if (!domain.isDiscrete())
+		{
+			return false;
+		}
+		for (int i = 1, end = factor.getSiblingCount(); i < end; i++)
+		{
+			if (!domain.equals(factor.getSibling(i).getDomain()))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	protected void doUpdate()
+	{
+		final double[][] inputMsgs = _inputMessages;
+		final double[][] outputMsgs = _outputMessages;
+		final int numPorts = inputMsgs.length;
+		final int domainSize = inputMsgs[0].length;
+
+		// Save previous outputs for damping, since they are overwritten before being normalized.
+		double[] saved = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		if (_dampingInUse)
+		{
+			saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts * domainSize);
+			for (int port = 0; port < numPorts; ++port)
+			{
+				System.arraycopy(outputMsgs[port], 0, saved, port * domainSize, domainSize);
+			}
+		}
+
+		final double[] suffixProducts = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+
+		for (int i = 0; i < domainSize; ++i)
+		{
+			double product = 1.0;
+			for (int port = numPorts; --port>=0;)
+			{
+				suffixProducts[port] = product;
+				product *= inputMsgs[port][i];
+			}
+
+			double prefixProduct = 1.0;
+			for (int port = 0; port < numPorts; ++port)
+			{
+				outputMsgs[port][i] = prefixProduct * suffixProducts[port];
+				prefixProduct *= inputMsgs[port][i];
+			}
+		}
+
+		DimpleEnvironment.doubleArrayCache.release(suffixProducts);
+
+		for (int port = 0; port < numPorts; ++port)
+		{
+			normalizeOutput(port, saved, port * domainSize);
+		}
+
+		if (saved.length > 0)
+		{
+			DimpleEnvironment.doubleArrayCache.release(saved);
+		}
+	}
+
+	@Override
+	public void doUpdateEdge(int outPortNum)
+	{
+		final double[][] inputMsgs = _inputMessages;
+		final double[] outputMsg = _outputMessages[outPortNum];
+		final int numPorts = inputMsgs.length;
+		final int domainSize = outputMsg.length;
+
+		double[] saved = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		if (_dampingInUse)
+		{
+			saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(domainSize);
+			System.arraycopy(outputMsg, 0, saved, 0, domainSize);
+		}
+
+		for (int i = 0; i < domainSize; ++i)
+		{
+			double product = 1.0;
+			for (int port = 0; port < numPorts; ++port)
+			{
+				if (port != outPortNum)
+				{
+					product *= inputMsgs[port][i];
+				}
+			}
+			outputMsg[i] = product;
+		}
+
+		normalizeOutput(outPortNum, saved, 0);
+
+		if (saved.length > 0)
+		{
+			DimpleEnvironment.doubleArrayCache.release(saved);
+		}
+	}
+
+	/*-------------------------------
+	 * SumProductTableFactor methods
+	 */
+
+	@Override
+	public boolean useLogDomainMessages()
+	{
+		return false;
+	}
+
+	/*--------------------------
+	 * STableFactorBase methods
+	 */
+
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return false;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Normalizes output message for given port and applies damping using previous normalized
+	 * value of message starting at {@code savedOffset} in {@code saved}.
+	 */
+	private void normalizeOutput(int port, double[] saved, int savedOffset)
+	{
+		final double[] outputMsg = _outputMessages[port];
+		final int domainSize = outputMsg.length;
+
+		double sum = 0.0;
+		for (int i = domainSize; --i>=0;)
+		{
+			sum += outputMsg[i];
+		}
+
+		if (sum == 0)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+				+ port + " on factor " + _model.getLabel());
+		}
+
+		for (int i = domainSize; --i>=0;)
+		{
+			outputMsg[i] /= sum;
+		}
+
+		final double damping = _dampingInUse ? _dampingParams[port] : 0.0;
+		if (damping != 0.0)
+		{
+			final double inverseDamping = 1 - damping;
+			for (int i = domainSize; --i>=0;)
+			{
+				outputMsg[i] = inverseDamping * outputMsg[i] + damping * saved[savedOffset + i];
+			}
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Equals;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.Domain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+
+/**
+ * Sum-product solver factor for the {@link Equals} factor function.
+ * <p>
+ * Given normalized input messages m<sub>i</sub> on the value edges and m<sub>0</sub> on the boolean output
+ * edge, the probability that all of the values are equal is the sum over the domain of the products of the
+ * value messages, and the probability that they are not is the product of the message sums minus that
+ * amount. The message to each value edge for a given value is likewise computed from the leave-one-out
+ * product of the other value messages for that value and the leave-one-out product of their sums.
+ * The leave-one-out products are computed using forward and backward partial products, so that updating all
+ * of the edges of a factor with d value edges over a domain of size D takes O(d D) time and does not
+ * require the factor table, which would have D<sup>d</sup> entries.
+ * <p>
+ * This does not support {@link com.analog.lyric.dimple.solvers.sumproduct.SumProductOptions#logDomainMessages
+ * SumProductOptions.logDomainMessages}, so its edges always hold messages in weight form.
+ * <p>
+ * @since 0.08
+ */
+public class CustomEquals extends SumProductTableFactor
+{
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomEquals(Factor factor, ISolverFactorGraph parent)
+	{
+		super(factor, parent);
+	}
+
+	/**
+	 * True if factor has an {@link Equals} factor function without constants, the output variable has a
+	 * two-element domain whose first element represents false and whose second element represents true, and
+	 * the remaining variables all have the same discrete domain.
+	 */
+	public static boolean isFactorCompatible(Factor factor)
+	{
+		final FactorFunction function = factor.getFactorFunction();
+		if (!(function.getContainedFactorFunction() instanceof Equals) || function.hasConstants())
+		{
+			return false;
+		}
+
+		final Domain outputDomain = factor.getSibling(0).getDomain();
+		if (!(outputDomain instanceof DiscreteDomain))
+		{
+			return false;
+		}
+		final DiscreteDomain discreteOutputDomain = (DiscreteDomain)outputDomain;
+		if (discreteOutputDomain.size() != 2 ||
+			Value.create(discreteOutputDomain.getElement(0)).getBoolean() ||
+			!Value.create(discreteOutputDomain.getElement(1)).getBoolean())
+		{
+			return false;
+		}
+
+		final int end = factor.getSiblingCount();
+		if (end > 1)
+		{
+			final Domain domain = factor.getSibling(1).getDomain();
+			if (!domain.isDiscrete())
+			{
+				return false;
+			}
+			for (int i = 2; i < end; i++)
+			{
+				if (!domain.equals(factor.getSibling(i).getDomain()))
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	protected void doUpdate()
+	{
+		final double[][] inputMsgs = _inputMessages;
+		final double[][] outputMsgs = _outputMessages;
+		final int numPorts = inputMsgs.length;
+
+		if (numPorts == 1)
+		{
+			doUpdateEdge(0);
+			return;
+		}
+
+		final int domainSize = inputMsgs[1].length;
+		final double[] outputIn = inputMsgs[0];
+
+		// Save previous outputs for damping, since they are overwritten before being normalized.
+		double[] saved = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		if (_dampingInUse)
+		{
+			saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(2 + (numPorts - 1) * domainSize);
+			System.arraycopy(outputMsgs[0], 0, saved, 0, 2);
+			for (int port = 1; port < numPorts; ++port)
+			{
+				System.arraycopy(outputMsgs[port], 0, saved, 2 + (port - 1) * domainSize, domainSize);
+			}
+		}
+
+		final double[] suffixProducts = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+		final double[] sumProducts = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+
+		// Compute leave-one-out products of the message sums into sumProducts.
+		double product = 1.0;
+		for (int port = numPorts; --port>=1;)
+		{
+			suffixProducts[port] = product;
+			product *= sum(inputMsgs[port]);
+		}
+		final double allSumProduct = product;
+		double prefixProduct = 1.0;
+		for (int port = 1; port < numPorts; ++port)
+		{
+			sumProducts[port] = prefixProduct * suffixProducts[port];
+			prefixProduct *= sum(inputMsgs[port]);
+		}
+
+		double equalProbability = 0.0;
+		for (int i = 0; i < domainSize; ++i)
+		{
+			product = 1.0;
+			for (int port = numPorts; --port>=1;)
+			{
+				suffixProducts[port] = product;
+				product *= inputMsgs[port][i];
+			}
+			equalProbability += product;
+
+			prefixProduct = 1.0;
+			for (int port = 1; port < numPorts; ++port)
+			{
+				final double otherProduct = prefixProduct * suffixProducts[port];
+				outputMsgs[port][i] =
+					outputIn[1] * otherProduct + outputIn[0] * Math.max(0.0, sumProducts[port] - otherProduct);
+				prefixProduct *= inputMsgs[port][i];
+			}
+		}
+
+		DimpleEnvironment.doubleArrayCache.release(suffixProducts);
+		DimpleEnvironment.doubleArrayCache.release(sumProducts);
+
+		final double[] outputMsg = outputMsgs[0];
+		outputMsg[0] = Math.max(0.0, allSumProduct - equalProbability);
+		outputMsg[1] = equalProbability;
+
+		normalizeOutput(0, saved, 0);
+		for (int port = 1; port < numPorts; ++port)
+		{
+			normalizeOutput(port, saved, 2 + (port - 1) * domainSize);
+		}
+
+		if (saved.length > 0)
+		{
+			DimpleEnvironment.doubleArrayCache.release(saved);
+		}
+	}
+
+	@Override
+	public void doUpdateEdge(int outPortNum)
+	{
+		final double[][] inputMsgs = _inputMessages;
+		final double[] outputMsg = _outputMessages[outPortNum];
+		final int numPorts = inputMsgs.length;
+		final int outputSize = outputMsg.length;
+
+		double[] saved = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		if (_dampingInUse)
+		{
+			saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(outputSize);
+			System.arraycopy(outputMsg, 0, saved, 0, outputSize);
+		}
+
+		if (outPortNum == 0)
+		{
+			double sumProduct = 1.0;
+			for (int port = 1; port < numPorts; ++port)
+			{
+				sumProduct *= sum(inputMsgs[port]);
+			}
+
+			double equalProbability = numPorts > 1 ? 0.0 : 1.0;
+			for (int i = 0, domainSize = numPorts > 1 ? inputMsgs[1].length : 0; i < domainSize; ++i)
+			{
+				double product = 1.0;
+				for (int port = 1; port < numPorts; ++port)
+				{
+					product *= inputMsgs[port][i];
+				}
+				equalProbability += product;
+			}
+
+			outputMsg[0] = Math.max(0.0, sumProduct - equalProbability);
+			outputMsg[1] = equalProbability;
+		}
+		else
+		{
+			final double[] outputIn = inputMsgs[0];
+
+			double sumProduct = 1.0;
+			for (int port = 1; port < numPorts; ++port)
+			{
+				if (port != outPortNum)
+				{
+					sumProduct *= sum(inputMsgs[port]);
+				}
+			}
+
+			for (int i = 0; i < outputSize; ++i)
+			{
+				double product = 1.0;
+				for (int port = 1; port < numPorts; ++port)
+				{
+					if (port != outPortNum)
+					{
+						product *= inputMsgs[port][i];
+					}
+				}
+				outputMsg[i] = outputIn[1] * product + outputIn[0] * Math.max(0.0, sumProduct - product);
+			}
+		}
+
+		normalizeOutput(outPortNum, saved, 0);
+
+		if (saved.length > 0)
+		{
+			DimpleEnvironment.doubleArrayCache.release(saved);
+		}
+	}
+
+	/*-------------------------------
+	 * SumProductTableFactor methods
+	 */
+
+	@Override
+	public boolean useLogDomainMessages()
+	{
+		return false;
+	}
+
+	/*--------------------------
+	 * STableFactorBase methods
+	 */
+
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return false;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private static double sum(double[] msg)
+	{
+		double sum = 0.0;
+		for (double weight : msg)
+		{
+			sum += weight;
+		}
+		return sum;
+	}
+
+	/**
+	 * Normalizes output message for given port and applies damping using previous normalized
+	 * value of message starting at {@code savedOffset} in {@code saved}.
+	 */
+	private void normalizeOutput(int port, double[] saved, int savedOffset)
+	{
+		final double[] outputMsg = _outputMessages[port];
+		final int size = outputMsg.length;
+
+		final double sum = sum(outputMsg);
+		if (sum == 0)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+				+ port + " on factor " + _model.getLabel());
+		}
+
+		for (int i = size; --i>=0;)
+		{
+			outputMsg[i] /= sum;
+		}
+
+		final double damping = _dampingInUse ? _dampingParams[port] : 0.0;
+		if (damping != 0.0)
+		{
+			final double inverseDamping = 1 - damping;
+			for (int i = size; --i>=0;)
+			{
+				outputMsg[i] = inverseDamping * outputMsg[i] + damping * saved[savedOffset + i];
+			}
+		}
+	}
+}
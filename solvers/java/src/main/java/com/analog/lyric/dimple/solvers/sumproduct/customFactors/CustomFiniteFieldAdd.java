@@ -16,12 +16,24 @@
 
 package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
 
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.solvers.sumproduct.SFiniteFieldFactor;
-import com.analog.lyric.dimple.solvers.sumproduct.SumProductDiscreteEdge;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
 
+/**
+ * Sum-product solver factor for the {@link com.analog.lyric.dimple.factorfunctions.FiniteFieldAdd
+ * FiniteFieldAdd} factor function.
+ * <p>
+ * Addition in GF(2<sup>n</sup>) is bitwise exclusive-or, so the factor constrains the exclusive-or of the
+ * values of all of its variables to be zero, and the outgoing message for each edge is the exclusive-or
+ * convolution of the input messages on all of the other edges. This is computed by transforming each input
+ * message once using the fast Walsh-Hadamard transform, multiplying the transforms of the other edges using
+ * forward and backward partial products, and transforming the product back. Updating all of the edges of a
+ * factor of degree d over a field with N elements therefore takes O(d N log N) time.
+ */
 @SuppressWarnings("deprecation") // TODO remove when SFiniteFieldFactor removed
 public class CustomFiniteFieldAdd extends SFiniteFieldFactor
 {
@@ -30,109 +42,179 @@ public class CustomFiniteFieldAdd extends SFiniteFieldFactor
 	{
 		super(factor, parent);
 		
-		if (factor.getPorts().size() != 3)
-			throw new DimpleException("Only supports 3 arguments");
-
+		final int size = ((DiscreteDomain)factor.getSibling(0).getDomain()).size();
+		if (Integer.bitCount(size) != 1)
+			throw new DimpleException("Domain size must be a power of two");
+		for (int i = 1, end = factor.getSiblingCount(); i < end; i++)
+		{
+			if (((DiscreteDomain)factor.getSibling(i).getDomain()).size() != size)
+				throw new DimpleException("All variables must have the same domain size");
+		}
 	}
 
 	@Override
-	@SuppressWarnings("null")
-	public void doUpdateEdge(int outPortNum)
+	protected void doUpdate()
 	{
-		double [] inputs1 = null;
-		double [] inputs2 = null;
-		double [] outputs = null;
-				
+		final int numPorts = getSiblingCount();
+		final int size = getSiblingEdgeState(0).varToFactorMsg.size();
+
+		// Transforms of all of the inputs, followed by backward partial products of the transforms.
+		final double[] transforms = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts * size);
+		final double[] suffixProducts = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts * size);
+		final double[] prefixProduct = DimpleEnvironment.doubleArrayCache.allocateAtLeast(size);
+
+		for (int port = 0; port < numPorts; ++port)
+		{
+			loadTransformedInput(port, transforms, port * size, size);
+		}
 
-		for (int i = 0; i < 3; i++)
+		int offset = (numPorts - 1) * size;
+		for (int i = 0; i < size; ++i)
+		{
+			suffixProducts[offset + i] = 1.0;
+		}
+		for (int port = numPorts - 1; --port>=0;)
 		{
-			final SumProductDiscreteEdge edge = getSiblingEdgeState(i);
-			if (outPortNum == i)
+			final int nextOffset = offset;
+			offset -= size;
+			for (int i = 0; i < size; ++i)
 			{
-				outputs = edge.factorToVarMsg.representation();
+				suffixProducts[offset + i] = suffixProducts[nextOffset + i] * transforms[nextOffset + i];
 			}
-			else
+		}
+
+		for (int i = 0; i < size; ++i)
+		{
+			prefixProduct[i] = 1.0;
+		}
+		for (int port = 0; port < numPorts; ++port)
+		{
+			offset = port * size;
+			final double[] outputs = getSiblingEdgeState(port).factorToVarMsg.representation();
+			for (int i = 0; i < size; ++i)
 			{
-				if (inputs1 == null)
-					inputs1 = edge.varToFactorMsg.representation();
-				else
-					inputs2 = edge.varToFactorMsg.representation();
+				outputs[i] = prefixProduct[i] * suffixProducts[offset + i];
+				prefixProduct[i] *= transforms[offset + i];
 			}
+			setOutputFromTransform(port, outputs);
 		}
 
-		inputs1 = inputs1.clone();
-		inputs2 = inputs2.clone();
-		
-		//TODO: fix this.
-		int n = (int) (Math.log(inputs1.length)/Math.log(2));
+		DimpleEnvironment.doubleArrayCache.release(transforms);
+		DimpleEnvironment.doubleArrayCache.release(suffixProducts);
+		DimpleEnvironment.doubleArrayCache.release(prefixProduct);
+	}
+
+	@Override
+	public void doUpdateEdge(int outPortNum)
+	{
+		final int numPorts = getSiblingCount();
+		final double[] outputs = getSiblingEdgeState(outPortNum).factorToVarMsg.representation();
+		final int size = outputs.length;
+
+		final double[] transform = DimpleEnvironment.doubleArrayCache.allocateAtLeast(size);
+
+		for (int i = 0; i < size; ++i)
+		{
+			outputs[i] = 1.0;
+		}
+		for (int port = 0; port < numPorts; ++port)
+		{
+			if (port != outPortNum)
+			{
+				loadTransformedInput(port, transform, 0, size);
+				for (int i = 0; i < size; ++i)
+				{
+					outputs[i] *= transform[i];
+				}
+			}
+		}
+		setOutputFromTransform(outPortNum, outputs);
 
-		double [] tmp1 = new double[inputs1.length];
-		double [] tmp2 = new double[inputs2.length];
-		double [] tmp3 = new double[outputs.length];
+		DimpleEnvironment.doubleArrayCache.release(transform);
+	}
 
-		//Fast hadamard input 1 probs
-		fast_hadamard(n,inputs1, tmp1);
-		fast_hadamard(n,inputs2, tmp2);
+	/**
+	 * Writes the Walsh-Hadamard transform of the normalized input message for {@code port} into
+	 * {@code transforms} starting at {@code offset}.
+	 */
+	private void loadTransformedInput(int port, double[] transforms, int offset, int size)
+	{
+		final double[] inputs = getSiblingEdgeState(port).varToFactorMsg.representation();
 
-		//Point-wise multiply values
-		for (int i = 0; i < outputs.length; i++)
+		double sum = 0;
+		for (int i = 0; i < size; i++)
+			sum += inputs[i];
+		if (sum == 0)
 		{
-			tmp3[i] = tmp1[i]*tmp2[i];
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero for input message on port "
+				+ port + " on factor " + _model.getLabel());
 		}
 
+		for (int i = 0; i < size; i++)
+			transforms[offset + i] = inputs[i] / sum;
+
+		fastHadamard(transforms, offset, size);
+	}
+
+	/**
+	 * Replaces {@code outputs}, which holds the product of the transforms of the inputs of the other edges,
+	 * with the normalized output message for {@code port}.
+	 */
+	private void setOutputFromTransform(int port, double[] outputs)
+	{
+		final int size = outputs.length;
+
+		// The inverse transform is the same as the forward transform up to scaling, which is removed
+		// by normalization.
+		fastHadamard(outputs, 0, size);
 
-		//Fast hadamard result
-		fast_hadamard(n,tmp3,outputs);
 		double sum = 0;
-		for (int i = 0; i < outputs.length; i++)
-			sum += outputs[i];
-		for (int i = 0; i < outputs.length; i++)
+		for (int i = 0; i < size; i++)
 		{
+			// Clip round-off error, which may produce small negative values.
 			if (outputs[i] < 0)
 				outputs[i] = 0;
-			else
-				outputs[i] /= sum;
+			sum += outputs[i];
 		}
-		
+		if (sum == 0)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+				+ port + " on factor " + _model.getLabel());
+		}
+		for (int i = 0; i < size; i++)
+			outputs[i] /= sum;
 	}
 
-
-	//TODO: can we do this in place?
-	public static void fast_hadamard(int n, double [] in, double [] out)
+	/**
+	 * Computes the unnormalized fast Walsh-Hadamard transform of the {@code length} elements of {@code data}
+	 * starting at {@code offset} in place. The length must be a power of two.
+	 * 
+	 * @since 0.08
+	 */
+	public static void fastHadamard(double[] data, int offset, int length)
 	{
-		int i, bit, flip_bit;
-		int leftmask, rightmask, leftshifted, ind0, ind1;
-		double [] tmp;
-		for (bit=0;bit<n;bit++)
+		for (int half = 1; half < length; half <<= 1)
 		{
-			flip_bit=1<<bit;
-			
-			for (leftmask=0;leftmask< (1<<(n-bit-1));leftmask++)
+			for (int block = offset, end = offset + length; block < end; block += half << 1)
 			{
-				leftshifted=leftmask<<(bit+1);
-				for (rightmask=0;rightmask< (1<<bit); rightmask++)
+				for (int ind0 = block, ind1 = block + half; ind0 < block + half; ++ind0, ++ind1)
 				{
-					ind0=leftshifted | rightmask;
-					ind1=leftshifted | rightmask | flip_bit;
-					out[ind0]=in[ind0]+in[ind1];
-					out[ind1]=in[ind0]-in[ind1];
+					final double x0 = data[ind0], x1 = data[ind1];
+					data[ind0] = x0 + x1;
+					data[ind1] = x0 - x1;
 				}
 			}
-			
-			tmp=in;
-			in=out;
-			out=tmp;
 		}
-
-		/* If "n" is even, then we need to copy "out" to "in" to make the
-		     output appear in the correct array. */
-		if ((n&1) == 0){
-			for (i=0;i< (1<<n);i++){
-				out[i]=in[i];
-			}
-		}
-
 	}
 
-
+	/**
+	 * Writes the unnormalized fast Walsh-Hadamard transform of the first 2<sup>n</sup> elements of
+	 * {@code in} into {@code out}.
+	 */
+	public static void fast_hadamard(int n, double [] in, double [] out)
+	{
+		final int length = 1 << n;
+		System.arraycopy(in, 0, out, 0, length);
+		fastHadamard(out, 0, length);
+	}
 }
@@ -0,0 +1,50 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import com.analog.lyric.dimple.factorfunctions.Subtract;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+
+/**
+ * Sum-product solver factor for the {@link Subtract} factor function over integer-valued discrete variables.
+ * <p>
+ * Same as {@link CustomIntegerSum}, except the second argument, the positive input, is treated as the sum
+ * of all the others.
+ * <p>
+ * @since 0.08
+ */
+public class CustomIntegerSubtract extends CustomIntegerSum
+{
+	public CustomIntegerSubtract(Factor factor, ISolverFactorGraph parent)
+	{
+		super(factor, parent);
+		_sumIndex = 1;	// Index that is the sum of all the others
+	}
+
+	/**
+	 * True if factor has a {@link Subtract} factor function without smoothing, all of its variables have
+	 * integer domains, any constants are integers, and its possible sums span no more than {@link #MAX_SPAN}
+	 * values.
+	 */
+	public static boolean isFactorCompatible(Factor factor)
+	{
+		final FactorFunction function = factor.getFactorFunction().getContainedFactorFunction();
+		return function instanceof Subtract && !((Subtract)function).hasSmoothing() && hasIntegerArguments(factor);
+	}
+}
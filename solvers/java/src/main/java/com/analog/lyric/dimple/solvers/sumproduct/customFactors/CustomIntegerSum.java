@@ -0,0 +1,549 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import java.util.Arrays;
+
+import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionUtilities;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.Domain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+/**
+ * Sum-product solver factor for the {@link Sum} factor function over integer-valued discrete variables.
+ * <p>
+ * The distribution of a sum of independent integer variables is the convolution of their distributions,
+ * so the outgoing message for each edge is computed by convolving the input messages on all of the other
+ * edges. These leave-one-out convolutions are computed using forward and backward partial convolutions.
+ * Each convolution is computed directly when that is cheaper, typically when one of its operands is short,
+ * and otherwise using a fast Fourier transform. Updating all of the edges of a factor of degree d whose
+ * possible sums span N values therefore takes O(d N log N) time, instead of time proportional to the size
+ * of the factor table, which grows exponentially with d.
+ * <p>
+ * Because the FFT is only accurate relative to the largest value in its result, very small probabilities in
+ * messages computed using the FFT may differ from the exact values by roughly 1e-15 or be clipped to zero.
+ * <p>
+ * This does not support {@link com.analog.lyric.dimple.solvers.sumproduct.SumProductOptions#logDomainMessages
+ * SumProductOptions.logDomainMessages}, so its edges always hold messages in weight form.
+ * <p>
+ * @since 0.08
+ */
+public class CustomIntegerSum extends SumProductTableFactor
+{
+	/*-----------
+	 * Constants
+	 */
+
+	/**
+	 * Upper bound on the number of consecutive integers spanned by the possible values of the sum of
+	 * all of the variables, above which this factor will not be used.
+	 */
+	public static final int MAX_SPAN = 1 << 20;
+
+	/**
+	 * Approximate number of direct convolution multiply-adds per element per stage of the FFT. A
+	 * convolution is computed directly when its direct cost is no more than this times n log<sub>2</sub>(n),
+	 * where n is the FFT length.
+	 */
+	private static final int FFT_COST_FACTOR = 8;
+
+	private static final double[] ONE = new double[] { 1.0 };
+
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Index of the factor function argument that is the sum of all the others.
+	 */
+	protected int _sumIndex;
+
+	/**
+	 * The domain value of each variable multiplied by -1 if the variable is the sum, indexed by port and
+	 * domain index. The factor requires that the sum of these signed values and {@link #_constantSum} be zero.
+	 */
+	private int[][] _signedValues = new int[0][];
+
+	/**
+	 * The smallest signed value for each port.
+	 */
+	private int[] _minSignedValues = ArrayUtil.EMPTY_INT_ARRAY;
+
+	/**
+	 * The number of consecutive integers spanned by the signed values for each port.
+	 */
+	private int[] _spans = ArrayUtil.EMPTY_INT_ARRAY;
+
+	/**
+	 * Sum of constant arguments, with the constant sum, if any, counted as negative.
+	 */
+	private int _constantSum;
+
+	/**
+	 * Lazily created FFT instances indexed by log<sub>2</sub> of their length.
+	 */
+	private final DoubleFFT_1D[] _ffts = new DoubleFFT_1D[Integer.SIZE];
+
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomIntegerSum(Factor factor, ISolverFactorGraph parent)
+	{
+		super(factor, parent);
+		_sumIndex = 0;		// Index that is the sum of all the others
+	}
+
+	/**
+	 * True if factor has a {@link Sum} factor function without smoothing, all of its variables have
+	 * integer domains, any constants are integers, and its possible sums span no more than {@link #MAX_SPAN}
+	 * values.
+	 */
+	public static boolean isFactorCompatible(Factor factor)
+	{
+		final FactorFunction function = factor.getFactorFunction().getContainedFactorFunction();
+		return function instanceof Sum && !((Sum)function).hasSmoothing() && hasIntegerArguments(factor);
+	}
+
+	/**
+	 * True if all of the variables of the factor have discrete domains with integer elements, any constants are integers, and the
+	 * sum of the sizes of the ranges spanned by the domains is no more than {@link #MAX_SPAN}.
+	 */
+	protected static boolean hasIntegerArguments(Factor factor)
+	{
+		long totalSpan = 1;
+		for (int i = 0, end = factor.getSiblingCount(); i < end; i++)
+		{
+			final Domain domain = factor.getSibling(i).getDomain();
+			if (!domain.isDiscrete() || !domain.isIntegral())
+			{
+				return false;
+			}
+			final DiscreteDomain discreteDomain = (DiscreteDomain)domain;
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for (int j = 0, size = discreteDomain.size(); j < size; ++j)
+			{
+				final int value = intElement(discreteDomain, j);
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+			totalSpan += (long)max - min;
+		}
+
+		final FactorFunction function = factor.getFactorFunction();
+		if (function.hasConstants())
+		{
+			for (Object constant : function.getConstants())
+			{
+				final double value = FactorFunctionUtilities.toDouble(constant);
+				if (value != Math.rint(value) || Math.abs(value) > MAX_SPAN)
+				{
+					return false;
+				}
+			}
+		}
+
+		return totalSpan <= MAX_SPAN;
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	public void initialize()
+	{
+		super.initialize();
+
+		final FactorFunction factorFunction = _model.getFactorFunction();
+		final int numPorts = getSiblingCount();
+		final int numIndices = numPorts + factorFunction.getConstantCount();
+
+		_signedValues = new int[numPorts][];
+		_minSignedValues = new int[numPorts];
+		_spans = new int[numPorts];
+		_constantSum = 0;
+
+		for (int index = 0, port = 0; index < numIndices; ++index)
+		{
+			final int sign = index == _sumIndex ? -1 : 1;
+			if (factorFunction.isConstantIndex(index))
+			{
+				_constantSum += sign * FactorFunctionUtilities.toInteger(factorFunction.getConstantByIndex(index));
+			}
+			else
+			{
+				final DiscreteDomain domain = (DiscreteDomain)_model.getSibling(port).getDomain();
+				final int size = domain.size();
+				final int[] signedValues = new int[size];
+				int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+				for (int i = 0; i < size; ++i)
+				{
+					final int value = sign * intElement(domain, i);
+					signedValues[i] = value;
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+				}
+				_signedValues[port] = signedValues;
+				_minSignedValues[port] = min;
+				_spans[port] = max - min + 1;
+				++port;
+			}
+		}
+	}
+
+	@Override
+	protected void doUpdate()
+	{
+		final int numPorts = getSiblingCount();
+		final int[] spans = _spans;
+
+		// Offsets of each port's dense input, prefix convolution and suffix convolution within work arrays.
+		// The prefix for a port is the convolution of the inputs of all of the ports before it, and the suffix
+		// is the convolution of the inputs of all of the ports after it.
+		final int[] inputOffsets = DimpleEnvironment.intArrayCache.allocateAtLeast(numPorts);
+		final int[] prefixOffsets = DimpleEnvironment.intArrayCache.allocateAtLeast(numPorts);
+		final int[] suffixOffsets = DimpleEnvironment.intArrayCache.allocateAtLeast(numPorts);
+
+		int inputSize = 0, prefixSize = 0, suffixSize = 0, maxSpan = 0, totalLength = 1;
+		for (int port = 0, prefixLength = 1, suffixLength = 1; port < numPorts; ++port)
+		{
+			inputOffsets[port] = inputSize;
+			inputSize += spans[port];
+			prefixOffsets[port] = prefixSize;
+			prefixSize += prefixLength;
+			prefixLength += spans[port] - 1;
+			suffixOffsets[numPorts - 1 - port] = suffixSize;
+			suffixSize += suffixLength;
+			suffixLength += spans[numPorts - 1 - port] - 1;
+			maxSpan = Math.max(maxSpan, spans[port]);
+			totalLength += spans[port] - 1;
+		}
+
+		final double[] inputs = DimpleEnvironment.doubleArrayCache.allocateAtLeast(inputSize);
+		final double[] prefixes = DimpleEnvironment.doubleArrayCache.allocateAtLeast(prefixSize);
+		final double[] suffixes = DimpleEnvironment.doubleArrayCache.allocateAtLeast(suffixSize);
+		final double[] result = DimpleEnvironment.doubleArrayCache.allocateAtLeast(maxSpan);
+
+		for (int port = 0; port < numPorts; ++port)
+		{
+			loadInput(port, inputs, inputOffsets[port]);
+		}
+
+		if (numPorts > 0)
+		{
+			prefixes[0] = 1.0;
+			suffixes[suffixOffsets[numPorts - 1]] = 1.0;
+		}
+		for (int port = 1, prefixLength = 1; port < numPorts; ++port)
+		{
+			final int prevPort = port - 1;
+			convolve(prefixes, prefixOffsets[prevPort], prefixLength, inputs, inputOffsets[prevPort], spans[prevPort],
+				0, prefixLength + spans[prevPort] - 1, prefixes, prefixOffsets[port]);
+			prefixLength += spans[prevPort] - 1;
+		}
+		for (int port = numPorts - 1, suffixLength = 1; --port>=0;)
+		{
+			final int nextPort = port + 1;
+			convolve(suffixes, suffixOffsets[nextPort], suffixLength, inputs, inputOffsets[nextPort], spans[nextPort],
+				0, suffixLength + spans[nextPort] - 1, suffixes, suffixOffsets[port]);
+			suffixLength += spans[nextPort] - 1;
+		}
+
+		for (int port = 0, prefixLength = 1; port < numPorts; ++port)
+		{
+			final int suffixLength = totalLength - prefixLength - spans[port] + 2;
+			convolve(prefixes, prefixOffsets[port], prefixLength, suffixes, suffixOffsets[port], suffixLength,
+				outputRangeStart(port), spans[port], result, 0);
+			setOutput(port, result);
+			prefixLength += spans[port] - 1;
+		}
+
+		DimpleEnvironment.doubleArrayCache.release(inputs);
+		DimpleEnvironment.doubleArrayCache.release(prefixes);
+		DimpleEnvironment.doubleArrayCache.release(suffixes);
+		DimpleEnvironment.doubleArrayCache.release(result);
+		DimpleEnvironment.intArrayCache.release(inputOffsets);
+		DimpleEnvironment.intArrayCache.release(prefixOffsets);
+		DimpleEnvironment.intArrayCache.release(suffixOffsets);
+	}
+
+	@Override
+	public void doUpdateEdge(int outPortNum)
+	{
+		final int numPorts = getSiblingCount();
+		final int[] spans = _spans;
+
+		int totalLength = 1, maxSpan = 0, lastPort = -1;
+		for (int port = 0; port < numPorts; ++port)
+		{
+			if (port != outPortNum)
+			{
+				totalLength += spans[port] - 1;
+				maxSpan = Math.max(maxSpan, spans[port]);
+				lastPort = port;
+			}
+		}
+
+		// Convolve inputs of all but the last of the other ports, alternating between two buffers.
+		double[] partial = DimpleEnvironment.doubleArrayCache.allocateAtLeast(totalLength);
+		double[] nextPartial = DimpleEnvironment.doubleArrayCache.allocateAtLeast(totalLength);
+		final double[] input = DimpleEnvironment.doubleArrayCache.allocateAtLeast(maxSpan);
+		final double[] result = DimpleEnvironment.doubleArrayCache.allocateAtLeast(spans[outPortNum]);
+
+		partial[0] = 1.0;
+		int partialLength = 1;
+		for (int port = 0; port < lastPort; ++port)
+		{
+			if (port != outPortNum)
+			{
+				loadInput(port, input, 0);
+				convolve(partial, 0, partialLength, input, 0, spans[port], 0, partialLength + spans[port] - 1,
+					nextPartial, 0);
+				partialLength += spans[port] - 1;
+				final double[] tmp = partial;
+				partial = nextPartial;
+				nextPartial = tmp;
+			}
+		}
+
+		// Only compute the part of the final convolution needed for the output.
+		if (lastPort >= 0)
+		{
+			loadInput(lastPort, input, 0);
+			convolve(partial, 0, partialLength, input, 0, spans[lastPort], outputRangeStart(outPortNum),
+				spans[outPortNum], result, 0);
+		}
+		else
+		{
+			convolve(partial, 0, 1, ONE, 0, 1, outputRangeStart(outPortNum), spans[outPortNum], result, 0);
+		}
+		setOutput(outPortNum, result);
+
+		DimpleEnvironment.doubleArrayCache.release(partial);
+		DimpleEnvironment.doubleArrayCache.release(nextPartial);
+		DimpleEnvironment.doubleArrayCache.release(input);
+		DimpleEnvironment.doubleArrayCache.release(result);
+	}
+
+	/*-------------------------------
+	 * SumProductTableFactor methods
+	 */
+
+	@Override
+	public boolean useLogDomainMessages()
+	{
+		return false;
+	}
+
+	/*--------------------------
+	 * STableFactorBase methods
+	 */
+
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return false;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private static int intElement(DiscreteDomain domain, int i)
+	{
+		return ((Number)domain.getElement(i)).intValue();
+	}
+
+	/**
+	 * Writes normalized input message for given port into {@code dense} starting at {@code offset}, indexed by
+	 * signed value minus the minimum signed value for the port. Values not in the domain are set to zero.
+	 */
+	private void loadInput(int port, double[] dense, int offset)
+	{
+		final double[] inMsg = _inputMessages[port];
+		final int[] signedValues = _signedValues[port];
+		final int minSignedValue = _minSignedValues[port];
+
+		double sum = 0.0;
+		for (double weight : inMsg)
+		{
+			sum += weight;
+		}
+		if (sum == 0)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero for input message on port "
+				+ port + " on factor " + _model.getLabel());
+		}
+
+		Arrays.fill(dense, offset, offset + _spans[port], 0.0);
+		for (int i = inMsg.length; --i>=0;)
+		{
+			dense[offset + signedValues[i] - minSignedValue] = inMsg[i] / sum;
+		}
+	}
+
+	/**
+	 * Returns index of the first element of the convolution of the inputs of all ports other than
+	 * {@code port} that is needed to compute the output for {@code port}.
+	 * <p>
+	 * The convolution of the other inputs starts at the sum of their minimum signed values, and the
+	 * output for a signed value v requires the element for a sum of -v minus the constant sum. The
+	 * needed elements for the port's signed values therefore run in reverse order starting here.
+	 */
+	private int outputRangeStart(int port)
+	{
+		final int[] mins = _minSignedValues;
+		int otherMinSum = 0;
+		for (int i = mins.length; --i>=0;)
+		{
+			if (i != port)
+			{
+				otherMinSum += mins[i];
+			}
+		}
+		final int maxSignedValue = mins[port] + _spans[port] - 1;
+		return -_constantSum - maxSignedValue - otherMinSum;
+	}
+
+	/**
+	 * Sets normalized and damped output message for given port given elements of the convolution of the
+	 * other inputs starting at {@link #outputRangeStart(int)}.
+	 */
+	private void setOutput(int port, double[] convolution)
+	{
+		final double[] outMsg = _outputMessages[port];
+		final int[] signedValues = _signedValues[port];
+		final int maxSignedValue = _minSignedValues[port] + _spans[port] - 1;
+		final int size = outMsg.length;
+
+		final double damping = _dampingInUse ? _dampingParams[port] : 0.0;
+		double[] saved = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		if (damping != 0.0)
+		{
+			saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(size);
+			System.arraycopy(outMsg, 0, saved, 0, size);
+		}
+
+		double sum = 0.0;
+		for (int i = 0; i < size; ++i)
+		{
+			sum += outMsg[i] = convolution[maxSignedValue - signedValues[i]];
+		}
+
+		if (sum == 0)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+				+ port + " on factor " + _model.getLabel());
+		}
+
+		for (int i = size; --i>=0;)
+		{
+			outMsg[i] /= sum;
+		}
+
+		if (damping != 0.0)
+		{
+			final double inverseDamping = 1 - damping;
+			for (int i = size; --i>=0;)
+			{
+				outMsg[i] = inverseDamping * outMsg[i] + damping * saved[i];
+			}
+			DimpleEnvironment.doubleArrayCache.release(saved);
+		}
+	}
+
+	/**
+	 * Computes {@code count} elements of the linear convolution of {@code x} and {@code y} starting at element
+	 * {@code from} and writes them into {@code result} starting at {@code resultOffset}. Elements outside of the
+	 * convolution are set to zero. The result must not overlap either of the inputs.
+	 */
+	private void convolve(double[] x, int xOffset, int xLength, double[] y, int yOffset, int yLength,
+		int from, int count, double[] result, int resultOffset)
+	{
+		final int length = xLength + yLength - 1;
+		final int fftLength = length > 1 ? Integer.highestOneBit(length - 1) << 1 : 1;
+		final int log2 = Integer.numberOfTrailingZeros(fftLength);
+		final int minLength = Math.min(xLength, yLength);
+
+		if (minLength == 1 || (long)count * minLength <= (long)FFT_COST_FACTOR * fftLength * log2)
+		{
+			for (int r = 0; r < count; ++r)
+			{
+				final int t = from + r;
+				double sum = 0.0;
+				for (int u = Math.max(0, t - yLength + 1), end = Math.min(xLength - 1, t); u <= end; ++u)
+				{
+					sum += x[xOffset + u] * y[yOffset + t - u];
+				}
+				result[resultOffset + r] = sum;
+			}
+			return;
+		}
+
+		DoubleFFT_1D fft = _ffts[log2];
+		if (fft == null)
+		{
+			fft = _ffts[log2] = new DoubleFFT_1D(fftLength);
+		}
+
+		// Complex data is stored with interleaved real and imaginary parts.
+		final double[] a = DimpleEnvironment.doubleArrayCache.allocateAtLeast(2 * fftLength);
+		final double[] b = DimpleEnvironment.doubleArrayCache.allocateAtLeast(2 * fftLength);
+		Arrays.fill(a, 0, 2 * fftLength, 0.0);
+		Arrays.fill(b, 0, 2 * fftLength, 0.0);
+		for (int i = 0; i < xLength; ++i)
+		{
+			a[2 * i] = x[xOffset + i];
+		}
+		for (int i = 0; i < yLength; ++i)
+		{
+			b[2 * i] = y[yOffset + i];
+		}
+
+		fft.complexForward(a);
+		fft.complexForward(b);
+
+		for (int i = 0; i < 2 * fftLength; i += 2)
+		{
+			final double re = a[i] * b[i] - a[i+1] * b[i+1];
+			a[i+1] = a[i] * b[i+1] + a[i+1] * b[i];
+			a[i] = re;
+		}
+
+		fft.complexInverse(a, true);
+
+		for (int r = 0; r < count; ++r)
+		{
+			final int t = from + r;
+			// Clip round-off error, which may produce small negative values.
+			result[resultOffset + r] = t >= 0 && t < length ? Math.max(0.0, a[2 * t]) : 0.0;
+		}
+
+		DimpleEnvironment.doubleArrayCache.release(a);
+		DimpleEnvironment.doubleArrayCache.release(b);
+	}
+}
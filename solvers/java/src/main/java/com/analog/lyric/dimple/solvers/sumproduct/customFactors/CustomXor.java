@@ -0,0 +1,223 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionUtilities;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.Domain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+
+/**
+ * Sum-product solver factor for the {@link com.analog.lyric.dimple.factorfunctions.Xor Xor} factor function
+ * (parity check).
+ * <p>
+ * Computes outgoing messages using the "tanh rule": each input message is reduced to the difference
+ * between its probabilities of zero and one, and the output for each edge is derived from the product of
+ * these differences over all of the other edges. The products that exclude each edge are computed using
+ * forward and backward partial products rather than by division, so that uniform input messages are handled
+ * correctly. Updating all of the edges of a factor of degree d therefore takes O(d) time instead
+ * of the O(d 2<sup>d</sup>) time required by the table-based implementation.
+ * <p>
+ * This does not support {@link com.analog.lyric.dimple.solvers.sumproduct.SumProductOptions#logDomainMessages
+ * SumProductOptions.logDomainMessages}, so its edges always hold messages in weight form.
+ * <p>
+ * @since 0.08
+ */
+public class CustomXor extends SumProductTableFactor
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * 1 if the parity of the constant arguments of the factor function is even, otherwise -1.
+	 */
+	private int _constantParity = 1;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomXor(Factor factor, ISolverFactorGraph parent)
+	{
+		super(factor, parent);
+	}
+
+	/**
+	 * True if all of the variables connected to the factor have two-element domains whose first element
+	 * represents false (or zero) and whose second element represents true (or one).
+	 */
+	public static boolean isFactorCompatible(Factor factor)
+	{
+		for (int i = 0, end = factor.getSiblingCount(); i < end; i++)
+		{
+			Domain domain = factor.getSibling(i).getDomain();
+			if (!(domain instanceof DiscreteDomain))
+			{
+				return false;
+			}
+			
+			DiscreteDomain discreteDomain = (DiscreteDomain)domain;
+			if (discreteDomain.size() != 2 ||
+				Value.create(discreteDomain.getElement(0)).getBoolean() ||
+				!Value.create(discreteDomain.getElement(1)).getBoolean())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	public void initialize()
+	{
+		super.initialize();
+
+		// Pre-compute parity associated with any constant edges
+		_constantParity = 1;
+		FactorFunction factorFunction = _model.getFactorFunction();
+		if (factorFunction.hasConstants())
+		{
+			Object[] constantValues = factorFunction.getConstants();
+			int constantSum = 0;
+			for (int i = 0; i < constantValues.length; i++)
+				constantSum += FactorFunctionUtilities.toInteger(constantValues[i]);
+			_constantParity = ((constantSum & 1) == 0) ? 1 : -1;
+		}
+	}
+
+	@Override
+	protected void doUpdate()
+	{
+		final int numPorts = getSiblingCount();
+		final double[] deltas = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+		final double[] suffixProducts = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+
+		for (int port = 0; port < numPorts; ++port)
+		{
+			deltas[port] = inputDelta(port);
+		}
+
+		double product = _constantParity;
+		for (int port = numPorts; --port>=0;)
+		{
+			suffixProducts[port] = product;
+			product *= deltas[port];
+		}
+
+		double prefixProduct = 1.0;
+		for (int port = 0; port < numPorts; ++port)
+		{
+			setOutput(port, prefixProduct * suffixProducts[port]);
+			prefixProduct *= deltas[port];
+		}
+
+		DimpleEnvironment.doubleArrayCache.release(deltas);
+		DimpleEnvironment.doubleArrayCache.release(suffixProducts);
+	}
+
+	@Override
+	public void doUpdateEdge(int outPortNum)
+	{
+		double product = _constantParity;
+		for (int port = 0, numPorts = getSiblingCount(); port < numPorts; ++port)
+		{
+			if (port != outPortNum)
+			{
+				product *= inputDelta(port);
+			}
+		}
+
+		setOutput(outPortNum, product);
+	}
+
+	/*-------------------------------
+	 * SumProductTableFactor methods
+	 */
+
+	@Override
+	public boolean useLogDomainMessages()
+	{
+		return false;
+	}
+
+	/*--------------------------
+	 * STableFactorBase methods
+	 */
+
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return false;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Returns the difference between the normalized probability of zero and one for the input message on
+	 * given port.
+	 */
+	private double inputDelta(int port)
+	{
+		final double[] inMsg = _inputMessages[port];
+		final double sum = inMsg[0] + inMsg[1];
+		if (sum == 0)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero for input message on port "
+				+ port + " on factor " + _model.getLabel());
+		}
+		return (inMsg[0] - inMsg[1]) / sum;
+	}
+
+	/**
+	 * Sets normalized output message on given port given the difference between the probability that the
+	 * parity of the other edges is even and odd.
+	 */
+	private void setOutput(int port, double delta)
+	{
+		final double[] outMsg = _outputMessages[port];
+
+		double out0 = .5 + .5 * delta;
+		double out1 = .5 - .5 * delta;
+
+		if (_dampingInUse)
+		{
+			final double damping = _dampingParams[port];
+			if (damping != 0)
+			{
+				final double inverseDamping = 1 - damping;
+				out0 = inverseDamping * out0 + damping * outMsg[0];
+				out1 = inverseDamping * out1 + damping * outMsg[1];
+			}
+		}
+
+		outMsg[0] = out0;
+		outMsg[1] = out1;
+	}
+}
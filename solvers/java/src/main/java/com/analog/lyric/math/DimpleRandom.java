@@ -25,7 +25,12 @@ import org.eclipse.jdt.annotation.NonNullByDefault;
 import cern.jet.random.engine.RandomEngine;
 
 /**
- * 
+ * Random number stream that extends {@link java.util.Random} with samplers for additional
+ * distributions.
+ * <p>
+ * Instances are not thread-safe. Independent streams for use on other threads can be derived
+ * deterministically from an instance's seed using {@link #split(long)}.
+ * <p>
  * @since 0.08
  * @author Christopher Barber
  */
@@ -69,9 +74,12 @@ public class DimpleRandom extends RandomAdaptor
 		this(new org.apache.commons.math3.random.MersenneTwister(seed), seed);
 	}
 	
+	/**
+	 * Construct with a randomly chosen seed, which may be retrieved using {@link #getSeed()}.
+	 */
 	public DimpleRandom()
 	{
-		this(new org.apache.commons.math3.random.MersenneTwister());
+		this(new org.apache.commons.math3.random.MersenneTwister().nextLong());
 	}
 
 	/*----------------
@@ -117,6 +125,38 @@ public class DimpleRandom extends RandomAdaptor
 		return _seed;
 	}
 	
+	/**
+	 * Returns a new independent random stream whose seed is derived from the seed of this
+	 * stream and the given {@code streamId}.
+	 * <p>
+	 * The result depends only on {@link #getSeed()} and {@code streamId} and not on how many values
+	 * have been drawn from this stream, so work divided among threads can be made repeatable by giving
+	 * each unit of work the stream split off with its own fixed id.
+	 * <p>
+	 * @since 0.08
+	 */
+	public DimpleRandom split(long streamId)
+	{
+		return new DimpleRandom(splitSeed(_seed, streamId));
+	}
+	
+	/**
+	 * Computes seed for stream with given {@code streamId} derived from {@code seed}.
+	 * <p>
+	 * Uses the SplitMix64 finalizer to scramble the combination of the two values, so that seeds for
+	 * consecutive ids are statistically unrelated.
+	 * <p>
+	 * @since 0.08
+	 * @see #split(long)
+	 */
+	public static long splitSeed(long seed, long streamId)
+	{
+		long z = seed + (streamId + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
 	/**
 	 * Returns sample from beta distribution with alpha and beta parameters set to one.
 	 * @since 0.08
@@ -152,7 +192,7 @@ public class DimpleRandom extends RandomAdaptor
 	}
 	
 	/**
-	 * Returns sample from beta distribution with specified alpha and beta parameters.
+	 * Returns sample from binomial distribution with specified number of trials and probability of success.
 	 * @since 0.08
 	 */
 	public int nextBinomial(int n, double p)
@@ -1,5 +1,5 @@
 /*******************************************************************************
-*   Copyright 2012 Analog Devices, Inc.
+*   Copyright 2012-2015 Analog Devices, Inc.
 *
 *   Licensed under the Apache License, Version 2.0 (the "License");
 *   you may not use this file except in compliance with the License.
@@ -16,45 +16,145 @@
 
 package com.analog.lyric.math;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.commons.math3.random.RandomGenerator;
+import org.eclipse.jdt.annotation.Nullable;
 
 import cern.jet.random.engine.RandomEngine;
 
-
+/**
+ * Source of random number streams used by Dimple samplers, proposal kernels and schedules.
+ * <p>
+ * Each thread has its own {@link DimpleRandom} stream, obtained using {@link #current()}, so that
+ * sampling on different threads is neither contended nor dependent on the interleaving of the threads.
+ * The first thread to use this class is given the {@linkplain #global() global} stream. Other threads
+ * get a stream {@linkplain DimpleRandom#split(long) split} from the global stream, or may have a
+ * stream explicitly installed using {@link #setCurrent(DimpleRandom)}. Code that runs work on multiple
+ * threads and needs to be repeatable should install streams split from the calling thread's stream
+ * using a fixed stream id for each unit of work.
+ */
 public class DimpleRandomGenerator
 {
-	public static RandomGenerator rand = new org.apache.commons.math3.random.MersenneTwister();
+	/*-------
+	 * State
+	 */
+	
+	private static final DimpleRandom _global = new DimpleRandom();
+	private static final AtomicBoolean _globalClaimed = new AtomicBoolean();
+	private static final AtomicLong _threadStreamCounter = new AtomicLong();
+	
+	private static final ThreadLocal<DimpleRandom> _threadRandom = new ThreadLocal<DimpleRandom>() {
+		@Override
+		protected DimpleRandom initialValue()
+		{
+			return defaultThreadStream();
+		}
+	};
+	
+	/**
+	 * The global random stream.
+	 * @deprecated use {@link #current()} instead, which returns a stream that is not shared by other threads.
+	 */
+	@Deprecated
+	public static RandomGenerator rand = _global;
 	
 	// Other random number generators not supported by the Apache framework
 	private static RandomEngine randEngine = new cern.jet.random.engine.MersenneTwister(rand.nextInt());
+	/** @deprecated use {@link DimpleRandom#nextGamma(double, double)} on {@link #current()} instead. */
+	@Deprecated
 	public static cern.jet.random.Gamma randGamma = new cern.jet.random.Gamma(1, 1, randEngine);
+	/** @deprecated use {@link DimpleRandom#nextBeta(double, double)} on {@link #current()} instead. */
+	@Deprecated
 	public static cern.jet.random.Beta randBeta = new cern.jet.random.Beta(1, 1, randEngine);
+	/** @deprecated use {@link DimpleRandom#nextBinomial(int, double)} on {@link #current()} instead. */
+	@Deprecated
 	public static cern.jet.random.Binomial randBinomial = new cern.jet.random.Binomial(1, 0.5, randEngine);
 	
+	/*---------
+	 * Streams
+	 */
+	
+	/**
+	 * The random stream for the current thread.
+	 * <p>
+	 * Callers that draw many values should look this up once rather than for each value.
+	 * The returned object is not thread-safe and should not be handed to other threads.
+	 * @since 0.08
+	 */
+	public static DimpleRandom current()
+	{
+		return _threadRandom.get();
+	}
+	
+	/**
+	 * Installs {@code random} as the random stream for the current thread.
+	 * <p>
+	 * If {@code random} is null, this will revert the thread to a newly created default stream.
+	 * <p>
+	 * @return the previous stream for this thread, which can be used to restore the original stream
+	 * when done.
+	 * @since 0.08
+	 */
+	public static DimpleRandom setCurrent(@Nullable DimpleRandom random)
+	{
+		final DimpleRandom prev = _threadRandom.get();
+		_threadRandom.set(random != null ? random : defaultThreadStream());
+		return prev;
+	}
+	
+	/**
+	 * The global random stream that is used by the first thread that uses this class.
+	 * <p>
+	 * This is the same object as the deprecated {@link #rand} field.
+	 * @since 0.08
+	 */
+	public static DimpleRandom global()
+	{
+		return _global;
+	}
 	
+	/**
+	 * Sets the seed of the {@linkplain #current() current thread's} random stream.
+	 * <p>
+	 * Streams that are later {@linkplain DimpleRandom#split(long) split} from the current stream will also
+	 * be determined by this seed.
+	 */
 	public static void setSeed(long seed)
 	{
-		rand.setSeed(seed);
+		final DimpleRandom random = current();
+		random.setSeed(seed);
 		
-		// WARNING: setting the seed creates new objects; which will not be used if reference to original object is cached
-		randEngine = new cern.jet.random.engine.MersenneTwister((int)seed);
-		randGamma = new cern.jet.random.Gamma(1, 1, randEngine);
-		randBeta = new cern.jet.random.Beta(1, 1, randEngine);
-		randBinomial = new cern.jet.random.Binomial(1, 0.5, randEngine);
+		if (random == _global)
+		{
+			// WARNING: setting the seed creates new objects; which will not be used if reference to original object is cached
+			randEngine = new cern.jet.random.engine.MersenneTwister((int)seed);
+			randGamma = new cern.jet.random.Gamma(1, 1, randEngine);
+			randBeta = new cern.jet.random.Beta(1, 1, randEngine);
+			randBinomial = new cern.jet.random.Binomial(1, 0.5, randEngine);
+		}
 	}
 	
-	
-	// randBinomial doesn't accept zero N value or 1 or 0 p value
+	/**
+	 * Returns sample from binomial distribution using the {@linkplain #current() current thread's} stream.
+	 * @see DimpleRandom#nextBinomial(int, double)
+	 */
 	public static final int randomBinomial(int N, double p)
 	{
-		if (N <= 0)
-			return 0;
-		else if (p <= 0)
-			return 0;
-		else if (p >= 1)
-			return N;
-		else
-			return randBinomial.nextInt(N, p);
+		return current().nextBinomial(N, p);
 	}
 
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private static DimpleRandom defaultThreadStream()
+	{
+		if (_globalClaimed.compareAndSet(false, true))
+		{
+			return _global;
+		}
+		return _global.split(_threadStreamCounter.incrementAndGet());
+	}
 }
@@ -36,9 +36,11 @@ import com.analog.lyric.dimple.factorfunctions.GreaterThanOrEqual;
 import com.analog.lyric.dimple.factorfunctions.LessThan;
 import com.analog.lyric.dimple.factorfunctions.LessThanOrEqual;
 import com.analog.lyric.dimple.factorfunctions.Log;
+import com.analog.lyric.dimple.factorfunctions.Multiplexer;
 import com.analog.lyric.dimple.factorfunctions.Negate;
 import com.analog.lyric.dimple.factorfunctions.Or;
 import com.analog.lyric.dimple.factorfunctions.Product;
+import com.analog.lyric.dimple.factorfunctions.Sum;
 import com.analog.lyric.dimple.factorfunctions.Xor;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
@@ -248,6 +250,22 @@ public class TestSimpleDeterministicFunctions extends FactorFunctionTester
 		});
 	}
 
+	@Test
+	public void testMultiplexer()
+	{
+		Multiplexer mux = new Multiplexer();
+		
+		testSimple(mux, new TestCaseGenerator() {
+			@Override
+			public Value[] createTestCase()
+			{
+				double x = _rand.nextDouble(), y = _rand.nextDouble(), z = _rand.nextDouble();
+				int selector = _rand.nextInt(3);
+				return testCase(selector == 0 ? x : selector == 1 ? y : z, (double)selector, x, y, z);
+			}
+		});
+	}
+	
 	@Test
 	public void testNegate()
 	{
@@ -301,6 +319,21 @@ public class TestSimpleDeterministicFunctions extends FactorFunctionTester
 		});
 	}
 	
+	@Test
+	public void testSum()
+	{
+		Sum sum = new Sum();
+		
+		testSimple(sum, new TestCaseGenerator() {
+			@Override
+			public Value[] createTestCase()
+			{
+				double x = _rand.nextDouble(), y = _rand.nextDouble(), z = _rand.nextDouble();
+				return testCase(x + y + z, x, y, z);
+			}
+		});
+	}
+	
 	@Test
 	public void testXor()
 	{
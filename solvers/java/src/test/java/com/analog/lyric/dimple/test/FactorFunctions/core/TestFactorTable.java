@@ -1343,7 +1343,19 @@ public class TestFactorTable extends DimpleTestBase
 				assertEquals(table.getWeightForSparseIndex(si), sparseWeights[si], 0.0);
 			}
 		}
-		
+		if (table.hasSparseIndices())
+		{
+			final int[][] sparseIndices = table.getIndicesSparseUnsafe();
+			final int[] packedIndices = table.getPackedIndicesSparseUnsafe();
+			assertSame(packedIndices, table.getPackedIndicesSparseUnsafe());
+			final int stride = table.getDimensions();
+			assertEquals(sparseIndices.length * stride, packedIndices.length);
+			for (int si = sparseIndices.length; --si>=0;)
+			{
+				assertArrayEquals(sparseIndices[si], Arrays.copyOfRange(packedIndices, si * stride, (si + 1) * stride));
+			}
+		}
+
 		JointDomainReindexer nullConverter =
 			JointDomainReindexer.createPermuter(table.getDomainIndexer(), table.getDomainIndexer());
 
@@ -0,0 +1,259 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Equality;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.repeated.BitStream;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSink;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSource;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.FloodingScheduler;
+import com.analog.lyric.dimple.schedulers.IScheduler;
+import com.analog.lyric.dimple.schedulers.ResidualBPScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualBPSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.BPSolverGraph;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.minsum.MinSumSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
+import com.analog.lyric.dimple.test.model.RandomGraphGenerator;
+
+/**
+ * Tests for {@link ResidualBPScheduler}
+ * @since 0.08
+ */
+public class ResidualBPSchedulerTest extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		RandomGraphGenerator gen = new RandomGraphGenerator(new Random(23));
+		
+		testScheduler(gen.buildRandomTree(20), new SumProductSolver());
+		testScheduler(gen.buildRandomTree(20), new MinSumSolver());
+		testScheduler(gen.buildGrid(4), new SumProductSolver());
+	}
+	
+	@Test
+	public void testEdgesUpdatedOncePerIteration()
+	{
+		final FactorGraph fg = new RandomGraphGenerator(new Random(42)).buildGrid(4);
+		final RecordingSolverGraph sfg = requireNonNull(fg.setSolverFactory(new RecordingSolver()));
+		final ResidualBPSchedule schedule = new ResidualBPSchedule(null, sfg);
+		
+		int nEdges = 0;
+		for (Variable variable : fg.getVariables())
+		{
+			nEdges += 2 * variable.getSiblingCount();
+		}
+		
+		fg.initialize();
+		for (int iteration = 0; iteration < 10; ++iteration)
+		{
+			sfg._entries.clear();
+			schedule.update();
+			
+			final Set<IScheduleEntry> updated = Collections.newSetFromMap(new IdentityHashMap<IScheduleEntry,Boolean>());
+			for (IScheduleEntry entry : sfg._entries)
+			{
+				assertTrue(updated.add(entry));
+			}
+			if (iteration == 0)
+			{
+				assertEquals(nEdges, updated.size());
+			}
+			assertTrue(updated.size() <= nEdges);
+		}
+	}
+	
+	/**
+	 * Changes to inputs and fixed values after solving must be propagated by further iterations.
+	 */
+	@Test
+	public void testInputChanges()
+	{
+		final Bit x = new Bit(), y = new Bit(), z = new Bit();
+		final FactorGraph fg = new FactorGraph();
+		fg.addFactor(new Equality(), x, y);
+		fg.addFactor(new Equality(), y, z);
+		final SumProductSolverGraph sfg = requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		fg.setOption(BPOptions.scheduler, new ResidualBPScheduler());
+		fg.setOption(BPOptions.iterations, 10);
+		
+		x.setInput(.9);
+		fg.solve();
+		assertEquals(.9, z.getP1(), 1e-12);
+		
+		x.setInput(.2);
+		sfg.iterate(10);
+		assertEquals(.2, z.getP1(), 1e-12);
+		
+		x.setFixedValue(1);
+		sfg.iterate(10);
+		assertEquals(1.0, z.getP1(), 1e-12);
+		
+		x.setInput(.5);
+		z.setInput(.3);
+		sfg.iterate(10);
+		assertEquals(.3, x.getP1(), 1e-12);
+		assertEquals(.3, y.getP1(), 1e-12);
+	}
+	
+	/**
+	 * Advancing a stream must reset the residuals of the moved messages.
+	 */
+	@Test
+	public void testStream()
+	{
+		final Random rand = new Random(42);
+		final double[][] data = new double[20][];
+		for (int i = 0; i < data.length; ++i)
+		{
+			final double p = rand.nextDouble();
+			data[i] = new double[] { 1 - p, p };
+		}
+		
+		final double[][] expected = solveStream(data, new FloodingScheduler());
+		final double[][] actual = solveStream(data, new ResidualBPScheduler());
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; ++i)
+		{
+			assertArrayEquals(expected[i], actual[i], 1e-9);
+		}
+	}
+	
+	private double[][] solveStream(double[][] data, IScheduler scheduler)
+	{
+		final Bit a = new Bit(), b = new Bit();
+		final FactorGraph sg = new FactorGraph(a, b);
+		sg.addFactor(new int[][] { {0, 0}, {0, 1}, {1, 0}, {1, 1} }, new double[] { .8, .2, .3, .7 }, a, b);
+		
+		final FactorGraph fg = new FactorGraph();
+		final BitStream stream = new BitStream();
+		final DoubleArrayDataSink sink = new DoubleArrayDataSink();
+		stream.setDataSource(new DoubleArrayDataSource(data));
+		stream.setDataSink(sink);
+		fg.addRepeatedFactorWithBufferSize(sg, 3, stream, stream.getSlice(1));
+		fg.setOption(BPOptions.scheduler, scheduler);
+		fg.setOption(BPOptions.iterations, 20);
+		fg.solve();
+		return sink.getArray();
+	}
+	
+	private static class RecordingSolver implements IFactorGraphFactory<RecordingSolverGraph>
+	{
+		@Override
+		public RecordingSolverGraph createFactorGraph(FactorGraph graph)
+		{
+			return createFactorGraph(graph, null);
+		}
+		
+		@Override
+		public RecordingSolverGraph createFactorGraph(FactorGraph graph, @Nullable ISolverFactorGraph parent)
+		{
+			return new RecordingSolverGraph(graph, parent);
+		}
+	}
+	
+	/**
+	 * Records schedule entries as they are run.
+	 */
+	private static class RecordingSolverGraph extends SumProductSolverGraph
+	{
+		private final List<IScheduleEntry> _entries = new ArrayList<>();
+		
+		private RecordingSolverGraph(FactorGraph graph, @Nullable ISolverFactorGraph parent)
+		{
+			super(graph, parent);
+		}
+		
+		@Override
+		public void runScheduleEntry(IScheduleEntry entry)
+		{
+			_entries.add(entry);
+			super.runScheduleEntry(entry);
+		}
+	}
+	
+	private void testScheduler(FactorGraph fg, IFactorGraphFactory<?> solver)
+	{
+		final int iterations = 200;
+		
+		BPSolverGraph<?,?,?> sfg = (BPSolverGraph<?,?,?>)requireNonNull(fg.setSolverFactory(solver));
+		fg.setOption(BPOptions.iterations, iterations);
+		fg.setOption(BPOptions.scheduler, new FloodingScheduler());
+		fg.solve();
+		
+		final Variable[] variables = fg.getVariables().toArray(new Variable[0]);
+		final double[][] expectedBeliefs = new double[variables.length][];
+		for (int i = 0; i < variables.length; ++i)
+		{
+			expectedBeliefs[i] = ((Discrete)variables[i]).getBelief();
+		}
+		
+		int nEdges = 0;
+		for (Variable variable : variables)
+		{
+			nEdges += 2 * variable.getSiblingCount();
+		}
+		
+		fg.setOption(BPOptions.scheduler, new ResidualBPScheduler());
+		fg.setOption(BPOptions.convergenceTolerance, 1e-12);
+		fg.solve();
+		
+		ResidualBPSchedule schedule = (ResidualBPSchedule)sfg.getSchedule();
+		assertSame(sfg, schedule.getSolverGraph());
+		assertTrue(sfg.hasConverged());
+		assertTrue(sfg.getIterationsRun() < iterations);
+		
+		final long updateCount = schedule.getEdgeUpdateCount();
+		assertTrue(updateCount >= nEdges);
+		assertTrue(updateCount < (long)nEdges * sfg.getIterationsRun());
+		
+		for (int i = 0; i < variables.length; ++i)
+		{
+			assertArrayEquals(expectedBeliefs[i], ((Discrete)variables[i]).getBelief(), 1e-6);
+		}
+		
+		// Once converged, further iteration should not produce any updates
+		sfg.iterate(10);
+		assertEquals(updateCount, schedule.getEdgeUpdateCount());
+		
+		// Reinitializing the graph should start over
+		fg.solve();
+		assertEquals(updateCount, schedule.getEdgeUpdateCount());
+	}
+}
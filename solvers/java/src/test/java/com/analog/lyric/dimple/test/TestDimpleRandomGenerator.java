@@ -0,0 +1,131 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.math.DimpleRandom;
+import com.analog.lyric.math.DimpleRandomGenerator;
+
+/**
+ * Tests for {@link DimpleRandomGenerator} and {@link DimpleRandom#split(long)}.
+ * @since 0.08
+ */
+public class TestDimpleRandomGenerator extends DimpleTestBase
+{
+	@Test
+	public void testSplit()
+	{
+		final DimpleRandom random = new DimpleRandom(42);
+		final double[] expected = draw(random.split(3), 10);
+		
+		// Split depends only on the seed, not on the state of the parent stream
+		draw(random, 5);
+		assertArrayEquals(expected, draw(random.split(3), 10), 0.0);
+		assertArrayEquals(expected, draw(new DimpleRandom(42).split(3), 10), 0.0);
+		assertEquals(DimpleRandom.splitSeed(42, 3), random.split(3).getSeed());
+		
+		// Different ids and seeds produce different streams
+		assertNotEquals(expected[0], draw(random.split(4), 1)[0], 0.0);
+		assertNotEquals(expected[0], draw(new DimpleRandom(43).split(3), 1)[0], 0.0);
+		assertNotEquals(random.split(0).getSeed(), random.getSeed());
+	}
+	
+	@Test
+	public void testThreadStreams() throws InterruptedException
+	{
+		final DimpleRandom current = DimpleRandomGenerator.current();
+		assertSame(current, DimpleRandomGenerator.current());
+		
+		// Streams installed on worker threads from fixed ids reproduce the same values no matter how
+		// the threads are scheduled.
+		final int nThreads = 4, nValues = 100;
+		DimpleRandomGenerator.setSeed(1234);
+		assertEquals(1234, current.getSeed());
+		final double[][] expected = new double[nThreads][];
+		for (int i = 0; i < nThreads; ++i)
+		{
+			expected[i] = draw(current.split(i), nValues);
+		}
+		
+		final double[][] actual = new double[nThreads][];
+		final DimpleRandom[] threadDefaults = new DimpleRandom[nThreads];
+		final Thread[] threads = new Thread[nThreads];
+		for (int i = 0; i < nThreads; ++i)
+		{
+			final int index = i;
+			final DimpleRandom stream = current.split(i);
+			threads[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					threadDefaults[index] = DimpleRandomGenerator.setCurrent(stream);
+					assertSame(stream, DimpleRandomGenerator.current());
+					actual[index] = draw(DimpleRandomGenerator.current(), nValues);
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		for (int i = 0; i < nThreads; ++i)
+		{
+			assertArrayEquals(expected[i], actual[i], 0.0);
+			assertNotSame(current, threadDefaults[i]);
+			assertNotSame(DimpleRandomGenerator.global(), threadDefaults[i]);
+		}
+		
+		// Installing and restoring stream on this thread
+		final DimpleRandom other = new DimpleRandom(7);
+		assertSame(current, DimpleRandomGenerator.setCurrent(other));
+		assertSame(other, DimpleRandomGenerator.current());
+		assertSame(other, DimpleRandomGenerator.setCurrent(current));
+		assertSame(current, DimpleRandomGenerator.current());
+	}
+	
+	/*-----------------
+	 * Helper methods
+	 */
+	
+	private static double[] draw(DimpleRandom random, int n)
+	{
+		final double[] values = new double[n];
+		for (int i = 0; i < n; ++i)
+		{
+			switch (i % 4)
+			{
+			case 0:
+				values[i] = random.nextDouble();
+				break;
+			case 1:
+				values[i] = random.nextGaussian();
+				break;
+			case 2:
+				values[i] = random.nextGamma(2.5, 1);
+				break;
+			default:
+				values[i] = random.nextBinomial(20, .3);
+				break;
+			}
+		}
+		return values;
+	}
+}
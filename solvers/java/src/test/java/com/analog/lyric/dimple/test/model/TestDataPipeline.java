@@ -0,0 +1,279 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.test.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.repeated.BatchingDataSink;
+import com.analog.lyric.dimple.model.repeated.BitStream;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSink;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSource;
+import com.analog.lyric.dimple.model.repeated.IDataSink;
+import com.analog.lyric.dimple.model.repeated.IDataSource;
+import com.analog.lyric.dimple.model.repeated.PrefetchingDataSource;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link PrefetchingDataSource} and {@link BatchingDataSink}.
+ * @since 0.08
+ */
+public class TestDataPipeline extends DimpleTestBase
+{
+	final Random _rand = new Random(123);
+	
+	@Test
+	public void testPrefetchingDataSource()
+	{
+		final double[][] data = randomData(100);
+		
+		try (PrefetchingDataSource source = new PrefetchingDataSource(new DoubleArrayDataSource(data), 4))
+		{
+			assertEquals(4, source.getCapacity());
+			for (int i = 0; i < data.length; ++i)
+			{
+				assertTrue(source.hasNext());
+				assertSame(data[i], source.getNext());
+			}
+			assertFalse(source.hasNext());
+			assertFalse(source.hasNext());
+			assertEquals(data.length, source.getCount());
+			assertEquals(0, source.getQueueDepth());
+			assertTrue(source.getMaxQueueDepth() <= 4);
+			
+			try
+			{
+				source.getNext();
+				fail("expected DimpleException");
+			}
+			catch (DimpleException ex)
+			{
+			}
+		}
+		
+		// Slow source should cause stalls
+		try (PrefetchingDataSource source = new PrefetchingDataSource(new SlowDataSource(data, 10), 2))
+		{
+			int count = 0;
+			while (source.hasNext())
+			{
+				assertSame(data[count++], source.getNext());
+			}
+			assertEquals(10, count);
+			assertTrue(source.getStallCount() > 0);
+			assertTrue(source.getStallNanoseconds() > 0);
+		}
+		
+		// Errors are rethrown on consumer thread
+		try (PrefetchingDataSource source = new PrefetchingDataSource(new BrokenDataSource(), 2))
+		{
+			source.hasNext();
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getCause() instanceof UnsupportedOperationException);
+		}
+		
+		// Closing discards data
+		PrefetchingDataSource source = new PrefetchingDataSource(new DoubleArrayDataSource(data), 4);
+		assertTrue(source.hasNext());
+		source.close();
+		source.close();
+		try
+		{
+			source.getNext();
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+	}
+	
+	@Test
+	public void testBatchingDataSink()
+	{
+		final double[][] data = randomData(100);
+		
+		DoubleArrayDataSink dataSink = new DoubleArrayDataSink();
+		BatchingDataSink sink = new BatchingDataSink(dataSink, 8, 3);
+		assertEquals(8, sink.getCapacity());
+		assertEquals(3, sink.getBatchSize());
+		for (double[] values : data)
+		{
+			sink.push(values);
+		}
+		sink.flush();
+		assertEquals(data.length, sink.getCount());
+		assertEquals(0, sink.getQueueDepth());
+		assertTrue(sink.getMaxQueueDepth() <= 8);
+		assertTrue(sink.getBatchCount() >= data.length / 3);
+		assertTrue(sink.getBatchCount() <= data.length);
+		assertArrayEquals(data, dataSink.getArray());
+		
+		sink.push(data[0]);
+		sink.close();
+		sink.close();
+		assertEquals(data.length + 1, dataSink.getArray().length);
+		
+		try
+		{
+			sink.push(data[0]);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+		
+		// Errors are rethrown on producer thread
+		sink = new BatchingDataSink(new BrokenDataSink(), 2, 2);
+		try
+		{
+			sink.push(data[0]);
+			sink.flush();
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getCause() instanceof UnsupportedOperationException);
+		}
+	}
+	
+	@Test
+	public void testStream()
+	{
+		final double[][] data = randomData(50);
+		
+		final double[][] expected = runStream(new DoubleArrayDataSource(data), new DoubleArrayDataSink(), null);
+		assertEquals(data.length - 4, expected.length);
+
+		DoubleArrayDataSink dataSink = new DoubleArrayDataSink();
+		try (PrefetchingDataSource source = new PrefetchingDataSource(new DoubleArrayDataSource(data), 5);
+			BatchingDataSink sink = new BatchingDataSink(dataSink, 5, 2))
+		{
+			final double[][] actual = runStream(source, sink, dataSink);
+			assertEquals(expected.length, actual.length);
+			for (int i = 0; i < expected.length; ++i)
+			{
+				assertArrayEquals(expected[i], actual[i], 0.0);
+			}
+			assertEquals(data.length, source.getCount());
+		}
+	}
+	
+	/*-----------------
+	 * Helper methods
+	 */
+	
+	private double[][] randomData(int n)
+	{
+		final double[][] data = new double[n][];
+		for (int i = 0; i < n; ++i)
+		{
+			final double p = _rand.nextDouble();
+			data[i] = new double[] { 1 - p, p };
+		}
+		return data;
+	}
+	
+	/**
+	 * Runs rolled-up HMM with buffer size 3 over the given source and returns the beliefs
+	 * written to the sink.
+	 */
+	private double[][] runStream(IDataSource source, IDataSink sink, DoubleArrayDataSink dataSink)
+	{
+		Bit a = new Bit(), b = new Bit();
+		FactorGraph sg = new FactorGraph(a, b);
+		sg.addFactor(new int[][] { {0, 0}, {0, 1}, {1, 0}, {1, 1} }, new double[] { .8, .2, .3, .7 }, a, b);
+		
+		FactorGraph fg = new FactorGraph();
+		BitStream X = new BitStream("X");
+		X.setDataSource(source);
+		X.setDataSink(sink);
+		fg.addRepeatedFactorWithBufferSize(sg, 3, X, X.getSlice(1));
+		fg.solve();
+		
+		if (sink instanceof BatchingDataSink)
+		{
+			((BatchingDataSink)sink).flush();
+		}
+		
+		return (dataSink != null ? dataSink : (DoubleArrayDataSink)sink).getArray();
+	}
+	
+	private static class SlowDataSource extends DoubleArrayDataSource
+	{
+		private int _remaining;
+		
+		SlowDataSource(double[][] data, int size)
+		{
+			super(data);
+			_remaining = size;
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			return _remaining > 0;
+		}
+		
+		@Override
+		public double[] getNext()
+		{
+			try
+			{
+				Thread.sleep(2);
+			}
+			catch (InterruptedException ex)
+			{
+			}
+			--_remaining;
+			return super.getNext();
+		}
+	}
+	
+	private static class BrokenDataSource implements IDataSource
+	{
+		@Override
+		public boolean hasNext()
+		{
+			return true;
+		}
+
+		@Override
+		public Object getNext()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	private static class BrokenDataSink implements IDataSink
+	{
+		@Override
+		public void push(Object data)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
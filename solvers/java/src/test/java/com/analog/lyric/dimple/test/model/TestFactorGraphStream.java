@@ -0,0 +1,280 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.test.model;
+
+import static java.util.Objects.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.repeated.BitStream;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSource;
+import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.solvers.core.SDiscreteEdge;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+import com.analog.lyric.dimple.solvers.junctiontree.JunctionTreeSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link FactorGraphStream}.
+ * @since 0.08
+ */
+public class TestFactorGraphStream extends DimpleTestBase
+{
+	final Random _rand = new Random(42);
+	
+	private @Nullable IFactorGraphFactory<?> _solver = null;
+	
+	@Test
+	public void testAdvance()
+	{
+		testAdvance(1, 10);
+		testAdvance(3, 20);
+		testAdvance(10, 30);
+		
+		// Solver graphs that override moveMessages must still have it invoked
+		final MoveCountingSolver solver = new MoveCountingSolver();
+		_solver = solver;
+		testAdvance(3, 20);
+		assertEquals(16 * 2, solver._moveCount);
+	}
+	
+	@Test
+	public void testJunctionTree()
+	{
+		// The junction tree solver graph is a proxy for another solver graph with a different topology,
+		// so it does not support streams.
+		Bit a = new Bit(), b = new Bit();
+		FactorGraph sg = new FactorGraph(a, b);
+		sg.addFactor(new int[][] { {0, 0}, {1, 1} }, new double[] { 1, 1 }, a, b);
+		
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new JunctionTreeSolver());
+		BitStream X = new BitStream("X");
+		try
+		{
+			fg.addRepeatedFactorWithBufferSize(sg, 2, X, X.getSlice(1));
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertThat(ex.getMessage(), containsString("not supported"));
+		}
+	}
+	
+	/**
+	 * Runs rolled-up HMM over {@code length} steps using buffer of given size and compares
+	 * beliefs of the first and last variables of the buffer against forward-backward.
+	 */
+	private void testAdvance(int bufferSize, int length)
+	{
+		final double[] transition = new double[] { .8, .2, .3, .7 };
+		final double[][] inputs = new double[length][];
+		for (int i = 0; i < length; ++i)
+		{
+			double p = _rand.nextDouble();
+			inputs[i] = new double[] { 1 - p, p };
+		}
+		
+		Bit a = new Bit(), b = new Bit();
+		FactorGraph sg = new FactorGraph(a, b);
+		sg.addFactor(new int[][] { {0, 0}, {0, 1}, {1, 0}, {1, 1} }, transition, a, b);
+		
+		FactorGraph fg = new FactorGraph();
+		final IFactorGraphFactory<?> solver = _solver;
+		if (solver != null)
+		{
+			fg.setSolverFactory(solver);
+		}
+		BitStream X = new BitStream("X");
+		X.setDataSource(new DoubleArrayDataSource(inputs));
+		FactorGraphStream fgs = fg.addRepeatedFactorWithBufferSize(sg, bufferSize, X, X.getSlice(1));
+		assertEquals(bufferSize, fgs.getBufferSize());
+		assertEquals(bufferSize + 1, X.size());
+		
+		fg.initialize();
+		
+		for (int step = 0; ; ++step)
+		{
+			fg.solveOneStep();
+			
+			final int last = step + bufferSize;
+			final double[][] expected = forwardBackward(inputs, transition, last + 1);
+			assertArrayEquals(expected[step], X.get(0).getBelief(), 1e-12);
+			assertArrayEquals(expected[last], X.get(bufferSize).getBelief(), 1e-12);
+			
+			if (!fg.hasNext())
+			{
+				assertEquals(length - 1, last);
+				break;
+			}
+			
+			// Messages of the second nested graph should be moved to the first
+			final List<double[]> messages = bufferSize > 1 && solver == null ? edgeMessages(fgs.getNestedGraphs().get(1)) : null;
+			
+			fg.advance();
+			
+			if (messages != null)
+			{
+				final List<double[]> messages0 = edgeMessages(fgs.getNestedGraphs().get(0));
+				assertEquals(messages.size(), messages0.size());
+				for (int i = 0, n = messages.size(); i < n; ++i)
+				{
+					assertArrayEquals(messages.get(i), messages0.get(i), 0.0);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Solver whose graphs count calls to their {@link #moveMessages} override.
+	 */
+	private static class MoveCountingSolver implements IFactorGraphFactory<MoveCountingSolverGraph>
+	{
+		private int _moveCount = 0;
+		
+		@Override
+		public MoveCountingSolverGraph createFactorGraph(FactorGraph graph)
+		{
+			return createFactorGraph(graph, null);
+		}
+		
+		@Override
+		public MoveCountingSolverGraph createFactorGraph(FactorGraph graph, @Nullable ISolverFactorGraph parent)
+		{
+			return new MoveCountingSolverGraph(this, graph, parent);
+		}
+	}
+	
+	private static class MoveCountingSolverGraph extends SumProductSolverGraph
+	{
+		private final MoveCountingSolver _solver;
+		
+		private MoveCountingSolverGraph(MoveCountingSolver solver, FactorGraph graph,
+			@Nullable ISolverFactorGraph parent)
+		{
+			super(graph, parent);
+			_solver = solver;
+		}
+		
+		@Override
+		public ISolverFactorGraph createSubgraph(FactorGraph subgraph)
+		{
+			return new MoveCountingSolverGraph(_solver, subgraph, this);
+		}
+		
+		@Override
+		public void moveMessages(ISolverNode other)
+		{
+			++_solver._moveCount;
+			super.moveMessages(other);
+		}
+		
+		@Override
+		public boolean supportsDirectMessageMoves()
+		{
+			return false;
+		}
+	}
+	
+	private static List<double[]> edgeMessages(FactorGraph graph)
+	{
+		final ISolverFactorGraph sgraph = requireNonNull(graph.getSolver());
+		final List<double[]> messages = new ArrayList<>();
+		for (int i = 0, n = graph.getGraphEdgeStateMaxIndex(); i <= n; ++i)
+		{
+			final SDiscreteEdge<?> sedge = (SDiscreteEdge<?>)sgraph.getSolverEdge(i);
+			if (sedge != null)
+			{
+				messages.add(sedge.varToFactorMsg.representation().clone());
+				messages.add(sedge.factorToVarMsg.representation().clone());
+			}
+		}
+		return messages;
+	}
+	
+	/**
+	 * Computes marginals of first {@code n} variables of HMM with given two state {@code transition}
+	 * matrix in row-major order.
+	 */
+	private static double[][] forwardBackward(double[][] inputs, double[] transition, int n)
+	{
+		final double[][] alpha = new double[n][2];
+		final double[][] beta = new double[n][2];
+		
+		for (int i = 0; i < n; ++i)
+		{
+			for (int x = 0; x < 2; ++x)
+			{
+				double prior = 1;
+				if (i > 0)
+				{
+					prior = alpha[i-1][0] * transition[x] + alpha[i-1][1] * transition[2 + x];
+				}
+				alpha[i][x] = prior * inputs[i][x];
+			}
+			normalize(alpha[i]);
+		}
+		
+		for (int i = n; --i >= 0;)
+		{
+			for (int x = 0; x < 2; ++x)
+			{
+				double next = 1;
+				if (i + 1 < n)
+				{
+					final double[] b = beta[i+1], in = inputs[i+1];
+					next = transition[2*x] * b[0] * in[0] + transition[2*x + 1] * b[1] * in[1];
+				}
+				beta[i][x] = next;
+			}
+			normalize(beta[i]);
+		}
+		
+		final double[][] marginals = new double[n][2];
+		for (int i = 0; i < n; ++i)
+		{
+			for (int x = 0; x < 2; ++x)
+			{
+				marginals[i][x] = alpha[i][x] * beta[i][x];
+			}
+			normalize(marginals[i]);
+		}
+		
+		return marginals;
+	}
+	
+	private static void normalize(double[] values)
+	{
+		final double sum = values[0] + values[1];
+		values[0] /= sum;
+		values[1] /= sum;
+	}
+}
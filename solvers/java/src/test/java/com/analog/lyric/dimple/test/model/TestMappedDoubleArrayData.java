@@ -0,0 +1,255 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.test.model;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.repeated.BitStream;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSink;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSource;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayFileDataSink;
+import com.analog.lyric.dimple.model.repeated.IDataSink;
+import com.analog.lyric.dimple.model.repeated.IDataSource;
+import com.analog.lyric.dimple.model.repeated.MappedDoubleArrayDataSource;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.NormalParameters;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link MappedDoubleArrayDataSource} and {@link DoubleArrayFileDataSink}.
+ * @since 0.08
+ */
+public class TestMappedDoubleArrayData extends DimpleTestBase
+{
+	final Random _rand = new Random(42);
+	
+	@Test
+	public void testReadWrite() throws IOException
+	{
+		final File file = createTempFile();
+		
+		final double[][] data = new double[100][3];
+		for (double[] values : data)
+		{
+			for (int i = 0; i < values.length; ++i)
+			{
+				values[i] = _rand.nextGaussian();
+			}
+		}
+		
+		final DoubleArrayFileDataSink dataSink = new DoubleArrayFileDataSink(file, 3);
+		try
+		{
+			assertEquals(3, dataSink.getDimension());
+			assertEquals(file, dataSink.getFile());
+			for (double[] values : data)
+			{
+				dataSink.push(values);
+			}
+			assertEquals(data.length, dataSink.size());
+			
+			try
+			{
+				dataSink.push(new double[2]);
+				fail("expected DimpleException");
+			}
+			catch (DimpleException ex)
+			{
+			}
+		}
+		finally
+		{
+			dataSink.close();
+		}
+		
+		// Closing again does nothing, but no more values can be written
+		dataSink.close();
+		try
+		{
+			dataSink.push(data[0]);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+		
+		assertEquals(MappedDoubleArrayDataSource.HEADER_BYTES + data.length * 3 * 8, file.length());
+		
+		try (MappedDoubleArrayDataSource source = new MappedDoubleArrayDataSource(file))
+		{
+			assertEquals(3, source.getDimension());
+			assertEquals(data.length, source.size());
+			assertEquals(file, source.getFile());
+			for (double[] values : data)
+			{
+				assertTrue(source.hasNext());
+				assertArrayEquals(values, source.getNext(), 0.0);
+			}
+			assertFalse(source.hasNext());
+			assertEquals(data.length, source.getPosition());
+			
+			try
+			{
+				source.getNext();
+				fail("expected DimpleException");
+			}
+			catch (DimpleException ex)
+			{
+			}
+			
+			source.setPosition(42);
+			assertArrayEquals(data[42], source.getNext(), 0.0);
+			
+			try
+			{
+				source.setPosition(data.length + 1);
+				fail("expected IndexOutOfBoundsException");
+			}
+			catch (IndexOutOfBoundsException ex)
+			{
+			}
+		}
+		
+		// Normal beliefs are written as mean and standard deviation
+		try (DoubleArrayFileDataSink sink = new DoubleArrayFileDataSink(file, 2))
+		{
+			sink.push(new NormalParameters(2.0, 4.0));
+		}
+		try (MappedDoubleArrayDataSource source = new MappedDoubleArrayDataSource(file))
+		{
+			assertEquals(1, source.size());
+			assertArrayEquals(new double[] { 2.0, .5 }, source.getNext(), 1e-15);
+		}
+		
+		// Enough values to fill the write buffer several times
+		final int nValues = 3 * DoubleArrayFileDataSink.WRITE_BUFFER_BYTES / (5 * 8) + 7;
+		try (DoubleArrayFileDataSink sink = new DoubleArrayFileDataSink(file, 5))
+		{
+			for (int i = 0; i < nValues; ++i)
+			{
+				sink.push(new double[] { i, i + .1, i + .2, i + .3, i + .4 });
+			}
+		}
+		assertEquals(MappedDoubleArrayDataSource.HEADER_BYTES + nValues * 5 * 8, file.length());
+		try (MappedDoubleArrayDataSource source = new MappedDoubleArrayDataSource(file))
+		{
+			assertEquals(nValues, source.size());
+			for (int i = 0; i < nValues; ++i)
+			{
+				assertArrayEquals(new double[] { i, i + .1, i + .2, i + .3, i + .4 }, source.getNext(), 0.0);
+			}
+		}
+		
+		// Invalid file
+		try (FileOutputStream out = new FileOutputStream(file))
+		{
+			out.write(new byte[] { 1, 2, 3 });
+		}
+		try
+		{
+			new MappedDoubleArrayDataSource(file);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+		
+		assertTrue(file.delete());
+	}
+	
+	@Test
+	public void testStream() throws IOException
+	{
+		final double[][] data = new double[50][];
+		for (int i = 0; i < data.length; ++i)
+		{
+			final double p = _rand.nextDouble();
+			data[i] = new double[] { 1 - p, p };
+		}
+		
+		final File inputFile = createTempFile(), outputFile = createTempFile();
+		try (DoubleArrayFileDataSink sink = new DoubleArrayFileDataSink(inputFile, 2))
+		{
+			for (double[] values : data)
+			{
+				sink.push(values);
+			}
+		}
+		
+		DoubleArrayDataSink expectedSink = new DoubleArrayDataSink();
+		runStream(new DoubleArrayDataSource(data), expectedSink);
+		final double[][] expected = expectedSink.getArray();
+		
+		try (MappedDoubleArrayDataSource source = new MappedDoubleArrayDataSource(inputFile);
+			DoubleArrayFileDataSink sink = new DoubleArrayFileDataSink(outputFile, 2))
+		{
+			runStream(source, sink);
+			assertEquals(data.length, source.getPosition());
+			assertEquals(expected.length, sink.size());
+		}
+		
+		try (MappedDoubleArrayDataSource source = new MappedDoubleArrayDataSource(outputFile))
+		{
+			assertEquals(expected.length, source.size());
+			for (double[] values : expected)
+			{
+				assertArrayEquals(values, source.getNext(), 0.0);
+			}
+		}
+		
+		assertTrue(inputFile.delete());
+		assertTrue(outputFile.delete());
+	}
+
+	/*----------------
+	 * Helper methods
+	 */
+	
+	private static File createTempFile() throws IOException
+	{
+		final File file = File.createTempFile("TestMappedDoubleArrayData", ".bin");
+		file.deleteOnExit();
+		return file;
+	}
+	
+	/**
+	 * Runs rolled-up HMM with buffer size 3 over the given source.
+	 */
+	private static void runStream(IDataSource source, IDataSink sink)
+	{
+		Bit a = new Bit(), b = new Bit();
+		FactorGraph sg = new FactorGraph(a, b);
+		sg.addFactor(new int[][] { {0, 0}, {0, 1}, {1, 0}, {1, 1} }, new double[] { .8, .2, .3, .7 }, a, b);
+		
+		FactorGraph fg = new FactorGraph();
+		BitStream X = new BitStream("X");
+		X.setDataSource(source);
+		X.setDataSink(sink);
+		fg.addRepeatedFactorWithBufferSize(sg, 3, X, X.getSlice(1));
+		fg.solve();
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.core;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.BPSolverGraph;
+import com.analog.lyric.dimple.solvers.core.ResidualNorm;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.minsum.MinSumSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.dimple.test.model.RandomGraphGenerator;
+
+/**
+ * Tests for convergence checking in {@link BPSolverGraph}
+ * @since 0.08
+ */
+public class TestBPConvergence extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		assertEquals(0.0, BPOptions.convergenceTolerance.defaultValue(), 0.0);
+		assertEquals(ResidualNorm.LINFINITY, BPOptions.convergenceNorm.defaultValue());
+		assertEquals(1, (int)BPOptions.convergenceCheckInterval.defaultValue());
+		
+		assertEquals(3.0, ResidualNorm.L1.distance(new double[] { 1, 2, 3 }, new double[] { 2, 1, 2 }), 0.0);
+		assertEquals(2.0, ResidualNorm.LINFINITY.distance(new double[] { 1, 2, 3 }, new double[] { 1, 4, 2 }), 0.0);
+		final double inf = Double.POSITIVE_INFINITY;
+		assertEquals(0.0, ResidualNorm.LINFINITY.distance(new double[] { inf, 0 }, new double[] { inf, 0 }), 0.0);
+		assertEquals(inf, ResidualNorm.L1.distance(new double[] { inf, 0 }, new double[] { 1, 0 }), 0.0);
+		
+		RandomGraphGenerator gen = new RandomGraphGenerator(new Random(42));
+		
+		testConvergence(gen.buildRandomTree(12), new SumProductSolver(), 1e-12, false);
+		testConvergence(gen.buildRandomTree(12), new MinSumSolver(), 1e-12, false);
+		testConvergence(gen.buildGrid(3), new SumProductSolver(), 1e-9, true);
+		testConvergence(gen.buildGrid(3), new MinSumSolver(), 1e-9, true);
+	}
+	
+	private void testConvergence(FactorGraph fg, IFactorGraphFactory<?> solver, double tolerance, boolean loopy)
+	{
+		final int maxIterations = 500;
+		
+		BPSolverGraph<?,?,?> sfg = (BPSolverGraph<?,?,?>)requireNonNull(fg.setSolverFactory(solver));
+		fg.setOption(BPOptions.iterations, maxIterations);
+		fg.solve();
+		assertEquals(maxIterations, sfg.getIterationsRun());
+		assertFalse(sfg.hasConverged());
+		assertTrue(Double.isNaN(sfg.getLastResidual()));
+		
+		final Variable[] variables = fg.getVariables().toArray(new Variable[0]);
+		final double[][] expectedBeliefs = new double[variables.length][];
+		for (int i = 0; i < variables.length; ++i)
+		{
+			expectedBeliefs[i] = ((Discrete)variables[i]).getBelief();
+		}
+		
+		for (ResidualNorm norm : ResidualNorm.values())
+		{
+			for (int interval : new int[] { 1, 3 })
+			{
+				fg.setOption(BPOptions.convergenceTolerance, tolerance);
+				fg.setOption(BPOptions.convergenceNorm, norm);
+				fg.setOption(BPOptions.convergenceCheckInterval, interval);
+				fg.solve();
+				
+				assertTrue(sfg.hasConverged());
+				assertTrue(sfg.getLastResidual() <= tolerance);
+				assertTrue(sfg.getIterationsRun() < maxIterations);
+				assertEquals(0, sfg.getIterationsRun() % interval);
+				if (!loopy)
+				{
+					// Flooding on a tree converges exactly in a number of iterations bounded by its diameter.
+					assertTrue(sfg.getIterationsRun() <= variables.length + interval);
+				}
+				
+				for (int i = 0; i < variables.length; ++i)
+				{
+					assertArrayEquals(expectedBeliefs[i], ((Discrete)variables[i]).getBelief(), 1e-6);
+				}
+			}
+		}
+		
+		fg.unsetOption(BPOptions.convergenceTolerance);
+		fg.solve();
+		assertEquals(maxIterations, sfg.getIterationsRun());
+		assertFalse(sfg.hasConverged());
+	}
+}
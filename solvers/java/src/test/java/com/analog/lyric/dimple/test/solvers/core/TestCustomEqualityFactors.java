@@ -0,0 +1,202 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.core;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Equality;
+import com.analog.lyric.dimple.factorfunctions.Equals;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.SequentialScheduler;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+import com.analog.lyric.dimple.solvers.minsum.MinSumSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for sum-product and min-sum custom factors for {@link Equality} and {@link Equals}.
+ * @since 0.08
+ */
+public class TestCustomEqualityFactors extends DimpleTestBase
+{
+	private final Random _rand = new Random(123);
+
+	@Test
+	public void test()
+	{
+		testSolver(new SumProductSolver(),
+			com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomEquality.class,
+			com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomEquals.class);
+		testSolver(new MinSumSolver(),
+			com.analog.lyric.dimple.solvers.minsum.customFactors.CustomEquality.class,
+			com.analog.lyric.dimple.solvers.minsum.customFactors.CustomEquals.class);
+
+		// A high-degree Equals factor would be impractical using a factor table
+		final int nValues = 12, domainSize = 4;
+		FactorGraph fg = new FactorGraph();
+		Bit b = new Bit();
+		Discrete[] values = new Discrete[nValues];
+		for (int i = 0; i < nValues; ++i)
+		{
+			values[i] = new Discrete(DiscreteDomain.range(1, domainSize));
+		}
+		Variable[] args = new Variable[nValues + 1];
+		args[0] = b;
+		System.arraycopy(values, 0, args, 1, nValues);
+		Factor equals = fg.addFactor(new Equals(), args);
+
+		requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		assertTrue(equals.getSolver() instanceof com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomEquals);
+		fg.solve();
+		assertEquals(Math.pow(domainSize, 1 - nValues), b.getP1(), 1e-15);
+
+		requireNonNull(fg.setSolverFactory(new MinSumSolver()));
+		assertTrue(equals.getSolver() instanceof com.analog.lyric.dimple.solvers.minsum.customFactors.CustomEquals);
+		fg.solve();
+
+		// Not used for smoothed equality or mismatched domains
+		fg = new FactorGraph();
+		Discrete a = new Discrete(DiscreteDomain.range(0, 2)), c = new Discrete(DiscreteDomain.range(0, 3));
+		Discrete d = new Discrete(DiscreteDomain.range(0, 2));
+		Factor smoothed = fg.addFactor(new Equality(1.0), a, d);
+		Factor mismatched = fg.addFactor(new Equality(), a, c);
+		requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		assertFalse(smoothed.getSolver() instanceof com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomEquality);
+		assertFalse(mismatched.getSolver() instanceof com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomEquality);
+		requireNonNull(fg.setSolverFactory(new MinSumSolver()));
+		assertFalse(smoothed.getSolver() instanceof com.analog.lyric.dimple.solvers.minsum.customFactors.CustomEquality);
+		assertFalse(mismatched.getSolver() instanceof com.analog.lyric.dimple.solvers.minsum.customFactors.CustomEquality);
+	}
+
+	private void testSolver(IFactorGraphFactory<?> solver,
+		Class<? extends ISolverFactor> equalityClass,
+		Class<? extends ISolverFactor> equalsClass)
+	{
+		final int nVars = 6, domainSize = 3;
+
+		// Build same loopy graph using custom factors in fg1 and factor tables in fg2. Avoid single-value
+		// Equals factors, since the infinite energies they produce turn min-sum table factor messages into NaN.
+		final FactorGraph fg1 = new FactorGraph();
+		final FactorGraph fg2 = new FactorGraph();
+		final Discrete[] vars1 = new Discrete[nVars + 1], vars2 = new Discrete[nVars + 1];
+		for (int i = 0; i <= nVars; ++i)
+		{
+			final DiscreteDomain domain = i < nVars ? DiscreteDomain.range(0, domainSize - 1) : DiscreteDomain.bit();
+			vars1[i] = new Discrete(domain);
+			vars2[i] = new Discrete(domain);
+			final double[] input = new double[domain.size()];
+			for (int j = 0; j < input.length; ++j)
+			{
+				input[j] = .1 + _rand.nextDouble();
+			}
+			vars1[i].setInput(input);
+			vars2[i].setInput(input);
+		}
+		final Discrete bit1 = vars1[nVars], bit2 = vars2[nVars];
+
+		final Factor[] custom = new Factor[] {
+			fg1.addFactor(new Equality(), vars1[0], vars1[1], vars1[2], vars1[3]),
+			fg1.addFactor(new Equality(), vars1[1], vars1[4]),
+			fg1.addFactor(new Equals(), bit1, vars1[2], vars1[3], vars1[4]),
+			fg1.addFactor(new Equals(), bit1, vars1[5], vars1[0]),
+		};
+		for (Factor factor : custom)
+		{
+			final Variable[] args = new Variable[factor.getSiblingCount()];
+			for (int i = 0; i < args.length; ++i)
+			{
+				args[i] = vars2[indexOf(vars1, factor.getSibling(i))];
+			}
+			fg2.addFactor(factor.getFactorTable(), args);
+		}
+
+		// Add a random table factor to close some loops
+		final int[][] indices = new int[domainSize * domainSize][];
+		final double[] weights = new double[indices.length];
+		for (int i = 0; i < indices.length; ++i)
+		{
+			indices[i] = new int[] { i / domainSize, i % domainSize };
+			weights[i] = .1 + _rand.nextDouble();
+		}
+		fg1.addFactor(indices, weights, vars1[0], vars1[5]);
+		fg2.addFactor(indices, weights, vars2[0], vars2[5]);
+
+		requireNonNull(fg1.setSolverFactory(solver));
+		requireNonNull(fg2.setSolverFactory(solver));
+
+		assertTrue(equalityClass.isInstance(custom[0].getSolver()));
+		assertTrue(equalityClass.isInstance(custom[1].getSolver()));
+		assertTrue(equalsClass.isInstance(custom[2].getSolver()));
+		assertTrue(equalsClass.isInstance(custom[3].getSolver()));
+		for (Factor factor : fg2.getFactors())
+		{
+			assertFalse(equalityClass.isInstance(factor.getSolver()));
+			assertFalse(equalsClass.isInstance(factor.getSolver()));
+		}
+
+		fg1.setOption(BPOptions.iterations, 10);
+		fg2.setOption(BPOptions.iterations, 10);
+		compareBeliefs(fg1, fg2, vars1, vars2);
+
+		fg1.setOption(BPOptions.damping, .3);
+		fg2.setOption(BPOptions.damping, .3);
+		compareBeliefs(fg1, fg2, vars1, vars2);
+
+		// Uses updateEdge
+		fg1.setOption(BPOptions.scheduler, new SequentialScheduler());
+		fg2.setOption(BPOptions.scheduler, new SequentialScheduler());
+		compareBeliefs(fg1, fg2, vars1, vars2);
+
+		fg1.unsetOption(BPOptions.damping);
+		fg2.unsetOption(BPOptions.damping);
+		compareBeliefs(fg1, fg2, vars1, vars2);
+	}
+
+	private static int indexOf(Object[] array, Object object)
+	{
+		for (int i = 0; i < array.length; ++i)
+		{
+			if (array[i] == object)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void compareBeliefs(FactorGraph fg1, FactorGraph fg2, Discrete[] vars1, Discrete[] vars2)
+	{
+		fg1.solve();
+		fg2.solve();
+		for (int i = 0; i < vars1.length; ++i)
+		{
+			assertArrayEquals(vars2[i].getBelief(), vars1[i].getBelief(), 1e-12);
+		}
+	}
+}
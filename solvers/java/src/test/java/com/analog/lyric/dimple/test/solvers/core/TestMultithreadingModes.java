@@ -0,0 +1,218 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.test.solvers.core;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.SolverOptions;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingMode;
+import com.analog.lyric.dimple.solvers.core.multithreading.forkjoinalgorithm.ForkJoinMultithreadingAlgorithm;
+import com.analog.lyric.dimple.solvers.core.multithreading.pinnedphasealgorithm.PinnedPhaseMultithreadingAlgorithm;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.dimple.test.model.RandomGraphGenerator;
+
+/**
+ * Tests for {@link MultithreadingMode}s.
+ * @since 0.08
+ */
+public class TestMultithreadingModes extends DimpleTestBase
+{
+	@Test
+	public void testModes()
+	{
+		final FactorGraph fg = new RandomGraphGenerator(new Random(42)).buildGrid(8);
+		final SumProductSolverGraph sfg = requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		final MultiThreadingManager manager = sfg.getMultithreadingManager();
+		
+		fg.initialize();
+		sfg.iterate(5);
+		final List<double[]> expected = beliefs(fg);
+		
+		fg.setOption(SolverOptions.enableMultithreading, true);
+		manager.setNumWorkers(4);
+		
+		for (MultithreadingMode mode : manager.getModes())
+		{
+			manager.setMode(mode);
+			assertEquals(mode, manager.getMode());
+			
+			fg.initialize();
+			sfg.iterate(5);
+			assertBeliefsEqual(expected, beliefs(fg));
+			
+			// Same result in multiple calls
+			fg.initialize();
+			sfg.iterate(2);
+			sfg.iterate(3);
+			assertBeliefsEqual(expected, beliefs(fg));
+		}
+	}
+	
+	@Test
+	public void testPinnedPhase() throws InterruptedException
+	{
+		final FactorGraph fg = new RandomGraphGenerator(new Random(23)).buildGrid(6);
+		final SumProductSolverGraph sfg = requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		final MultiThreadingManager manager = sfg.getMultithreadingManager();
+		final PinnedPhaseMultithreadingAlgorithm algorithm =
+			(PinnedPhaseMultithreadingAlgorithm)manager.getAlgorithm(MultithreadingMode.PinnedPhase);
+		
+		fg.initialize();
+		sfg.iterate(3);
+		final List<double[]> expected = beliefs(fg);
+		
+		fg.setOption(SolverOptions.enableMultithreading, true);
+		manager.setMode(MultithreadingMode.PinnedPhase);
+		manager.setNumWorkers(3);
+		assertEquals(0, algorithm.getNumRunningWorkerThreads());
+		
+		// Each phase is partitioned among the workers
+		final ArrayList<ArrayList<IScheduleEntry>> phases = manager.getDependencyGraph().getPhases();
+		IScheduleEntry[][][] partitions = algorithm.getPartitions();
+		assertEquals(phases.size(), partitions.length);
+		for (int p = 0; p < phases.size(); ++p)
+		{
+			assertEquals(3, partitions[p].length);
+			final IdentityHashMap<IScheduleEntry,Boolean> entries = new IdentityHashMap<>();
+			for (IScheduleEntry[] partition : partitions[p])
+			{
+				for (IScheduleEntry entry : partition)
+				{
+					assertNull(entries.put(entry, true));
+				}
+			}
+			assertEquals(phases.get(p).size(), entries.size());
+			for (IScheduleEntry entry : phases.get(p))
+			{
+				assertTrue(entries.containsKey(entry));
+			}
+		}
+		assertSame(partitions, algorithm.getPartitions());
+		
+		fg.initialize();
+		sfg.iterate(3);
+		assertBeliefsEqual(expected, beliefs(fg));
+		assertEquals(2, algorithm.getNumRunningWorkerThreads());
+		
+		// Changing number of workers rebuilds partitions
+		manager.setNumWorkers(2);
+		partitions = algorithm.getPartitions();
+		assertEquals(2, partitions[0].length);
+		fg.initialize();
+		sfg.iterate(3);
+		assertBeliefsEqual(expected, beliefs(fg));
+		
+		// Idle workers exit and are restarted when needed
+		Thread.sleep(PinnedPhaseMultithreadingAlgorithm.IDLE_TIMEOUT_MILLIS + 500);
+		assertEquals(0, algorithm.getNumRunningWorkerThreads());
+		fg.initialize();
+		sfg.iterate(3);
+		assertBeliefsEqual(expected, beliefs(fg));
+		assertEquals(1, algorithm.getNumRunningWorkerThreads());
+		
+		// Single worker runs on calling thread
+		manager.setNumWorkers(1);
+		fg.initialize();
+		sfg.iterate(3);
+		assertBeliefsEqual(expected, beliefs(fg));
+	}
+	
+	@Test
+	public void testForkJoin()
+	{
+		final FactorGraph fg = new RandomGraphGenerator(new Random(17)).buildGrid(6);
+		final SumProductSolverGraph sfg = requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		final MultiThreadingManager manager = sfg.getMultithreadingManager();
+		final ForkJoinMultithreadingAlgorithm algorithm =
+			(ForkJoinMultithreadingAlgorithm)manager.getAlgorithm(MultithreadingMode.ForkJoin);
+		
+		fg.initialize();
+		sfg.iterate(1);
+		final List<double[]> expected1 = beliefs(fg);
+		fg.initialize();
+		sfg.iterate(20);
+		final List<double[]> expected20 = beliefs(fg);
+		
+		fg.setOption(SolverOptions.enableMultithreading, true);
+		manager.setMode(MultithreadingMode.ForkJoin);
+		manager.setNumWorkers(4);
+		assertEquals(0, algorithm.getParallelism());
+		
+		// Many iterations may overlap
+		fg.initialize();
+		sfg.iterate(20);
+		assertBeliefsEqual(expected20, beliefs(fg));
+		assertEquals(4, algorithm.getParallelism());
+		
+		fg.initialize();
+		sfg.iterate(1);
+		assertBeliefsEqual(expected1, beliefs(fg));
+		
+		// Changing number of workers replaces the pool
+		manager.setNumWorkers(2);
+		fg.initialize();
+		for (int i = 0; i < 20; ++i)
+		{
+			sfg.iterate(1);
+		}
+		assertBeliefsEqual(expected20, beliefs(fg));
+		assertEquals(2, algorithm.getParallelism());
+		
+		// Zero iterations does nothing
+		sfg.iterate(0);
+		assertBeliefsEqual(expected20, beliefs(fg));
+	}
+	
+	/*----------------
+	 * Helper methods
+	 */
+	
+	private static List<double[]> beliefs(FactorGraph fg)
+	{
+		final List<double[]> beliefs = new ArrayList<>();
+		for (Variable var : fg.getVariables())
+		{
+			beliefs.add(((double[])var.getBeliefObject()).clone());
+		}
+		return Collections.unmodifiableList(beliefs);
+	}
+	
+	private static void assertBeliefsEqual(List<double[]> expected, List<double[]> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0, n = expected.size(); i < n; ++i)
+		{
+			assertArrayEquals(expected.get(i), actual.get(i), 1e-12);
+		}
+	}
+}
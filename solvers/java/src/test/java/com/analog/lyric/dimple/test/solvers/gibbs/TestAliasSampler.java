@@ -0,0 +1,212 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.Domain;
+import com.analog.lyric.dimple.model.values.DiscreteValue;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.AliasSampler;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IDiscreteSamplerClient;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link AliasSampler}.
+ * @since 0.08
+ */
+public class TestAliasSampler extends DimpleTestBase
+{
+	private static class Client implements IDiscreteSamplerClient
+	{
+		private final DiscreteDomain _domain;
+		private int _sampleIndex = -1;
+		
+		private Client(DiscreteDomain domain)
+		{
+			_domain = domain;
+		}
+		
+		@Override
+		public double getSampleScore(Value sampleValue)
+		{
+			return 0;
+		}
+
+		@Override
+		public double getCurrentSampleScore()
+		{
+			return 0;
+		}
+
+		@Override
+		public void setNextSampleValue(Value sampleValue)
+		{
+			_sampleIndex = sampleValue.getIndex();
+		}
+
+		@Override
+		public Domain getDomain()
+		{
+			return _domain;
+		}
+
+		@Override
+		public double getSampleScore(int sampleIndex)
+		{
+			return 0;
+		}
+
+		@Override
+		public void setNextSampleIndex(int sampleIndex)
+		{
+			_sampleIndex = sampleIndex;
+		}
+	}
+	
+	@Test
+	public void testSampler()
+	{
+		final int size = 10;
+		final DiscreteDomain domain = DiscreteDomain.range(0, size - 1);
+		final DiscreteValue value = Value.create(domain);
+		final Client client = new Client(domain);
+		
+		final AliasSampler sampler = new AliasSampler();
+		sampler.initialize(domain);
+		assertEquals(0, sampler.getTableBuildCount());
+		
+		// Probabilities proportional to index, plus one value with zero probability
+		final double[] energy = new double[size + 2]; // may be longer than domain
+		double total = 0;
+		for (int i = 0; i < size; ++i)
+		{
+			energy[i] = -Math.log(i);
+			total += i;
+		}
+		
+		final int nSamples = 200000;
+		final int[] counts = new int[size];
+		for (int n = 0; n < nSamples; ++n)
+		{
+			sampler.nextSample(value, energy, -Math.log(size - 1), client);
+			++counts[client._sampleIndex];
+		}
+		assertEquals(1, sampler.getTableBuildCount());
+		assertEquals(0, counts[0]);
+		for (int i = 1; i < size; ++i)
+		{
+			assertEquals(i / total, (double)counts[i] / nSamples, .005);
+		}
+		
+		// Changing energies rebuilds table
+		energy[0] = -Math.log(total);
+		energy[size] = 42; // beyond domain, ignored
+		double[] counts2 = new double[size];
+		for (int n = 0; n < nSamples; ++n)
+		{
+			sampler.nextSample(value, energy, energy[0], client);
+			++counts2[client._sampleIndex];
+		}
+		assertEquals(2, sampler.getTableBuildCount());
+		assertEquals(.5, counts2[0] / nSamples, .005);
+		
+		sampler.invalidateTable();
+		sampler.nextSample(value, energy, energy[0], client);
+		assertEquals(3, sampler.getTableBuildCount());
+		
+		// Uniform distribution
+		final double[] uniform = new double[size];
+		for (int n = 0; n < 1000; ++n)
+		{
+			sampler.nextSample(value, uniform, 0.0, client);
+			assertTrue(client._sampleIndex >= 0 && client._sampleIndex < size);
+		}
+		assertEquals(4, sampler.getTableBuildCount());
+		
+		// All infinite energies
+		final double[] impossible = new double[size];
+		Arrays.fill(impossible, Double.POSITIVE_INFINITY);
+		try
+		{
+			sampler.nextSample(value, impossible, Double.POSITIVE_INFINITY, client);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+	}
+	
+	@Test
+	public void testSolve()
+	{
+		final int size = 1000;
+		final Object[] elements = new Object[size];
+		final double[] input = new double[size];
+		for (int i = 0; i < size; ++i)
+		{
+			elements[i] = i;
+			input[i] = i < 4 ? .2 : .2 / (size - 4);
+		}
+		
+		FactorGraph fg = new FactorGraph();
+		Discrete a = new Discrete(elements);
+		a.setInput(input);
+		fg.addVariables(a);
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.discreteSampler, AliasSampler.class);
+		fg.setOption(GibbsOptions.numSamples, 20000);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		fg.solve();
+		
+		final GibbsDiscrete sa = sfg.getDiscrete(a);
+		assertEquals("AliasSampler", sa.getSamplerName());
+		
+		double[] belief = a.getBelief();
+		for (int i = 0; i < 4; ++i)
+		{
+			assertEquals(.2, belief[i], .015);
+		}
+		
+		// Conditional is the same for every update, so table only needs to be built once
+		final AliasSampler sampler = new AliasSampler();
+		sa.setSampler(sampler);
+		fg.solve();
+		assertEquals(1, sampler.getTableBuildCount());
+		belief = a.getBelief();
+		for (int i = 0; i < 4; ++i)
+		{
+			assertEquals(.2, belief[i], .015);
+		}
+	}
+}
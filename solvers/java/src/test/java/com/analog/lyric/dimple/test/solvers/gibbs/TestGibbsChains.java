@@ -0,0 +1,106 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsReal;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for running multiple chains using {@link GibbsOptions#numChains}.
+ * @since 0.08
+ */
+public class TestGibbsChains extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final int nSamples = 1000, nChains = 4;
+		
+		FactorGraph fg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit();
+		a.setInput(.3);
+		b.setInput(.6);
+		fg.addFactor(new int[][] { {0, 0}, {0, 1}, {1, 0}, {1, 1} }, new double[] { 2, 1, 1, 2 }, a, b);
+		Real x = new Real();
+		fg.addFactor(new Normal(3.0, 4.0), x);
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, nSamples);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(GibbsOptions.saveAllScores, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		fg.solve();
+		assertEquals(1, sfg.getNumChains());
+		assertEquals(nSamples, sfg.getDiscrete(a).getAllSampleIndices().length);
+		
+		fg.setOption(GibbsOptions.numChains, nChains);
+		fg.solve();
+		assertEquals(nChains, sfg.getNumChains());
+		
+		final GibbsDiscrete sa = sfg.getDiscrete(a), sb = sfg.getDiscrete(b);
+		final GibbsReal sx = sfg.getReal(x);
+		assertEquals(nChains * nSamples, sa.getAllSampleIndices().length);
+		assertEquals(nChains * nSamples, sx.getAllSamples().length);
+		final double[] scores = requireNonNull(sfg.getAllScores());
+		assertEquals(nChains * nSamples, scores.length);
+		
+		// Joint weights are 00: .56, 01: .42, 10: .12, 11: .36
+		assertEquals(.48 / 1.46, sa.getBelief()[1], .03);
+		assertEquals(.78 / 1.46, sb.getBelief()[1], .03);
+		assertEquals(3.0, sx.getSampleMean(), .05);
+		assertEquals(.25, sx.getSampleVariance(), .03);
+		
+		// Best score is the minimum over all chains
+		double minScore = Double.POSITIVE_INFINITY;
+		for (double score : scores)
+		{
+			minScore = Math.min(minScore, score);
+		}
+		assertEquals(minScore, sfg.getBestSampleScore(), 0.0);
+		
+		// Chains use different random streams
+		final int[] samples = sa.getAllSampleIndices();
+		boolean differ = false;
+		for (int i = 0; i < nSamples && !differ; ++i)
+		{
+			differ = samples[i] != samples[i + nSamples];
+		}
+		assertTrue(differ);
+		
+		// Repeatable for given seed
+		final double[] belief = sa.getBelief();
+		final double[] xSamples = sx.getAllSamples();
+		fg.solve();
+		assertArrayEquals(belief, sa.getBelief(), 0.0);
+		assertArrayEquals(xSamples, sx.getAllSamples(), 0.0);
+	}
+}
@@ -0,0 +1,244 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.schedulers.GibbsChromaticScheduler;
+import com.analog.lyric.dimple.schedulers.GibbsSequentialScanScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsChromaticSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.BlockScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ColorScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.block.BlockMHSampler;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsChromaticScheduler}
+ * @since 0.08
+ */
+public class TestGibbsChromaticScheduler extends DimpleTestBase
+{
+	private static final int[][] PAIR_INDICES = new int[][] { {0, 0}, {0, 1}, {1, 0}, {1, 1} };
+	
+	private final Random _rand = new Random(42);
+	
+	@Test
+	public void testColoring()
+	{
+		// A lattice only needs two colors
+		final int size = 8;
+		FactorGraph fg = new FactorGraph();
+		Bit[][] lattice = createLattice(fg, size);
+		GibbsChromaticSchedule schedule = chromaticSchedule(fg);
+		assertEquals(2, schedule.getColorCount());
+		assertValidColoring(schedule);
+		assertEquals(size * size, countColoredVariables(schedule));
+		
+		// Variables that determine the same deterministic output conflict with each other and with the
+		// neighbors of the output.
+		fg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit(), c = new Bit(), d = new Bit();
+		fg.addFactor(new Xor(), c, a, b);
+		fg.addFactor(PAIR_INDICES, new double[] { .4, .6, .6, .4 }, c, d);
+		schedule = chromaticSchedule(fg);
+		assertValidColoring(schedule);
+		assertNotEquals(colorOf(schedule, a), colorOf(schedule, b));
+		assertNotEquals(colorOf(schedule, a), colorOf(schedule, d));
+		assertNotEquals(colorOf(schedule, b), colorOf(schedule, d));
+		
+		// Block variables are removed from color classes
+		fg = new FactorGraph();
+		lattice = createLattice(fg, size);
+		GibbsChromaticScheduler scheduler = new GibbsChromaticScheduler();
+		scheduler.addBlockScheduleEntry(new BlockScheduleEntry(new BlockMHSampler(new TrivialUniformBlockProposer()),
+			fg.addVariableBlock(lattice[0])));
+		fg.setOption(GibbsOptions.scheduler, scheduler);
+		schedule = (GibbsChromaticSchedule)fg.createSolver(new GibbsSolver()).getSchedule();
+		assertValidColoring(schedule);
+		assertEquals(size * (size - 1), countColoredVariables(schedule));
+		for (Bit bit : lattice[0])
+		{
+			assertEquals(-1, colorOf(schedule, bit));
+		}
+		IScheduleEntry lastEntry = null;
+		for (IScheduleEntry entry : schedule)
+		{
+			lastEntry = entry;
+		}
+		assertTrue(lastEntry instanceof BlockScheduleEntry);
+	}
+	
+	@Test
+	public void testSampling()
+	{
+		final int size = 20;
+		final FactorGraph fg = new FactorGraph();
+		final Bit[][] lattice = createLattice(fg, size);
+		requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, 2000);
+		fg.setOption(GibbsOptions.burnInScans, 10);
+		fg.setOption(DimpleOptions.randomSeed, 1234L);
+
+		fg.setOption(GibbsOptions.scheduler, new GibbsSequentialScanScheduler());
+		fg.solve();
+		final double[][] sequentialBeliefs = beliefs(lattice);
+		
+		fg.setOption(GibbsOptions.scheduler, new GibbsChromaticScheduler());
+		ThreadPool.setNumThreads(4);
+		try
+		{
+			fg.solve();
+			final double[][] chromaticBeliefs = beliefs(lattice);
+			
+			// Repeatable for given seed and number of threads
+			fg.solve();
+			assertArrayEquals(chromaticBeliefs, beliefs(lattice));
+			
+			for (int i = 0; i < sequentialBeliefs.length; ++i)
+			{
+				assertEquals(sequentialBeliefs[i][0], chromaticBeliefs[i][0], .1);
+			}
+		}
+		finally
+		{
+			ThreadPool.setNumThreadsToDefault();
+		}
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private Bit[][] createLattice(FactorGraph fg, int size)
+	{
+		final Bit[][] lattice = new Bit[size][size];
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j)
+			{
+				final Bit bit = lattice[i][j] = new Bit();
+				bit.setInput(.2 + .6 * _rand.nextDouble());
+				if (i > 0)
+				{
+					addCoupling(fg, lattice[i-1][j], bit);
+				}
+				if (j > 0)
+				{
+					addCoupling(fg, lattice[i][j-1], bit);
+				}
+			}
+		}
+		return lattice;
+	}
+	
+	private void addCoupling(FactorGraph fg, Bit a, Bit b)
+	{
+		final double same = .5 + .3 * _rand.nextDouble();
+		fg.addFactor(PAIR_INDICES, new double[] { same, 1 - same, 1 - same, same }, a, b);
+	}
+	
+	private static GibbsChromaticSchedule chromaticSchedule(FactorGraph fg)
+	{
+		fg.setOption(GibbsOptions.scheduler, new GibbsChromaticScheduler());
+		return (GibbsChromaticSchedule)fg.createSolver(new GibbsSolver()).getSchedule();
+	}
+	
+	private static int colorOf(GibbsChromaticSchedule schedule, Variable variable)
+	{
+		for (IScheduleEntry entry : schedule)
+		{
+			if (entry instanceof ColorScheduleEntry)
+			{
+				ColorScheduleEntry colorEntry = (ColorScheduleEntry)entry;
+				for (int i = 0, n = colorEntry.size(); i < n; ++i)
+				{
+					if (colorEntry.getVariable(i) == variable)
+					{
+						return colorEntry.getColor();
+					}
+				}
+			}
+		}
+		return -1;
+	}
+	
+	private static int countColoredVariables(GibbsChromaticSchedule schedule)
+	{
+		int count = 0;
+		for (IScheduleEntry entry : schedule)
+		{
+			if (entry instanceof ColorScheduleEntry)
+			{
+				count += ((ColorScheduleEntry)entry).size();
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Asserts that no two variables of the same color share a factor.
+	 */
+	private static void assertValidColoring(GibbsChromaticSchedule schedule)
+	{
+		for (IScheduleEntry entry : schedule)
+		{
+			if (entry instanceof ColorScheduleEntry)
+			{
+				final ColorScheduleEntry colorEntry = (ColorScheduleEntry)entry;
+				final Set<Factor> factors = new HashSet<>();
+				for (int i = 0, n = colorEntry.size(); i < n; ++i)
+				{
+					for (Factor factor : colorEntry.getVariable(i).getFactors())
+					{
+						assertTrue(factors.add(factor));
+					}
+				}
+			}
+		}
+	}
+	
+	private static double[][] beliefs(Bit[][] lattice)
+	{
+		final int size = lattice.length;
+		final double[][] beliefs = new double[size * size][];
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j)
+			{
+				beliefs[i * size + j] = lattice[i][j].getBelief();
+			}
+		}
+		return beliefs;
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsConvergenceMonitor;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsConvergenceMonitor} and related {@link GibbsOptions}.
+ * @since 0.08
+ */
+public class TestGibbsConvergenceMonitor extends DimpleTestBase
+{
+	@Test
+	public void testAutoStop()
+	{
+		final int maxSamples = 100000;
+		
+		FactorGraph fg = new FactorGraph();
+		Bit a = new Bit();
+		a.setInput(.3);
+		Real x = new Real();
+		fg.addVariables(a);
+		fg.addFactor(new Normal(3.0, 4.0), x);
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, maxSamples);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		fg.solve();
+		assertNull(sfg.getConvergenceMonitor());
+		assertEquals(maxSamples, sfg.getDiscrete(a).getAllSampleIndices().length);
+		
+		// Only monitor the score
+		fg.setOption(GibbsOptions.targetEffectiveSampleSize, 500.0);
+		fg.solve();
+		GibbsConvergenceMonitor monitor = requireNonNull(sfg.getConvergenceMonitor());
+		assertEquals(1, monitor.getStatisticCount());
+		long nSamples = monitor.getSampleCount();
+		assertEquals(nSamples, sfg.getDiscrete(a).getAllSampleIndices().length);
+		assertEquals(0, nSamples % GibbsOptions.convergenceDiagnosticInterval.defaultIntValue());
+		assertTrue(nSamples < 5000);
+		assertTrue(monitor.getMinEffectiveSampleSize() >= 500);
+		assertTrue(monitor.isConverged(500, 0));
+		
+		// Monitor variables too
+		fg.setOption(GibbsOptions.monitorConvergence, true);
+		fg.setOption(GibbsOptions.targetSplitRHat, 1.05);
+		fg.setOption(GibbsOptions.convergenceDiagnosticInterval, 50);
+		fg.solve();
+		monitor = requireNonNull(sfg.getConvergenceMonitor());
+		assertEquals(4, monitor.getStatisticCount());
+		nSamples = monitor.getSampleCount();
+		assertEquals(0, nSamples % 50);
+		assertTrue(nSamples < 5000);
+		assertTrue(monitor.getMinEffectiveSampleSize() >= 500);
+		assertTrue(monitor.getMaxSplitRHat() <= 1.05);
+		assertEquals(.3, sfg.getDiscrete(a).getBelief()[1], .05);
+		
+		// Not converged if targets cannot be met
+		fg.setOption(GibbsOptions.numSamples, 200);
+		fg.setOption(GibbsOptions.targetEffectiveSampleSize, 1e6);
+		fg.solve();
+		monitor = requireNonNull(sfg.getConvergenceMonitor());
+		assertEquals(200, monitor.getSampleCount());
+		assertFalse(monitor.isConverged(1e6, 1.05));
+		
+		monitor.reset();
+		assertEquals(0, monitor.getSampleCount());
+		assertEquals(0.0, monitor.getMinEffectiveSampleSize(), 0.0);
+		assertEquals(Double.POSITIVE_INFINITY, monitor.getMaxSplitRHat(), 0.0);
+	}
+	
+	@Test
+	public void testSlowMixing()
+	{
+		final int nSamples = 20000;
+		
+		// Strongly coupled pair of bits only occasionally flips between 00 and 11
+		FactorGraph fg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit();
+		fg.addFactor(new int[][] { {0, 0}, {0, 1}, {1, 0}, {1, 1} }, new double[] { 100, 1, 1, 100 }, a, b);
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, nSamples);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		a.setOption(GibbsOptions.monitorConvergence, true);
+		
+		fg.solve();
+		final GibbsConvergenceMonitor monitor = requireNonNull(sfg.getConvergenceMonitor());
+		assertEquals(3, monitor.getStatisticCount());
+		assertEquals(nSamples, monitor.getSampleCount());
+		assertTrue(monitor.getScoreEffectiveSampleSize() > 0);
+		assertFalse(Double.isNaN(monitor.getScoreSplitRHat()));
+		
+		// Samples are highly autocorrelated
+		final double ess = monitor.getMinEffectiveSampleSize();
+		assertTrue(ess > 0);
+		assertTrue(ess < nSamples / 10);
+	}
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Multiplexer;
+import com.analog.lyric.dimple.factorfunctions.Product;
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests Gibbs sampling of variables with deterministic dependents against exact marginals.
+ * <p>
+ * The graph mixes factors that depend on the deterministic outputs with ones that do not, which
+ * are evaluated differently when updating the inputs.
+ * @since 0.08
+ */
+public class TestGibbsDeterministicDependents extends DimpleTestBase
+{
+	private static final int N = 3;
+	
+	@Test
+	public void test()
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, N - 1);
+		
+		FactorGraph fg = new FactorGraph();
+		Discrete[] x = new Discrete[N];
+		for (int i = 0; i < N; ++i)
+		{
+			x[i] = new Discrete(domain);
+		}
+		Discrete w = new Discrete(domain);
+		Discrete y = new Discrete(DiscreteDomain.range(0, N * (N - 1)));
+		Discrete m = new Discrete(domain);
+		
+		double[][] inputs = new double[N + 3][];
+		Discrete[] inputVars = new Discrete[] { x[0], x[1], x[2], w, y, m };
+		for (int i = 0; i < inputVars.length; ++i)
+		{
+			inputs[i] = randomWeights(inputVars[i].getDomain().size());
+			inputVars[i].setInput(inputs[i]);
+		}
+		
+		fg.addFactor(new Sum(), y, x[0], x[1], x[2]);
+		fg.addFactor(new Multiplexer(), m, x[2], x[0], x[1], w);
+		
+		final double[][] f01 = addRandomFactor(fg, x[0], x[1]);	// independent of outputs
+		final double[][] f0y = addRandomFactor(fg, x[0], y);		// depends on Sum output
+		final double[][] fm1 = addRandomFactor(fg, m, x[1]);		// depends on Multiplexer output
+		
+		// Compute exact marginals by enumeration
+		final double[][] expected = new double[][] { new double[N], new double[N], new double[N], new double[N],
+			new double[y.getDomain().size()], new double[N] };
+		double total = 0;
+		for (int x0 = 0; x0 < N; ++x0)
+			for (int x1 = 0; x1 < N; ++x1)
+				for (int x2 = 0; x2 < N; ++x2)
+					for (int wi = 0; wi < N; ++wi)
+					{
+						final int yi = x0 + x1 + x2;
+						final int mi = x2 == 0 ? x0 : x2 == 1 ? x1 : wi;
+						final int[] indices = new int[] { x0, x1, x2, wi, yi, mi };
+						double weight = f01[x0][x1] * f0y[x0][yi] * fm1[mi][x1];
+						for (int i = 0; i < indices.length; ++i)
+						{
+							weight *= inputs[i][indices[i]];
+						}
+						for (int i = 0; i < indices.length; ++i)
+						{
+							expected[i][indices[i]] += weight;
+						}
+						total += weight;
+					}
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, 20000);
+		fg.setOption(GibbsOptions.burnInScans, 100);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		fg.solve();
+		
+		for (int i = 0; i < inputVars.length; ++i)
+		{
+			final double[] belief = sfg.getDiscrete(inputVars[i]).getBelief();
+			for (int j = 0; j < belief.length; ++j)
+			{
+				assertEquals(expected[i][j] / total, belief[j], .02);
+			}
+		}
+	}
+	
+	/**
+	 * Sum and product of real values that are not exactly representable, whose discrete output domain only
+	 * contains the results as computed from scratch. Updating the output incrementally would drift away from
+	 * those values.
+	 */
+	@Test
+	public void testNonIntegralArithmetic()
+	{
+		testNonIntegral(false);
+		testNonIntegral(true);
+	}
+	
+	private void testNonIntegral(boolean product)
+	{
+		final double[] elements = new double[] { .1, .3, .7 };
+		final DiscreteDomain domain = DiscreteDomain.create(.1, .3, .7);
+		final TreeSet<Double> results = new TreeSet<>();
+		for (double a : elements)
+		{
+			for (double b : elements)
+			{
+				results.add(product ? 1 * a * b : 0 + a + b);
+			}
+		}
+		final DiscreteDomain resultDomain = DiscreteDomain.create(results.toArray());
+		
+		FactorGraph fg = new FactorGraph();
+		Discrete a = new Discrete(domain), b = new Discrete(domain), y = new Discrete(resultDomain);
+		final double[] aInput = randomWeights(3), bInput = randomWeights(3);
+		a.setInput(aInput);
+		b.setInput(bInput);
+		fg.addFactor(product ? new Product() : new Sum(), y, a, b);
+		
+		final double[] expected = new double[resultDomain.size()];
+		double total = 0;
+		for (int ai = 0; ai < 3; ++ai)
+		{
+			for (int bi = 0; bi < 3; ++bi)
+			{
+				final double weight = aInput[ai] * bInput[bi];
+				final double result = product ? 1 * elements[ai] * elements[bi] : 0 + elements[ai] + elements[bi];
+				expected[resultDomain.getIndex(result)] += weight;
+				total += weight;
+			}
+		}
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, 10000);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		fg.solve();
+		
+		final double[] belief = sfg.getDiscrete(y).getBelief();
+		for (int i = 0; i < belief.length; ++i)
+		{
+			assertEquals(expected[i] / total, belief[i], .02);
+		}
+	}
+	
+	private double[] randomWeights(int size)
+	{
+		double[] weights = new double[size];
+		for (int i = 0; i < size; ++i)
+		{
+			weights[i] = .2 + testRand.nextDouble();
+		}
+		return weights;
+	}
+	
+	private double[][] addRandomFactor(FactorGraph fg, Discrete a, Discrete b)
+	{
+		final int aSize = a.getDomain().size(), bSize = b.getDomain().size();
+		final double[][] weights = new double[aSize][];
+		final int[][] indices = new int[aSize * bSize][];
+		final double[] flatWeights = new double[aSize * bSize];
+		for (int i = 0, k = 0; i < aSize; ++i)
+		{
+			weights[i] = randomWeights(bSize);
+			for (int j = 0; j < bSize; ++j, ++k)
+			{
+				indices[k] = new int[] { i, j };
+				flatWeights[k] = weights[i][j];
+			}
+		}
+		fg.addFactor(indices, flatWeights, a, b);
+		return weights;
+	}
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for parallel tempering in Gibbs solver using {@link GibbsOptions#numReplicas}.
+ * @since 0.08
+ */
+public class TestGibbsParallelTempering extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		// Fully connected graph with strong couplings has two modes, all zeros and all ones, with
+		// equal probability, separated by very improbable states.
+		final int nVars = 6, nSamples = 2000, nReplicas = 5;
+		final FactorGraph fg = new FactorGraph();
+		final Bit[] bits = new Bit[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			bits[i] = new Bit();
+			for (int j = 0; j < i; ++j)
+			{
+				fg.addFactor(new int[][] { {0, 0}, {0, 1}, {1, 0}, {1, 1} }, new double[] { 10, 1, 1, 10 },
+					bits[i], bits[j]);
+			}
+		}
+		
+		final GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, nSamples);
+		fg.setOption(DimpleOptions.randomSeed, 123L);
+		
+		// A single chain gets stuck in one mode
+		fg.solve();
+		assertEquals(0, sfg.getReplicaSwapAcceptanceRates().length);
+		assertTrue(Math.abs(bits[0].getP1() - .5) > .4);
+		
+		fg.setOption(GibbsOptions.numReplicas, nReplicas);
+		fg.setOption(GibbsOptions.maxReplicaTemperature, 20.0);
+		fg.solve();
+		assertEquals(nReplicas, sfg.getNumReplicas());
+		for (Bit bit : bits)
+		{
+			assertEquals(.5, bit.getP1(), .1);
+		}
+		
+		final double[] rates = sfg.getReplicaSwapAcceptanceRates();
+		assertEquals(nReplicas - 1, rates.length);
+		for (double rate : rates)
+		{
+			assertTrue(rate > 0 && rate <= 1);
+		}
+		
+		// Repeatable for given seed
+		final double p1 = bits[0].getP1();
+		fg.solve();
+		assertEquals(p1, bits[0].getP1(), 0.0);
+		assertArrayEquals(rates, sfg.getReplicaSwapAcceptanceRates(), 0.0);
+		
+		// Swap interval
+		fg.setOption(GibbsOptions.replicaSwapInterval, 10);
+		fg.solve();
+		assertTrue(sfg.getReplicaSwapAcceptanceRates()[0] > 0);
+		
+		// Cannot be combined with annealing
+		fg.setOption(GibbsOptions.enableAnnealing, true);
+		try
+		{
+			fg.solve();
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().contains("numReplicas"));
+		}
+	}
+}
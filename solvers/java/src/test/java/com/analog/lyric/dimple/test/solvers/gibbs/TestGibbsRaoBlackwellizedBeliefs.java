@@ -0,0 +1,100 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsOptions#raoBlackwellizedBeliefs}.
+ * @since 0.08
+ */
+public class TestGibbsRaoBlackwellizedBeliefs extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		FactorGraph fg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit(), c = new Bit();
+		a.setInput(.3);
+		b.setInput(.6);
+		fg.addFactor(new int[][] { {0, 0}, {0, 1}, {1, 0}, {1, 1} }, new double[] { 2, 1, 1, 2 }, a, b);
+		c.setInput(.2);
+		fg.addVariables(c);
+		
+		// Joint weights are 00: .56, 01: .42, 10: .12, 11: .36
+		final double exactA = .48 / 1.46, exactB = .78 / 1.46;
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, 2000);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		
+		double histogramError = 0, raoBlackwellError = 0;
+		for (long seed = 1; seed <= 5; ++seed)
+		{
+			fg.setOption(DimpleOptions.randomSeed, seed);
+			
+			fg.setOption(GibbsOptions.raoBlackwellizedBeliefs, false);
+			fg.solve();
+			histogramError += squaredError(exactA, a) + squaredError(exactB, b) + squaredError(.2, c);
+			final int[] samples = sfg.getDiscrete(a).getAllSampleIndices();
+			
+			fg.setOption(GibbsOptions.raoBlackwellizedBeliefs, true);
+			fg.solve();
+			raoBlackwellError += squaredError(exactA, a) + squaredError(exactB, b);
+			
+			// Same samples are generated
+			assertArrayEquals(samples, sfg.getDiscrete(a).getAllSampleIndices());
+			
+			// Conditional of independent variable is exact
+			assertEquals(.2, c.getBelief()[1], 1e-12);
+			assertEquals(1.0, a.getBelief()[0] + a.getBelief()[1], 1e-12);
+		}
+		
+		assertTrue(raoBlackwellError < histogramError / 2);
+		
+		// Beliefs are pooled across chains
+		fg.setOption(GibbsOptions.numChains, 3);
+		fg.solve();
+		assertEquals(exactA, a.getBelief()[1], .02);
+		assertEquals(.2, c.getBelief()[1], 1e-12);
+		
+		// Fixed values are unaffected
+		b.setFixedValue(1);
+		fg.solve();
+		assertArrayEquals(new double[] { 0, 1 }, b.getBelief(), 0.0);
+		assertEquals(.6 / 1.3, a.getBelief()[1], 1e-12);
+	}
+	
+	private static double squaredError(double expected, Discrete var)
+	{
+		final double diff = var.getBelief()[1] - expected;
+		return diff * diff;
+	}
+}
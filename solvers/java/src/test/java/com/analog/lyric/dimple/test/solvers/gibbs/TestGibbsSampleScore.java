@@ -0,0 +1,139 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.google.common.collect.ObjectArrays;
+
+/**
+ * Tests that the incrementally maintained sample scores reported by {@link GibbsSolverGraph}
+ * match the scores computed from scratch.
+ * @since 0.08
+ */
+public class TestGibbsSampleScore extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		testSampleScores(false);
+		testSampleScores(true);
+	}
+	
+	private void testSampleScores(boolean withDeterministicFactor)
+	{
+		final int nVars = 8, nSamples = 300;
+		
+		FactorGraph fg = new FactorGraph();
+		Discrete[] vars = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars[i] = new Discrete(DiscreteDomain.range(0, 1 + i % 3));
+			double[] input = new double[vars[i].getDomain().size()];
+			for (int j = 0; j < input.length; ++j)
+			{
+				input[j] = .1 + testRand.nextDouble();
+			}
+			vars[i].setInput(input);
+		}
+		for (int i = 1; i < nVars; ++i)
+		{
+			addRandomFactor(fg, vars[i - 1], vars[i]);
+		}
+		addRandomFactor(fg, vars[0], vars[nVars - 1]);
+		
+		if (withDeterministicFactor)
+		{
+			// Variables with deterministic dependents use a different update path
+			Bit a = new Bit(), b = new Bit(), c = new Bit();
+			a.setInput(.3);
+			b.setInput(.8);
+			fg.addFactor(new Xor(), c, a, b);
+			addRandomFactor(fg, c, vars[0]);
+			vars = ObjectArrays.concat(vars, new Discrete[] { a, b, c }, Discrete.class);
+		}
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, nSamples);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(GibbsOptions.saveAllScores, true);
+		fg.setOption(DimpleOptions.randomSeed, 23L);
+		
+		fg.solve();
+		assertScores(sfg, vars);
+		
+		// Annealing changes the temperature used in computing the conditional energies
+		fg.setOption(GibbsOptions.enableAnnealing, true);
+		fg.setOption(GibbsOptions.initialTemperature, 5.0);
+		fg.setOption(GibbsOptions.annealingHalfLife, 50.0);
+		fg.solve();
+		assertScores(sfg, vars);
+	}
+	
+	private void addRandomFactor(FactorGraph fg, Discrete x, Discrete y)
+	{
+		final int xSize = x.getDomain().size(), ySize = y.getDomain().size();
+		final int[][] indices = new int[xSize * ySize][];
+		final double[] weights = new double[xSize * ySize];
+		for (int i = 0, k = 0; i < xSize; ++i)
+		{
+			for (int j = 0; j < ySize; ++j, ++k)
+			{
+				indices[k] = new int[] { i, j };
+				weights[k] = .1 + testRand.nextDouble();
+			}
+		}
+		fg.addFactor(indices, weights, x, y);
+	}
+	
+	private void assertScores(GibbsSolverGraph sfg, Discrete[] allVars)
+	{
+		final double[] scores = requireNonNull(sfg.getAllScores());
+		final int[][] sampleIndices = new int[allVars.length][];
+		for (int i = 0; i < allVars.length; ++i)
+		{
+			sampleIndices[i] = sfg.getDiscrete(allVars[i]).getAllSampleIndices();
+			assertEquals(scores.length, sampleIndices[i].length);
+		}
+		
+		double bestScore = Double.POSITIVE_INFINITY;
+		for (int sample = 0; sample < scores.length; ++sample)
+		{
+			for (int i = 0; i < allVars.length; ++i)
+			{
+				sfg.getDiscrete(allVars[i]).setCurrentSampleIndex(sampleIndices[i][sample]);
+			}
+			final double score = sfg.getSampleScore();
+			assertEquals(score, scores[sample], 1e-9);
+			bestScore = Math.min(bestScore, score);
+		}
+		assertEquals(bestScore, sfg.getBestSampleScore(), 1e-9);
+	}
+}
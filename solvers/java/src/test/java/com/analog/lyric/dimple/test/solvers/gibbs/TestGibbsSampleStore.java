@@ -0,0 +1,270 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.MultivariateNormal;
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.model.variables.RealJoint;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsReal;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsRealJoint;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSampleStore;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsSampleStore} and the {@link GibbsOptions#sampleStorageDirectory} and
+ * {@link GibbsOptions#sampleThinning} options.
+ * @since 0.08
+ */
+public class TestGibbsSampleStore extends DimpleTestBase
+{
+	@Test
+	public void testColumns() throws IOException
+	{
+		final File dir = createTempDirectory();
+		final GibbsSampleStore store = new GibbsSampleStore(dir);
+		assertSame(dir, store.getDirectory());
+		assertNull(store.getFile());
+		assertEquals(0, store.getAllocatedBytes());
+		
+		// Enough values to span several blocks
+		final int n = 50000;
+		
+		final GibbsSampleStore.IntColumn ints = store.createIntColumn();
+		final GibbsSampleStore.DoubleColumn doubles = store.createDoubleColumn(1);
+		final GibbsSampleStore.DoubleColumn triples = store.createDoubleColumn(3);
+		assertSame(store, ints.getStore());
+		assertEquals(3, triples.width());
+		
+		for (int i = 0; i < n; ++i)
+		{
+			ints.add(i * 7);
+			doubles.add(i / 2.0);
+			triples.add(new double[] { i, -i, i * .5 });
+		}
+		
+		final File file = requireNonNull(store.getFile());
+		assertTrue(file.exists());
+		assertEquals(dir, file.getParentFile());
+		assertTrue(store.getAllocatedBytes() >= n * (4 + 8 + 24));
+		
+		assertEquals(n, ints.size());
+		assertEquals(n, doubles.size());
+		assertEquals(n, triples.size());
+		
+		final int[] intArray = ints.toArray();
+		final double[] doubleArray = doubles.toArray();
+		final double[] tripleArray = triples.toArray();
+		assertEquals(n, intArray.length);
+		assertEquals(3 * n, tripleArray.length);
+		for (int i = 0; i < n; ++i)
+		{
+			assertEquals(i * 7, ints.get(i));
+			assertEquals(i * 7, intArray[i]);
+			assertEquals(i / 2.0, doubles.get(i, 0), 0.0);
+			assertEquals(i / 2.0, doubleArray[i], 0.0);
+			assertEquals(-i, triples.get(i, 1), 0.0);
+			assertEquals(i * .5, tripleArray[3 * i + 2], 0.0);
+		}
+		
+		// Copy range spanning a block boundary
+		final int[] intRange = new int[20000];
+		ints.copyTo(10000, intRange.length, intRange, 0);
+		for (int i = 0; i < intRange.length; ++i)
+		{
+			assertEquals((i + 10000) * 7, intRange[i]);
+		}
+		
+		try
+		{
+			ints.get(n);
+			fail("expected IndexOutOfBoundsException");
+		}
+		catch (IndexOutOfBoundsException ex)
+		{
+		}
+		
+		// Appending columns
+		final GibbsSampleStore.IntColumn ints2 = store.createIntColumn();
+		ints2.add(-1);
+		ints2.addAll(ints);
+		assertEquals(n + 1, ints2.size());
+		assertEquals(-1, ints2.get(0));
+		assertEquals((n - 1) * 7, ints2.get(n));
+		
+		// Clearing retains storage
+		final long allocated = store.getAllocatedBytes();
+		ints.clear();
+		assertEquals(0, ints.size());
+		ints.add(42);
+		assertEquals(42, ints.get(0));
+		assertEquals(allocated, store.getAllocatedBytes());
+		
+		store.close();
+		assertTrue(store.isClosed());
+		assertFalse(file.exists());
+		
+		// Columns cannot be used once the store is closed
+		try
+		{
+			ints.get(0);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+		try
+		{
+			doubles.copyTo(0, 1, new double[1], 0);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+		try
+		{
+			triples.get(0, 0);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+		try
+		{
+			ints.add(1);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+		
+		assertTrue(dir.delete());
+	}
+	
+	@Test
+	public void testSolve() throws IOException
+	{
+		final int nSamples = 500;
+		
+		FactorGraph fg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit();
+		a.setInput(.3);
+		fg.addFactor(new int[][] { {0, 0}, {1, 1} }, new double[] { 2, 1 }, a, b);
+		Real x = new Real();
+		fg.addFactor(new Normal(3.0, 4.0), x);
+		RealJoint j = new RealJoint(2);
+		fg.addFactor(new MultivariateNormal(new double[] { 1, 2 }, new double[][] { {1, 0}, {0, 1} }), j);
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, nSamples);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(GibbsOptions.saveAllScores, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		final GibbsDiscrete sa = sfg.getDiscrete(a);
+		final GibbsReal sx = sfg.getReal(x);
+		final GibbsRealJoint sj = (GibbsRealJoint)sfg.getSolverVariable(j);
+
+		fg.solve();
+		assertNull(sfg.getSampleStore());
+		assertNull(sa.getSampleColumn());
+		assertNull(sx.getSampleColumn());
+		assertNull(sj.getSampleColumn());
+		final int[] aSamples = sa.getAllSampleIndices();
+		final double[] xSamples = sx.getAllSamples();
+		final double[][] jSamples = sj.getAllSamples();
+		final double[] scores = requireNonNull(sfg.getAllScores());
+		assertEquals(nSamples, aSamples.length);
+		
+		// Same samples when stored off heap
+		final File dir = createTempDirectory();
+		fg.setOption(GibbsOptions.sampleStorageDirectory, dir.getPath());
+		fg.solve();
+		final GibbsSampleStore store = requireNonNull(sfg.getSampleStore());
+		assertEquals(dir, store.getDirectory());
+		assertEquals(nSamples, requireNonNull(sa.getSampleColumn()).size());
+		assertEquals(nSamples, requireNonNull(sx.getSampleColumn()).size());
+		assertEquals(2, requireNonNull(sj.getSampleColumn()).width());
+		assertArrayEquals(aSamples, sa.getAllSampleIndices());
+		assertArrayEquals(xSamples, sx.getAllSamples(), 0.0);
+		final double[][] jSamples2 = sj.getAllSamples();
+		assertEquals(nSamples, jSamples2.length);
+		for (int i = 0; i < nSamples; ++i)
+		{
+			assertArrayEquals(jSamples[i], jSamples2[i], 0.0);
+		}
+		assertEquals(nSamples, sa.getAllSamples().length);
+		
+		// Thinning
+		final int thinning = 3;
+		fg.setOption(GibbsOptions.sampleThinning, thinning);
+		fg.solve();
+		assertNotSame(store, sfg.getSampleStore());
+		assertTrue(store.isClosed());
+		final int[] aThinned = sa.getAllSampleIndices();
+		final double[] scoresThinned = requireNonNull(sfg.getAllScores());
+		assertEquals(nSamples / thinning, aThinned.length);
+		assertEquals(nSamples / thinning, scoresThinned.length);
+		for (int i = 0; i < aThinned.length; ++i)
+		{
+			assertEquals(aSamples[(i + 1) * thinning - 1], aThinned[i]);
+			assertEquals(scores[(i + 1) * thinning - 1], scoresThinned[i], 1e-10);
+		}
+		
+		// Chains merge into off-heap storage
+		fg.setOption(GibbsOptions.sampleThinning, 1);
+		fg.setOption(GibbsOptions.numChains, 2);
+		fg.solve();
+		assertEquals(2 * nSamples, sa.getAllSampleIndices().length);
+		assertEquals(2 * nSamples, requireNonNull(sx.getSampleColumn()).size());
+		assertEquals(2 * nSamples, sj.getAllSamples().length);
+		
+		final File file = requireNonNull(requireNonNull(sfg.getSampleStore()).getFile());
+		assertTrue(file.exists());
+		sfg.closeSampleStore();
+		assertNull(sfg.getSampleStore());
+		assertFalse(file.exists());
+		
+		assertTrue(dir.delete());
+	}
+	
+	private static File createTempDirectory() throws IOException
+	{
+		final File dir = File.createTempFile("TestGibbsSampleStore", "");
+		assertTrue(dir.delete());
+		assertTrue(dir.mkdir());
+		dir.deleteOnExit();
+		return dir;
+	}
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.FiniteFieldAdd;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.FiniteFieldDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.FiniteFieldVariable;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.SequentialScheduler;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomFiniteFieldAdd;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for sum-product {@link CustomFiniteFieldAdd}
+ * @since 0.08
+ */
+public class TestSumProductCustomFiniteFieldAdd extends DimpleTestBase
+{
+	private final Random _rand = new Random(17);
+
+	@Test
+	public void test()
+	{
+		final FiniteFieldDomain domain = DiscreteDomain.finiteField(0x13);
+		final int size = domain.size(), nVars = 7;
+
+		// Build same loopy graph using custom factors in fg1 and factor tables in fg2.
+		final FactorGraph fg1 = new FactorGraph();
+		final FactorGraph fg2 = new FactorGraph();
+		final Discrete[] vars1 = new Discrete[nVars], vars2 = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars1[i] = new FiniteFieldVariable(domain);
+			vars2[i] = new FiniteFieldVariable(domain);
+			final double[] input = randomWeights(size);
+			vars1[i].setInput(input);
+			vars2[i].setInput(input);
+		}
+
+		final Factor[] custom = new Factor[] {
+			fg1.addFactor(new FiniteFieldAdd(), vars1[0], vars1[1], vars1[2], vars1[3], vars1[4]),
+			fg1.addFactor(new FiniteFieldAdd(), vars1[5], vars1[1], vars1[2]),
+			fg1.addFactor(new FiniteFieldAdd(), vars1[6], vars1[3], vars1[5], vars1[0]),
+		};
+		for (Factor factor : custom)
+		{
+			final Variable[] args = new Variable[factor.getSiblingCount()];
+			for (int i = 0; i < args.length; ++i)
+			{
+				args[i] = vars2[indexOf(vars1, factor.getSibling(i))];
+			}
+			fg2.addFactor(factor.getFactorTable(), args);
+		}
+
+		requireNonNull(fg1.setSolverFactory(new SumProductSolver()));
+		requireNonNull(fg2.setSolverFactory(new SumProductSolver()));
+
+		for (Factor factor : custom)
+		{
+			assertTrue(factor.getSolver() instanceof CustomFiniteFieldAdd);
+		}
+		for (Factor factor : fg2.getFactors())
+		{
+			assertFalse(factor.getSolver() instanceof CustomFiniteFieldAdd);
+		}
+
+		fg1.setOption(BPOptions.iterations, 10);
+		fg2.setOption(BPOptions.iterations, 10);
+		compareBeliefs(fg1, fg2, vars1, vars2);
+
+		// Uses updateEdge
+		fg1.setOption(BPOptions.scheduler, new SequentialScheduler());
+		fg2.setOption(BPOptions.scheduler, new SequentialScheduler());
+		compareBeliefs(fg1, fg2, vars1, vars2);
+
+		// Fixed values produce deterministic input messages
+		vars1[2].setFixedValueIndex(3);
+		vars2[2].setFixedValueIndex(3);
+		compareBeliefs(fg1, fg2, vars1, vars2);
+
+		// Check transform against definition
+		final double[] data = randomWeights(size), transform = new double[size];
+		CustomFiniteFieldAdd.fast_hadamard(Integer.numberOfTrailingZeros(size), data, transform);
+		for (int i = 0; i < size; ++i)
+		{
+			double expected = 0.0;
+			for (int j = 0; j < size; ++j)
+			{
+				expected += (Integer.bitCount(i & j) & 1) == 0 ? data[j] : -data[j];
+			}
+			assertEquals(expected, transform[i], 1e-12);
+		}
+	}
+
+	private double[] randomWeights(int size)
+	{
+		final double[] weights = new double[size];
+		for (int i = 0; i < size; ++i)
+		{
+			weights[i] = .1 + _rand.nextDouble();
+		}
+		return weights;
+	}
+
+	private static int indexOf(Object[] array, Object object)
+	{
+		for (int i = 0; i < array.length; ++i)
+		{
+			if (array[i] == object)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void compareBeliefs(FactorGraph fg1, FactorGraph fg2, Discrete[] vars1, Discrete[] vars2)
+	{
+		fg1.solve();
+		fg2.solve();
+		for (int i = 0; i < vars1.length; ++i)
+		{
+			assertArrayEquals(vars2[i].getBelief(), vars1[i].getBelief(), 1e-12);
+		}
+	}
+}
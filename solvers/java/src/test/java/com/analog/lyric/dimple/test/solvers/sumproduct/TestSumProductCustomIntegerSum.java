@@ -0,0 +1,212 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Subtract;
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.SequentialScheduler;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomIntegerSubtract;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomIntegerSum;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for sum-product {@link CustomIntegerSum} and {@link CustomIntegerSubtract}
+ * @since 0.08
+ */
+public class TestSumProductCustomIntegerSum extends DimpleTestBase
+{
+	private final Random _rand = new Random(42);
+
+	@Test
+	public void test()
+	{
+		final DiscreteDomain[] domains = new DiscreteDomain[] {
+			DiscreteDomain.range(0, 3),
+			DiscreteDomain.range(-2, 2),
+			DiscreteDomain.create(0, 2, 5),
+			DiscreteDomain.range(-1, 11),
+			DiscreteDomain.range(-2, 5),
+			DiscreteDomain.range(-3, 16),
+		};
+		final int nVars = domains.length;
+
+		// Build same loopy graph using custom factors in fg1 and factor tables in fg2.
+		final FactorGraph fg1 = new FactorGraph();
+		final FactorGraph fg2 = new FactorGraph();
+		final Discrete[] vars1 = new Discrete[nVars], vars2 = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars1[i] = new Discrete(domains[i]);
+			vars2[i] = new Discrete(domains[i]);
+			final double[] input = randomWeights(domains[i].size());
+			vars1[i].setInput(input);
+			vars2[i].setInput(input);
+		}
+
+		final Factor[] custom = new Factor[] {
+			fg1.addFactor(new Sum(), vars1[3], vars1[0], vars1[1], vars1[2], 1),
+			fg1.addFactor(new Subtract(), vars1[4], vars1[0], vars1[1]),
+			fg1.addFactor(new Sum(), vars1[5], vars1[3], vars1[4]),
+			fg1.addFactor(new Subtract(), vars1[4], vars1[0], 2),
+		};
+		for (Factor factor : custom)
+		{
+			final Variable[] args = new Variable[factor.getSiblingCount()];
+			for (int i = 0; i < args.length; ++i)
+			{
+				args[i] = vars2[indexOf(vars1, factor.getSibling(i))];
+			}
+			fg2.addFactor(factor.getFactorTable(), args);
+		}
+
+		final double[][] weights = new double[][] { randomWeights(4 * 3), randomWeights(4 * 3) };
+		final int[][] indices = new int[4 * 3][];
+		for (int i = 0; i < indices.length; ++i)
+		{
+			indices[i] = new int[] { i / 3, i % 3 };
+		}
+		fg1.addFactor(indices, weights[0], vars1[0], vars1[2]);
+		fg2.addFactor(indices, weights[0], vars2[0], vars2[2]);
+
+		requireNonNull(fg1.setSolverFactory(new SumProductSolver()));
+		requireNonNull(fg2.setSolverFactory(new SumProductSolver()));
+
+		assertTrue(custom[0].getSolver() instanceof CustomIntegerSum);
+		assertTrue(custom[1].getSolver() instanceof CustomIntegerSubtract);
+		assertTrue(custom[2].getSolver() instanceof CustomIntegerSum);
+		assertTrue(custom[3].getSolver() instanceof CustomIntegerSubtract);
+		for (Factor factor : fg2.getFactors())
+		{
+			assertFalse(factor.getSolver() instanceof CustomIntegerSum);
+		}
+
+		fg1.setOption(BPOptions.iterations, 10);
+		fg2.setOption(BPOptions.iterations, 10);
+		compareBeliefs(fg1, fg2, vars1, vars2);
+
+		fg1.setOption(BPOptions.damping, .3);
+		fg2.setOption(BPOptions.damping, .3);
+		compareBeliefs(fg1, fg2, vars1, vars2);
+
+		// Uses updateEdge
+		fg1.setOption(BPOptions.scheduler, new SequentialScheduler());
+		fg2.setOption(BPOptions.scheduler, new SequentialScheduler());
+		compareBeliefs(fg1, fg2, vars1, vars2);
+
+		fg1.unsetOption(BPOptions.damping);
+		fg2.unsetOption(BPOptions.damping);
+		compareBeliefs(fg1, fg2, vars1, vars2);
+
+		// Large domains use the FFT
+		final FactorGraph fg3 = new FactorGraph();
+		final FactorGraph fg4 = new FactorGraph();
+		final Discrete[] vars3 = new Discrete[3], vars4 = new Discrete[3];
+		for (int i = 0; i < 3; ++i)
+		{
+			final DiscreteDomain domain = i == 0 ? DiscreteDomain.range(0, 600) : DiscreteDomain.range(0, 300);
+			vars3[i] = new Discrete(domain);
+			vars4[i] = new Discrete(domain);
+			final double[] input = randomWeights(domain.size());
+			vars3[i].setInput(input);
+			vars4[i].setInput(input);
+		}
+		final Factor sum3 = fg3.addFactor(new Sum(), vars3);
+		fg4.addFactor(sum3.getFactorTable(), vars4);
+		requireNonNull(fg3.setSolverFactory(new SumProductSolver()));
+		requireNonNull(fg4.setSolverFactory(new SumProductSolver()));
+		assertTrue(sum3.getSolver() instanceof CustomIntegerSum);
+		compareBeliefs(fg3, fg4, vars3, vars4);
+
+		// A high-degree factor would be impractical using a factor table.
+		final int nInputs = 10, maxInput = 50;
+		final FactorGraph fg5 = new FactorGraph();
+		final Discrete[] vars5 = new Discrete[nInputs + 1];
+		vars5[0] = new Discrete(DiscreteDomain.range(0, nInputs * maxInput));
+		for (int i = 1; i <= nInputs; ++i)
+		{
+			vars5[i] = new Discrete(DiscreteDomain.range(0, maxInput));
+		}
+		final Factor sum5 = fg5.addFactor(new Sum(), vars5);
+		requireNonNull(fg5.setSolverFactory(new SumProductSolver()));
+		assertTrue(sum5.getSolver() instanceof CustomIntegerSum);
+		fg5.solve();
+		double mean = 0.0;
+		final double[] belief = vars5[0].getBelief();
+		for (int i = 0; i < belief.length; ++i)
+		{
+			mean += i * belief[i];
+		}
+		assertEquals(nInputs * maxInput / 2.0, mean, 1e-9);
+		assertEquals(Math.pow(maxInput + 1, -nInputs), belief[0], 1e-25);
+
+		// Not supported with smoothing or non-integer domains
+		final FactorGraph fg6 = new FactorGraph();
+		final Discrete x = new Discrete(DiscreteDomain.range(0, 4)), y = new Discrete(DiscreteDomain.range(0, 2));
+		final Discrete z = new Discrete(DiscreteDomain.range(0.0, 2.0));
+		final Factor smoothed = fg6.addFactor(new Sum(1.0), x, y, y);
+		final Factor nonInteger = fg6.addFactor(new Subtract(), x, y, z);
+		requireNonNull(fg6.setSolverFactory(new SumProductSolver()));
+		assertFalse(smoothed.getSolver() instanceof CustomIntegerSum);
+		assertFalse(nonInteger.getSolver() instanceof CustomIntegerSum);
+	}
+
+	private double[] randomWeights(int size)
+	{
+		final double[] weights = new double[size];
+		for (int i = 0; i < size; ++i)
+		{
+			weights[i] = .1 + _rand.nextDouble();
+		}
+		return weights;
+	}
+
+	private static int indexOf(Object[] array, Object object)
+	{
+		for (int i = 0; i < array.length; ++i)
+		{
+			if (array[i] == object)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void compareBeliefs(FactorGraph fg1, FactorGraph fg2, Discrete[] vars1, Discrete[] vars2)
+	{
+		fg1.solve();
+		fg2.solve();
+		for (int i = 0; i < vars1.length; ++i)
+		{
+			assertArrayEquals(vars2[i].getBelief(), vars1[i].getBelief(), 1e-12);
+		}
+	}
+}
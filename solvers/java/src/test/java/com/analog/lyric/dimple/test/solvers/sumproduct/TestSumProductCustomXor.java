@@ -0,0 +1,181 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.SequentialScheduler;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomXor;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for sum-product {@link CustomXor}
+ * @since 0.08
+ */
+public class TestSumProductCustomXor extends DimpleTestBase
+{
+	private final Random _rand = new Random(23);
+
+	@Test
+	public void test()
+	{
+		final int nBits = 12, nChecks = 8, degree = 4;
+
+		final FactorGraph fg1 = new FactorGraph();
+		final FactorGraph fg2 = new FactorGraph();
+		final Bit[] bits1 = new Bit[nBits], bits2 = new Bit[nBits];
+		for (int i = 0; i < nBits; ++i)
+		{
+			bits1[i] = new Bit();
+			bits2[i] = new Bit();
+			double input = _rand.nextDouble();
+			bits1[i].setInput(input);
+			bits2[i].setInput(input);
+		}
+
+		// Build same random parity check graph using the Xor factor function, which should use the custom
+		// factor, and the equivalent factor table, which should not.
+		final Factor[] xors = new Factor[nChecks];
+		for (int i = 0; i < nChecks; ++i)
+		{
+			final Object[] args1 = new Object[degree];
+			final Bit[] args2 = new Bit[degree];
+			int nConstants = 0;
+			for (int j = 0; j < degree; ++j)
+			{
+				int bit;
+				do
+				{
+					bit = _rand.nextInt(nBits);
+				} while (contains(args2, bits2[bit]));
+				args2[j] = bits2[bit];
+				args1[j] = bits1[bit];
+			}
+			if (i % 3 == 0)
+			{
+				// Add a constant input to some of the factors
+				args1[1 + _rand.nextInt(degree - 1)] = _rand.nextInt(2);
+				++nConstants;
+			}
+			xors[i] = fg1.addFactor(new Xor(), args1);
+			Bit[] args2Vars = new Bit[degree - nConstants];
+			for (int j = 0, k = 0; j < degree; ++j)
+			{
+				if (args1[j] instanceof Bit)
+				{
+					args2Vars[k++] = args2[j];
+				}
+			}
+			fg2.addFactor(xors[i].getFactorTable(), args2Vars);
+		}
+
+		requireNonNull(fg1.setSolverFactory(new SumProductSolver()));
+		requireNonNull(fg2.setSolverFactory(new SumProductSolver()));
+
+		for (Factor factor : fg1.getFactors())
+		{
+			assertTrue(factor.getSolver() instanceof CustomXor);
+		}
+		for (Factor factor : fg2.getFactors())
+		{
+			SumProductTableFactor sfactor = (SumProductTableFactor)factor.getSolver();
+			assertFalse(sfactor instanceof CustomXor);
+		}
+
+		fg1.setOption(BPOptions.iterations, 10);
+		fg2.setOption(BPOptions.iterations, 10);
+		compareBeliefs(fg1, fg2, bits1, bits2);
+
+		fg1.setOption(BPOptions.damping, .3);
+		fg2.setOption(BPOptions.damping, .3);
+		compareBeliefs(fg1, fg2, bits1, bits2);
+
+		// Uses updateEdge
+		fg1.setOption(BPOptions.scheduler, new SequentialScheduler());
+		fg2.setOption(BPOptions.scheduler, new SequentialScheduler());
+		compareBeliefs(fg1, fg2, bits1, bits2);
+
+		fg1.unsetOption(BPOptions.damping);
+		fg2.unsetOption(BPOptions.damping);
+		compareBeliefs(fg1, fg2, bits1, bits2);
+
+		// Fixed values produce deterministic input messages
+		bits1[0].setFixedValue(1);
+		bits2[0].setFixedValue(1);
+		compareBeliefs(fg1, fg2, bits1, bits2);
+
+		// Not supported for variables whose domain does not begin with false/zero.
+		FactorGraph fg3 = new FactorGraph();
+		Discrete a = new Discrete(DiscreteDomain.create(1, 0)), b = new Discrete(DiscreteDomain.bit());
+		Factor xor3 = fg3.addFactor(new Xor(), a, b);
+		requireNonNull(fg3.setSolverFactory(new SumProductSolver()));
+		assertFalse(xor3.getSolver() instanceof CustomXor);
+
+		// A high degree factor would be impractical using a factor table.
+		FactorGraph fg4 = new FactorGraph();
+		Bit[] bits4 = new Bit[40];
+		for (int i = 0; i < bits4.length; ++i)
+		{
+			bits4[i] = new Bit();
+			bits4[i].setInput(.4);
+		}
+		Factor xor4 = fg4.addFactor(new Xor(), bits4);
+		requireNonNull(fg4.setSolverFactory(new SumProductSolver()));
+		assertTrue(xor4.getSolver() instanceof CustomXor);
+		fg4.solve();
+		// Each variable should see the distribution of the parity of the 39 others
+		double expected1 = .5 - .5 * Math.pow(.2, 39);
+		double belief1 = expected1 * .4 / (expected1 * .4 + (1 - expected1) * .6);
+		assertEquals(belief1, bits4[0].getP1(), 1e-12);
+	}
+
+	private static boolean contains(Object[] array, Object object)
+	{
+		for (Object element : array)
+		{
+			if (element == object)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void compareBeliefs(FactorGraph fg1, FactorGraph fg2, Bit[] bits1, Bit[] bits2)
+	{
+		fg1.solve();
+		fg2.solve();
+		for (int i = 0; i < bits1.length; ++i)
+		{
+			assertEquals(bits2[i].getP1(), bits1[i].getP1(), 1e-12);
+		}
+	}
+}
@@ -0,0 +1,266 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static java.util.Objects.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.And;
+import com.analog.lyric.dimple.factorfunctions.Or;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.ResidualBPScheduler;
+import com.analog.lyric.dimple.schedulers.SequentialScheduler;
+import com.analog.lyric.dimple.solvers.optimizedupdate.UpdateApproach;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductDiscreteEdge;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductOptions;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.dimple.test.model.RandomGraphGenerator;
+
+/**
+ * Tests for {@link SumProductOptions#logDomainMessages}.
+ * @since 0.08
+ */
+public class TestSumProductLogDomain extends DimpleTestBase
+{
+	private final Random _rand = new Random(42);
+
+	@Test
+	public void test()
+	{
+		assertFalse(SumProductOptions.logDomainMessages.defaultValue());
+
+		RandomGraphGenerator gen = new RandomGraphGenerator(_rand);
+
+		testLogDomain(gen.buildRandomTree(10), true);
+		testLogDomain(gen.buildGrid(3), false);
+		testLogDomain(buildBitGraph(8), false);
+	}
+
+	/**
+	 * Tests a factor whose marginals underflow when computed from weights: the products of the input
+	 * weights of both of its table entries are far below the smallest double.
+	 */
+	@Test
+	public void testUnderflow()
+	{
+		final int size = 20;
+		final FactorGraph fg = new FactorGraph();
+		requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		
+		// Entries are all ones, and all ones except for the last bit.
+		final Bit[] bits = new Bit[size];
+		final int[][] indices = new int[2][size];
+		for (int i = 0; i < size; ++i)
+		{
+			bits[i] = new Bit();
+			bits[i].setInput(1e-30);
+			indices[0][i] = 1;
+			indices[1][i] = i + 1 < size ? 1 : 0;
+		}
+		fg.addFactor(indices, new double[] { 1, 1 }, bits);
+		
+		try
+		{
+			fg.solve();
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertThat(ex.getMessage(), containsString("All probabilities were zero"));
+		}
+		
+		fg.setOption(SumProductOptions.logDomainMessages, true);
+		fg.solve();
+		assertUnderflowBeliefs(bits);
+		
+		fg.setOption(BPOptions.scheduler, new SequentialScheduler());
+		// Damping halves the remaining weight of the initial uniform message on each iteration
+		fg.setOption(BPOptions.damping, .5);
+		fg.setOption(BPOptions.iterations, 200);
+		fg.solve();
+		assertUnderflowBeliefs(bits);
+	}
+	
+	private void assertUnderflowBeliefs(Bit[] bits)
+	{
+		final int last = bits.length - 1;
+		for (int i = 0; i < last; ++i)
+		{
+			assertEquals(1.0, bits[i].getP1(), 1e-12);
+		}
+		// The all-ones entry is 1e-30 times less likely than the other
+		assertEquals(1e-30, bits[last].getP1(), 1e-40);
+	}
+
+	private void testLogDomain(FactorGraph fg, boolean isTree)
+	{
+		requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		fg.setOption(BPOptions.iterations, 20);
+
+		final Variable[] variables = fg.getVariables().toArray(new Variable[0]);
+		final Factor[] factors = fg.getFactors().toArray(new Factor[0]);
+
+		compareBeliefs(fg, variables, factors);
+
+		fg.setOption(BPOptions.damping, .4);
+		compareBeliefs(fg, variables, factors);
+		fg.unsetOption(BPOptions.damping);
+
+		fg.setOption(BPOptions.updateApproach, UpdateApproach.OPTIMIZED);
+		compareBeliefs(fg, variables, factors);
+		fg.unsetOption(BPOptions.updateApproach);
+
+		// Uses updateEdge
+		fg.setOption(BPOptions.scheduler, new SequentialScheduler());
+		compareBeliefs(fg, variables, factors);
+		fg.setOption(BPOptions.damping, .4);
+		compareBeliefs(fg, variables, factors);
+		fg.unsetOption(BPOptions.damping);
+
+		if (isTree)
+		{
+			// The residuals that determine the order of updates differ between weights and energies,
+			// so the results will only be the same once converged.
+			fg.setOption(BPOptions.scheduler, new ResidualBPScheduler());
+			compareBeliefs(fg, variables, factors);
+		}
+		
+		// Changing inputs after solving in log domain must not reuse stale cached logs of the inputs
+		fg.setOption(BPOptions.scheduler, new SequentialScheduler());
+		fg.setOption(SumProductOptions.logDomainMessages, true);
+		fg.solve();
+		for (Variable var : variables)
+		{
+			final Discrete discrete = (Discrete)var;
+			if (!discrete.hasFixedValue())
+			{
+				final double[] input = new double[discrete.getDomain().size()];
+				for (int i = 0; i < input.length; ++i)
+				{
+					input[i] = .1 + _rand.nextDouble();
+				}
+				discrete.setInput(input);
+			}
+		}
+		compareBeliefs(fg, variables, factors);
+		fg.unsetOption(SumProductOptions.logDomainMessages);
+	}
+
+	private void compareBeliefs(FactorGraph fg, Variable[] variables, Factor[] factors)
+	{
+		fg.unsetOption(SumProductOptions.logDomainMessages);
+		fg.solve();
+		assertEnergyEdges(factors, false);
+		final double[][] expectedBeliefs = getBeliefs(variables);
+
+		fg.setOption(SumProductOptions.logDomainMessages, true);
+		fg.solve();
+		assertEnergyEdges(factors, true);
+		assertBeliefsEqual(expectedBeliefs, getBeliefs(variables));
+
+		// Enable on only some of the factors so that variables will have mixed edges.
+		fg.unsetOption(SumProductOptions.logDomainMessages);
+		for (int i = 0; i < factors.length; i += 2)
+		{
+			factors[i].setOption(SumProductOptions.logDomainMessages, true);
+		}
+		fg.solve();
+		for (int i = 0; i < factors.length; ++i)
+		{
+			assertEnergyEdges(new Factor[] { factors[i] }, i % 2 == 0);
+			factors[i].unsetOption(SumProductOptions.logDomainMessages);
+		}
+		assertBeliefsEqual(expectedBeliefs, getBeliefs(variables));
+	}
+
+	private void assertEnergyEdges(Factor[] factors, boolean expected)
+	{
+		for (Factor factor : factors)
+		{
+			SumProductTableFactor sfactor = (SumProductTableFactor)requireNonNull(factor.getSolver());
+			assertEquals(expected, sfactor.useLogDomainMessages());
+			for (int i = 0, n = factor.getSiblingCount(); i < n; ++i)
+			{
+				SumProductDiscreteEdge sedge = sfactor.getSiblingEdgeState(i);
+				assertEquals(expected, sedge.storesEnergies());
+				assertEquals(!expected, sedge.varToFactorMsg.storesWeights());
+			}
+		}
+	}
+
+	private double[][] getBeliefs(Variable[] variables)
+	{
+		final double[][] beliefs = new double[variables.length][];
+		for (int i = 0; i < variables.length; ++i)
+		{
+			beliefs[i] = ((Discrete)variables[i]).getBelief();
+		}
+		return beliefs;
+	}
+
+	private void assertBeliefsEqual(double[][] expected, double[][] actual)
+	{
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; ++i)
+		{
+			assertArrayEquals(expected[i], actual[i], 1e-9);
+		}
+	}
+
+	/**
+	 * Builds loopy graph of bits with deterministic factors, which will produce messages
+	 * with zero weights.
+	 */
+	private FactorGraph buildBitGraph(int size)
+	{
+		FactorGraph fg = new FactorGraph();
+		Bit[] bits = new Bit[size];
+		for (int i = 0; i < size; ++i)
+		{
+			bits[i] = new Bit();
+			bits[i].setInput(.1 + .8 * _rand.nextDouble());
+		}
+		for (int i = 0; i < size; ++i)
+		{
+			final Bit a = bits[i], b = bits[(i + 1) % size], c = bits[(i + 3) % size];
+			if (i % 2 == 0)
+			{
+				fg.addFactor(new Or(), a, b, c);
+			}
+			else
+			{
+				fg.addFactor(new And(), a, b, c);
+			}
+		}
+		// Fix one of the bits to produce zero input weights.
+		bits[0].setFixedValue(1);
+		return fg;
+	}
+}
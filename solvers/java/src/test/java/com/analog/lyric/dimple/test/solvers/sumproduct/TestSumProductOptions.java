@@ -37,6 +37,7 @@ import com.analog.lyric.dimple.solvers.sumproduct.SumProductDiscrete;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomXor;
 import com.analog.lyric.dimple.solvers.sumproduct.sampledfactor.SampledFactor;
 import com.analog.lyric.dimple.test.DimpleTestBase;
 
@@ -134,7 +135,9 @@ public class TestSumProductOptions extends DimpleTestBase
 		
 		assertEquals(.9, sv1.getDamping(0), 0.0);
 
-		assertEquals(UpdateApproach.OPTIMIZED, sf1.getEffectiveUpdateApproach());
+		// Xor uses custom factor, which does not use the optimized update
+		assertTrue(sf1 instanceof CustomXor);
+		assertEquals(UpdateApproach.NORMAL, sf1.getEffectiveUpdateApproach());
 		assertEquals(UpdateApproach.NORMAL, sf2.getEffectiveUpdateApproach());
 		
 		// Test using set methods